@@ -23,6 +23,8 @@ import "react-toastify/dist/ReactToastify.css";
 
 import LoadingIndicator from "../../common/LoadingIndicator";
 
+const CREDENTIAL_JOB_POLL_MS = 1000;
+
 class CreateCredentialComponent extends Component {
     constructor(props) {
         super(props);
@@ -32,6 +34,7 @@ class CreateCredentialComponent extends Component {
         };
         this.handleInputChange = this.handleInputChange.bind(this);
         this.createCredential = this.createCredential.bind(this);
+        this.waitCredentialJob = this.waitCredentialJob.bind(this);
         this.reloadDataComponent = this.reloadDataComponent.bind(this);
     }
 
@@ -67,20 +70,40 @@ class CreateCredentialComponent extends Component {
             .post(API_BASE_URL + "/credentials", data, {
                 headers: headers,
             })
-            .then((res) => {
+            .then((res) => this.waitCredentialJob(res.data.jobId, headers))
+            .then(() => {
                 toast.success("A certificate was created.");
                 this.reloadDataComponent();
                 this.props.onChangeShowInputFields(false);
                 this.props.onUpdateCertificateList();
             })
             .catch((error) => {
-                toast.error(error.response.data);
+                toast.error(error.response ? error.response.data : error.message);
                 this.reloadDataComponent();
                 this.props.onChangeShowInputFields(false);
                 this.props.onUpdateCertificateList();
             });
     }
 
+    // the credential is created in the background: polls the job until it completes
+    waitCredentialJob(jobId, headers) {
+        return new Promise((resolve) => setTimeout(resolve, CREDENTIAL_JOB_POLL_MS))
+            .then(() =>
+                axios.get(API_BASE_URL + "/credentials/jobs/" + jobId, {
+                    headers: headers,
+                })
+            )
+            .then((res) => {
+                if (res.data.status === "SUCCEEDED") {
+                    return res.data;
+                }
+                if (res.data.status === "FAILED") {
+                    throw new Error(res.data.error);
+                }
+                return this.waitCredentialJob(jobId, headers);
+            });
+    }
+
     handleInputChange(event) {
         event.preventDefault();
         this.setState({ inputAlias: event.target.value });
@@ -0,0 +1,117 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.api.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Optional;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import eu.europa.ec.eudi.signer.rssp.api.payload.BulkEnrollmentRequest;
+import eu.europa.ec.eudi.signer.rssp.api.payload.BulkEnrollmentStatus;
+import eu.europa.ec.eudi.signer.rssp.api.services.BulkEnrollmentService;
+import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
+import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
+import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
+
+/**
+ * Administration endpoints to create the credentials of several users at once.
+ * These endpoints are not authenticated with the token of a user, but with the
+ * key defined in auth.adminApiKey, and are disabled if it is not set.
+ */
+@RestController
+@RequestMapping(value = "/admin/credentials")
+public class BulkEnrollmentController {
+	private static final Logger logger = LogManager.getLogger(BulkEnrollmentController.class);
+	private static final String ADMIN_KEY_HEADER = "X-Admin-Key";
+
+	private final BulkEnrollmentService bulkEnrollmentService;
+	private final AuthProperties authProperties;
+
+	public BulkEnrollmentController(BulkEnrollmentService bulkEnrollmentService, AuthProperties authProperties) {
+		this.bulkEnrollmentService = bulkEnrollmentService;
+		this.authProperties = authProperties;
+	}
+
+	/**
+	 * Function that allows to request the creation of several credentials.
+	 * The credentials are created in the background: the response contains the id
+	 * of the enrollment, whose status is available in
+	 * /admin/credentials/bulk/{batchId}.
+	 *
+	 * @param adminKey the administration key
+	 * @param request  the credentials to create
+	 */
+	@PostMapping("/bulk")
+	public ResponseEntity<?> createCredentials(@RequestHeader(value = ADMIN_KEY_HEADER, required = false) String adminKey,
+			@RequestBody BulkEnrollmentRequest request) {
+		if (!isAdmin(adminKey)) {
+			return forbidden();
+		}
+		try {
+			BulkEnrollmentStatus status = bulkEnrollmentService.submit(request);
+			return ResponseEntity.status(HttpStatus.ACCEPTED)
+					.location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{batchId}")
+							.buildAndExpand(status.getBatchId()).toUri())
+					.body(status);
+		} catch (ApiException e) {
+			// the logs were already written
+			return ResponseEntity.badRequest().body(e.getMessage());
+		}
+	}
+
+	/**
+	 * Function that allows to get the progress of a bulk enrollment
+	 *
+	 * @param adminKey the administration key
+	 * @param batchId  the id of the enrollment
+	 */
+	@GetMapping("/bulk/{batchId}")
+	public ResponseEntity<?> getEnrollment(@RequestHeader(value = ADMIN_KEY_HEADER, required = false) String adminKey,
+			@PathVariable(value = "batchId") String batchId) {
+		if (!isAdmin(adminKey)) {
+			return forbidden();
+		}
+		Optional<BulkEnrollmentStatus> status = bulkEnrollmentService.getStatus(batchId);
+		if (status.isEmpty()) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND)
+					.body(SignerError.BulkEnrollmentNotFound.getFormattedMessage());
+		}
+		return ResponseEntity.ok(status.get());
+	}
+
+	private boolean isAdmin(String adminKey) {
+		String expected = authProperties.getAdminApiKey();
+		if (expected == null || expected.isEmpty() || adminKey == null) {
+			return false;
+		}
+		return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+				adminKey.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private ResponseEntity<?> forbidden() {
+		logger.error(SignerError.AdminAccessDenied.getCode() + " (BulkEnrollmentController.class) "
+				+ SignerError.AdminAccessDenied.getDescription());
+		return ResponseEntity.status(HttpStatus.FORBIDDEN).body(SignerError.AdminAccessDenied.getFormattedMessage());
+	}
+}
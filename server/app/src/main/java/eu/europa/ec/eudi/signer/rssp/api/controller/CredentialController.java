@@ -20,24 +20,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import eu.europa.ec.eudi.signer.rssp.api.model.LoggerUtil;
 import eu.europa.ec.eudi.signer.csc.payload.CredentialInfo;
+import eu.europa.ec.eudi.signer.rssp.api.payload.CredentialJobResponse;
+import eu.europa.ec.eudi.signer.rssp.api.services.CredentialJobService;
 import eu.europa.ec.eudi.signer.rssp.api.services.CredentialService;
 import eu.europa.ec.eudi.signer.rssp.api.services.UserService;
 import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
 import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
 import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
-import eu.europa.ec.eudi.signer.rssp.entities.Credential;
+import eu.europa.ec.eudi.signer.rssp.entities.CredentialJob;
 import eu.europa.ec.eudi.signer.rssp.entities.User;
 import eu.europa.ec.eudi.signer.rssp.security.CurrentUser;
 import eu.europa.ec.eudi.signer.rssp.security.UserPrincipal;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import java.security.KeyFactory;
-import java.security.interfaces.RSAPublicKey;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.Optional;
 import java.util.List;
 
@@ -46,19 +46,25 @@ import java.util.List;
 public class CredentialController {
 	private static final Logger logger = LogManager.getLogger(CredentialController.class);
 	private final CredentialService credentialService;
+	private final CredentialJobService credentialJobService;
 	private final UserService userService;
 	private final AuthProperties authProperties;
 
 	public CredentialController(@Autowired final CredentialService credentialService,
+			@Autowired final CredentialJobService credentialJobService,
 			@Autowired final UserService userService, @Autowired AuthProperties authProperties) {
 		this.credentialService = credentialService;
+		this.credentialJobService = credentialJobService;
 		this.userService = userService;
 		this.authProperties = authProperties;
 	}
 
 	/**
-	 * Function that allows to create a new credential. In this project "credential"
-	 * includes a key pair and a certificate.
+	 * Function that allows to request the creation of a new credential. In this
+	 * project "credential" includes a key pair and a certificate.
+	 * The credential is created in the background: the response contains the id
+	 * of the job, whose status is available in /credentials/jobs/{jobId}.
+	 * Repeating the request for the same alias returns the same job.
 	 * Exception: if the user can't be found
 	 * Exception: if a credential with the same alias already exists.
 	 * 
@@ -66,7 +72,7 @@ public class CredentialController {
 	 * @param alias         the alias of the credential to create
 	 */
 	@PostMapping
-	@ResponseStatus(HttpStatus.CREATED)
+	@ResponseStatus(HttpStatus.ACCEPTED)
 	public ResponseEntity<?> createCredential(@CurrentUser UserPrincipal userPrincipal,
 			@RequestParam("alias") String alias) {
 
@@ -89,25 +95,12 @@ public class CredentialController {
 			String givenName = userPrincipal.getGivenName();
 			String surname = userPrincipal.getSurname();
 			String subjectDN = userPrincipal.getName();
-			Credential credential = credentialService.createCredential(owner, givenName, surname, subjectDN,
-					alias, countryCode);
-
-			KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-			X509EncodedKeySpec pKeySpec = new X509EncodedKeySpec(credential.getPublicKeyHSM());
-			RSAPublicKey pk = (RSAPublicKey) keyFactory.generatePublic(pKeySpec);
-			LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
-					this.authProperties.getDatasourcePassword(), 1, owner, 3,
-					"Public Key info - Algorithm: " + pk.getAlgorithm() + " " + pk.getModulus().bitLength()
-							+ " bits | Modulus: " + pk.getModulus() + " | Exponent: " + pk.getPublicExponent());
-
-			LoggerUtil.desc = "Certificate Alias: " + credential.getAlias()
-					+ " | Subject DN: " + credential.getSubjectDN()
-					+ " | Issuer DN: " + credential.getIssuerDN()
-					+ " | Valid From: " + credential.getValidFrom()
-					+ " | Valid To: " + credential.getValidTo();
-			LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
-					this.authProperties.getDatasourcePassword(), 1, id, 1, LoggerUtil.desc);
-			return new ResponseEntity<>(HttpStatus.CREATED);
+			CredentialJob job = credentialJobService.submit(owner, givenName, surname, subjectDN, alias,
+					countryCode);
+			return ResponseEntity.status(HttpStatus.ACCEPTED)
+					.location(ServletUriComponentsBuilder.fromCurrentRequest().path("/jobs/{jobId}")
+							.buildAndExpand(job.getId()).toUri())
+					.body(new CredentialJobResponse(job));
 		} catch (ApiException e) {
 			// if the aux functions sent an api exception, the logs were already written
 			// the ApiException also have a set message to be shown to the user
@@ -122,6 +115,25 @@ public class CredentialController {
 		}
 	}
 
+	/**
+	 * Function that allows to get the status of the creation of a credential
+	 * (PENDING, RUNNING, SUCCEEDED or FAILED, with the error message)
+	 * 
+	 * @param userPrincipal the user authenticated
+	 * @param jobId         the id of the job returned when the creation was
+	 *                      requested
+	 */
+	@GetMapping("/jobs/{jobId}")
+	public ResponseEntity<?> getCredentialJob(@CurrentUser UserPrincipal userPrincipal,
+			@PathVariable(value = "jobId") String jobId) {
+		Optional<CredentialJob> job = credentialJobService.getJob(userPrincipal.getId(), jobId);
+		if (job.isEmpty()) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND)
+					.body(SignerError.CredentialJobNotFound.getFormattedMessage());
+		}
+		return ResponseEntity.ok(new CredentialJobResponse(job.get()));
+	}
+
 	@PostMapping("list")
 	@ResponseStatus(HttpStatus.OK)
 	public List<CredentialInfo> list(@CurrentUser UserPrincipal userPrincipal) {
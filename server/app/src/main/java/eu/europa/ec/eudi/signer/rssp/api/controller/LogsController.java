@@ -27,12 +27,12 @@ import org.springframework.web.bind.annotation.*;
 
 import eu.europa.ec.eudi.signer.rssp.api.model.LoggerUtil;
 import eu.europa.ec.eudi.signer.rssp.api.payload.LogDTO;
+import eu.europa.ec.eudi.signer.rssp.api.services.EventService;
 import eu.europa.ec.eudi.signer.rssp.api.services.UserService;
 import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
 import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
 import eu.europa.ec.eudi.signer.rssp.entities.LogsUser;
 import eu.europa.ec.eudi.signer.rssp.entities.User;
-import eu.europa.ec.eudi.signer.rssp.repository.EventRepository;
 import eu.europa.ec.eudi.signer.rssp.repository.LogsUserRepository;
 import eu.europa.ec.eudi.signer.rssp.security.CurrentUser;
 import eu.europa.ec.eudi.signer.rssp.security.UserPrincipal;
@@ -43,16 +43,16 @@ public class LogsController {
     private static final Logger logger = LogManager.getLogger(LogsController.class);
     private final UserService userService;
     private final LogsUserRepository repository;
-    private final Map<Integer, String> events;
+    private final EventService eventService;
     private final SimpleDateFormat formatter;
     private final AuthProperties authProperties;
 
     public LogsController(@Autowired final LogsUserRepository logsUserRepository,
-            @Autowired UserService userService, @Autowired AuthProperties authProperties) {
+            @Autowired UserService userService, @Autowired EventService eventService,
+            @Autowired AuthProperties authProperties) {
         this.userService = userService;
         this.repository = logsUserRepository;
-        this.events = EventRepository.event(authProperties.getDatasourceUsername(),
-                authProperties.getDatasourcePassword());
+        this.eventService = eventService;
         this.formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
         this.authProperties = authProperties;
     }
@@ -80,7 +80,7 @@ public class LogsController {
             lDTO.setLogTime(this.formatter.format(l.getLogTime()));
             String success = l.getSuccess() == 0 ? "Failed" : "Success";
             lDTO.setSuccess(success);
-            String eventType = this.events.get(l.getEventTypeID());
+            String eventType = this.eventService.getEventName(l.getEventTypeID());
             lDTO.setEventType(eventType);
             lDTO.setInfo(l.getInfo());
             returnList.add(lDTO);
@@ -20,7 +20,11 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
@@ -32,9 +36,34 @@ public class LoggerUtil {
 
     private static final Logger logger = LogManager.getLogger(LoggerUtil.class);
 
+    // the logs are written synchronously by the request threads, so the writes
+    // in progress are the backlog of the audit log (Spring Boot adds its
+    // registry to the global one)
+    private static final AtomicInteger pendingWrites = Metrics.gauge("rssp.audit.writes.pending",
+            new AtomicInteger());
+
     public static void logsUser(String dbUsername, String dbPassword, int success, String usersID, int eventTypeID,
                                 String info) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        pendingWrites.incrementAndGet();
+        try {
+            writeLog(dbUsername, dbPassword, success, usersID, eventTypeID, info);
+            outcome = "success";
+        } catch (SQLException e) {
+            logger.error(e);
+        } finally {
+            pendingWrites.decrementAndGet();
+            Timer.builder("rssp.audit.write")
+                    .description("Latency of the writes of the audit log (logs_user)")
+                    .tag("outcome", outcome)
+                    .register(Metrics.globalRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
 
+    private static void writeLog(String dbUsername, String dbPassword, int success, String usersID, int eventTypeID,
+                                 String info) throws SQLException {
         try (Connection connection = DriverManager.getConnection(URL, dbUsername, dbPassword)) {
             String sql = "INSERT INTO logs_user (success, usersID, eventTypeID, info) VALUES (?, ?, ?, ?)";
             try (PreparedStatement statement = connection.prepareStatement(sql)) {
@@ -44,8 +73,6 @@ public class LoggerUtil {
                 statement.setString(4, info);
                 statement.executeUpdate();
             }
-        } catch (SQLException e) {
-            logger.error(e);
         }
     }
 }
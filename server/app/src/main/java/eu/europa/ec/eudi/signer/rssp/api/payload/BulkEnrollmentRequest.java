@@ -0,0 +1,94 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.api.payload;
+
+import java.util.List;
+
+/**
+ * Request of the creation of the credentials of several users at once
+ */
+public class BulkEnrollmentRequest {
+    private List<Item> credentials;
+
+    public List<Item> getCredentials() {
+        return credentials;
+    }
+
+    public void setCredentials(List<Item> credentials) {
+        this.credentials = credentials;
+    }
+
+    /**
+     * A credential to create
+     */
+    public static class Item {
+        private String owner;
+        private String givenName;
+        private String surname;
+        private String subjectDN;
+        private String alias;
+        private String countryCode;
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public void setOwner(String owner) {
+            this.owner = owner;
+        }
+
+        public String getGivenName() {
+            return givenName;
+        }
+
+        public void setGivenName(String givenName) {
+            this.givenName = givenName;
+        }
+
+        public String getSurname() {
+            return surname;
+        }
+
+        public void setSurname(String surname) {
+            this.surname = surname;
+        }
+
+        public String getSubjectDN() {
+            return subjectDN;
+        }
+
+        public void setSubjectDN(String subjectDN) {
+            this.subjectDN = subjectDN;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public void setAlias(String alias) {
+            this.alias = alias;
+        }
+
+        public String getCountryCode() {
+            return countryCode;
+        }
+
+        public void setCountryCode(String countryCode) {
+            this.countryCode = countryCode;
+        }
+    }
+}
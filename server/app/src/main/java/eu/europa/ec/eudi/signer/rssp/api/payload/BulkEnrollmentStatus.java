@@ -0,0 +1,114 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.api.payload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a bulk enrollment, updated by the workers while the credentials
+ * are created
+ */
+public class BulkEnrollmentStatus {
+    private final String batchId;
+    private final int total;
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final List<Failure> failures = new ArrayList<>();
+    private volatile boolean completed;
+    private volatile long completedAt;
+
+    public BulkEnrollmentStatus(String batchId, int total) {
+        this.batchId = batchId;
+        this.total = total;
+    }
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public synchronized List<Failure> getFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    public void addSucceeded(int count) {
+        succeeded.addAndGet(count);
+    }
+
+    public synchronized void addFailure(int index, String alias, String error) {
+        failed.incrementAndGet();
+        failures.add(new Failure(index, alias, error));
+    }
+
+    public void complete() {
+        completedAt = System.currentTimeMillis();
+        completed = true;
+    }
+
+    /**
+     * @param now the current time, in milliseconds
+     * @param ttl the time the status is kept after the enrollment, in milliseconds
+     * @return if the enrollment completed more than ttl milliseconds ago
+     */
+    public boolean isExpired(long now, long ttl) {
+        return completed && now - completedAt > ttl;
+    }
+
+    /**
+     * A credential that could not be created
+     */
+    public static class Failure {
+        private final int index;
+        private final String alias;
+        private final String error;
+
+        public Failure(int index, String alias, String error) {
+            this.index = index;
+            this.alias = alias;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.api.payload;
+
+import eu.europa.ec.eudi.signer.rssp.entities.CredentialJob;
+
+/**
+ * Status of the creation of a credential
+ */
+public class CredentialJobResponse {
+    private String jobId;
+    private String alias;
+    private String status;
+    private String error;
+
+    public CredentialJobResponse(CredentialJob job) {
+        this.jobId = job.getId();
+        this.alias = job.getAlias();
+        this.status = job.getStatus().name();
+        this.error = job.getError();
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public void setAlias(String alias) {
+        this.alias = alias;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
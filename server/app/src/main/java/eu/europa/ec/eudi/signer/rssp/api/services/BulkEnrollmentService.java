@@ -0,0 +1,297 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.api.services;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Service;
+
+import eu.europa.ec.eudi.signer.rssp.api.model.LoggerUtil;
+import eu.europa.ec.eudi.signer.rssp.api.payload.BulkEnrollmentRequest;
+import eu.europa.ec.eudi.signer.rssp.api.payload.BulkEnrollmentStatus;
+import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CryptoConfig;
+import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
+import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
+import eu.europa.ec.eudi.signer.rssp.crypto.CryptoService;
+import eu.europa.ec.eudi.signer.rssp.crypto.PendingCredential;
+import eu.europa.ec.eudi.signer.rssp.entities.Credential;
+import eu.europa.ec.eudi.signer.rssp.repository.CredentialRepository;
+
+/**
+ * Creates the credentials of several users at once (e.g. when onboarding an
+ * organization).
+ * The key pairs and certificate requests are created by a small pool of
+ * threads, so the HSM is not flooded, while the certificate requests are sent
+ * to the EJBCA by a larger pool, as they spend most of the time waiting for the
+ * CA. The credentials created are saved in batches.
+ */
+@Service
+public class BulkEnrollmentService {
+	private static final Logger logger = LogManager.getLogger(BulkEnrollmentService.class);
+
+	/** Maximum number of credentials in a request */
+	public static final int MAX_CREDENTIALS = 10000;
+
+	/** Time the status of a completed enrollment is kept, in milliseconds */
+	private static final long STATUS_TTL = TimeUnit.HOURS.toMillis(1);
+
+	private final CredentialRepository credentialRepository;
+	private final CredentialService credentialService;
+	private final CryptoService cryptoService;
+	private final AuthProperties authProperties;
+	private final int saveBatchSize;
+	private final ExecutorService hsmExecutor;
+	private final ExecutorService enrollmentExecutor;
+	private final Map<String, BulkEnrollmentStatus> enrollments = new ConcurrentHashMap<>();
+
+	public BulkEnrollmentService(CredentialRepository credentialRepository, CredentialService credentialService,
+			CryptoService cryptoService, AuthProperties authProperties, CSCProperties cscProperties) {
+		CryptoConfig config = cscProperties.getCrypto();
+		this.credentialRepository = credentialRepository;
+		this.credentialService = credentialService;
+		this.cryptoService = cryptoService;
+		this.authProperties = authProperties;
+		this.saveBatchSize = Math.max(1, config.getBulkSaveBatchSize());
+		this.hsmExecutor = newExecutor("bulk-hsm-", config.getBulkHsmParallelism());
+		this.enrollmentExecutor = newExecutor("bulk-enrollment-", config.getBulkEnrollmentParallelism());
+	}
+
+	private static ExecutorService newExecutor(String name, int threads) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+			Thread thread = new Thread(runnable, name + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Requests the creation of the credentials.
+	 * The credentials are created in the background: the status returned is
+	 * updated as they are created.
+	 * Exception (Api Exception): if the request is empty or has more than
+	 * MAX_CREDENTIALS credentials
+	 *
+	 * @param request the credentials to create
+	 * @return the status of the enrollment
+	 */
+	public BulkEnrollmentStatus submit(BulkEnrollmentRequest request) {
+		List<BulkEnrollmentRequest.Item> items = request.getCredentials();
+		if (items == null || items.isEmpty() || items.size() > MAX_CREDENTIALS) {
+			logger.error(SignerError.InvalidBulkEnrollment.getCode() + " (submit in BulkEnrollmentService.class) "
+					+ SignerError.InvalidBulkEnrollment.getDescription());
+			throw new ApiException(SignerError.InvalidBulkEnrollment,
+					SignerError.InvalidBulkEnrollment.getDescription());
+		}
+		purgeExpired();
+
+		BulkEnrollmentStatus status = new BulkEnrollmentStatus(UUID.randomUUID().toString(), items.size());
+		enrollments.put(status.getBatchId(), status);
+		logger.info("Bulk enrollment {} of {} credentials started", status.getBatchId(), items.size());
+
+		Batch batch = new Batch(status);
+		Set<String> requested = new HashSet<>();
+		List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+		for (int i = 0; i < items.size(); i++) {
+			final int index = i;
+			final BulkEnrollmentRequest.Item item = items.get(i);
+			if (item == null || item.getOwner() == null || item.getAlias() == null) {
+				status.addFailure(index, item == null ? null : item.getAlias(),
+						SignerError.InvalidBulkEnrollment.getDescription());
+				continue;
+			}
+			if (!requested.add(item.getOwner() + "\n" + item.getAlias())) {
+				status.addFailure(index, item.getAlias(),
+						"The credential alias " + item.getAlias() + " is repeated in the request.");
+				continue;
+			}
+
+			futures.add(CompletableFuture.supplyAsync(() -> prepare(item), hsmExecutor)
+					.thenApplyAsync(this::enroll, enrollmentExecutor)
+					.handle((credential, error) -> {
+						if (error != null) {
+							status.addFailure(index, item.getAlias(), errorMessage(item.getOwner(), error));
+						} else {
+							batch.add(index, credential);
+						}
+						return null;
+					}));
+		}
+
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((result, error) -> {
+			batch.flush();
+			status.complete();
+			logger.info("Bulk enrollment {} completed: {} credentials created, {} failed", status.getBatchId(),
+					status.getSucceeded(), status.getFailed());
+		});
+		return status;
+	}
+
+	/**
+	 * @param batchId the id of the enrollment
+	 * @return the status of the enrollment, if it is still kept
+	 */
+	public Optional<BulkEnrollmentStatus> getStatus(String batchId) {
+		return Optional.ofNullable(enrollments.get(batchId));
+	}
+
+	private PendingCredential prepare(BulkEnrollmentRequest.Item item) {
+		credentialService.checkAliasAvailable(item.getOwner(), item.getAlias());
+		return cryptoService.prepareCredential(item.getOwner(), item.getGivenName(), item.getSurname(),
+				item.getSubjectDN(), item.getAlias(), item.getCountryCode());
+	}
+
+	private Credential enroll(PendingCredential pending) {
+		try {
+			Credential credential = cryptoService.enrollCredential(pending);
+			credential.setCreatedAt(Instant.now());
+			return credential;
+		} catch (ApiException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	private String errorMessage(String owner, Throwable error) {
+		Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		if (cause instanceof ApiException) {
+			// if the aux functions sent an api exception, the logs were already written
+			// the ApiException also have a set message to be shown to the user
+			return cause.getMessage();
+		}
+		logger.error(SignerError.UnexpectedError.getCode() + " (submit in BulkEnrollmentService.class) "
+				+ cause.getMessage());
+		LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
+				this.authProperties.getDatasourcePassword(), 0, owner, 1, "");
+		return SignerError.UnexpectedError.getFormattedMessage();
+	}
+
+	private void purgeExpired() {
+		long now = System.currentTimeMillis();
+		enrollments.values().removeIf(status -> status.isExpired(now, STATUS_TTL));
+	}
+
+	@PreDestroy
+	public void close() {
+		hsmExecutor.shutdownNow();
+		enrollmentExecutor.shutdownNow();
+	}
+
+	/**
+	 * The credentials of an enrollment waiting to be saved
+	 */
+	private class Batch {
+		private final BulkEnrollmentStatus status;
+		private List<Integer> indexes = new ArrayList<>();
+		private List<Credential> credentials = new ArrayList<>();
+
+		private Batch(BulkEnrollmentStatus status) {
+			this.status = status;
+		}
+
+		private void add(int index, Credential credential) {
+			List<Integer> fullIndexes = null;
+			List<Credential> fullCredentials = null;
+			synchronized (this) {
+				indexes.add(index);
+				credentials.add(credential);
+				if (credentials.size() >= saveBatchSize) {
+					fullIndexes = indexes;
+					fullCredentials = credentials;
+					indexes = new ArrayList<>();
+					credentials = new ArrayList<>();
+				}
+			}
+			if (fullCredentials != null) {
+				save(fullIndexes, fullCredentials);
+			}
+		}
+
+		private void flush() {
+			List<Integer> remainingIndexes;
+			List<Credential> remainingCredentials;
+			synchronized (this) {
+				remainingIndexes = indexes;
+				remainingCredentials = credentials;
+				indexes = new ArrayList<>();
+				credentials = new ArrayList<>();
+			}
+			if (!remainingCredentials.isEmpty()) {
+				save(remainingIndexes, remainingCredentials);
+			}
+		}
+
+		private void save(List<Integer> batchIndexes, List<Credential> batchCredentials) {
+			try {
+				credentialRepository.saveAll(batchCredentials);
+				status.addSucceeded(batchCredentials.size());
+				for (Credential credential : batchCredentials) {
+					logCredentialCreated(credential);
+				}
+				return;
+			} catch (Exception e) {
+				logger.warn("Failed to save a batch of {} credentials, saving them one by one: {}",
+						batchCredentials.size(), e.getMessage());
+			}
+
+			// a single credential (e.g. with an alias created in the meantime) must not
+			// prevent the others from being saved
+			for (int i = 0; i < batchCredentials.size(); i++) {
+				Credential credential = batchCredentials.get(i);
+				try {
+					credentialRepository.save(credential);
+					status.addSucceeded(1);
+					logCredentialCreated(credential);
+				} catch (Exception e) {
+					status.addFailure(batchIndexes.get(i), credential.getAlias(),
+							errorMessage(credential.getOwner(), e));
+				}
+			}
+		}
+
+		private void logCredentialCreated(Credential credential) {
+			String desc = "Certificate Alias: " + credential.getAlias()
+					+ " | Subject DN: " + credential.getSubjectDN()
+					+ " | Issuer DN: " + credential.getIssuerDN()
+					+ " | Valid From: " + credential.getValidFrom()
+					+ " | Valid To: " + credential.getValidTo();
+			LoggerUtil.logsUser(authProperties.getDatasourceUsername(), authProperties.getDatasourcePassword(), 1,
+					credential.getOwner(), 1, desc);
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.api.services;
+
+import java.security.KeyFactory;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import eu.europa.ec.eudi.signer.rssp.api.model.LoggerUtil;
+import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CryptoConfig;
+import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
+import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
+import eu.europa.ec.eudi.signer.rssp.entities.Credential;
+import eu.europa.ec.eudi.signer.rssp.entities.CredentialJob;
+import eu.europa.ec.eudi.signer.rssp.repository.CredentialJobRepository;
+
+/**
+ * Creates the credentials in the background: the request only records a job,
+ * and a bounded pool of workers generates the key pair, requests the
+ * certificate to the CA and saves the credential. The jobs are persisted, and
+ * the jobs not completed are run again when the RSSP starts.
+ * Several RSSP instances share the jobs: an instance runs a job only after it
+ * claimed it in the database, and holds it for a lease, so that a job is run
+ * by one instance at a time and is taken over if that instance stops.
+ */
+@Service
+public class CredentialJobService implements SmartLifecycle {
+	private static final Logger logger = LogManager.getLogger(CredentialJobService.class);
+
+	private final CredentialJobRepository jobRepository;
+	private final CredentialService credentialService;
+	private final AuthProperties authProperties;
+	private final int workers;
+	private final int queueSize;
+	private final long leaseSeconds;
+	private final String instanceId = UUID.randomUUID().toString();
+
+	private volatile ThreadPoolExecutor executor;
+
+	public CredentialJobService(CredentialJobRepository jobRepository, CredentialService credentialService,
+			AuthProperties authProperties, CSCProperties cscProperties) {
+		CryptoConfig config = cscProperties.getCrypto();
+		this.jobRepository = jobRepository;
+		this.credentialService = credentialService;
+		this.authProperties = authProperties;
+		this.workers = Math.max(1, config.getCredentialJobWorkers());
+		this.queueSize = Math.max(1, config.getCredentialJobQueueSize());
+		this.leaseSeconds = Math.max(1, config.getCredentialJobLeaseSeconds());
+	}
+
+	/**
+	 * Requests the creation of a credential.
+	 * The request is idempotent: if a job already exists for the alias, it is
+	 * returned, unless it failed, in which case it is run again.
+	 * Exception (Api Exception): if a credential with the same alias already exists
+	 * Exception (Api Exception): if too many credentials are being created
+	 * 
+	 * @param owner       the id of the user that owns this credential
+	 * @param givenName   the given name of the user that owns this credential
+	 * @param surname     the surname of the user that owns this credential
+	 * @param subjectDN   name of the subject, used in the certificate
+	 * @param alias       the name by which the credential will be associated
+	 * @param countryCode the countryCode of the user (from the VP Token)
+	 * @return the job creating the credential
+	 */
+	public CredentialJob submit(String owner, String givenName, String surname, String subjectDN, String alias,
+			String countryCode) {
+		Optional<CredentialJob> existing = jobRepository.findByOwnerAndAlias(owner, alias);
+		CredentialJob job;
+		if (existing.isPresent()) {
+			job = existing.get();
+			if (job.getStatus() != CredentialJob.Status.FAILED) {
+				return job;
+			}
+			job.retry(givenName, surname, subjectDN, countryCode);
+		} else {
+			credentialService.checkAliasAvailable(owner, alias);
+			job = new CredentialJob(owner, alias, givenName, surname, subjectDN, countryCode);
+		}
+
+		try {
+			job = jobRepository.saveAndFlush(job);
+		} catch (DataIntegrityViolationException e) {
+			// the same request was received concurrently
+			return jobRepository.findByOwnerAndAlias(owner, alias).orElseThrow(() -> e);
+		}
+
+		if (!schedule(job.getId())) {
+			job.setStatus(CredentialJob.Status.FAILED);
+			job.setError(SignerError.TooManyCredentialJobs.getDescription());
+			saveIfUnchanged(job);
+			logger.error("{} (submit in CredentialJobService.class) {}", SignerError.TooManyCredentialJobs.getCode(),
+					SignerError.TooManyCredentialJobs.getDescription());
+			throw new ApiException(SignerError.TooManyCredentialJobs,
+					SignerError.TooManyCredentialJobs.getDescription());
+		}
+		return job;
+	}
+
+	/**
+	 * @param owner the id of the user that requested the credential
+	 * @param jobId the id of the job
+	 * @return the job, if it was requested by the user
+	 */
+	public Optional<CredentialJob> getJob(String owner, String jobId) {
+		return jobRepository.findByIdAndOwner(jobId, owner);
+	}
+
+	private boolean schedule(String jobId) {
+		ThreadPoolExecutor current = this.executor;
+		if (current == null) {
+			return false;
+		}
+		try {
+			current.execute(() -> run(jobId));
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	private void run(String jobId) {
+		Instant now = Instant.now();
+		if (jobRepository.claim(jobId, instanceId, now.plusSeconds(leaseSeconds), now,
+				CredentialJob.Status.PENDING, CredentialJob.Status.RUNNING) != 1) {
+			// run by another instance, completed, or deleted in the meantime
+			return;
+		}
+		Optional<CredentialJob> found = jobRepository.findById(jobId);
+		if (found.isEmpty()) {
+			// the credential was deleted in the meantime
+			return;
+		}
+		CredentialJob job = found.get();
+
+		String owner = job.getOwner();
+		try {
+			// a job interrupted by a restart may have saved the credential already
+			if (credentialService.getCredentialWithAlias(owner, job.getAlias()).isEmpty()) {
+				Credential credential = credentialService.createCredential(owner, job.getGivenName(),
+						job.getSurname(), job.getSubjectDN(), job.getAlias(), job.getCountryCode());
+				logCredentialCreated(owner, credential);
+			}
+			job.setStatus(CredentialJob.Status.SUCCEEDED);
+			job.setError(null);
+		} catch (Exception e) {
+			if (!isRunning()) {
+				// interrupted by the shutdown: the job is released for the other instances,
+				// or for the next start
+				logger.info("Creation of the credential {} interrupted by the shutdown", job.getAlias());
+				job.setStatus(CredentialJob.Status.PENDING);
+				saveIfUnchanged(job);
+				return;
+			}
+			fail(job, e);
+		}
+		saveIfUnchanged(job);
+	}
+
+	/**
+	 * Saves the job, unless it was changed by another instance since it was read
+	 * (its lease ended and the other instance took it over)
+	 */
+	private void saveIfUnchanged(CredentialJob job) {
+		try {
+			jobRepository.save(job);
+		} catch (ObjectOptimisticLockingFailureException e) {
+			logger.warn("Credential job {} was changed by another instance, not saved", job.getId());
+		}
+	}
+
+	private void fail(CredentialJob job, Exception e) {
+		job.setStatus(CredentialJob.Status.FAILED);
+		if (e instanceof ApiException) {
+			// if the aux functions sent an api exception, the logs were already written
+			// the ApiException also have a set message to be shown to the user
+			job.setError(e.getMessage());
+			return;
+		}
+		logger.error("{} (run in CredentialJobService.class) {}", SignerError.UnexpectedError.getCode(),
+				e.getMessage());
+		LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
+				this.authProperties.getDatasourcePassword(), 0, job.getOwner(), 1, "");
+		job.setError(SignerError.UnexpectedError.getFormattedMessage());
+	}
+
+	private void logCredentialCreated(String owner, Credential credential) throws Exception {
+		X509EncodedKeySpec pKeySpec = new X509EncodedKeySpec(credential.getPublicKeyHSM());
+		String keyInfo;
+		if (credential.getECDSACurveOID() != null) {
+			ECPublicKey pk = (ECPublicKey) KeyFactory.getInstance("EC").generatePublic(pKeySpec);
+			keyInfo = "Public Key info - Algorithm: " + pk.getAlgorithm() + " " + credential.getKeyBitLength()
+					+ " bits | Curve: " + credential.getECDSACurveOID() + " | X: " + pk.getW().getAffineX()
+					+ " | Y: " + pk.getW().getAffineY();
+		} else {
+			RSAPublicKey pk = (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(pKeySpec);
+			keyInfo = "Public Key info - Algorithm: " + pk.getAlgorithm() + " " + pk.getModulus().bitLength()
+					+ " bits | Modulus: " + pk.getModulus() + " | Exponent: " + pk.getPublicExponent();
+		}
+		LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
+				this.authProperties.getDatasourcePassword(), 1, owner, 3, keyInfo);
+
+		String desc = "Certificate Alias: " + credential.getAlias()
+				+ " | Subject DN: " + credential.getSubjectDN()
+				+ " | Issuer DN: " + credential.getIssuerDN()
+				+ " | Valid From: " + credential.getValidFrom()
+				+ " | Valid To: " + credential.getValidTo();
+		LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
+				this.authProperties.getDatasourcePassword(), 1, owner, 1, desc);
+	}
+
+	@Override
+	public void start() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), runnable -> {
+					Thread thread = new Thread(runnable, "credential-job-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+
+		// resumes the jobs not completed before the last shutdown, unless another
+		// instance holds them: the pending ones, and the running ones whose lease ended
+		for (CredentialJob job : jobRepository.findClaimable(CredentialJob.Status.PENDING,
+				CredentialJob.Status.RUNNING, Instant.now())) {
+			logger.info("Resuming the creation of the credential {}", job.getAlias());
+			if (!schedule(job.getId())) {
+				// left for another instance, or for the next start
+				logger.warn("Credential job {} not resumed: too many credential jobs", job.getId());
+			}
+		}
+	}
+
+	@Override
+	public void stop() {
+		ThreadPoolExecutor current = this.executor;
+		this.executor = null;
+		if (current != null) {
+			// the jobs not completed are run again on the next start
+			current.shutdownNow();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.executor != null;
+	}
+}
@@ -16,6 +16,8 @@
 
 package eu.europa.ec.eudi.signer.rssp.api.services;
 
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.data.domain.Page;
@@ -29,26 +31,46 @@ import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
 import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
 import eu.europa.ec.eudi.signer.rssp.entities.Credential;
 import eu.europa.ec.eudi.signer.rssp.crypto.CryptoService;
+import eu.europa.ec.eudi.signer.rssp.crypto.SigningMaterial;
+import eu.europa.ec.eudi.signer.rssp.repository.CredentialJobRepository;
 import eu.europa.ec.eudi.signer.rssp.repository.CredentialRepository;
+import eu.europa.ec.eudi.signer.rssp.util.TracingUtils;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Service
 public class CredentialService {
 	private static final Logger logger = LogManager.getLogger(CredentialService.class);
 
 	private final CredentialRepository credentialRepository;
+	private final CredentialJobRepository credentialJobRepository;
 	private final CryptoService cryptoService;
 	private final AuthProperties authProperties;
+	private final Tracer tracer;
 
 	public CredentialService(CredentialRepository credentialRepository,
-			CryptoService cryptoService, AuthProperties authProperties) {
+			CredentialJobRepository credentialJobRepository, CryptoService cryptoService,
+			AuthProperties authProperties, Tracer tracer) {
 		this.credentialRepository = credentialRepository;
+		this.credentialJobRepository = credentialJobRepository;
 		this.cryptoService = cryptoService;
 		this.authProperties = authProperties;
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Runs a query of the repositories in a span named after the query
+	 * (for example, CredentialRepository.findByOwnerAndAlias)
+	 */
+	private <T> T query(String operation, Supplier<T> query) {
+		return TracingUtils.inSpan(this.tracer.spanBuilder(operation)
+				.setSpanKind(SpanKind.CLIENT)
+				.setAttribute("db.operation", operation.substring(operation.indexOf('.') + 1)),
+				span -> query.get());
 	}
 
 	/**
@@ -69,7 +91,25 @@ public class CredentialService {
 	 */
 	public Credential createCredential(String owner, String givenName, String surname, String subjectDN,
 			String alias, String countryCode) throws Exception {
-		if (this.credentialRepository.findByOwnerAndAlias(owner, alias).isPresent()) {
+		checkAliasAvailable(owner, alias);
+
+		Credential credential = cryptoService.createCredential(owner, givenName, surname, subjectDN, alias,
+				countryCode);
+		credential.setCreatedAt(Instant.now());
+		query("CredentialRepository.save", () -> credentialRepository.save(credential));
+		return credential;
+	}
+
+	/**
+	 * Checks that the owner has no credential with the alias
+	 * Exception (Api Exception): if a credential with the same alias already exists
+	 *
+	 * @param owner the id of the user
+	 * @param alias the alias of the credential to create
+	 */
+	public void checkAliasAvailable(String owner, String alias) {
+		if (query("CredentialRepository.findByOwnerAndAlias",
+				() -> this.credentialRepository.findByOwnerAndAlias(owner, alias)).isPresent()) {
 			String logMessage = SignerError.CredentialAliasAlreadyExists.getCode()
 					+ " (createCredential in CredentialService.class) "
 					+ SignerError.CredentialAliasAlreadyExists.getDescription();
@@ -81,12 +121,6 @@ public class CredentialService {
 			throw new ApiException(SignerError.CredentialAliasAlreadyExists,
 					"The credential alias " + alias + " chosen is not valid. The aliases must be unique.");
 		}
-
-		Credential credential = cryptoService.createCredential(owner, givenName, surname, subjectDN, alias,
-				countryCode);
-		credential.setCreatedAt(Instant.now());
-		credentialRepository.save(credential);
-		return credential;
 	}
 
 	/**
@@ -98,7 +132,8 @@ public class CredentialService {
 	 * @param credentialAlias the alias of the credential to delete
 	 */
 	public void deleteCredentials(String ownerId, String credentialAlias) {
-		Optional<Credential> credential = credentialRepository.findByOwnerAndAlias(ownerId, credentialAlias);
+		Optional<Credential> credential = query("CredentialRepository.findByOwnerAndAlias",
+				() -> credentialRepository.findByOwnerAndAlias(ownerId, credentialAlias));
 
 		if (credential.isEmpty()) {
 			String logMessage = SignerError.CredentialNotFound.getCode()
@@ -115,7 +150,16 @@ public class CredentialService {
 				+ " | Issuer DN: " + credential.get().getIssuerDN()
 				+ " | Valid From: " + credential.get().getValidFrom()
 				+ " | Valid To: " + credential.get().getValidTo();
-		credentialRepository.deleteByOwnerAndAlias(ownerId, credentialAlias);
+		query("CredentialRepository.deleteByOwnerAndAlias", () -> {
+			credentialRepository.deleteByOwnerAndAlias(ownerId, credentialAlias);
+			return null;
+		});
+		// the alias can be used again by a new credential
+		query("CredentialJobRepository.deleteByOwnerAndAlias", () -> {
+			credentialJobRepository.deleteByOwnerAndAlias(ownerId, credentialAlias);
+			return null;
+		});
+		cryptoService.invalidateSigningMaterial(credential.get().getId());
 		LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(), this.authProperties.getDatasourcePassword(),
 				1, ownerId, 2, LoggerUtil.desc);
 	}
@@ -123,7 +167,8 @@ public class CredentialService {
 	// ...............................
 
 	public List<CredentialInfo> listCredentials(String ownerId) {
-		final List<Credential> credentialsList = credentialRepository.findByOwner(ownerId);
+		final List<Credential> credentialsList = query("CredentialRepository.findByOwner",
+				() -> credentialRepository.findByOwner(ownerId));
 		List<CredentialInfo> credentialsInfo = new ArrayList<>();
 		for (Credential ac : credentialsList) {
 			CredentialInfo ci = new CredentialInfo(ac.getAlias(), ac.getIssuerDN(), ac.getSubjectDN(),
@@ -141,11 +186,39 @@ public class CredentialService {
 	 * @return
 	 */
 	public Page<Credential> getCredentialsByOwner(String owner, Pageable pageable) {
-		return credentialRepository.findByOwner(owner, pageable);
+		return query("CredentialRepository.findByOwner", () -> credentialRepository.findByOwner(owner, pageable));
 	}
 
 	public Optional<Credential> getCredentialWithAlias(String owner, String alias) {
-		return credentialRepository.findByOwnerAndAlias(owner, alias);
+		return query("CredentialRepository.findByOwnerAndAlias",
+				() -> credentialRepository.findByOwnerAndAlias(owner, alias));
+	}
+
+	/**
+	 * Gets the signing material (parsed certificate, certificate chain and
+	 * wrapped key) of the credential with the given alias.
+	 * Only the id of the credential is read when its signing material is already
+	 * cached; otherwise the credential and its certificate chain are loaded in a
+	 * single query.
+	 *
+	 * @param owner the id of the owner of the credential
+	 * @param alias the alias of the credential
+	 * @return the signing material, or empty if the credential was not found
+	 */
+	public Optional<SigningMaterial> getSigningMaterial(String owner, String alias) {
+		Optional<String> credentialId = query("CredentialRepository.findIdByOwnerAndAlias",
+				() -> credentialRepository.findIdByOwnerAndAlias(owner, alias));
+		if (credentialId.isEmpty()) {
+			return Optional.empty();
+		}
+
+		SigningMaterial cached = cryptoService.getCachedSigningMaterial(credentialId.get());
+		if (cached != null) {
+			return Optional.of(cached);
+		}
+		return query("CredentialRepository.findWithCertificateChainByOwnerAndAlias",
+				() -> credentialRepository.findWithCertificateChainByOwnerAndAlias(owner, alias))
+				.map(cryptoService::toSigningMaterial);
 	}
 
 }
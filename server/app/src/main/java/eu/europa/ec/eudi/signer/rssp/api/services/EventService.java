@@ -0,0 +1,71 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.api.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
+import eu.europa.ec.eudi.signer.rssp.repository.EventRepository;
+
+import java.util.Map;
+
+/**
+ * Names of the types of the events of the logs of the users (table event).
+ * The table is read by the warm-up of the RSSP, which retries until the read
+ * succeeds; until then the names are unknown.
+ */
+@Service
+public class EventService {
+
+    private final AuthProperties authProperties;
+    private volatile Map<Integer, String> events;
+
+    @Autowired
+    public EventService(AuthProperties authProperties) {
+        this.authProperties = authProperties;
+    }
+
+    /**
+     * Reads the events from the database, unless they are already loaded.
+     * Exception: if no event could be read (the read is tried again by the next
+     * call)
+     */
+    public synchronized void load() {
+        if (this.events != null) {
+            return;
+        }
+        Map<Integer, String> loaded = EventRepository.event(authProperties.getDatasourceUsername(),
+                authProperties.getDatasourcePassword());
+        if (loaded.isEmpty()) {
+            throw new IllegalStateException("No event could be read from the database");
+        }
+        this.events = loaded;
+    }
+
+    /**
+     * @param eventTypeID the id of the type of the event
+     * @return the name of the event, or null if it is unknown or the events
+     *         are not read yet
+     */
+    public String getEventName(int eventTypeID) {
+        // not read here: each row of a log would open a connection while the
+        // table cannot be read
+        Map<Integer, String> current = this.events;
+        return current == null ? null : current.get(eventTypeID);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.common;
+
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import eu.europa.ec.eudi.signer.rssp.api.services.EventService;
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.crypto.TrustAnchorStore;
+import eu.europa.ec.eudi.signer.rssp.hsm.KeyOperationsBackend;
+import eu.europa.ec.eudi.signer.rssp.hsm.WrapKeyLoader;
+
+/**
+ * Warm-up of the RSSP: the slow steps of the initialisation (the secret key
+ * that wraps the private keys, the certificates of the trusted issuers, the
+ * events of the logs and the sessions of the HSM) run in parallel once the
+ * application has started, instead of one after the other while the beans
+ * are created. The RSSP is ready (/actuator/health/readiness) when all the
+ * steps are done; a step that fails is retried, unless its failure comes from
+ * the configuration (e.g. a dbEncryptionPassphrase that does not decrypt the
+ * secret key): retrying cannot fix it, so the RSSP is then declared broken
+ * (/actuator/health/liveness).
+ * A request that needs a step before it is done waits for it (or runs it).
+ */
+@Component
+public class WarmUp implements ApplicationListener<ApplicationStartedEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+    private final Map<String, String> status = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final MeterRegistry meterRegistry;
+    private final long retryDelayMillis;
+
+    private volatile ExecutorService executor;
+    private volatile ApplicationContext context;
+
+    public WarmUp(WrapKeyLoader wrapKeyLoader, TrustAnchorStore trustAnchorStore,
+            EventService eventService, KeyOperationsBackend keyBackend, CSCProperties cscProperties,
+            MeterRegistry meterRegistry) {
+        this(wrapKeyLoader, trustAnchorStore, eventService, keyBackend, cscProperties, meterRegistry,
+                5000);
+    }
+
+    WarmUp(WrapKeyLoader wrapKeyLoader, TrustAnchorStore trustAnchorStore,
+            EventService eventService, KeyOperationsBackend keyBackend, CSCProperties cscProperties,
+            MeterRegistry meterRegistry, long retryDelayMillis) {
+        this.meterRegistry = meterRegistry;
+        this.retryDelayMillis = retryDelayMillis;
+        int hsmSessions = cscProperties.getCrypto().getWarmUpHsmSessions();
+        this.steps.put("wrap_key", wrapKeyLoader::ensureLoaded);
+        this.steps.put("trust_anchors", trustAnchorStore::load);
+        this.steps.put("events", eventService::load);
+        this.steps.put("hsm_sessions", () -> keyBackend.warmUp(hsmSessions));
+        this.steps.keySet().forEach(name -> this.status.put(name, "pending"));
+    }
+
+    @Override
+    public synchronized void onApplicationEvent(ApplicationStartedEvent event) {
+        if (this.executor != null) {
+            return;
+        }
+        this.context = event == null ? null : event.getApplicationContext();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.steps.size(), runnable -> {
+            Thread thread = new Thread(runnable, "warm-up-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.steps.forEach((name, step) -> this.executor.execute(() -> run(name, step)));
+        // the threads end with their step
+        this.executor.shutdown();
+    }
+
+    private void run(String name, Step step) {
+        long start = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                step.run();
+                long elapsed = System.nanoTime() - start;
+                Timer.builder("rssp.warmup")
+                        .description("Time taken by the steps of the warm-up, including the retries")
+                        .tag("step", name)
+                        .register(this.meterRegistry)
+                        .record(elapsed, TimeUnit.NANOSECONDS);
+                this.status.put(name, "done");
+                logger.info("Warm-up step {} done in {} ms", name, TimeUnit.NANOSECONDS.toMillis(elapsed));
+                return;
+            } catch (Exception e) {
+                if (isFatal(e)) {
+                    this.status.put(name, "fatal: " + e.getMessage());
+                    logger.error("Warm-up step {} failed and is not retried, the configuration must be fixed",
+                            name, e);
+                    ApplicationContext current = this.context;
+                    if (current != null) {
+                        AvailabilityChangeEvent.publish(current, LivenessState.BROKEN);
+                    }
+                    return;
+                }
+                this.status.put(name, "failed: " + e.getMessage());
+                logger.error("Warm-up step {} failed, retrying in {} ms", name, this.retryDelayMillis, e);
+                try {
+                    Thread.sleep(this.retryDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // a key or passphrase that is wrong, or a setting that cannot be parsed,
+    // fails the same way on each retry; the database and the HSM being
+    // unavailable do not
+    private static boolean isFatal(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof GeneralSecurityException || cause instanceof IllegalArgumentException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isDone() {
+        synchronized (this.status) {
+            return this.status.values().stream().allMatch("done"::equals);
+        }
+    }
+
+    /**
+     * @return true if a step failed in a way that is not retried
+     */
+    public boolean isBroken() {
+        synchronized (this.status) {
+            return this.status.values().stream().anyMatch(value -> value.startsWith("fatal"));
+        }
+    }
+
+    /**
+     * @return the status of each step: pending, done, failed or fatal (with the
+     *         error)
+     */
+    public Map<String, String> getStatus() {
+        synchronized (this.status) {
+            return new LinkedHashMap<>(this.status);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        ExecutorService current = this.executor;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.common;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Health of the warm-up (warmUp), part of the readiness group: the RSSP is
+ * out of service until all the steps of the warm-up are done, and down if a
+ * step failed in a way that is not retried
+ */
+@Component
+public class WarmUpHealthIndicator implements HealthIndicator {
+
+    private final WarmUp warmUp;
+
+    public WarmUpHealthIndicator(WarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = this.warmUp.isDone() ? Health.up()
+                : this.warmUp.isBroken() ? Health.down() : Health.outOfService();
+        this.warmUp.getStatus().forEach(builder::withDetail);
+        return builder.build();
+    }
+}
@@ -27,6 +27,7 @@ public class AuthProperties {
     private String sadTokenSecret;
     private String dbEncryptionPassphrase;
     private String dbEncryptionSalt;
+    private String adminApiKey;
 
     public String getDatasourceUsername() {
         return this.datasourceUsername;
@@ -76,4 +77,16 @@ public class AuthProperties {
         this.dbEncryptionSalt = dbEncryptionSalt;
     }
 
+    /**
+     * Key expected in the X-Admin-Key header of the administration endpoints
+     * (disabled if not set)
+     */
+    public String getAdminApiKey() {
+        return this.adminApiKey;
+    }
+
+    public void setAdminApiKey(String adminApiKey) {
+        this.adminApiKey = adminApiKey;
+    }
+
 }
@@ -24,9 +24,19 @@ public class CryptoConfig {
     private String keyAlgorithm;
     private int keySize;
     private String signatureAlgorithm;
+    private String keyBackend = "hsm";
+    private int signingMaterialCacheSize = 1000;
+    private int keyPairPoolSize = 20;
+    private int credentialJobWorkers = 4;
+    private int credentialJobQueueSize = 100;
+    private int credentialJobLeaseSeconds = 300;
+    private int bulkHsmParallelism = 4;
+    private int bulkEnrollmentParallelism = 16;
+    private int bulkSaveBatchSize = 50;
+    private int warmUpHsmSessions = 4;
 
     /**
-     * Key generation algorithm name
+     * Key generation algorithm name: "RSA" or "EC" (curve P-256)
      * Example: "RSA"
      */
     public String getKeyAlgorithm() {
@@ -39,7 +49,8 @@ public class CryptoConfig {
 
     /**
      * Certificate Signature algorithm name: must correspond with the key algorithm
-     * Example "SHA256WithRSA" (corresponds with "RSA")
+     * Example "SHA256WithRSA" (corresponds with "RSA") or "SHA256WithECDSA"
+     * (corresponds with "EC")
      */
     public String getSignatureAlgorithm() {
         return signatureAlgorithm;
@@ -50,7 +61,7 @@ public class CryptoConfig {
     }
 
     /**
-     * Key size in bits
+     * Key size in bits (256 for EC keys)
      * Example: 2048
      */
     public int getKeySize() {
@@ -60,4 +71,133 @@ public class CryptoConfig {
     public void setKeySize(int keySize) {
         this.keySize = keySize;
     }
+
+    /**
+     * Maximum number of credentials whose parsed signing material (certificate,
+     * certificate chain and DSS tokens) is kept in memory
+     * Example: 1000
+     */
+    public int getSigningMaterialCacheSize() {
+        return signingMaterialCacheSize;
+    }
+
+    public void setSigningMaterialCacheSize(int signingMaterialCacheSize) {
+        this.signingMaterialCacheSize = signingMaterialCacheSize;
+    }
+
+    /**
+     * Number of key pairs generated in advance, so that the creation of a
+     * credential does not wait for the HSM (0 to generate them on demand)
+     * Example: 20
+     */
+    public int getKeyPairPoolSize() {
+        return keyPairPoolSize;
+    }
+
+    public void setKeyPairPoolSize(int keyPairPoolSize) {
+        this.keyPairPoolSize = keyPairPoolSize;
+    }
+
+    /**
+     * Number of credentials created in parallel, in the background
+     * Example: 4
+     */
+    public int getCredentialJobWorkers() {
+        return credentialJobWorkers;
+    }
+
+    public void setCredentialJobWorkers(int credentialJobWorkers) {
+        this.credentialJobWorkers = credentialJobWorkers;
+    }
+
+    /**
+     * Number of credential creations waiting for a worker; further requests are
+     * refused until the queue drains
+     * Example: 100
+     */
+    public int getCredentialJobQueueSize() {
+        return credentialJobQueueSize;
+    }
+
+    public void setCredentialJobQueueSize(int credentialJobQueueSize) {
+        this.credentialJobQueueSize = credentialJobQueueSize;
+    }
+
+    /**
+     * Time a RSSP instance holds a credential job it runs; after it, another
+     * instance may take the job over. Longer than the creation of a credential
+     * Example: 300
+     */
+    public int getCredentialJobLeaseSeconds() {
+        return credentialJobLeaseSeconds;
+    }
+
+    public void setCredentialJobLeaseSeconds(int credentialJobLeaseSeconds) {
+        this.credentialJobLeaseSeconds = credentialJobLeaseSeconds;
+    }
+
+    /**
+     * Number of key pairs and certificate requests created by the HSM in parallel
+     * during a bulk enrollment
+     * Example: 4
+     */
+    public int getBulkHsmParallelism() {
+        return bulkHsmParallelism;
+    }
+
+    public void setBulkHsmParallelism(int bulkHsmParallelism) {
+        this.bulkHsmParallelism = bulkHsmParallelism;
+    }
+
+    /**
+     * Number of certificate requests sent to the EJBCA in parallel during a bulk
+     * enrollment (also limited for each CA by ejbca.maxConcurrentRequestsPerCA)
+     * Example: 16
+     */
+    public int getBulkEnrollmentParallelism() {
+        return bulkEnrollmentParallelism;
+    }
+
+    public void setBulkEnrollmentParallelism(int bulkEnrollmentParallelism) {
+        this.bulkEnrollmentParallelism = bulkEnrollmentParallelism;
+    }
+
+    /**
+     * Number of credentials saved together during a bulk enrollment
+     * Example: 50
+     */
+    public int getBulkSaveBatchSize() {
+        return bulkSaveBatchSize;
+    }
+
+    public void setBulkSaveBatchSize(int bulkSaveBatchSize) {
+        this.bulkSaveBatchSize = bulkSaveBatchSize;
+    }
+
+    /**
+     * Number of sessions of the HSM opened (and logged in) by the warm-up,
+     * before the RSSP accepts requests
+     * Example: 4
+     */
+    public int getWarmUpHsmSessions() {
+        return warmUpHsmSessions;
+    }
+
+    public void setWarmUpHsmSessions(int warmUpHsmSessions) {
+        this.warmUpHsmSessions = warmUpHsmSessions;
+    }
+
+    /**
+     * Backend of the key operations: "hsm" (PKCS#11) or "software" (JCA, for
+     * benchmarks and development only). The keys created by a backend can't be
+     * used by the other.
+     * Example: "hsm"
+     */
+    public String getKeyBackend() {
+        return keyBackend;
+    }
+
+    public void setKeyBackend(String keyBackend) {
+        this.keyBackend = keyBackend;
+    }
 }
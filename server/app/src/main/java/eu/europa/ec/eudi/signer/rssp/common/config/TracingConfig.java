@@ -0,0 +1,74 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.common.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import eu.europa.ec.eudi.signer.common.tracing.TracingFactory;
+import eu.europa.ec.eudi.signer.common.tracing.TracingFilter;
+import eu.europa.ec.eudi.signer.common.tracing.TracingProperties;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+
+/**
+ * OpenTelemetry tracing of the requests to the RSSP. The trace context is
+ * read from the W3C traceparent header, so the spans of the RSSP join the
+ * traces started by the SA.
+ */
+@Configuration
+public class TracingConfig {
+
+    public static final String INSTRUMENTATION_NAME = "eu.europa.ec.eudi.signer.rssp";
+
+    @Bean
+    @ConfigurationProperties(prefix = "tracing")
+    public TracingProperties tracingProperties() {
+        return new TracingProperties("rssp");
+    }
+
+    @Bean
+    public SdkTracerProvider sdkTracerProvider(TracingProperties properties) {
+        return TracingFactory.tracerProvider(properties);
+    }
+
+    // the tracer provider is closed by its own bean
+    @Bean(destroyMethod = "")
+    public OpenTelemetry openTelemetry(SdkTracerProvider sdkTracerProvider) {
+        return TracingFactory.openTelemetry(sdkTracerProvider);
+    }
+
+    @Bean
+    public Tracer tracer(OpenTelemetry openTelemetry) {
+        return openTelemetry.getTracer(INSTRUMENTATION_NAME);
+    }
+
+    // before the filters of Spring Security, so their time is in the span of
+    // the request
+    @Bean
+    public FilterRegistrationBean<TracingFilter> tracingFilter(OpenTelemetry openTelemetry, Tracer tracer) {
+        FilterRegistrationBean<TracingFilter> registration = new FilterRegistrationBean<>(
+                new TracingFilter(openTelemetry, tracer));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -107,7 +107,23 @@ public enum SignerError implements ApiError {
 
         VPTokenMissingValues("vptoken_missing_requested_values", "The VPToken is missing values requested.", 440),
 
-        SigningNotAuthorized("signing_not_authorized", "The signing operation was not authorized.", 500);
+        SigningNotAuthorized("signing_not_authorized", "The signing operation was not authorized.", 500),
+
+        CredentialJobNotFound("credential_job_not_found",
+                        "No credential creation was found matching the id given.", 404), // 404 not found
+
+        TooManyCredentialJobs("too_many_credential_jobs",
+                        "Too many credentials are being created. Please try again later.", 503), // 503 service
+                                                                                                   // unavailable
+
+        AdminAccessDenied("admin_access_denied", "The access to the administration endpoint was denied.", 403), // 403
+                                                                                                              // forbidden
+
+        BulkEnrollmentNotFound("bulk_enrollment_not_found",
+                        "No bulk enrollment was found matching the id given.", 404), // 404 not found
+
+        InvalidBulkEnrollment("invalid_bulk_enrollment",
+                        "The bulk enrollment request is empty or has too many credentials.", 400); // 400 bad request
 
         private final String code;
         private final int httpCode;
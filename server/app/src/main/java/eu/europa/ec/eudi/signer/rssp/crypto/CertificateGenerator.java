@@ -33,6 +33,7 @@ import org.bouncycastle.asn1.x509.ExtensionsGenerator;
 import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.pkcs.PKCS10CertificationRequest;
 import org.bouncycastle.util.encoders.Base64;
@@ -64,6 +65,7 @@ import java.util.TimeZone;
  */
 public class CertificateGenerator {
 	private List<String> keyAlgorithmOIDs;
+	private String curveOID;
 	private final CryptoConfig config;
 	private boolean initialized;
 	KeyPairGenerator keyPairGenerator;
@@ -79,27 +81,30 @@ public class CertificateGenerator {
 	private void init() {
 		if (!initialized) {
 			try {
-				if (!"RSA".equalsIgnoreCase(config.getKeyAlgorithm())) {
-					String msg = "Not YET Implemented support for non RSA algorithms";
+				if (isEllipticCurve()) {
+					initEllipticCurve();
+				} else if ("RSA".equalsIgnoreCase(config.getKeyAlgorithm())) {
+					// this is not as robust as using a library but works the same way as the sun
+					// library sun.security.x509.AlgorithmId.checkKeyAndSigAlgMatch
+
+					// TODO restore the SUN code reference or find the proper BC way to get the OID
+					// And to confirm that the key sig matches
+					if (config.getSignatureAlgorithm() == null ||
+							!config.getSignatureAlgorithm().toLowerCase().endsWith("withrsa")) {
+						String error = "Assina Configuration Error: signatureAlgorithm is incompatible with keyAlgorithm";
+						log.error(error);
+						throw new IllegalArgumentException(error);
+					}
+					final ASN1ObjectIdentifier rsaIdentifier = PKCSObjectIdentifiers.rsaEncryption;
+					String rsaOID = rsaIdentifier.toString();
+					keyAlgorithmOIDs = Collections.singletonList(rsaOID); // TODO could there be more?
+				} else {
+					String msg = "Not YET Implemented support for the algorithm " + config.getKeyAlgorithm();
 					log.error(msg);
 					throw new IllegalArgumentException(msg);
 				}
-				// this is not as robust as using a library but works the same way as the sun
-				// library sun.security.x509.AlgorithmId.checkKeyAndSigAlgMatch
-
-				// TODO restore the SUN code reference or find the proper BC way to get the OID
-				// And to confirm that the key sig matches
-				if (config.getSignatureAlgorithm() == null ||
-						!config.getSignatureAlgorithm().toLowerCase().endsWith("withrsa")) {
-					String error = "Assina Configuration Error: signatureAlgorithm is incompatible with keyAlgorithm";
-					log.error(error);
-					throw new IllegalArgumentException(error);
-				}
-				final ASN1ObjectIdentifier rsaIdentifier = PKCSObjectIdentifiers.rsaEncryption;
-				String rsaOID = rsaIdentifier.toString();
-				keyAlgorithmOIDs = Collections.singletonList(rsaOID); // TODO could there be more?
 
-				keyPairGenerator = KeyPairGenerator.getInstance(config.getKeyAlgorithm());
+				keyPairGenerator = KeyPairGenerator.getInstance(isEllipticCurve() ? "EC" : config.getKeyAlgorithm());
 				keyPairGenerator.initialize(config.getKeySize(), new SecureRandom());
 
 				/*
@@ -134,6 +139,31 @@ public class CertificateGenerator {
 		}
 	}
 
+	// only the curve P-256 is supported, signing with ECDSA and SHA-256
+	private void initEllipticCurve() {
+		if (config.getKeySize() != 256) {
+			String error = "Assina Configuration Error: only the curve P-256 (keySize 256) is supported for EC keys";
+			log.error(error);
+			throw new IllegalArgumentException(error);
+		}
+		if (config.getSignatureAlgorithm() == null ||
+				!config.getSignatureAlgorithm().toLowerCase().endsWith("withecdsa")) {
+			String error = "Assina Configuration Error: signatureAlgorithm is incompatible with keyAlgorithm";
+			log.error(error);
+			throw new IllegalArgumentException(error);
+		}
+		keyAlgorithmOIDs = Collections.singletonList(X9ObjectIdentifiers.ecdsa_with_SHA256.getId());
+		curveOID = X9ObjectIdentifiers.prime256v1.getId();
+	}
+
+	/**
+	 * @return if the key algorithm configured is EC (instead of RSA)
+	 */
+	public boolean isEllipticCurve() {
+		return "EC".equalsIgnoreCase(config.getKeyAlgorithm())
+				|| "ECDSA".equalsIgnoreCase(config.getKeyAlgorithm());
+	}
+
 	public List<String> getKeyAlgorithmOIDs() {
 		init();
 		return keyAlgorithmOIDs;
@@ -143,11 +173,12 @@ public class CertificateGenerator {
 		return config.getKeySize();
 	}
 
+	/**
+	 * @return the OID of the curve of the EC keys, or null for RSA keys
+	 */
 	public String getECSDACurveOID() {
-		if (!"RSA".equalsIgnoreCase(config.getKeyAlgorithm())) {
-			throw new IllegalArgumentException("Not YET Implemented support for non RSA algorithms");
-		}
-		return null;
+		init();
+		return curveOID;
 	}
 
 	public boolean isCertificateExpired(X509Certificate x509Certificate) {
@@ -162,12 +193,18 @@ public class CertificateGenerator {
 	public byte[] generateCertificateRequestInfo(BigInteger modulus, BigInteger exponent, String givenName,
 			String surname, String commonName, String countryName, String organizationName, String subjectAltName)
 			throws Exception {
-		init();
-		Security.addProvider(new BouncyCastleProvider());
-
 		KeyFactory keyFactory = KeyFactory.getInstance("RSA");
 		RSAPublicKeySpec pKeySpec = new RSAPublicKeySpec(modulus, exponent);
 		PublicKey pk = keyFactory.generatePublic(pKeySpec);
+		return generateCertificateRequestInfo(pk, givenName, surname, commonName, countryName, organizationName,
+				subjectAltName);
+	}
+
+	public byte[] generateCertificateRequestInfo(PublicKey pk, String givenName, String surname, String commonName,
+			String countryName, String organizationName, String subjectAltName) throws Exception {
+		init();
+		Security.addProvider(new BouncyCastleProvider());
+
 		SubjectPublicKeyInfo pki = SubjectPublicKeyInfo.getInstance(pk.getEncoded());
 
 		final X500Name subjectDN = new X500NameBuilder(BCStyle.INSTANCE)
@@ -199,8 +236,10 @@ public class CertificateGenerator {
 		CertificationRequestInfo cri = CertificationRequestInfo.getInstance(certificateRequestInfo);
 		DERBitString sig = new DERBitString(signature);
 
-		AlgorithmIdentifier rsaWithSha256 = new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption);
-		CertificationRequest cr = new CertificationRequest(cri, rsaWithSha256, sig);
+		AlgorithmIdentifier signatureAlgorithm = new AlgorithmIdentifier(isEllipticCurve()
+				? X9ObjectIdentifiers.ecdsa_with_SHA256
+				: PKCSObjectIdentifiers.sha256WithRSAEncryption);
+		CertificationRequest cr = new CertificationRequest(cri, signatureAlgorithm, sig);
 		return new PKCS10CertificationRequest(cr);
 	}
 }
@@ -16,16 +16,19 @@
 
 package eu.europa.ec.eudi.signer.rssp.crypto;
 
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.bouncycastle.pkcs.PKCS10CertificationRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import eu.europa.ec.eudi.signer.csc.error.CSCInvalidRequest;
 import eu.europa.ec.eudi.signer.rssp.api.model.LoggerUtil;
 import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
 import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
@@ -35,31 +38,27 @@ import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
 import eu.europa.ec.eudi.signer.rssp.entities.Credential;
 import eu.europa.ec.eudi.signer.rssp.entities.Certificate;
 import eu.europa.ec.eudi.signer.rssp.ejbca.EJBCAService;
-import eu.europa.ec.eudi.signer.rssp.entities.SecretKey;
-import eu.europa.ec.eudi.signer.rssp.hsm.HSMService;
-import eu.europa.ec.eudi.signer.rssp.repository.ConfigRepository;
+import eu.europa.ec.eudi.signer.rssp.hsm.KeyOperationsBackend;
+import eu.europa.ec.eudi.signer.rssp.hsm.KeyPairPool;
+import eu.europa.ec.eudi.signer.rssp.hsm.WrapKeyLoader;
+import eu.europa.esig.dss.enumerations.DigestAlgorithm;
+import eu.europa.esig.dss.enumerations.EncryptionAlgorithm;
+import eu.europa.esig.dss.model.DSSMessageDigest;
 
 import java.io.IOException;
 import java.math.BigInteger;
-import java.nio.ByteBuffer;
-import java.security.Key;
 import java.security.KeyFactory;
-import java.security.SecureRandom;
-import java.security.interfaces.RSAPublicKey;
+import java.security.PublicKey;
 
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.security.spec.KeySpec;
 import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 
-import javax.crypto.Cipher;
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.GCMParameterSpec;
-import javax.crypto.spec.PBEKeySpec;
-import javax.crypto.spec.SecretKeySpec;
 import javax.security.auth.x500.X500Principal;
 
 @Component
@@ -67,83 +66,38 @@ public class CryptoService {
 
     private static final Logger logger = LoggerFactory.getLogger(CryptoService.class);
 
+    // The signing algorithms (signAlgo of signHash) accepted for each type of key:
+    // the keyAlgo returned by credentials/info, or the algorithm with SHA-256
+    private static final Map<String, EncryptionAlgorithm> SIGNING_ALGORITHMS = Map.of(
+            PKCSObjectIdentifiers.rsaEncryption.getId(), EncryptionAlgorithm.RSA,
+            PKCSObjectIdentifiers.sha256WithRSAEncryption.getId(), EncryptionAlgorithm.RSA,
+            X9ObjectIdentifiers.id_ecPublicKey.getId(), EncryptionAlgorithm.ECDSA,
+            X9ObjectIdentifiers.ecdsa_with_SHA256.getId(), EncryptionAlgorithm.ECDSA);
+
     private final CertificateGenerator generator;
     private final CryptoSigner cryptoSigner;
     private final CryptoConfig config;
     private final PemConverter pemConverter;
-    private final HSMService hsmService;
+    private final KeyOperationsBackend keyBackend;
+    private final KeyPairPool keyPairPool;
+    private final WrapKeyLoader wrapKeyLoader;
     private final EJBCAService ejbcaService;
     private final AuthProperties authProperties;
-    private static final int IVLENGTH = 12;
+    private final SigningMaterialCache signingMaterialCache;
 
-    public CryptoService(@Autowired ConfigRepository configRep, @Autowired CSCProperties cscProperties,
-            @Autowired HSMService hsmService, @Autowired EJBCAService ejbcaService,
-            @Autowired AuthProperties authProperties) throws Exception {
+    public CryptoService(@Autowired CSCProperties cscProperties, @Autowired KeyOperationsBackend keyBackend,
+            @Autowired EJBCAService ejbcaService, @Autowired AuthProperties authProperties,
+            @Autowired KeyPairPool keyPairPool, @Autowired WrapKeyLoader wrapKeyLoader) {
         this.config = cscProperties.getCrypto();
         this.cryptoSigner = new CryptoSigner();
         this.generator = new CertificateGenerator(config);
         this.pemConverter = new PemConverter(config);
-        this.hsmService = hsmService;
+        this.keyBackend = keyBackend;
+        this.keyPairPool = keyPairPool;
+        this.wrapKeyLoader = wrapKeyLoader;
         this.ejbcaService = ejbcaService;
         this.authProperties = authProperties;
-
-        char[] passphrase = authProperties.getDbEncryptionPassphrase().toCharArray();
-        byte[] saltBytes = Base64.getDecoder().decode(authProperties.getDbEncryptionSalt());
-
-        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-        KeySpec spec = new PBEKeySpec(passphrase, saltBytes, 65536, 256);
-        Key key = new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "AES");
-
-        List<SecretKey> secretKeys = configRep.findAll();
-        if (secretKeys.isEmpty()) {
-            // generates a secret key to wrap the private keys from the HSM
-            byte[] secretKeyBytes = this.hsmService.initSecretKey();
-
-            byte[] iv = new byte[IVLENGTH];
-            SecureRandom secureRandom = new SecureRandom();
-            secureRandom.nextBytes(iv);
-
-            // encrypts the secret key before saving it in the db
-            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
-            GCMParameterSpec algSpec = new GCMParameterSpec(128, iv);
-            c.init(Cipher.ENCRYPT_MODE, key, algSpec);
-            byte[] encryptedSecretKeyBytes = c.doFinal(secretKeyBytes);
-
-            ByteBuffer byteBuffer = ByteBuffer.allocate(iv.length + encryptedSecretKeyBytes.length);
-            byteBuffer.put(iv);
-            byteBuffer.put(encryptedSecretKeyBytes);
-
-            // saves in the db
-            SecretKey sk = new SecretKey(byteBuffer.array());
-            configRep.save(sk);
-        } else {
-            // loads the encrypted key from the database
-            SecretKey sk = secretKeys.get(0);
-            byte[] encryptedSecretKeyBytes = sk.getSecretKey();
-
-            ByteBuffer byteBuffer = ByteBuffer.wrap(encryptedSecretKeyBytes);
-            byte[] iv = new byte[IVLENGTH];
-            byteBuffer.get(iv);
-            byte[] encryptedSecretKey = new byte[byteBuffer.remaining()];
-            byteBuffer.get(encryptedSecretKey);
-
-            // decrypts the secret key
-            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
-            GCMParameterSpec algSpec = new GCMParameterSpec(128, iv);
-            c.init(Cipher.DECRYPT_MODE, key, algSpec);
-            byte[] secretKeyBytes = c.doFinal(encryptedSecretKey);
-
-            // loads the decrypted key to the HSM
-            this.hsmService.setSecretKey(secretKeyBytes);
-        }
-    }
-
-    public static void savePublicKeyHSM(String owner, Credential credential, BigInteger modulus,
-            BigInteger public_exponent) throws Exception {
-        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-        RSAPublicKeySpec pKeySpec = new RSAPublicKeySpec(modulus, public_exponent);
-        RSAPublicKey pk = (RSAPublicKey) keyFactory.generatePublic(pKeySpec);
-        credential.setPublicKeyHSM(pk.getEncoded());
+        this.signingMaterialCache = new SigningMaterialCache(config.getSigningMaterialCacheSize());
     }
 
     /**
@@ -168,18 +122,48 @@ public class CryptoService {
      */
     public Credential createCredential(String owner, String givenName, String surname, String subjectDN,
             String alias, String countryCode) throws Exception {
+        return enrollCredential(prepareCredential(owner, givenName, surname, subjectDN, alias, countryCode));
+    }
 
-        Credential credential = new Credential();
-
+    /**
+     * First step of the creation of a credential, run by the HSM: generates the
+     * key pair and the certificate signing request signed with it.
+     * Throws an exception if it can't create a key pair using the HSM
+     * 
+     * @param owner       the id of the user that owns this credential
+     * @param givenName   the given name of the user that owns this credential
+     * @param surname     the surname of the user that owns this credential
+     * @param subjectDN   name of the subject, used in the certificate
+     * @param alias       the name by which the credential will be associated
+     * @param countryCode the contryCode of the user (from the VP Token)
+     * @return the key pair and the certificate signing request
+     */
+    public PendingCredential prepareCredential(String owner, String givenName, String surname, String subjectDN,
+            String alias, String countryCode) throws ApiException {
         byte[][] keysValues = generateKeyPair(owner);
-        byte[] privKeyValues = keysValues[0];
-        byte[] modulus = keysValues[1];
-        BigInteger ModulusBI = new BigInteger(1, modulus);
-        byte[] public_exponent = keysValues[2];
-        BigInteger PublicExponentBI = new BigInteger(1, public_exponent);
 
-        List<X509Certificate> EJBCACertificates = generateCertificates(owner, ModulusBI, PublicExponentBI,
-                givenName, surname, subjectDN, alias, countryCode, privKeyValues);
+        String certificateRequest = generateCertificateRequest(owner, toPublicKey(owner, keysValues), givenName,
+                surname, subjectDN, alias, countryCode, keysValues[0]);
+        return new PendingCredential(owner, givenName, surname, subjectDN, alias, countryCode, keysValues,
+                certificateRequest);
+    }
+
+    /**
+     * Second step of the creation of a credential: requests the certificate to the
+     * CA, and builds the credential (which is not saved).
+     * Throws an exception if it can't create a certificate using the EJBCA
+     * 
+     * @param pending the key pair and the certificate signing request
+     * @return the credential created
+     */
+    public Credential enrollCredential(PendingCredential pending) throws Exception {
+        Credential credential = new Credential();
+        String owner = pending.getOwner();
+        byte[] privKeyValues = pending.getKeyPair()[0];
+        PublicKey publicKey = toPublicKey(owner, pending.getKeyPair());
+
+        List<X509Certificate> EJBCACertificates = requestCertificates(owner, pending.getCertificateRequest(),
+                pending.getGivenName(), pending.getSurname(), pending.getSubjectDN(), pending.getCountryCode());
 
         X509Certificate ejbcaCert = EJBCACertificates.get(0);
         List<Certificate> certs = new ArrayList<>();
@@ -193,14 +177,14 @@ public class CryptoService {
             }
         }
 
-        savePublicKeyHSM(owner, credential, ModulusBI, PublicExponentBI);
+        credential.setPublicKeyHSM(publicKey.getEncoded());
         credential.setKeyAlgorithmOIDs(generator.getKeyAlgorithmOIDs());
         credential.setKeyBitLength(generator.getKeyBitLength());
         credential.setECDSACurveOID(generator.getECSDACurveOID());
         credential.setKeyEnabled(true);
         credential.setCertificate(pemConverter.certificateToString(ejbcaCert));
         credential.setPrivateKeyHSM(privKeyValues);
-        credential.setAlias(alias);
+        credential.setAlias(pending.getAlias());
         credential.setOwner(owner);
         credential.setSubjectDN(ejbcaCert.getSubjectX500Principal().toString());
         credential.setIssuerDN(ejbcaCert.getIssuerX500Principal().getName());
@@ -212,16 +196,20 @@ public class CryptoService {
 
     /**
      * Function that allows to create a key pair
+     * The key pair is taken from the pool of pre-generated key pairs, or
+     * generated by the HSM if the pool is empty
      * Exception: if the algorithm define in the application.yml for key creation is
      * not supported
      * Exception: if the hsm could not generate a key pair
      * 
      * @param owner the user that requested the key creation
      * @return the private key wrapped, the modulus of the public key and the public
-     *         exponent
+     *         exponent (RSA) or the private key wrapped and the encoded public key
+     *         (EC)
      */
     public byte[][] generateKeyPair(String owner) throws ApiException {
-        if (!this.config.getKeyAlgorithm().equals("RSA")) {
+        boolean ellipticCurve = this.generator.isEllipticCurve();
+        if (!ellipticCurve && !this.config.getKeyAlgorithm().equals("RSA")) {
             String logMessage = SignerError.CredentialAliasAlreadyExists.getCode()
                     + "(generateKeyPair in CryptoService.class) The algorithm " + this.config.getKeyAlgorithm()
                     + " for key pair creation is not supported by the current implementation.";
@@ -232,9 +220,20 @@ public class CryptoService {
                     + " for key pair creation is not supported by the current implementation.");
         }
 
+        if (!ellipticCurve) {
+            byte[][] pooledKeyPair = this.keyPairPool.take(this.config.getKeySize());
+            if (pooledKeyPair != null) {
+                return pooledKeyPair;
+            }
+        }
+
         try {
-            return this.hsmService.generateRSAKeyPair(this.config.getKeySize());
-        } catch (Exception e) { // Fail to generate the RSA Key Pair
+            this.wrapKeyLoader.ensureLoaded();
+            if (ellipticCurve) {
+                return this.keyBackend.generateECKeyPair(this.generator.getECSDACurveOID());
+            }
+            return this.keyBackend.generateRSAKeyPair(this.config.getKeySize());
+        } catch (Exception e) { // Fail to generate the Key Pair
             String logMessage = SignerError.FailedCreatingKeyPair.getCode()
                     + "(generateKeyPair in CryptoService.class) "
                     + SignerError.FailedCreatingKeyPair.getDescription() + ": " + e.getMessage();
@@ -247,13 +246,39 @@ public class CryptoService {
     }
 
     /**
-     * Function that allows to create a certificate signed by a CA
-     * Exception: if the EJBCA fails to create a certificate
+     * Builds the public key of a key pair created by generateKeyPair
+     * 
+     * @param owner   the user that requested the key creation
+     * @param keyPair the key pair, as returned by generateKeyPair
+     * @return the public key
+     */
+    private PublicKey toPublicKey(String owner, byte[][] keyPair) throws ApiException {
+        try {
+            if (this.generator.isEllipticCurve()) {
+                return KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(keyPair[1]));
+            }
+            return KeyFactory.getInstance("RSA").generatePublic(
+                    new RSAPublicKeySpec(new BigInteger(1, keyPair[1]), new BigInteger(1, keyPair[2])));
+        } catch (Exception e) {
+            String logMessage = SignerError.FailedCreatingKeyPair.getCode()
+                    + "(toPublicKey in CryptoService.class) "
+                    + SignerError.FailedCreatingKeyPair.getDescription() + ": " + e.getMessage();
+            logger.error(logMessage);
+            LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
+                    this.authProperties.getDatasourcePassword(), 0, owner, 3, "");
+            throw new ApiException(SignerError.FailedCreatingKeyPair,
+                    SignerError.FailedCreatingKeyPair.getDescription());
+        }
+    }
+
+    /**
+     * Function that allows to create a certificate signing request, signed by the
+     * HSM with the private key
+     * Exception: if the HSM fails to sign the request
      * 
      * @param owner            the user that requested the issuance of the
      *                         certificate
-     * @param ModulusBI        the modulus of the public key
-     * @param PublicExponentBI the public exponents of the public key
+     * @param publicKey        the public key
      * @param givenName        the given name of the owner of the certificate to
      *                         create
      * @param surname          the surname of the owner of the certificate to create
@@ -262,42 +287,68 @@ public class CryptoService {
      *                         be created the certificate
      * @param countryCode      the country code of the owner
      * @param privKeyValues    the private key wrapped
-     * @return the list of the Certificates (includes the certificate created and
-     *         the certificate chain)
+     * @return the certificate signing request (PEM)
      */
-    public List<X509Certificate> generateCertificates(String owner, BigInteger ModulusBI, BigInteger PublicExponentBI,
-            String givenName, String surname, String subjectCN, String alias, String countryCode,
-            byte[] privKeyValues) throws ApiException {
+    public String generateCertificateRequest(String owner, PublicKey publicKey, String givenName, String surname,
+            String subjectCN, String alias, String countryCode, byte[] privKeyValues) throws ApiException {
 
         try {
+            this.wrapKeyLoader.ensureLoaded();
             // Create a certificate Signing Request for the keys
-            byte[] csrInfo = generator.generateCertificateRequestInfo(ModulusBI, PublicExponentBI, givenName, surname,
-                    subjectCN, countryCode, "Trust Provider Signer EUDIW", alias);
-            byte[] signature = hsmService.signDTBSwithRSAPKCS11(privKeyValues, csrInfo);
+            byte[] csrInfo = generator.generateCertificateRequestInfo(publicKey, givenName, surname, subjectCN,
+                    countryCode, "Trust Provider Signer EUDIW", alias);
+            byte[] signature = generator.isEllipticCurve()
+                    ? keyBackend.signDTBSwithECDSA(privKeyValues, csrInfo)
+                    : keyBackend.signDTBSwithRSA(privKeyValues, csrInfo);
             PKCS10CertificationRequest certificateHSM = generator.generateCertificateRequest(csrInfo, signature);
 
-            String certificateString = "-----BEGIN CERTIFICATE REQUEST-----\n" +
+            return "-----BEGIN CERTIFICATE REQUEST-----\n" +
                     new String(Base64.getEncoder().encode(certificateHSM.getEncoded())) + "\n" +
                     "-----END CERTIFICATE REQUEST-----";
+        } catch (Exception e) {
+            throw failedCreatingCertificate(owner, "generateCertificateRequest", e);
+        }
+    }
 
+    /**
+     * Function that allows to get a certificate signed by a CA
+     * Exception: if the EJBCA fails to create a certificate
+     * 
+     * @param owner              the user that requested the issuance of the
+     *                           certificate
+     * @param certificateRequest the certificate signing request (PEM)
+     * @param givenName          the given name of the owner of the certificate
+     * @param surname            the surname of the owner of the certificate
+     * @param subjectCN          the subject of the certificate
+     * @param countryCode        the country code of the owner
+     * @return the list of the Certificates (includes the certificate created and
+     *         the certificate chain)
+     */
+    public List<X509Certificate> requestCertificates(String owner, String certificateRequest, String givenName,
+            String surname, String subjectCN, String countryCode) throws ApiException {
+        try {
             // Makes a request to the CA
-            List<X509Certificate> certificateAndCertificateChain = this.ejbcaService.certificateRequest(certificateString, countryCode);
+            List<X509Certificate> certificateAndCertificateChain = this.ejbcaService.certificateRequest(certificateRequest, countryCode);
             if(!validateCertificateFromCA(certificateAndCertificateChain, givenName, surname, subjectCN, countryCode)){
                 throw new Exception("Certificates received from CA are not valid");
             }
             return certificateAndCertificateChain;
         } catch (Exception e) {
-            String logMessage = SignerError.FailedCreatingCertificate.getCode()
-                    + "(generateCertificates in CryptoService.class) "
-                    + SignerError.FailedCreatingCertificate.getDescription() + ": " + e.getMessage();
-            logger.error(logMessage);
-            LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
-                    this.authProperties.getDatasourcePassword(), 0, owner, 1, "");
-            throw new ApiException(SignerError.FailedCreatingCertificate,
-                    SignerError.FailedCreatingKeyPair.getDescription());
+            throw failedCreatingCertificate(owner, "requestCertificates", e);
         }
     }
 
+    private ApiException failedCreatingCertificate(String owner, String method, Exception e) {
+        String logMessage = SignerError.FailedCreatingCertificate.getCode()
+                + "(" + method + " in CryptoService.class) "
+                + SignerError.FailedCreatingCertificate.getDescription() + ": " + e.getMessage();
+        logger.error(logMessage);
+        LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
+                this.authProperties.getDatasourcePassword(), 0, owner, 1, "");
+        return new ApiException(SignerError.FailedCreatingCertificate,
+                SignerError.FailedCreatingKeyPair.getDescription());
+    }
+
     public boolean validateCertificateFromCA(List<X509Certificate> certificatesAndCertificateChain, String givenName, String surname, String subjectCN, String countryCode){
         if(certificatesAndCertificateChain.isEmpty()){
             return false;
@@ -367,7 +418,6 @@ public class CryptoService {
      */
     public String signWithPemCertificate(String dataToSignB64, String pemCertificate, List<String> pemCertificateChain,
             byte[] signingKeyWrapped, String signingAlgo, String signingAlgoParams) {
-        // TODO validate signingAlgo against the signing algo params
         final X509Certificate x509Certificate = pemToX509Certificate(pemCertificate);
 
         List<X509Certificate> x509CertificateChain = new ArrayList<>();
@@ -375,10 +425,29 @@ public class CryptoService {
             x509CertificateChain.add(pemToX509Certificate(s));
         }
 
+        SigningMaterial signingMaterial = new SigningMaterial(null, x509Certificate, x509CertificateChain,
+                signingKeyWrapped);
+        return signWithSigningMaterial(dataToSignB64, signingMaterial, signingAlgo, signingAlgoParams);
+    }
+
+    /**
+     * Function that allows to sign the data of a pdf document with the signing
+     * material already parsed from a credential
+     * 
+     * @param dataToSignB64     the data of the pdf
+     * @param signingMaterial   the certificate, certificate chain and wrapped key
+     *                          of the credential
+     * @param signingAlgo       the signing algorithm
+     * @param signingAlgoParams the signe parameters
+     * @return the value of the signature
+     */
+    public String signWithSigningMaterial(String dataToSignB64, SigningMaterial signingMaterial, String signingAlgo,
+            String signingAlgoParams) {
+        validateSigningAlgorithm(signingAlgo, signingAlgoParams, signingMaterial);
         try {
+            this.wrapKeyLoader.ensureLoaded();
             byte[] dataToSign = Base64.getDecoder().decode(dataToSignB64);
-            final byte[] bytes = cryptoSigner.signData(dataToSign, x509Certificate, x509CertificateChain,
-                    signingKeyWrapped, this.hsmService);
+            final byte[] bytes = cryptoSigner.signData(dataToSign, signingMaterial, this.keyBackend);
             return Base64.getEncoder().encodeToString(bytes);
         } catch (Exception e) {
             System.out.println(e.getMessage());
@@ -386,6 +455,108 @@ public class CryptoService {
         }
     }
 
+    /**
+     * Function that allows to sign the SHA-256 digest of the data of a pdf
+     * document, computed by the client, with the signing material already parsed
+     * from a credential
+     * 
+     * @param digestB64         the SHA-256 digest of the data of the pdf
+     * @param signingMaterial   the certificate, certificate chain and wrapped key
+     *                          of the credential
+     * @param signingAlgo       the signing algorithm
+     * @param signingAlgoParams the signe parameters
+     * @return the value of the signature
+     */
+    public String signDigestWithSigningMaterial(String digestB64, SigningMaterial signingMaterial,
+            String signingAlgo, String signingAlgoParams) {
+        validateSigningAlgorithm(signingAlgo, signingAlgoParams, signingMaterial);
+        try {
+            this.wrapKeyLoader.ensureLoaded();
+            DSSMessageDigest messageDigest = new DSSMessageDigest(DigestAlgorithm.SHA256,
+                    Base64.getDecoder().decode(digestB64));
+            final byte[] bytes = cryptoSigner.signMessageDigest(messageDigest, signingMaterial, this.keyBackend);
+            return Base64.getEncoder().encodeToString(bytes);
+        } catch (Exception e) {
+            logger.error("Failed to sign the digest: {}", e.getMessage());
+            throw new ApiException(SignerError.FailedSigningData, e);
+        }
+    }
+
+    /**
+     * Checks that the signing algorithm requested can be used with the key of
+     * the credential. The signatures are always made with SHA-256 and without
+     * parameters (e.g. RSASSA-PSS is not supported).
+     * 
+     * @param signingAlgo       the OID of the signing algorithm
+     * @param signingAlgoParams the parameters of the signing algorithm
+     * @param signingMaterial   the signing material of the credential
+     */
+    private void validateSigningAlgorithm(String signingAlgo, String signingAlgoParams,
+            SigningMaterial signingMaterial) {
+        if (signingAlgo == null || signingAlgo.isBlank()) {
+            throw new ApiException(CSCInvalidRequest.MissingSignAlgo);
+        }
+        if (SIGNING_ALGORITHMS.get(signingAlgo) != signingMaterial.getKeyAlgorithm()) {
+            logger.error("The signing algorithm {} can't be used with a {} key", signingAlgo,
+                    signingMaterial.getKeyAlgorithm());
+            throw new ApiException(CSCInvalidRequest.InvalidSignAlgo,
+                    "The signing algorithm {} is not supported by the credential", signingAlgo);
+        }
+        if (signingAlgoParams != null && !signingAlgoParams.isBlank()) {
+            throw new ApiException(CSCInvalidRequest.InvalidSignAlgo,
+                    "The signing algorithm {} takes no parameters", signingAlgo);
+        }
+    }
+
+    /**
+     * Builds the immutable signing material of a credential, parsing the PEM
+     * certificate and certificate chain once, and keeps it in the signing
+     * material cache.
+     * The certificate chain of the credential must already be loaded (see
+     * CredentialRepository.findWithCertificateChainByOwnerAndAlias).
+     * 
+     * @param credential the credential that will be used to sign
+     * @return the signing material of the credential
+     */
+    public SigningMaterial toSigningMaterial(Credential credential) {
+        SigningMaterial cached = this.signingMaterialCache.get(credential.getId());
+        if (cached != null) {
+            return cached;
+        }
+
+        final X509Certificate x509Certificate = pemToX509Certificate(credential.getCertificate());
+
+        List<X509Certificate> x509CertificateChain = new ArrayList<>();
+        for (String s : credential.getCertificateChains()) {
+            x509CertificateChain.add(pemToX509Certificate(s));
+        }
+        SigningMaterial signingMaterial = new SigningMaterial(credential.getId(), x509Certificate,
+                x509CertificateChain, credential.getPrivateKeyHSM());
+        this.signingMaterialCache.put(signingMaterial);
+        return signingMaterial;
+    }
+
+    /**
+     * Gets the signing material of a credential from the cache
+     * 
+     * @param credentialId the id of the credential
+     * @return the cached signing material, or null if it is not in the cache
+     */
+    public SigningMaterial getCachedSigningMaterial(String credentialId) {
+        return this.signingMaterialCache.get(credentialId);
+    }
+
+    /**
+     * Removes the signing material of a credential from the cache.
+     * Must be called whenever the credential is deleted or its certificate or
+     * key are replaced.
+     * 
+     * @param credentialId the id of the credential
+     */
+    public void invalidateSigningMaterial(String credentialId) {
+        this.signingMaterialCache.invalidate(credentialId);
+    }
+
     /**
      * Unmarshall the PEM string (Base64) form of the certificate into an
      * X509Certificate object
@@ -18,19 +18,17 @@ package eu.europa.ec.eudi.signer.rssp.crypto;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.cms.ContentInfo;
-import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSSignedData;
@@ -40,7 +38,7 @@ import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.util.Store;
 
-import eu.europa.ec.eudi.signer.rssp.hsm.HSMService;
+import eu.europa.ec.eudi.signer.rssp.hsm.KeyOperationsBackend;
 
 import eu.europa.esig.dss.cades.signature.CMSSignedDocument;
 import eu.europa.esig.dss.enumerations.DigestAlgorithm;
@@ -50,7 +48,6 @@ import eu.europa.esig.dss.enumerations.SignatureLevel;
 import eu.europa.esig.dss.model.DSSMessageDigest;
 import eu.europa.esig.dss.model.SignatureValue;
 import eu.europa.esig.dss.model.ToBeSigned;
-import eu.europa.esig.dss.model.x509.CertificateToken;
 import eu.europa.esig.dss.pades.PAdESSignatureParameters;
 import eu.europa.esig.dss.pades.signature.ExternalCMSService;
 import eu.europa.esig.dss.spi.DSSUtils;
@@ -58,10 +55,22 @@ import eu.europa.esig.dss.validation.CertificateVerifier;
 import eu.europa.esig.dss.validation.CommonCertificateVerifier;
 
 /**
- * Utility for signing data like document hashes
+ * Utility for signing data like document hashes.
+ * A single instance is kept by the CryptoService: the certificate verifier and
+ * the CMS generator are created once and shared between signatures (they hold
+ * no per-signature state), while the signature parameters are created per
+ * signature from the cached tokens of the credential.
  */
 public class CryptoSigner {
 
+    private final CertificateVerifier certificateVerifier;
+    private final ExternalCMSService padesCMSGeneratorService;
+
+    public CryptoSigner() {
+        this.certificateVerifier = new CommonCertificateVerifier();
+        this.padesCMSGeneratorService = new ExternalCMSService(this.certificateVerifier);
+    }
+
     /**
      * Cryptographically sign the given data with the supplied signature and private
      * key
@@ -78,63 +87,91 @@ public class CryptoSigner {
      * @throws CMSException
      * @throws IOException
      */
-
     public byte[] signData(byte[] data, final X509Certificate signingCertificate,
-            List<X509Certificate> certificateChain, final byte[] signingKey, HSMService hsmService) throws Exception {
-
-        final MessageDigest digest = DSSUtils.getMessageDigest(DigestAlgorithm.SHA256);
-        InputStream inputStream = new ByteArrayInputStream(data);
-        byte[] b = new byte[4096];
-        int count;
-        while ((count = inputStream.read(b)) > 0) {
-            digest.update(b, 0, count);
-        }
-        DSSMessageDigest messageDigest = new DSSMessageDigest(DigestAlgorithm.SHA256, digest.digest());
-
-        PAdESSignatureParameters parameters = new PAdESSignatureParameters();
-        parameters.setSignatureLevel(SignatureLevel.PAdES_BASELINE_B);
-        parameters.setEncryptionAlgorithm(EncryptionAlgorithm.RSA);
+            List<X509Certificate> certificateChain, final byte[] signingKey, KeyOperationsBackend keyBackend) throws Exception {
+        return signData(data, new SigningMaterial(null, signingCertificate, certificateChain, signingKey),
+                keyBackend);
+    }
 
-        CertificateVerifier cv = new CommonCertificateVerifier();
-        ExternalCMSService padesCMSGeneratorService = new ExternalCMSService(cv);
+    /**
+     * Cryptographically sign the given data with the signing material of a
+     * credential. The DSS certificate tokens and the key algorithm are taken
+     * from the signing material, so nothing is parsed here.
+     *
+     * @param data            data to sign (usually a document hash)
+     * @param signingMaterial the certificate, certificate chain and wrapped key
+     *                        of the credential
+     * @return signature for provided data
+     */
+    public byte[] signData(byte[] data, final SigningMaterial signingMaterial, KeyOperationsBackend keyBackend)
+            throws Exception {
+        return signMessageDigest(digest(ByteBuffer.wrap(data)), signingMaterial, keyBackend);
+    }
 
-        PAdESSignatureParameters signatureParameters = new PAdESSignatureParameters();
-        signatureParameters.setSigningCertificate(new CertificateToken(signingCertificate));
-        List<CertificateToken> certChainToken = new ArrayList<>();
-        for (X509Certificate cert : certificateChain) {
-            certChainToken.add(new CertificateToken(cert));
-        }
-        signatureParameters.setCertificateChain(certChainToken);
-        signatureParameters.setSignatureLevel(SignatureLevel.PAdES_BASELINE_B);
-        signatureParameters.setEncryptionAlgorithm(EncryptionAlgorithm.RSA);
+    /**
+     * Cryptographically sign the given message digest with the signing material
+     * of a credential.
+     *
+     * @param messageDigest   the SHA-256 digest of the signed content
+     * @param signingMaterial the certificate, certificate chain and wrapped key
+     *                        of the credential
+     * @return the encoded CMS signed data
+     */
+    public byte[] signMessageDigest(DSSMessageDigest messageDigest, final SigningMaterial signingMaterial,
+            KeyOperationsBackend keyBackend) throws Exception {
+        // the parameters hold the signing date, so the same instance must be used to
+        // get the data to sign and to build the CMS, but it can't be shared between
+        // signatures
+        PAdESSignatureParameters signatureParameters = newSignatureParameters(signingMaterial);
 
         // Create DTBS (data to be signed) using the message-digest of a PDF signature
         // byte range obtained from a client
-        ToBeSigned dataToSign = padesCMSGeneratorService.getDataToSign(messageDigest, signatureParameters);
+        ToBeSigned dataToSign = this.padesCMSGeneratorService.getDataToSign(messageDigest, signatureParameters);
 
         // Sign the DTBS using a private key connection or remote-signing service
-        byte[] signatureHSM = hsmService.signDTBSwithRSAPKCS11(signingKey, dataToSign.getBytes());
+        // (the credentials created before the switch to EC keys are still RSA)
+        byte[] signatureHSM = signingMaterial.getKeyAlgorithm() == EncryptionAlgorithm.ECDSA
+                ? keyBackend.signDTBSwithECDSA(signingMaterial.getWrappedPrivateKey(), dataToSign.getBytes())
+                : keyBackend.signDTBSwithRSA(signingMaterial.getWrappedPrivateKey(), dataToSign.getBytes());
 
         SignatureValue signatureValue = new SignatureValue();
-        signatureValue.setAlgorithm(SignatureAlgorithm.RSA_SHA256);
+        signatureValue.setAlgorithm(
+                SignatureAlgorithm.getAlgorithm(signingMaterial.getKeyAlgorithm(), DigestAlgorithm.SHA256));
         signatureValue.setValue(signatureHSM);
 
         // Create a CMS signature using the provided message-digest, signature
         // parameters and the signature value
-        CMSSignedDocument cmsSignature = padesCMSGeneratorService.signMessageDigest(messageDigest, signatureParameters,
-                signatureValue);
-        CMSSignedData signedData = cmsSignature.getCMSSignedData();
-        signedData.getSignerInfos().getSigners()
-                .forEach(x -> System.out.println(x.getEncryptionAlgOID() + " & " + x.getDigestAlgOID())); // sha256WithRSAEncryption
-                                                                                                          // &
-        System.out.println(signedData.getSignedContentTypeOID()); // data
-        for (AlgorithmIdentifier alg : signedData.getDigestAlgorithmIDs()) { // sha-256
-            System.out.println(alg.toASN1Primitive().toString());
-        }
-
+        CMSSignedDocument cmsSignature = this.padesCMSGeneratorService.signMessageDigest(messageDigest,
+                signatureParameters, signatureValue);
         return cmsSignature.getCMSSignedData().getEncoded();
     }
 
+    /**
+     * Computes the SHA-256 digest of the given content, without copying it
+     *
+     * @param data the content to digest
+     * @return the message digest
+     */
+    public DSSMessageDigest digest(ByteBuffer data) {
+        final MessageDigest digest = DSSUtils.getMessageDigest(DigestAlgorithm.SHA256);
+        digest.update(data);
+        return new DSSMessageDigest(DigestAlgorithm.SHA256, digest.digest());
+    }
+
+    /**
+     * Creates the PAdES signature parameters of a signature, from the parameter
+     * template of the credential (signing certificate and chain tokens, key
+     * algorithm) kept in the signing material
+     */
+    private PAdESSignatureParameters newSignatureParameters(SigningMaterial signingMaterial) {
+        PAdESSignatureParameters signatureParameters = new PAdESSignatureParameters();
+        signatureParameters.setSigningCertificate(signingMaterial.getCertificateToken());
+        signatureParameters.setCertificateChain(signingMaterial.getCertificateChainTokens());
+        signatureParameters.setSignatureLevel(SignatureLevel.PAdES_BASELINE_B);
+        signatureParameters.setEncryptionAlgorithm(signingMaterial.getKeyAlgorithm());
+        return signatureParameters;
+    }
+
     /**
      * Verfies the signed data
      * 
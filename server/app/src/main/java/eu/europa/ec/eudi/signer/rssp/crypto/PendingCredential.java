@@ -0,0 +1,83 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.crypto;
+
+/**
+ * A credential whose key pair and certificate signing request were created by
+ * the HSM, waiting for the certificate from the CA
+ */
+public final class PendingCredential {
+    private final String owner;
+    private final String givenName;
+    private final String surname;
+    private final String subjectDN;
+    private final String alias;
+    private final String countryCode;
+    private final byte[][] keyPair;
+    private final String certificateRequest;
+
+    public PendingCredential(String owner, String givenName, String surname, String subjectDN, String alias,
+            String countryCode, byte[][] keyPair, String certificateRequest) {
+        this.owner = owner;
+        this.givenName = givenName;
+        this.surname = surname;
+        this.subjectDN = subjectDN;
+        this.alias = alias;
+        this.countryCode = countryCode;
+        this.keyPair = keyPair;
+        this.certificateRequest = certificateRequest;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getGivenName() {
+        return givenName;
+    }
+
+    public String getSurname() {
+        return surname;
+    }
+
+    public String getSubjectDN() {
+        return subjectDN;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    /**
+     * @return the wrapped private key, the modulus and the public exponent
+     */
+    public byte[][] getKeyPair() {
+        return keyPair;
+    }
+
+    /**
+     * @return the certificate signing request (PEM)
+     */
+    public String getCertificateRequest() {
+        return certificateRequest;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.crypto;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import eu.europa.esig.dss.enumerations.EncryptionAlgorithm;
+import eu.europa.esig.dss.model.x509.CertificateToken;
+
+/**
+ * Immutable view of everything the signing path needs from a credential:
+ * the parsed signing certificate, the parsed certificate chain and the
+ * private key wrapped by the HSM, together with the DSS certificate tokens and
+ * the key algorithm used to build the CMS.
+ * It is built once from the credential loaded from the database (and kept in
+ * the SigningMaterialCache), so that signing a hash does not need the JPA
+ * entity nor any PEM parsing.
+ */
+public final class SigningMaterial {
+
+    private final String credentialId;
+    private final X509Certificate certificate;
+    private final List<X509Certificate> certificateChain;
+    private final byte[] wrappedPrivateKey;
+    private final CertificateToken certificateToken;
+    private final List<CertificateToken> certificateChainTokens;
+    private final EncryptionAlgorithm keyAlgorithm;
+
+    public SigningMaterial(String credentialId, X509Certificate certificate,
+            List<X509Certificate> certificateChain, byte[] wrappedPrivateKey) {
+        this.credentialId = credentialId;
+        this.certificate = certificate;
+        this.certificateChain = Collections.unmodifiableList(new ArrayList<>(certificateChain));
+        this.wrappedPrivateKey = wrappedPrivateKey == null ? null : wrappedPrivateKey.clone();
+
+        this.certificateToken = new CertificateToken(certificate);
+        List<CertificateToken> chainTokens = new ArrayList<>();
+        for (X509Certificate cert : certificateChain) {
+            chainTokens.add(new CertificateToken(cert));
+        }
+        this.certificateChainTokens = Collections.unmodifiableList(chainTokens);
+        this.keyAlgorithm = EncryptionAlgorithm.forKey(certificate.getPublicKey());
+    }
+
+    public String getCredentialId() {
+        return this.credentialId;
+    }
+
+    public X509Certificate getCertificate() {
+        return this.certificate;
+    }
+
+    public List<X509Certificate> getCertificateChain() {
+        return this.certificateChain;
+    }
+
+    public byte[] getWrappedPrivateKey() {
+        return this.wrappedPrivateKey == null ? null : this.wrappedPrivateKey.clone();
+    }
+
+    public CertificateToken getCertificateToken() {
+        return this.certificateToken;
+    }
+
+    public List<CertificateToken> getCertificateChainTokens() {
+        return this.certificateChainTokens;
+    }
+
+    public EncryptionAlgorithm getKeyAlgorithm() {
+        return this.keyAlgorithm;
+    }
+}
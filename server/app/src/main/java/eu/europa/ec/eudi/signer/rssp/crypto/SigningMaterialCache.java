@@ -0,0 +1,63 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.crypto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded (least recently used) cache of the signing material of the
+ * credentials, keyed by the credential id.
+ * The credential id is a random UUID generated when the credential is
+ * created, so an entry can only become stale when the credential is deleted,
+ * in which case it must be invalidated.
+ */
+public class SigningMaterialCache {
+
+    private final Map<String, SigningMaterial> entries;
+
+    public SigningMaterialCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SigningMaterial> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized SigningMaterial get(String credentialId) {
+        return this.entries.get(credentialId);
+    }
+
+    public synchronized void put(SigningMaterial signingMaterial) {
+        if (signingMaterial.getCredentialId() != null) {
+            this.entries.put(signingMaterial.getCredentialId(), signingMaterial);
+        }
+    }
+
+    public synchronized void invalidate(String credentialId) {
+        this.entries.remove(credentialId);
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+}
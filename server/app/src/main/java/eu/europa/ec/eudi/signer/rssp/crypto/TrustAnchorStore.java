@@ -0,0 +1,360 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.security.auth.x500.X500Principal;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.util.encoders.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import eu.europa.ec.eudi.signer.rssp.common.config.TrustedIssuersCertificatesProperties;
+
+/**
+ * Store of the certificates of the trusted issuers (the trust anchors of the
+ * VP Tokens), read from the .pem files of trusted-issuers.folder.
+ * The certificates are kept in an immutable index, by canonical subject DN and
+ * by subject key identifier (several certificates can share them, e.g. an
+ * issuer during the rotation of its key), which is replaced as a whole when the folder
+ * changes: the folder is watched, so an issuer can be added or rotated
+ * without restarting the RSSP. If the folder can't be read (e.g. a file is
+ * still being written), the previous index is kept.
+ * The version of the index is published as rssp.trust_anchors.version, and
+ * the number of certificates as rssp.trust_anchors.
+ */
+@Component
+public class TrustAnchorStore implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrustAnchorStore.class);
+
+    // time waited after a change of the folder for the other changes of the same copy
+    private static final long SETTLE_MILLIS = 500;
+
+    private final Path folder;
+
+    private volatile Index index;
+    private volatile WatchService watchService;
+
+    public TrustAnchorStore(TrustedIssuersCertificatesProperties properties, MeterRegistry meterRegistry) {
+        this.folder = Paths.get(properties.getFolder());
+        Gauge.builder("rssp.trust_anchors.version", this, TrustAnchorStore::getVersion)
+                .description("Version of the index of the trusted issuers, incremented by each reload")
+                .register(meterRegistry);
+        Gauge.builder("rssp.trust_anchors", this, store -> store.index == null ? 0 : store.index.size)
+                .description("Certificates of trusted issuers in the index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Immutable index of the certificates of a version of the folder
+     */
+    private static final class Index {
+        private final long version;
+        private final int size;
+        private final Map<String, List<X509Certificate>> bySubject;
+        private final Map<String, List<X509Certificate>> byKeyIdentifier;
+
+        private Index(long version, List<X509Certificate> certificates) {
+            Map<String, List<X509Certificate>> subjects = new HashMap<>();
+            Map<String, List<X509Certificate>> keyIdentifiers = new HashMap<>();
+            for (X509Certificate certificate : certificates) {
+                subjects.computeIfAbsent(canonical(certificate.getSubjectX500Principal()), key -> new ArrayList<>())
+                        .add(certificate);
+                byte[] keyIdentifier = subjectKeyIdentifier(certificate);
+                if (keyIdentifier != null) {
+                    keyIdentifiers.computeIfAbsent(Hex.toHexString(keyIdentifier), key -> new ArrayList<>())
+                            .add(certificate);
+                }
+            }
+            subjects.forEach((subject, list) -> {
+                if (list.size() > 1) {
+                    logger.warn("{} certificates of trusted issuers have the subject {}", list.size(), subject);
+                }
+            });
+            keyIdentifiers.forEach((keyIdentifier, list) -> {
+                if (list.size() > 1) {
+                    logger.warn("{} certificates of trusted issuers have the key identifier {}", list.size(),
+                            keyIdentifier);
+                }
+            });
+            this.version = version;
+            this.size = certificates.size();
+            this.bySubject = unmodifiable(subjects);
+            this.byKeyIdentifier = unmodifiable(keyIdentifiers);
+        }
+
+        private static Map<String, List<X509Certificate>> unmodifiable(Map<String, List<X509Certificate>> map) {
+            map.replaceAll((key, list) -> Collections.unmodifiableList(list));
+            return Collections.unmodifiableMap(map);
+        }
+    }
+
+    /**
+     * Reads the folder, unless it was already read
+     */
+    public void load() throws IOException {
+        if (this.index == null) {
+            synchronized (this) {
+                if (this.index == null) {
+                    reload();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the folder and replaces the index. The index is not changed if the
+     * folder can't be read.
+     */
+    public synchronized void reload() throws IOException {
+        List<X509Certificate> certificates = readCertificates();
+        Index previous = this.index;
+        this.index = new Index(previous == null ? 1 : previous.version + 1, certificates);
+        logger.info("Loaded {} certificates of trusted issuers from {} (version {})", certificates.size(),
+                this.folder, this.index.version);
+    }
+
+    private List<X509Certificate> readCertificates() throws IOException {
+        CertificateFactory factory;
+        try {
+            factory = CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            throw new IllegalStateException(e);
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(this.folder)) {
+            files = paths.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".pem"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        List<X509Certificate> certificates = new ArrayList<>();
+        for (Path file : files) {
+            try (InputStream is = Files.newInputStream(file)) {
+                certificates.add((X509Certificate) factory.generateCertificate(is));
+            } catch (CertificateException e) {
+                throw new IOException("The certificate in the file " + file + " can't be read: " + e.getMessage(), e);
+            }
+        }
+        return certificates;
+    }
+
+    private Index index() {
+        try {
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.index;
+    }
+
+    /**
+     * Finds the trusted issuer of a certificate. The candidates are the trust
+     * anchors whose subject key identifier is the authority key identifier of
+     * the certificate, then those whose subject is the issuer of the
+     * certificate; the issuer is the first candidate whose key verifies the
+     * signature of the certificate, preferring one that is valid now.
+     *
+     * @param certificate the certificate (e.g. of the document signer of a VP Token)
+     * @return the certificate of the issuer, the first candidate if no key
+     *         verifies the signature, or null if the issuer is not trusted
+     */
+    public X509Certificate findIssuer(X509Certificate certificate) {
+        Index current = index();
+        Set<X509Certificate> candidates = new LinkedHashSet<>();
+        byte[] authorityKeyIdentifier = authorityKeyIdentifier(certificate);
+        if (authorityKeyIdentifier != null) {
+            candidates.addAll(current.byKeyIdentifier.getOrDefault(Hex.toHexString(authorityKeyIdentifier),
+                    Collections.emptyList()));
+        }
+        candidates.addAll(current.bySubject.getOrDefault(canonical(certificate.getIssuerX500Principal()),
+                Collections.emptyList()));
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        List<X509Certificate> verifying = candidates.stream()
+                .filter(candidate -> verifies(candidate, certificate))
+                .collect(Collectors.toList());
+        // otherwise the caller fails on the signature of the certificate
+        return preferValid(verifying.isEmpty() ? new ArrayList<>(candidates) : verifying);
+    }
+
+    /**
+     * @param subject the subject of a trusted issuer, in any DN format
+     * @return the certificate of the trusted issuer, preferring one that is
+     *         valid now, or null if it is not trusted
+     */
+    public X509Certificate findBySubject(X500Principal subject) {
+        List<X509Certificate> certificates = index().bySubject.get(canonical(subject));
+        return certificates == null ? null : preferValid(certificates);
+    }
+
+    private static boolean verifies(X509Certificate issuer, X509Certificate certificate) {
+        try {
+            certificate.verify(issuer.getPublicKey());
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    private static X509Certificate preferValid(List<X509Certificate> certificates) {
+        for (X509Certificate certificate : certificates) {
+            try {
+                certificate.checkValidity();
+                return certificate;
+            } catch (GeneralSecurityException e) {
+                // expired or not yet valid
+            }
+        }
+        return certificates.get(0);
+    }
+
+    public long getVersion() {
+        Index current = this.index;
+        return current == null ? 0 : current.version;
+    }
+
+    private static String canonical(X500Principal principal) {
+        return principal.getName(X500Principal.CANONICAL);
+    }
+
+    private static byte[] subjectKeyIdentifier(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+        if (extension == null) {
+            return null;
+        }
+        return SubjectKeyIdentifier.getInstance(ASN1OctetString.getInstance(extension).getOctets())
+                .getKeyIdentifier();
+    }
+
+    private static byte[] authorityKeyIdentifier(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+        if (extension == null) {
+            return null;
+        }
+        return AuthorityKeyIdentifier.getInstance(ASN1OctetString.getInstance(extension).getOctets())
+                .getKeyIdentifier();
+    }
+
+    // ------- watch of the folder
+
+    /**
+     * Watches the folder (and its subfolders), reloading the index after each
+     * change
+     */
+    @Override
+    public void start() {
+        try {
+            WatchService watcher = this.folder.getFileSystem().newWatchService();
+            registerFolders(watcher);
+            this.watchService = watcher;
+        } catch (IOException e) {
+            logger.error("The folder of the trusted issuers {} can't be watched, the changes will need a restart: {}",
+                    this.folder, e.getMessage());
+            return;
+        }
+        Thread thread = new Thread(this::watch, "trust-anchor-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void registerFolders(WatchService watcher) throws IOException {
+        try (Stream<Path> paths = Files.walk(this.folder)) {
+            for (Path path : paths.filter(Files::isDirectory).collect(Collectors.toList())) {
+                path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    private void watch() {
+        WatchService watcher = this.watchService;
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                // a copy changes the folder several times: reload once it has settled
+                do {
+                    key.pollEvents();
+                    key.reset();
+                    key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                try {
+                    registerFolders(watcher);
+                    reload();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("The certificates of the trusted issuers could not be reloaded, version {} is kept: {}",
+                            getVersion(), e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    @Override
+    public void stop() {
+        WatchService watcher = this.watchService;
+        this.watchService = null;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the watch of the trusted issuers: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.watchService != null;
+    }
+}
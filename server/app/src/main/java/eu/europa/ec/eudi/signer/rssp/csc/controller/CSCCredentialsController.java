@@ -16,11 +16,16 @@
 
 package eu.europa.ec.eudi.signer.rssp.csc.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
 
 import eu.europa.ec.eudi.signer.common.AccessCredentialDeniedException;
@@ -50,11 +55,14 @@ public class CSCCredentialsController {
 
 	private final CSCCredentialsService credentialsService;
 	private final AuthProperties authProperties;
+	private final ObjectMapper objectMapper;
 
 	@Autowired
-	public CSCCredentialsController(CSCCredentialsService credentialsService, AuthProperties authProperties) {
+	public CSCCredentialsController(CSCCredentialsService credentialsService, AuthProperties authProperties,
+			ObjectMapper objectMapper) {
 		this.credentialsService = credentialsService;
 		this.authProperties = authProperties;
+		this.objectMapper = objectMapper;
 	}
 
 	/*
@@ -74,12 +82,23 @@ public class CSCCredentialsController {
 	 * }
 	 */
 
+	/**
+	 * Returns the information of a credential, with a strong ETag computed from
+	 * the response body. A client that sends back the ETag in If-None-Match gets
+	 * a 304 Not Modified (without body) while the information is unchanged.
+	 */
 	@PostMapping("info")
-	@ResponseStatus(HttpStatus.OK)
-	public CSCCredentialsInfoResponse info(@CurrentUser UserPrincipal userPrincipal,
-			@Valid @RequestBody CSCCredentialsInfoRequest infoRequest) {
-		return credentialsService.getCredentialsInfoFromAlias(userPrincipal,
+	public ResponseEntity<CSCCredentialsInfoResponse> info(@CurrentUser UserPrincipal userPrincipal,
+			@Valid @RequestBody CSCCredentialsInfoRequest infoRequest,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+			throws JsonProcessingException {
+		CSCCredentialsInfoResponse response = credentialsService.getCredentialsInfoFromAlias(userPrincipal,
 				infoRequest);
+		String eTag = "\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(response)) + "\"";
+		if (eTag.equals(ifNoneMatch)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+		}
+		return ResponseEntity.ok().eTag(eTag).body(response);
 	}
 
 	@GetMapping("authorizationLink")
@@ -358,7 +358,7 @@ public class CSCCredentialsService {
 
 		LoggerUtil.desc = "PID Hash: " + loaded.getHash();
 
-		String SAD = sadProvider.createSAD(credentialID);
+		String SAD = sadProvider.createSAD(credentialID, authorizeRequest.getNumSignatures());
 		response.setSAD(SAD);
 		final long lifetimeSeconds = sadProvider.getLifetimeSeconds();
 		response.setExpiresIn(lifetimeSeconds - 1); // subtract a second to be sure
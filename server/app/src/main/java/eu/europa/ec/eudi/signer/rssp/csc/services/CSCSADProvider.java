@@ -16,6 +16,10 @@
 
 package eu.europa.ec.eudi.signer.rssp.csc.services;
 
+import java.time.Instant;
+import java.util.Collections;
+
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -25,6 +29,8 @@ import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
 import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
 import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties.Sad;
 import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
+import eu.europa.ec.eudi.signer.rssp.entities.SadUsage;
+import eu.europa.ec.eudi.signer.rssp.repository.SadUsageRepository;
 import eu.europa.ec.eudi.signer.rssp.security.jwt.JwtProvider;
 import eu.europa.ec.eudi.signer.rssp.security.jwt.JwtProviderConfig;
 import eu.europa.ec.eudi.signer.rssp.security.jwt.JwtToken;
@@ -33,11 +39,15 @@ import eu.europa.ec.eudi.signer.rssp.security.jwt.JwtToken;
 public class CSCSADProvider {
 
     private static final Logger log = LoggerFactory.getLogger(CSCSADProvider.class);
+    private static final String NUM_SIGNATURES_CLAIM_NAME = "numSignatures";
 
     private JwtProvider jwtProvider;
     private final long lifetimeSeconds;
+    private final MeterRegistry meterRegistry;
+    private final SadUsageRepository sadUsageRepository;
 
-    public CSCSADProvider(CSCProperties cscProperties, AuthProperties authProperties) {
+    public CSCSADProvider(CSCProperties cscProperties, AuthProperties authProperties, MeterRegistry meterRegistry,
+            SadUsageRepository sadUsageRepository) {
         Sad sadConfig = cscProperties.getSad();
 
         JwtProviderConfig jwtProviderConfig = new JwtProviderConfig();
@@ -47,10 +57,20 @@ public class CSCSADProvider {
         jwtProvider = new JwtProvider(jwtProviderConfig);
 
         lifetimeSeconds = sadConfig.getLifetimeMinutes() * 60;
+        this.meterRegistry = meterRegistry;
+        this.sadUsageRepository = sadUsageRepository;
     }
 
-    public String createSAD(String credentialId) {
-        final JwtToken token = jwtProvider.createToken(credentialId);
+    /**
+     * Creates a SAD that allows to sign at most numSignatures hashes with the
+     * credential, in one or more signHash requests
+     */
+    public String createSAD(String credentialId, int numSignatures) {
+        final JwtToken token = jwtProvider.createToken(credentialId,
+                Collections.singletonMap(NUM_SIGNATURES_CLAIM_NAME, numSignatures));
+        // the SADs issued before are not usable anymore once expired
+        sadUsageRepository.deleteExpired(Instant.now());
+        sadUsageRepository.save(new SadUsage(token.getId(), numSignatures, token.getExpiration().toInstant()));
         return token.getRawToken();
     }
 
@@ -59,9 +79,42 @@ public class CSCSADProvider {
     }
 
     public void validateSAD(String rawSAD) throws ApiException {
+        validateToken(rawSAD);
+    }
+
+    /**
+     * Validates the SAD and takes numSignatures from the signatures it still
+     * allows
+     *
+     * @throws ApiException TooHighNumSignatures if the SAD was issued for less
+     *                      signatures, InvalidSAD if they were already used, or
+     *                      the errors of {@link #validateSAD(String)}
+     */
+    public void useSAD(String rawSAD, int numSignatures) throws ApiException {
+        final JwtToken token = validateToken(rawSAD);
+        final Object authorized = token.getClaim(NUM_SIGNATURES_CLAIM_NAME);
+        if (!(authorized instanceof Number) || token.getId() == null) {
+            log.error("Invalid SAD provided: no numSignatures or id");
+            throw new ApiException(CSCInvalidRequest.InvalidSAD);
+        }
+        if (numSignatures > ((Number) authorized).intValue()) {
+            log.error("SAD issued for {} signatures used for {} signatures", authorized, numSignatures);
+            throw new ApiException(CSCInvalidRequest.TooHighNumSignatures);
+        }
+        if (sadUsageRepository.consume(token.getId(), numSignatures) != 1) {
+            log.error("SAD {} does not allow {} more signatures", token.getId(), numSignatures);
+            this.meterRegistry.counter("rssp.jwt.validation.failures", "token", "sad",
+                    "reason", "used").increment();
+            throw new ApiException(CSCInvalidRequest.InvalidSAD);
+        }
+    }
+
+    private JwtToken validateToken(String rawSAD) throws ApiException {
         JwtToken token = jwtProvider.validateToken(rawSAD);
         if (!token.isValid()) {
             log.error("Invalid SAD provided: {}", token.getError());
+            this.meterRegistry.counter("rssp.jwt.validation.failures", "token", "sad",
+                    "reason", token.isExpired() ? "expired" : "invalid").increment();
         }
         if (token.isExpired()) {
             // SAD expired - return the proper CSC error per 11.9 of the spec
@@ -69,5 +122,6 @@ public class CSCSADProvider {
         } else if (!token.isValid()) {
             throw new ApiException(CSCInvalidRequest.InvalidSAD);
         }
+        return token;
     }
 }
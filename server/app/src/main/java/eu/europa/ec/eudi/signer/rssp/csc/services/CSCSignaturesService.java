@@ -16,12 +16,16 @@
 
 package eu.europa.ec.eudi.signer.rssp.csc.services;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.RequestBody;
 
 import eu.europa.ec.eudi.signer.csc.error.CSCInvalidRequest;
+import eu.europa.ec.eudi.signer.csc.model.CSCConstants;
 import eu.europa.ec.eudi.signer.csc.payload.CSCSignaturesSignHashRequest;
 import eu.europa.ec.eudi.signer.csc.payload.CSCSignaturesSignHashResponse;
 import eu.europa.ec.eudi.signer.rssp.api.model.LoggerUtil;
@@ -30,15 +34,17 @@ import eu.europa.ec.eudi.signer.rssp.api.services.UserService;
 import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
 import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
 import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
-import eu.europa.ec.eudi.signer.rssp.entities.Credential;
 import eu.europa.ec.eudi.signer.rssp.entities.User;
 import eu.europa.ec.eudi.signer.rssp.crypto.CryptoService;
+import eu.europa.ec.eudi.signer.rssp.crypto.SigningMaterial;
 import eu.europa.ec.eudi.signer.rssp.security.UserPrincipal;
 
 import javax.validation.Valid;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class CSCSignaturesService {
@@ -49,14 +55,23 @@ public class CSCSignaturesService {
 	private final CryptoService cryptoService;
 	private final CSCSADProvider sadProvider;
 	private final AuthProperties authProperties;
+	private final Timer successTimer;
+	private final Timer errorTimer;
+	private final DistributionSummary hashesPerRequest;
 
 	public CSCSignaturesService(CredentialService credentialService, UserService userService,
-			CryptoService cryptoService, CSCSADProvider sadProvider, AuthProperties authProperties) {
+			CryptoService cryptoService, CSCSADProvider sadProvider, AuthProperties authProperties,
+			MeterRegistry meterRegistry) {
 		this.credentialService = credentialService;
 		this.userService = userService;
 		this.cryptoService = cryptoService;
 		this.sadProvider = sadProvider;
 		this.authProperties = authProperties;
+		this.successTimer = signHashTimer(meterRegistry, "success");
+		this.errorTimer = signHashTimer(meterRegistry, "error");
+		this.hashesPerRequest = DistributionSummary.builder("rssp.signhash.hashes")
+				.description("Hashes signed by a signHash request")
+				.register(meterRegistry);
 	}
 
 	/**
@@ -67,6 +82,27 @@ public class CSCSignaturesService {
 	 */
 	public CSCSignaturesSignHashResponse signHash(UserPrincipal userPrincipal,
 			@Valid @RequestBody CSCSignaturesSignHashRequest signHashRequest) {
+		long start = System.nanoTime();
+		Timer timer = this.errorTimer;
+		try {
+			CSCSignaturesSignHashResponse response = signHashes(userPrincipal, signHashRequest);
+			this.hashesPerRequest.record(response.getSignatures().size());
+			timer = this.successTimer;
+			return response;
+		} finally {
+			timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private static Timer signHashTimer(MeterRegistry meterRegistry, String outcome) {
+		return Timer.builder("rssp.signhash")
+				.description("Latency of the signHash requests")
+				.tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+
+	private CSCSignaturesSignHashResponse signHashes(UserPrincipal userPrincipal,
+			CSCSignaturesSignHashRequest signHashRequest) {
 
 		CSCSignaturesSignHashResponse response = new CSCSignaturesSignHashResponse();
 		String pdfName = signHashRequest.getClientData();
@@ -81,8 +117,8 @@ public class CSCSignaturesService {
 			throw new ApiException(SignerError.UserNotFound, "User not found.");
 		}
 
-		final Credential credential = credentialService
-				.getCredentialWithAlias(userPrincipal.getId(), credentialAlias).orElseThrow(
+		final SigningMaterial signingMaterial = credentialService
+				.getSigningMaterial(userPrincipal.getId(), credentialAlias).orElseThrow(
 						() -> {
 							LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
 									this.authProperties.getDatasourcePassword(), 0, userPrincipal.getId(), 6, "");
@@ -90,30 +126,47 @@ public class CSCSignaturesService {
 							return new ApiException(CSCInvalidRequest.InvalidCredentialId,
 									"No credential found with the given Id", credentialAlias);
 						});
+		// with a hashAlgo the hashes are digests computed by the client, without it
+		// they are the signed content itself (legacy mode)
+		final boolean digestMode = validateHashes(signHashRequest.getHashAlgo(), signHashRequest.getHash());
+
 		try {
 			// we know SAD is not empty thanks to annotations in the DTO, but is it valid?
 			// if it is expired or otherwise invalid, the provider will throw the right
-			// exception for the CSC standard
-			sadProvider.validateSAD(sad);
-		} catch (Exception e) {
-			log.error("{} (signHash in CSCSignaturesService.class.class): SAD not validated.",
-					SignerError.FailedToValidateSAD.getCode());
+			// exception for the CSC standard. The hashes are taken from the signatures
+			// the SAD still allows, so it cannot sign more than its numSignatures
+			sadProvider.useSAD(sad, signHashRequest.getHash().size());
+		} catch (ApiException e) {
+			if (e.getApiError() != CSCInvalidRequest.TooHighNumSignatures) {
+				throw failedToValidateSAD(userPrincipal);
+			}
+			log.error("{} (signHash in CSCSignaturesService.class.class): more hashes than authorized by the SAD.",
+					CSCInvalidRequest.TooHighNumSignatures.getCode());
 			LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
 					this.authProperties.getDatasourcePassword(), 0, userPrincipal.getId(), 6, "");
 			LoggerUtil.desc = "";
-			throw new ApiException(SignerError.FailedToValidateSAD);
+			throw e;
+		} catch (Exception e) {
+			throw failedToValidateSAD(userPrincipal);
 		}
 
 		try {
 			List<String> signedHashes = new ArrayList<>();
 			for (String hash : signHashRequest.getHash()) {
-				String signedData = cryptoService.signWithPemCertificate(
-						hash,
-						credential.getCertificate(),
-						credential.getCertificateChains(),
-						credential.getPrivateKeyHSM(),
-						signHashRequest.getSignAlgo(),
-						signHashRequest.getSignAlgoParams());
+				String signedData;
+				if (digestMode) {
+					signedData = cryptoService.signDigestWithSigningMaterial(
+							hash,
+							signingMaterial,
+							signHashRequest.getSignAlgo(),
+							signHashRequest.getSignAlgoParams());
+				} else {
+					signedData = cryptoService.signWithSigningMaterial(
+							hash,
+							signingMaterial,
+							signHashRequest.getSignAlgo(),
+							signHashRequest.getSignAlgoParams());
+				}
 				signedHashes.add(signedData); // assumes UTF8
 			}
 			response.setSignatures(signedHashes);
@@ -131,4 +184,49 @@ public class CSCSignaturesService {
 		}
 		return response;
 	}
+
+	private ApiException failedToValidateSAD(UserPrincipal userPrincipal) {
+		log.error("{} (signHash in CSCSignaturesService.class.class): SAD not validated.",
+				SignerError.FailedToValidateSAD.getCode());
+		LoggerUtil.logsUser(this.authProperties.getDatasourceUsername(),
+				this.authProperties.getDatasourcePassword(), 0, userPrincipal.getId(), 6, "");
+		LoggerUtil.desc = "";
+		return new ApiException(SignerError.FailedToValidateSAD);
+	}
+
+	/**
+	 * Validates the number of hashes and the hashAlgo of a signHash request and,
+	 * if it is present, that every hash is a Base64 digest with the length of that algorithm
+	 *
+	 * @param hashAlgo the OID of the hash algorithm (may be null)
+	 * @param hashes   the Base64 hashes to sign
+	 * @return true if the hashes are digests, false if they are the content to
+	 *         sign
+	 */
+	private boolean validateHashes(String hashAlgo, List<String> hashes) {
+		if (hashes.size() > CSCConstants.CSC_MAX_REQUEST_SIGNATURES) {
+			throw new ApiException(CSCInvalidRequest.TooHighNumSignatures);
+		}
+		if (hashAlgo == null || hashAlgo.isBlank()) {
+			return false;
+		}
+		if (!CSCConstants.CSC_HASH_ALGO_SHA256.equals(hashAlgo)) {
+			log.error("{} (signHash in CSCSignaturesService.class): hashAlgo {} not supported.",
+					CSCInvalidRequest.InvalidHashAlgo.getCode(), hashAlgo);
+			throw new ApiException(CSCInvalidRequest.InvalidHashAlgo,
+					"The hash algorithm " + hashAlgo + " is not supported");
+		}
+		for (String hash : hashes) {
+			byte[] digest;
+			try {
+				digest = Base64.getDecoder().decode(hash);
+			} catch (IllegalArgumentException e) {
+				throw new ApiException(CSCInvalidRequest.InvalidHashParameter);
+			}
+			if (digest.length != CSCConstants.CSC_HASH_LENGTH_SHA256) {
+				throw new ApiException(CSCInvalidRequest.InvalidHashLength);
+			}
+		}
+		return true;
+	}
 }
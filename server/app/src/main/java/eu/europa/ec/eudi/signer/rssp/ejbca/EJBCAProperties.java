@@ -49,6 +49,16 @@ public class EJBCAProperties {
 
     private boolean includeChain;
 
+    // connections kept open to the EJBCA
+    private int maxConnections = 50;
+
+    // requests to a CA in progress at the same time
+    private int maxConcurrentRequestsPerCA = 8;
+
+    // time to open a connection to the EJBCA, and to wait for its response
+    private int connectTimeoutMillis = 5000;
+    private int socketTimeoutMillis = 30000;
+
     private List<CountryConfig> countries;
 
     public void setCountries(List<CountryConfig> countries) {
@@ -150,6 +160,38 @@ public class EJBCAProperties {
         this.includeChain = includeChain;
     }
 
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConcurrentRequestsPerCA() {
+        return maxConcurrentRequestsPerCA;
+    }
+
+    public void setMaxConcurrentRequestsPerCA(int maxConcurrentRequestsPerCA) {
+        this.maxConcurrentRequestsPerCA = maxConcurrentRequestsPerCA;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+
+    public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
     public static class CountryConfig {
         @NotNull
         private String country;
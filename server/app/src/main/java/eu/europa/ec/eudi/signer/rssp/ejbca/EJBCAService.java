@@ -18,6 +18,7 @@ package eu.europa.ec.eudi.signer.rssp.ejbca;
 
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -25,24 +26,39 @@ import java.security.KeyStore;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
 import org.json.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import eu.europa.ec.eudi.signer.rssp.common.config.TrustedIssuersCertificatesProperties;
+import eu.europa.ec.eudi.signer.rssp.crypto.TrustAnchorStore;
+import eu.europa.ec.eudi.signer.rssp.util.TracingUtils;
 import eu.europa.ec.eudi.signer.rssp.util.WebUtils;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
-import javax.security.auth.x500.X500Principal;
+import javax.annotation.PreDestroy;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 
 @Component
 public class EJBCAService {
@@ -51,12 +67,24 @@ public class EJBCAService {
 
     private final EJBCAProperties ejbcaProperties;
 
-    private final TrustedIssuersCertificatesProperties trustedIssuersCertificates;
+    private final TrustAnchorStore trustAnchorStore;
+
+    private final Map<String, Semaphore> caPermits = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final Tracer tracer;
+
+    private volatile CloseableHttpClient httpClient;
 
     public EJBCAService(@Autowired EJBCAProperties properties,
-            @Autowired TrustedIssuersCertificatesProperties trustedIssuersCertificates) {
+            @Autowired TrustAnchorStore trustAnchorStore,
+            @Autowired MeterRegistry meterRegistry,
+            @Autowired Tracer tracer) {
         this.ejbcaProperties = properties;
-        this.trustedIssuersCertificates = trustedIssuersCertificates;
+        this.trustAnchorStore = trustAnchorStore;
+        this.meterRegistry = meterRegistry;
+        this.tracer = tracer;
     }
 
     public String getCertificateAuthorityNameByCountry(String countryCode){
@@ -76,26 +104,122 @@ public class EJBCAService {
         headers.put("Accept", "application/json");
         headers.put("Content-Type", "application/json");
 
-        String clientP12ArchiveFilepath = this.ejbcaProperties.getClientP12ArchiveFilepath();
-        String clientP12ArchivePassword = this.ejbcaProperties.getClientP12ArchivePassword();
-        KeyManager[] keyStorePKCS12 = getKeyStoreFromPKCS12File(clientP12ArchiveFilepath, clientP12ArchivePassword);
-        String ManagementCA = this.ejbcaProperties.getManagementCA();
-        TrustManager[] trustManagerCA = getTrustManagerOfCACertificate(ManagementCA);
-
-        // Get Certificate from EJBCA
-        HttpResponse response = WebUtils.httpPostRequestsWithCustomSSLContext(trustManagerCA, keyStorePKCS12, postUrl, certificateRequestBody, headers);
+        // Get Certificate from EJBCA, with at most maxConcurrentRequestsPerCA
+        // requests in progress for each CA
+        Semaphore permits = this.caPermits.computeIfAbsent(String.valueOf(certificateAuthorityName),
+                name -> new Semaphore(Math.max(1, this.ejbcaProperties.getMaxConcurrentRequestsPerCA()), true));
+        Span span = this.tracer.spanBuilder("ejbca enrollment")
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute("ejbca.ca", String.valueOf(certificateAuthorityName))
+                .startSpan();
+        Scope scope = span.makeCurrent();
+        try {
+            long waitStart = System.nanoTime();
+            permits.acquire();
+            long waited = System.nanoTime() - waitStart;
+            span.setAttribute("ejbca.permit_wait_ms", waited / 1e6);
+            Timer.builder("rssp.ejbca.permit.wait")
+                    .description("Time waited for one of the maxConcurrentRequestsPerCA permits of a CA")
+                    .tag("ca", String.valueOf(certificateAuthorityName))
+                    .register(this.meterRegistry)
+                    .record(waited, TimeUnit.NANOSECONDS);
+            return requestCertificate(postUrl, headers, certificateRequestBody, permits, span);
+        } catch (Exception e) {
+            TracingUtils.setError(span, e);
+            throw e;
+        } finally {
+            scope.close();
+            span.end();
+        }
+    }
 
-        if (response.getStatusLine().getStatusCode() != 201) {
-            throw new Exception("Certificate was not created by EJBCA");
+    private List<X509Certificate> requestCertificate(String postUrl, Map<String, String> headers,
+            String certificateRequestBody, Semaphore permits, Span span) throws Exception {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            HttpResponse response = WebUtils.httpPostRequest(httpClient(), postUrl, headers, certificateRequestBody);
+            try {
+                span.setAttribute("http.status_code", response.getStatusLine().getStatusCode());
+                if (response.getStatusLine().getStatusCode() != 201) {
+                    throw new Exception("Certificate was not created by EJBCA");
+                }
+                HttpEntity entity = response.getEntity();
+                if (entity == null) {
+                    throw new Exception("Message from EJBCA is empty");
+                }
+                InputStream inStream = entity.getContent();
+                String result = WebUtils.convertStreamToString(inStream);
+
+                List<X509Certificate> certificates = getCertificateFromHttpResponse(result);
+                outcome = "success";
+                return certificates;
+            } finally {
+                // releases the connection to the pool
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        } finally {
+            permits.release();
+            recordRequest("enrollment", outcome, start);
         }
-        HttpEntity entity = response.getEntity();
-        if (entity == null) {
-            throw new Exception("Message from EJBCA is empty");
+    }
+
+    private void recordRequest(String operation, String outcome, long start) {
+        Timer.builder("rssp.ejbca.request")
+                .description("Latency of the requests to the EJBCA")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(this.meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the client shared by the requests to the EJBCA: its connections
+     * (authenticated with the client certificate) are pooled, and the SSLContext
+     * is created once.
+     */
+    private CloseableHttpClient httpClient() throws Exception {
+        CloseableHttpClient client = this.httpClient;
+        if (client == null) {
+            synchronized (this) {
+                if (this.httpClient == null) {
+                    String clientP12ArchiveFilepath = this.ejbcaProperties.getClientP12ArchiveFilepath();
+                    String clientP12ArchivePassword = this.ejbcaProperties.getClientP12ArchivePassword();
+                    KeyManager[] keyStorePKCS12 = getKeyStoreFromPKCS12File(clientP12ArchiveFilepath,
+                            clientP12ArchivePassword);
+                    String ManagementCA = this.ejbcaProperties.getManagementCA();
+                    TrustManager[] trustManagerCA = getTrustManagerOfCACertificate(ManagementCA);
+
+                    SSLContext sslContext = SSLContext.getInstance("TLS");
+                    sslContext.init(keyStorePKCS12, trustManagerCA, null);
+                    int maxConnections = Math.max(1, this.ejbcaProperties.getMaxConnections());
+                    // a request waiting for a connection of the pool is bounded by the connect timeout
+                    RequestConfig requestConfig = RequestConfig.custom()
+                            .setConnectTimeout(this.ejbcaProperties.getConnectTimeoutMillis())
+                            .setConnectionRequestTimeout(this.ejbcaProperties.getConnectTimeoutMillis())
+                            .setSocketTimeout(this.ejbcaProperties.getSocketTimeoutMillis())
+                            .build();
+                    this.httpClient = HttpClients.custom()
+                            .setSSLContext(sslContext)
+                            .setDefaultRequestConfig(requestConfig)
+                            .setMaxConnTotal(maxConnections)
+                            .setMaxConnPerRoute(maxConnections)
+                            // the connections authenticated with the client certificate
+                            // can be reused by any request
+                            .disableConnectionState()
+                            .build();
+                }
+                client = this.httpClient;
+            }
         }
-        InputStream inStream = entity.getContent();
-        String result = WebUtils.convertStreamToString(inStream);
+        return client;
+    }
 
-        return getCertificateFromHttpResponse(result);
+    @PreDestroy
+    public void close() throws IOException {
+        if (this.httpClient != null) {
+            this.httpClient.close();
+        }
     }
 
     private String getJsonBody(String certificateRequest, String certificateAuthorityName) {
@@ -183,8 +307,12 @@ public class EJBCAService {
         return certs;
     }
 
-    public X509Certificate searchForIssuerCertificate(X500Principal issuer) {
-        return this.trustedIssuersCertificates.getTrustIssuersCertificates().get(issuer.toString());
+    /**
+     * @param certificate the certificate of the document signer
+     * @return the certificate of its trusted issuer, or null if the issuer is not trusted
+     */
+    public X509Certificate searchForIssuerCertificate(X509Certificate certificate) {
+        return this.trustAnchorStore.findIssuer(certificate);
     }
 
     // If the value false is return then the issuerDN certificate is NOT revoked.
@@ -199,27 +327,39 @@ public class EJBCAService {
         headers.put("Accept", "application/json");
         headers.put("Content-Type", "application/json");
 
-        String clientP12ArchiveFilepath = this.ejbcaProperties.getClientP12ArchiveFilepath();
-        String clientP12ArchivePassword = this.ejbcaProperties.getClientP12ArchivePassword();
-        KeyManager[] keyStorePKCS12 = getKeyStoreFromPKCS12File(clientP12ArchiveFilepath, clientP12ArchivePassword);
-        String ManagementCA = this.ejbcaProperties.getManagementCA();
-        TrustManager[] trustManagerCA = getTrustManagerOfCACertificate(ManagementCA);
-        HttpResponse response = WebUtils.httpGetRequestsWithCustomSSLContext(trustManagerCA, keyStorePKCS12, getUrl,
-                headers);
-
-        if (response.getStatusLine().getStatusCode() != 200) {
-            throw new Exception("Certificate was not found.");
-        }
-        if (response.getStatusLine().getStatusCode() == 404) {
-            return false;
-        }
-        HttpEntity entity = response.getEntity();
-        if (entity == null) {
-            throw new Exception("Message from EJBCA is empty.");
+        long start = System.nanoTime();
+        String outcome = "error";
+        String result;
+        Span span = this.tracer.spanBuilder("ejbca revocation_status")
+                .setSpanKind(SpanKind.CLIENT)
+                .startSpan();
+        Scope scope = span.makeCurrent();
+        try {
+            HttpResponse response = WebUtils.httpGetRequest(httpClient(), getUrl, headers);
+            try {
+                span.setAttribute("http.status_code", response.getStatusLine().getStatusCode());
+                if (response.getStatusLine().getStatusCode() != 200) {
+                    throw new Exception("Certificate was not found.");
+                }
+                HttpEntity entity = response.getEntity();
+                if (entity == null) {
+                    throw new Exception("Message from EJBCA is empty.");
+                }
+                result = WebUtils.convertStreamToString(entity.getContent());
+                outcome = "success";
+            } finally {
+                // releases the connection to the pool
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        } catch (Exception e) {
+            TracingUtils.setError(span, e);
+            throw e;
+        } finally {
+            scope.close();
+            span.end();
+            recordRequest("revocation_status", outcome, start);
         }
 
-        InputStream inStream = entity.getContent();
-        String result = WebUtils.convertStreamToString(inStream);
         JSONObject resultJson;
         try{
             resultJson = new JSONObject(result);
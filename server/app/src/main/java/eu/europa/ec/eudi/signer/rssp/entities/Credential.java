@@ -18,6 +18,10 @@ package eu.europa.ec.eudi.signer.rssp.entities;
 
 import javax.persistence.*;
 
+import org.springframework.data.domain.Persistable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import eu.europa.ec.eudi.signer.rssp.api.model.DateAudit;
 import eu.europa.ec.eudi.signer.rssp.api.model.StringListConverter;
 
@@ -38,7 +42,7 @@ import java.util.stream.Collectors;
  */
 @Entity
 @Table(name = "assina_credential", uniqueConstraints = @UniqueConstraint(columnNames = { "owner", "alias" }))
-public class Credential extends DateAudit {
+public class Credential extends DateAudit implements Persistable<String> {
 	// need to include the other details the key OIDs etc.
 
 	@Id
@@ -113,10 +117,27 @@ public class Credential extends DateAudit {
 	// @Column(name = "certificate_chain")
 	private List<Certificate> certificateChain;
 
+	// the id is assigned when the credential is created, so saving a new
+	// credential is an insert (that can be batched) instead of a merge
+	@Transient
+	private boolean isNew = true;
+
 	public Credential() {
 		id = UUID.randomUUID().toString();
 	}
 
+	@Override
+	@JsonIgnore
+	public boolean isNew() {
+		return isNew;
+	}
+
+	@PostLoad
+	@PostPersist
+	void markNotNew() {
+		this.isNew = false;
+	}
+
 	public String getId() {
 		return id;
 	}
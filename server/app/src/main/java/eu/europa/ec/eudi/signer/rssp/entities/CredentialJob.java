@@ -0,0 +1,149 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.entities;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+
+import eu.europa.ec.eudi.signer.rssp.api.model.DateAudit;
+
+/**
+ * The creation of a credential, run in the background.
+ * There is at most one job per alias of a user, so that a repeated request
+ * returns the job already created. The job keeps the data needed to run it
+ * again if the RSSP restarts before it completes.
+ * A job is run by the RSSP instance that claimed it, until its lease ends.
+ */
+@Entity
+@Table(name = "credential_job", uniqueConstraints = @UniqueConstraint(columnNames = { "owner", "alias" }))
+public class CredentialJob extends DateAudit {
+
+    public enum Status {
+        PENDING, RUNNING, SUCCEEDED, FAILED
+    }
+
+    @Id
+    private String id;
+    private String owner;
+    private String alias;
+    private String givenName;
+    private String surname;
+    private String subjectDN;
+    private String countryCode;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    @Column(length = 2000)
+    private String error;
+
+    private String ownerInstance;
+    private Instant leaseUntil;
+
+    @Version
+    private long version;
+
+    public CredentialJob() {
+        this.id = UUID.randomUUID().toString();
+    }
+
+    public CredentialJob(String owner, String alias, String givenName, String surname, String subjectDN,
+            String countryCode) {
+        this.id = UUID.randomUUID().toString();
+        this.owner = owner;
+        this.alias = alias;
+        this.givenName = givenName;
+        this.surname = surname;
+        this.subjectDN = subjectDN;
+        this.countryCode = countryCode;
+        this.status = Status.PENDING;
+    }
+
+    /**
+     * Runs a failed job again, with the data of the new request
+     */
+    public void retry(String givenName, String surname, String subjectDN, String countryCode) {
+        this.givenName = givenName;
+        this.surname = surname;
+        this.subjectDN = subjectDN;
+        this.countryCode = countryCode;
+        this.status = Status.PENDING;
+        this.error = null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public String getGivenName() {
+        return givenName;
+    }
+
+    public String getSurname() {
+        return surname;
+    }
+
+    public String getSubjectDN() {
+        return subjectDN;
+    }
+
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public String getOwnerInstance() {
+        return ownerInstance;
+    }
+
+    public Instant getLeaseUntil() {
+        return leaseUntil;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A key pair generated in advance by the HSM, waiting to be used by a new
+ * credential. The private key is stored wrapped by the secret key of the HSM,
+ * as in the credentials.
+ */
+@Entity
+@Table(name = "key_pair_pool")
+public class PooledKeyPair {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private int keySize;
+
+    @Column(length = 4000)
+    private byte[] privateKeyWrapped;
+
+    @Column(length = 1000)
+    private byte[] modulus;
+
+    @Column(length = 100)
+    private byte[] publicExponent;
+
+    public PooledKeyPair() {
+    }
+
+    public PooledKeyPair(int keySize, byte[][] keyPair) {
+        this.keySize = keySize;
+        this.privateKeyWrapped = keyPair[0];
+        this.modulus = keyPair[1];
+        this.publicExponent = keyPair[2];
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public int getKeySize() {
+        return keySize;
+    }
+
+    /**
+     * @return the key pair in the format of KeyOperationsBackend.generateRSAKeyPair
+     */
+    public byte[][] toKeyPair() {
+        return new byte[][] { privateKeyWrapped, modulus, publicExponent };
+    }
+}
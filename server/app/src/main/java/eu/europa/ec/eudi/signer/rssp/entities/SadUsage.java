@@ -0,0 +1,63 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.entities;
+
+import java.time.Instant;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * The signatures that a SAD still allows. The row is created when the SAD is
+ * issued, with the numSignatures of the authorization, and the count is taken
+ * in the database by each signHash, so that the SAD cannot sign more hashes
+ * than authorized even when it is sent to several RSSP instances.
+ */
+@Entity
+@Table(name = "sad_usage", indexes = @Index(columnList = "expiresAt"))
+public class SadUsage {
+
+    @Id
+    private String id;
+
+    private int remainingSignatures;
+
+    private Instant expiresAt;
+
+    public SadUsage() {
+    }
+
+    public SadUsage(String id, int remainingSignatures, Instant expiresAt) {
+        this.id = id;
+        this.remainingSignatures = remainingSignatures;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getRemainingSignatures() {
+        return remainingSignatures;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
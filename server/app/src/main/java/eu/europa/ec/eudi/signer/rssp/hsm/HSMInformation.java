@@ -36,6 +36,14 @@ public class HSMInformation {
         this.pin = pin;
     }
 
+    public synchronized int getIdleSessionCount() {
+        return idleSessions.size();
+    }
+
+    public synchronized int getActiveSessionCount() {
+        return activeSessions.size();
+    }
+
     public synchronized void releaseSession(LongRef sessionRef) {
         if (activeSessions.contains(sessionRef)) {
             activeSessions.remove(sessionRef);
@@ -45,6 +53,22 @@ public class HSMInformation {
         idleSessions.push(sessionRef);
     }
 
+    /**
+     * Opens (and logs in) idle sessions until there are at least the given
+     * number of sessions
+     */
+    public synchronized void openSessions(int sessions) throws Exception {
+        while (idleSessions.size() + activeSessions.size() < sessions) {
+            try {
+                long session = CE.OpenSession(this.slot);
+                CE.LoginUser(session, pin);
+                idleSessions.push(new LongRef(session));
+            } catch (CKRException rv) {
+                throw new Exception(rv);
+            }
+        }
+    }
+
     public synchronized LongRef getSession() throws Exception {
         LongRef sessionRef;
         if (idleSessions.isEmpty()) {
@@ -19,19 +19,52 @@
 
 package eu.europa.ec.eudi.signer.rssp.hsm;
 
+import java.math.BigInteger;
 import java.security.KeyFactory;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.x9.ECNamedCurveTable;
 import org.pkcs11.jacknji11.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import eu.europa.ec.eudi.signer.rssp.util.TracingUtils;
+
 @Component
-public class HSMService {
+@ConditionalOnProperty(prefix = "csc.crypto", name = "keyBackend", havingValue = "hsm", matchIfMissing = true)
+public class HSMService implements KeyOperationsBackend {
 
     private byte[] secretKey;
     private HSMInformation hsmInfo;
+    private final MeterRegistry meterRegistry;
+    private final Timer sessionAcquireTimer;
+    // the meters of the operations, registered at their first use
+    private final Map<String, Timer> operationTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errorCounters = new ConcurrentHashMap<>();
+    private final Tracer tracer;
 
-    public HSMService() {
+    public HSMService(MeterRegistry meterRegistry, Tracer tracer) {
 
         // Load test_slot from global variable
         long slot = 0;
@@ -49,12 +82,94 @@ public class HSMService {
 
         this.hsmInfo = new HSMInformation(slot, pin);
         CE.Initialize();
+
+        this.meterRegistry = meterRegistry;
+        this.sessionAcquireTimer = Timer.builder("rssp.hsm.session.acquire")
+                .description("Time waited for a session of the HSM, including the opening of new sessions")
+                .register(meterRegistry);
+        Gauge.builder("rssp.hsm.sessions", this.hsmInfo, HSMInformation::getActiveSessionCount)
+                .tag("state", "active")
+                .register(meterRegistry);
+        Gauge.builder("rssp.hsm.sessions", this.hsmInfo, HSMInformation::getIdleSessionCount)
+                .tag("state", "idle")
+                .register(meterRegistry);
+        this.tracer = tracer;
+    }
+
+    @FunctionalInterface
+    private interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Runs an operation of the HSM in a span (hsm <operation>), recording its
+     * latency (rssp.hsm.operation) and, if it fails, the PKCS#11 error code
+     * (rssp.hsm.errors)
+     */
+    private <T> T measure(String operation, Operation<T> body) throws Exception {
+        long start = System.nanoTime();
+        String outcome = "success";
+        Span span = this.tracer.spanBuilder("hsm " + operation).startSpan();
+        Scope scope = span.makeCurrent();
+        try {
+            return body.run();
+        } catch (Exception e) {
+            outcome = "error";
+            String code = errorCode(e);
+            span.setAttribute("hsm.error_code", code);
+            TracingUtils.setError(span, e);
+            this.errorCounters.computeIfAbsent(operation + "/" + code,
+                    key -> Counter.builder("rssp.hsm.errors")
+                            .description("Operations of the HSM that failed, by PKCS#11 return value")
+                            .tag("operation", operation)
+                            .tag("code", code)
+                            .register(this.meterRegistry))
+                    .increment();
+            throw e;
+        } finally {
+            scope.close();
+            span.end();
+            String tag = outcome;
+            this.operationTimers.computeIfAbsent(operation + "/" + outcome,
+                    key -> Timer.builder("rssp.hsm.operation")
+                            .description("Latency of the operations of the HSM")
+                            .tag("operation", operation)
+                            .tag("outcome", tag)
+                            .register(this.meterRegistry))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // the CKR value of the failure, which HSMInformation wraps in an Exception
+    private static String errorCode(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CKRException) {
+                return String.format("0x%08X", ((CKRException) cause).getCKR());
+            }
+        }
+        return "none";
+    }
+
+    private LongRef acquireSession() throws Exception {
+        long start = System.nanoTime();
+        try {
+            return this.hsmInfo.getSession();
+        } finally {
+            long waited = System.nanoTime() - start;
+            this.sessionAcquireTimer.record(waited, TimeUnit.NANOSECONDS);
+            Span.current().setAttribute("hsm.session_wait_ms", waited / 1e6);
+        }
     }
 
     // Creates a new Secret Key that will be use for the operation of wrap and
     // unwrap:
+    @Override
     public byte[] initSecretKey() throws Exception {
-        LongRef sessionRef = this.hsmInfo.getSession();
+        return measure("init_secret_key", this::generateSecretKey);
+    }
+
+    private byte[] generateSecretKey() throws Exception {
+        LongRef sessionRef = acquireSession();
         long session = sessionRef.value();
 
         long secretKeyWrap = CE.GenerateKey(session, new CKM(CKM.AES_KEY_GEN),
@@ -73,8 +188,16 @@ public class HSMService {
         return secret_key;
     }
 
+    @Override
     public void setSecretKey(byte[] secretKeyBytes) throws Exception {
-        LongRef sessionRef = this.hsmInfo.getSession();
+        measure("set_secret_key", () -> {
+            importSecretKey(secretKeyBytes);
+            return null;
+        });
+    }
+
+    private void importSecretKey(byte[] secretKeyBytes) throws Exception {
+        LongRef sessionRef = acquireSession();
         long session = sessionRef.value();
 
         CKA[] secretTempl = new CKA[] {
@@ -119,8 +242,13 @@ public class HSMService {
      * The third position of the array contains the public key public_exponent
      * bytes.
      */
+    @Override
     public byte[][] generateRSAKeyPair(int keySize) throws Exception {
-        LongRef sessionRef = this.hsmInfo.getSession();
+        return measure("generate_rsa_key_pair", () -> generateRSAKeyPairInHSM(keySize));
+    }
+
+    private byte[][] generateRSAKeyPairInHSM(int keySize) throws Exception {
+        LongRef sessionRef = acquireSession();
         long session = sessionRef.value();
 
         long secretKeyObj = loadSecretKey(session, this.secretKey);
@@ -160,11 +288,82 @@ public class HSMService {
         return keyPair;
     }
 
+    /**
+     * Function that generates an EC key pair on a named curve, and returns its ref
+     * in an array.
+     * The first position of the array contains the private key bytes.
+     * The second position of the array contains the public key, encoded as a
+     * X.509 SubjectPublicKeyInfo.
+     * 
+     * @param curveOID the OID of the curve (e.g. 1.2.840.10045.3.1.7 for P-256)
+     */
+    @Override
+    public byte[][] generateECKeyPair(String curveOID) throws Exception {
+        return measure("generate_ec_key_pair", () -> generateECKeyPairInHSM(curveOID));
+    }
+
+    private byte[][] generateECKeyPairInHSM(String curveOID) throws Exception {
+        LongRef sessionRef = acquireSession();
+        long session = sessionRef.value();
+
+        long secretKeyObj = loadSecretKey(session, this.secretKey);
+
+        ASN1ObjectIdentifier curve = new ASN1ObjectIdentifier(curveOID);
+        CKA[] pubTempl = new CKA[] {
+                new CKA(CKA.EC_PARAMS, curve.getEncoded()),
+                new CKA(CKA.VERIFY, true),
+                new CKA(CKA.TOKEN, true),
+                new CKA(CKA.LABEL, "labelec-public"),
+                new CKA(CKA.ID, "labelec")
+        };
+
+        CKA[] privTempl = new CKA[] {
+                new CKA(CKA.TOKEN, true),
+                new CKA(CKA.PRIVATE, true),
+                new CKA(CKA.SENSITIVE, true),
+                new CKA(CKA.SIGN, true),
+                new CKA(CKA.EXTRACTABLE, true),
+                new CKA(CKA.LABEL, "labelec-private"),
+                new CKA(CKA.ID, "labelec"),
+        };
+
+        LongRef pubKey = new LongRef();
+        LongRef privKey = new LongRef();
+        CE.GenerateKeyPair(session, new CKM(CKM.EC_KEY_PAIR_GEN), pubTempl, privTempl, pubKey, privKey);
+
+        byte[] ecPoint = CE.GetAttributeValue(session, pubKey.value(), CKA.EC_POINT).getValue();
+        SubjectPublicKeyInfo publicKeyInfo = new SubjectPublicKeyInfo(
+                new AlgorithmIdentifier(X9ObjectIdentifiers.id_ecPublicKey, curve), decodeECPoint(ecPoint, curve));
+
+        byte[][] keyPair = new byte[2][];
+        keyPair[0] = CE.WrapKey(session, new CKM(CKM.AES_CBC), secretKeyObj, privKey.value());
+        keyPair[1] = publicKeyInfo.getEncoded();
+
+        CE.DestroyObject(session, secretKeyObj);
+        this.hsmInfo.releaseSession(sessionRef);
+        return keyPair;
+    }
+
+    // CKA_EC_POINT should be the DER encoding of an OCTET STRING with the point,
+    // but some HSMs return the point itself: an uncompressed point has exactly
+    // 1 + 2 * fieldSize bytes, and its DER encoding is always longer
+    private static byte[] decodeECPoint(byte[] ecPoint, ASN1ObjectIdentifier curve) {
+        int fieldSize = (ECNamedCurveTable.getByOID(curve).getCurve().getFieldSize() + 7) / 8;
+        if (ecPoint.length == 1 + 2 * fieldSize && ecPoint[0] == 0x04) {
+            return ecPoint;
+        }
+        return ASN1OctetString.getInstance(ecPoint).getOctets();
+    }
+
     public long UnwrapKey(long session, long secretKey, byte[] wrappedKey) {
+        return UnwrapKey(session, secretKey, wrappedKey, CKK.RSA);
+    }
+
+    public long UnwrapKey(long session, long secretKey, byte[] wrappedKey, long keyType) {
 
         CKA[] secTemplUnwrap = new CKA[] {
                 new CKA(CKA.CLASS, CKO.PRIVATE_KEY),
-                new CKA(CKA.KEY_TYPE, CKK.RSA),
+                new CKA(CKA.KEY_TYPE, keyType),
                 new CKA(CKA.LABEL, "privatekeyunwrapped"),
                 new CKA(CKA.ID, "privatekeyunwrapped"),
                 new CKA(CKA.TOKEN, true),
@@ -175,18 +374,56 @@ public class HSMService {
         return CE.UnwrapKey(session, new CKM(CKM.AES_CBC), secretKey, wrappedKey, secTemplUnwrap);
     }
 
-    public byte[] signDTBSwithRSAPKCS11(byte[] wrappedPrivateKey, byte[] DTBSR) throws Exception {
+    @Override
+    public byte[] signDTBSwithRSA(byte[] wrappedPrivateKey, byte[] DTBSR) throws Exception {
+        return measure("sign", () -> signDTBS(wrappedPrivateKey, DTBSR, CKK.RSA, CKM.SHA256_RSA_PKCS));
+    }
+
+    @Override
+    public byte[] signDTBSwithECDSA(byte[] wrappedPrivateKey, byte[] DTBSR) throws Exception {
+        return measure("sign", () -> toDERSignature(signDTBS(wrappedPrivateKey, DTBSR, CKK.EC, CKM.ECDSA_SHA256)));
+    }
+
+    /**
+     * Converts an ECDSA signature from the PKCS#11 format (r and s concatenated)
+     * to the DER encoding of the sequence of the two integers.
+     */
+    public static byte[] toDERSignature(byte[] signature) throws Exception {
+        int half = signature.length / 2;
+        BigInteger r = new BigInteger(1, Arrays.copyOfRange(signature, 0, half));
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(signature, half, signature.length));
+        return new DERSequence(new ASN1Integer[] { new ASN1Integer(r), new ASN1Integer(s) }).getEncoded();
+    }
+
+    /**
+     * Converts a DER encoded ECDSA signature to the PKCS#11 format (r and s
+     * concatenated, each with the size of the field of the curve).
+     */
+    public static byte[] fromDERSignature(byte[] signature, int fieldSize) throws Exception {
+        ASN1Sequence sequence = ASN1Sequence.getInstance(signature);
+        byte[] raw = new byte[2 * fieldSize];
+        for (int i = 0; i < 2; i++) {
+            byte[] value = ASN1Integer.getInstance(sequence.getObjectAt(i)).getPositiveValue().toByteArray();
+            int start = value.length > fieldSize ? value.length - fieldSize : 0; // sign byte
+            int length = value.length - start;
+            System.arraycopy(value, start, raw, (i + 1) * fieldSize - length, length);
+        }
+        return raw;
+    }
+
+    private byte[] signDTBS(byte[] wrappedPrivateKey, byte[] DTBSR, long keyType, long mechanism)
+            throws Exception {
         // init session
-        LongRef sessionRef = this.hsmInfo.getSession();
+        LongRef sessionRef = acquireSession();
         long session = sessionRef.value();
 
         long secretKeyObj = loadSecretKey(session, this.secretKey);
 
         // Unwrap private key
-        long privateKey = UnwrapKey(session, secretKeyObj, wrappedPrivateKey);
+        long privateKey = UnwrapKey(session, secretKeyObj, wrappedPrivateKey, keyType);
 
         // Sign bytes
-        CE.SignInit(session, new CKM(CKM.SHA256_RSA_PKCS), privateKey);
+        CE.SignInit(session, new CKM(mechanism), privateKey);
         byte[] signed = CE.Sign(session, DTBSR);
 
         CE.DestroyObject(session, secretKeyObj);
@@ -195,6 +432,21 @@ public class HSMService {
     }
 
     public long SetAttributePublicKey(long session, byte[] publicKey) throws Exception {
+        SubjectPublicKeyInfo publicKeyInfo = SubjectPublicKeyInfo.getInstance(publicKey);
+        if (X9ObjectIdentifiers.id_ecPublicKey.equals(publicKeyInfo.getAlgorithm().getAlgorithm())) {
+            CKA[] pubTempl = new CKA[] {
+                    new CKA(CKA.CLASS, CKO.PUBLIC_KEY),
+                    new CKA(CKA.KEY_TYPE, CKK.EC),
+                    new CKA(CKA.EC_PARAMS, publicKeyInfo.getAlgorithm().getParameters().toASN1Primitive().getEncoded()),
+                    new CKA(CKA.EC_POINT, new DEROctetString(publicKeyInfo.getPublicKeyData().getBytes()).getEncoded()),
+                    new CKA(CKA.VERIFY, true),
+                    new CKA(CKA.TOKEN, true),
+                    new CKA(CKA.LABEL, "labelec-publicloaded"),
+                    new CKA(CKA.ID, "labelec-publicloaded")
+            };
+            return CE.CreateObject(session, pubTempl);
+        }
+
         KeyFactory keyFactory = KeyFactory.getInstance("RSA");
         X509EncodedKeySpec pKeySpec = new X509EncodedKeySpec(publicKey);
         RSAPublicKey pk = (RSAPublicKey) keyFactory.generatePublic(pKeySpec);
@@ -203,7 +455,7 @@ public class HSMService {
                 new CKA(CKA.CLASS, CKO.PUBLIC_KEY),
                 new CKA(CKA.KEY_TYPE, CKK.RSA),
                 new CKA(CKA.MODULUS, pk.getModulus().toByteArray()),
-                new CKA(CKA.PUBLIC_EXPONENT, pk.getModulus().toByteArray()),
+                new CKA(CKA.PUBLIC_EXPONENT, pk.getPublicExponent().toByteArray()),
                 new CKA(CKA.WRAP, true),
                 new CKA(CKA.VERIFY, true),
                 new CKA(CKA.TOKEN, true),
@@ -215,18 +467,54 @@ public class HSMService {
 
     public void VerifySignature(byte[] DTBSR, byte[] signature, byte[] publicKey) throws Exception {
         // init session
-        LongRef sessionRef = this.hsmInfo.getSession();
+        LongRef sessionRef = acquireSession();
         long session = sessionRef.value();
 
-        // Get Public Key Parameters
-        long publicKeyValue = 0;
-        publicKeyValue = SetAttributePublicKey(session, publicKey);
+        // a signature that isn't valid throws, and the session and the public key
+        // object are still closed
+        try {
+            // Get Public Key Parameters
+            long publicKeyValue = SetAttributePublicKey(session, publicKey);
+            try {
+                // Verify Signature
+                SubjectPublicKeyInfo publicKeyInfo = SubjectPublicKeyInfo.getInstance(publicKey);
+                if (X9ObjectIdentifiers.id_ecPublicKey.equals(publicKeyInfo.getAlgorithm().getAlgorithm())) {
+                    ASN1ObjectIdentifier curve = ASN1ObjectIdentifier.getInstance(publicKeyInfo.getAlgorithm().getParameters());
+                    int fieldSize = (ECNamedCurveTable.getByOID(curve).getCurve().getFieldSize() + 7) / 8;
+                    CE.VerifyInit(session, new CKM(CKM.ECDSA_SHA256), publicKeyValue);
+                    CE.Verify(session, DTBSR, fromDERSignature(signature, fieldSize));
+                } else {
+                    CE.VerifyInit(session, new CKM(CKM.SHA256_RSA_PKCS), publicKeyValue);
+                    CE.Verify(session, DTBSR, signature);
+                }
+            } finally {
+                CE.DestroyObject(session, publicKeyValue);
+            }
+        } finally {
+            this.hsmInfo.CloseSession(sessionRef);
+        }
+    }
 
-        // Verify Signature
-        CE.VerifyInit(session, new CKM(CKM.SHA256_RSA_PKCS), publicKeyValue);
-        CE.Verify(session, DTBSR, signature);
+    @Override
+    public boolean verifySignature(byte[] DTBSR, byte[] signature, byte[] publicKey) throws Exception {
+        // an invalid signature is an answer of the HSM, not an error
+        return measure("verify", () -> {
+            try {
+                VerifySignature(DTBSR, signature, publicKey);
+                return true;
+            } catch (CKRException e) {
+                if (e.getCKR() == CKR.SIGNATURE_INVALID) {
+                    return false;
+                }
+                throw e;
+            }
+        });
+    }
 
-        this.hsmInfo.CloseSession(sessionRef);
+    // the sessions opened in advance are idle, and reused by the first requests
+    @Override
+    public void warmUp(int sessions) throws Exception {
+        this.hsmInfo.openSessions(sessions);
     }
 
 }
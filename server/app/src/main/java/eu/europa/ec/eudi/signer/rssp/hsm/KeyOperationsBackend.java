@@ -0,0 +1,104 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.hsm;
+
+/**
+ * Key operations needed by the RSSP: the generation of key pairs, whose private
+ * key is returned wrapped by a secret key, and the signature (and verification)
+ * of data with those wrapped keys.
+ * The secret key used to wrap the private keys is stored, encrypted, in the
+ * database by the CryptoService, and loaded into the backend when the RSSP
+ * starts.
+ * The backend is chosen with csc.crypto.keyBackend: "hsm" (default) for the
+ * PKCS#11 HSMService, or "software" for the SoftwareKeyBackend. The wrapped keys
+ * of a backend can't be used by the other.
+ */
+public interface KeyOperationsBackend {
+
+    /**
+     * Creates a new secret key that will be used to wrap and unwrap the private
+     * keys
+     *
+     * @return the secret key bytes, to be saved (encrypted) in the database
+     */
+    byte[] initSecretKey() throws Exception;
+
+    /**
+     * Loads the secret key that wraps and unwraps the private keys
+     *
+     * @param secretKeyBytes the secret key bytes, as returned by initSecretKey
+     */
+    void setSecretKey(byte[] secretKeyBytes) throws Exception;
+
+    /**
+     * Generates a RSA key pair, and returns it in an array.
+     * The first position of the array contains the private key wrapped.
+     * The second position of the array contains the public key modulus bytes.
+     * The third position of the array contains the public key public_exponent
+     * bytes.
+     *
+     * @param keySize the size of the key in bits
+     */
+    byte[][] generateRSAKeyPair(int keySize) throws Exception;
+
+    /**
+     * Generates an EC key pair on a named curve, and returns it in an array.
+     * The first position of the array contains the private key wrapped.
+     * The second position of the array contains the public key, encoded as a
+     * X.509 SubjectPublicKeyInfo.
+     *
+     * @param curveOID the OID of the curve (e.g. 1.2.840.10045.3.1.7 for P-256)
+     */
+    byte[][] generateECKeyPair(String curveOID) throws Exception;
+
+    /**
+     * Signs the bytes with RSA PKCS#1 v1.5 (SHA-256) and a wrapped RSA private key
+     *
+     * @param wrappedPrivateKey the private key, wrapped by the secret key
+     * @param DTBSR             the data to be signed
+     * @return the signature
+     */
+    byte[] signDTBSwithRSA(byte[] wrappedPrivateKey, byte[] DTBSR) throws Exception;
+
+    /**
+     * Signs the bytes with ECDSA (SHA-256) and a wrapped EC private key
+     *
+     * @param wrappedPrivateKey the private key, wrapped by the secret key
+     * @param DTBSR             the data to be signed
+     * @return the signature, DER encoded (as used in X.509 and CMS)
+     */
+    byte[] signDTBSwithECDSA(byte[] wrappedPrivateKey, byte[] DTBSR) throws Exception;
+
+    /**
+     * Verifies a signature created by signDTBSwithRSA or signDTBSwithECDSA
+     *
+     * @param DTBSR     the data signed
+     * @param signature the signature
+     * @param publicKey the public key, encoded as a X.509 SubjectPublicKeyInfo
+     * @return if the signature is valid
+     */
+    boolean verifySignature(byte[] DTBSR, byte[] signature, byte[] publicKey) throws Exception;
+
+    /**
+     * Prepares the backend for the first requests, e.g. by opening its sessions
+     * in advance. Does nothing by default.
+     *
+     * @param sessions the number of sessions to open
+     */
+    default void warmUp(int sessions) throws Exception {
+    }
+}
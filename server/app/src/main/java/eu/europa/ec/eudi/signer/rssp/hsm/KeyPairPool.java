@@ -0,0 +1,145 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.hsm;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CryptoConfig;
+import eu.europa.ec.eudi.signer.rssp.entities.PooledKeyPair;
+import eu.europa.ec.eudi.signer.rssp.repository.KeyPairPoolRepository;
+
+/**
+ * Pool of RSA key pairs generated in advance by the HSM, so that the creation
+ * of a credential does not wait for the key generation.
+ * The key pairs are persisted (with the private key wrapped by the secret key
+ * of the HSM), so they survive a restart. The pool is refilled by a single
+ * background thread with a low priority, once the secret key is loaded; when
+ * it is empty, the caller generates the key pair itself.
+ */
+@Component
+public class KeyPairPool implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyPairPool.class);
+
+    private final KeyOperationsBackend keyBackend;
+    private final WrapKeyLoader wrapKeyLoader;
+    private final KeyPairPoolRepository repository;
+    private final int poolSize;
+    private final int keySize;
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+
+    private volatile ExecutorService executor;
+
+    public KeyPairPool(KeyOperationsBackend keyBackend, WrapKeyLoader wrapKeyLoader,
+            KeyPairPoolRepository repository, CSCProperties cscProperties) {
+        CryptoConfig config = cscProperties.getCrypto();
+        this.keyBackend = keyBackend;
+        this.wrapKeyLoader = wrapKeyLoader;
+        this.repository = repository;
+        // EC key pairs are cheap to generate, so they are not pooled
+        boolean ellipticCurve = "EC".equalsIgnoreCase(config.getKeyAlgorithm())
+                || "ECDSA".equalsIgnoreCase(config.getKeyAlgorithm());
+        this.poolSize = ellipticCurve ? 0 : config.getKeyPairPoolSize();
+        this.keySize = config.getKeySize();
+    }
+
+    /**
+     * Takes a key pair from the pool, and triggers its refill
+     *
+     * @param keySize the size of the key in bits
+     * @return the key pair, in the format of KeyOperationsBackend.generateRSAKeyPair, or
+     *         null if the pool has no key pair of that size
+     */
+    public byte[][] take(int keySize) {
+        if (this.poolSize <= 0 || keySize != this.keySize) {
+            return null;
+        }
+        try {
+            for (PooledKeyPair candidate : repository.findTop5ByKeySizeOrderByIdAsc(keySize)) {
+                if (repository.claimById(candidate.getId()) == 1) {
+                    return candidate.toKeyPair();
+                }
+            }
+            return null;
+        } catch (RuntimeException e) {
+            logger.warn("Could not take a key pair from the pool: {}", e.getMessage());
+            return null;
+        } finally {
+            refill();
+        }
+    }
+
+    /**
+     * Generates key pairs in the background until the pool is full, unless a
+     * refill is already running
+     */
+    private void refill() {
+        ExecutorService current = this.executor;
+        if (current == null || this.poolSize <= 0 || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        current.execute(() -> {
+            try {
+                // the private keys are wrapped by the secret key
+                wrapKeyLoader.ensureLoaded();
+                long missing = poolSize - repository.countByKeySize(keySize);
+                for (long i = 0; i < missing && isRunning(); i++) {
+                    byte[][] keyPair = keyBackend.generateRSAKeyPair(keySize);
+                    repository.save(new PooledKeyPair(keySize, keyPair));
+                }
+            } catch (Exception e) {
+                logger.error("Failed to refill the key pair pool: {}", e.getMessage());
+            } finally {
+                refilling.set(false);
+            }
+        });
+    }
+
+    @Override
+    public void start() {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "key-pair-pool");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        refill();
+    }
+
+    @Override
+    public void stop() {
+        ExecutorService current = this.executor;
+        this.executor = null;
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.executor != null;
+    }
+}
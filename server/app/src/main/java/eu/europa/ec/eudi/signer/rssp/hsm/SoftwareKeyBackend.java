@@ -0,0 +1,168 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.hsm;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Key operations done in software, with the JCA providers of the JVM, instead
+ * of a HSM: meant for local benchmarking, load tests and development clusters,
+ * where no PKCS#11 module is available, and as a baseline to compare the
+ * performance of the HSM.
+ * The private keys (PKCS#8) are wrapped with AES-GCM under the same secret key
+ * that is stored, encrypted, in the database; a wrapped key is the IV followed
+ * by the encrypted key and the tag.
+ */
+@Component
+@ConditionalOnProperty(prefix = "csc.crypto", name = "keyBackend", havingValue = "software")
+public class SoftwareKeyBackend implements KeyOperationsBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(SoftwareKeyBackend.class);
+
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private volatile SecretKeySpec secretKey;
+
+    public SoftwareKeyBackend() {
+        logger.warn("The private keys are generated and used in software: do not use this backend in production");
+    }
+
+    @Override
+    public byte[] initSecretKey() {
+        byte[] secretKeyBytes = new byte[32];
+        secureRandom.nextBytes(secretKeyBytes);
+        setSecretKey(secretKeyBytes);
+        return secretKeyBytes;
+    }
+
+    @Override
+    public void setSecretKey(byte[] secretKeyBytes) {
+        this.secretKey = new SecretKeySpec(secretKeyBytes, "AES");
+    }
+
+    @Override
+    public byte[][] generateRSAKeyPair(int keySize) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(new RSAKeyGenParameterSpec(keySize, RSAKeyGenParameterSpec.F4), secureRandom);
+        KeyPair keyPair = generator.generateKeyPair();
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+
+        byte[][] result = new byte[3][];
+        result[0] = wrap(keyPair.getPrivate());
+        result[1] = publicKey.getModulus().toByteArray();
+        result[2] = publicKey.getPublicExponent().toByteArray();
+        return result;
+    }
+
+    @Override
+    public byte[][] generateECKeyPair(String curveOID) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec(curveOID), secureRandom);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        byte[][] result = new byte[2][];
+        result[0] = wrap(keyPair.getPrivate());
+        result[1] = keyPair.getPublic().getEncoded();
+        return result;
+    }
+
+    @Override
+    public byte[] signDTBSwithRSA(byte[] wrappedPrivateKey, byte[] DTBSR) throws Exception {
+        return sign("SHA256withRSA", unwrap(wrappedPrivateKey, "RSA"), DTBSR);
+    }
+
+    @Override
+    public byte[] signDTBSwithECDSA(byte[] wrappedPrivateKey, byte[] DTBSR) throws Exception {
+        // the JCA already returns the DER encoding
+        return sign("SHA256withECDSA", unwrap(wrappedPrivateKey, "EC"), DTBSR);
+    }
+
+    @Override
+    public boolean verifySignature(byte[] DTBSR, byte[] signature, byte[] publicKey) throws Exception {
+        boolean ellipticCurve = X9ObjectIdentifiers.id_ecPublicKey
+                .equals(SubjectPublicKeyInfo.getInstance(publicKey).getAlgorithm().getAlgorithm());
+        PublicKey pk = KeyFactory.getInstance(ellipticCurve ? "EC" : "RSA")
+                .generatePublic(new X509EncodedKeySpec(publicKey));
+
+        Signature verifier = Signature.getInstance(ellipticCurve ? "SHA256withECDSA" : "SHA256withRSA");
+        verifier.initVerify(pk);
+        verifier.update(DTBSR);
+        return verifier.verify(signature);
+    }
+
+    private static byte[] sign(String algorithm, PrivateKey privateKey, byte[] DTBSR)
+            throws GeneralSecurityException {
+        Signature signer = Signature.getInstance(algorithm);
+        signer.initSign(privateKey);
+        signer.update(DTBSR);
+        return signer.sign();
+    }
+
+    private byte[] wrap(PrivateKey privateKey) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        secureRandom.nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey(), new GCMParameterSpec(TAG_LENGTH, iv));
+        byte[] encrypted = cipher.doFinal(privateKey.getEncoded());
+
+        return ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted).array();
+    }
+
+    private PrivateKey unwrap(byte[] wrappedPrivateKey, String algorithm) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, secretKey(),
+                new GCMParameterSpec(TAG_LENGTH, wrappedPrivateKey, 0, IV_LENGTH));
+        byte[] encoded = cipher.doFinal(wrappedPrivateKey, IV_LENGTH, wrappedPrivateKey.length - IV_LENGTH);
+
+        return KeyFactory.getInstance(algorithm).generatePrivate(new PKCS8EncodedKeySpec(encoded));
+    }
+
+    private SecretKeySpec secretKey() {
+        SecretKeySpec current = this.secretKey;
+        if (current == null) {
+            throw new IllegalStateException("The secret key to wrap the private keys was not loaded");
+        }
+        return current;
+    }
+}
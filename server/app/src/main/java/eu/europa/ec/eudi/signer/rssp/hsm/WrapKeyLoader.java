@@ -0,0 +1,149 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.hsm;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+import java.util.Base64;
+import java.util.List;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.stereotype.Component;
+
+import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
+import eu.europa.ec.eudi.signer.rssp.entities.SecretKey;
+import eu.europa.ec.eudi.signer.rssp.repository.ConfigRepository;
+
+/**
+ * Loads into the key backend the secret key that wraps the private keys.
+ * The secret key is saved in the database, encrypted with a key derived
+ * (PBKDF2) from the dbEncryptionPassphrase; it is created on the first start.
+ * The derivation and the HSM make the loading slow, so it is not done when the
+ * bean is created but by the warm-up of the RSSP; the operations that need
+ * the secret key call ensureLoaded, which waits for the loading in progress.
+ */
+@Component
+public class WrapKeyLoader {
+
+    private static final int IVLENGTH = 12;
+
+    private final ConfigRepository configRepository;
+    private final KeyOperationsBackend keyBackend;
+    private final AuthProperties authProperties;
+
+    private volatile boolean loaded = false;
+
+    public WrapKeyLoader(ConfigRepository configRepository, KeyOperationsBackend keyBackend,
+            AuthProperties authProperties) {
+        this.configRepository = configRepository;
+        this.keyBackend = keyBackend;
+        this.authProperties = authProperties;
+    }
+
+    /**
+     * Loads the secret key in the key backend, unless it is already loaded.
+     * If the loading fails, it is tried again by the next call.
+     * IllegalArgumentException: if the passphrase or the salt is not set or
+     * the salt is not Base64; GeneralSecurityException: if they do not decrypt
+     * the secret key saved in the database
+     */
+    public void ensureLoaded() throws Exception {
+        if (this.loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!this.loaded) {
+                load();
+                this.loaded = true;
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return this.loaded;
+    }
+
+    private void load() throws Exception {
+        if (authProperties.getDbEncryptionPassphrase() == null || authProperties.getDbEncryptionSalt() == null) {
+            throw new IllegalArgumentException("The dbEncryptionPassphrase and the dbEncryptionSalt must be set");
+        }
+        char[] passphrase = authProperties.getDbEncryptionPassphrase().toCharArray();
+        byte[] saltBytes = Base64.getDecoder().decode(authProperties.getDbEncryptionSalt());
+
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        KeySpec spec = new PBEKeySpec(passphrase, saltBytes, 65536, 256);
+        Key key = new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "AES");
+
+        List<SecretKey> secretKeys = configRepository.findAll();
+        if (secretKeys.isEmpty()) {
+            // generates a secret key to wrap the private keys from the HSM
+            byte[] secretKeyBytes = this.keyBackend.initSecretKey();
+
+            byte[] iv = new byte[IVLENGTH];
+            SecureRandom secureRandom = new SecureRandom();
+            secureRandom.nextBytes(iv);
+
+            // encrypts the secret key before saving it in the db
+            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+            GCMParameterSpec algSpec = new GCMParameterSpec(128, iv);
+            c.init(Cipher.ENCRYPT_MODE, key, algSpec);
+            byte[] encryptedSecretKeyBytes = c.doFinal(secretKeyBytes);
+
+            ByteBuffer byteBuffer = ByteBuffer.allocate(iv.length + encryptedSecretKeyBytes.length);
+            byteBuffer.put(iv);
+            byteBuffer.put(encryptedSecretKeyBytes);
+
+            // saves in the db
+            SecretKey sk = new SecretKey(byteBuffer.array());
+            configRepository.save(sk);
+        } else {
+            // loads the encrypted key from the database
+            SecretKey sk = secretKeys.get(0);
+            byte[] encryptedSecretKeyBytes = sk.getSecretKey();
+
+            ByteBuffer byteBuffer = ByteBuffer.wrap(encryptedSecretKeyBytes);
+            byte[] iv = new byte[IVLENGTH];
+            byteBuffer.get(iv);
+            byte[] encryptedSecretKey = new byte[byteBuffer.remaining()];
+            byteBuffer.get(encryptedSecretKey);
+
+            // decrypts the secret key
+            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+            GCMParameterSpec algSpec = new GCMParameterSpec(128, iv);
+            c.init(Cipher.DECRYPT_MODE, key, algSpec);
+            byte[] secretKeyBytes;
+            try {
+                secretKeyBytes = c.doFinal(encryptedSecretKey);
+            } catch (AEADBadTagException e) {
+                throw new GeneralSecurityException("The secret key saved in the database cannot be decrypted"
+                        + " with the dbEncryptionPassphrase and the dbEncryptionSalt", e);
+            }
+
+            // loads the decrypted key to the HSM (or the software backend)
+            this.keyBackend.setSecretKey(secretKeyBytes);
+        }
+    }
+}
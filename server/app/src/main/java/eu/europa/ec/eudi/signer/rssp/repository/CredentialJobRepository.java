@@ -0,0 +1,71 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import javax.transaction.Transactional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import eu.europa.ec.eudi.signer.rssp.entities.CredentialJob;
+
+public interface CredentialJobRepository extends JpaRepository<CredentialJob, String> {
+
+    Optional<CredentialJob> findByOwnerAndAlias(String owner, String alias);
+
+    Optional<CredentialJob> findByIdAndOwner(String id, String owner);
+
+    /**
+     * @param now the current time
+     * @return the jobs waiting for an instance: pending, or running with a lease
+     *         that has ended (the instance running them stopped)
+     */
+    @Query("SELECT j FROM CredentialJob j WHERE j.status = :pending "
+            + "OR (j.status = :running AND (j.leaseUntil IS NULL OR j.leaseUntil < :now))")
+    List<CredentialJob> findClaimable(@Param("pending") CredentialJob.Status pending,
+            @Param("running") CredentialJob.Status running, @Param("now") Instant now);
+
+    /**
+     * Marks a job as running by an instance. A job is run by the caller that
+     * claimed it: if several instances try to claim the same job, only one of
+     * them gets 1 as the result, until its lease ends.
+     *
+     * @param id            the id of the job
+     * @param ownerInstance the id of the instance claiming the job
+     * @param leaseUntil    the end of the lease of the instance
+     * @param now           the current time
+     * @return the number of jobs claimed (0 or 1)
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE CredentialJob j SET j.status = :running, j.ownerInstance = :ownerInstance, "
+            + "j.leaseUntil = :leaseUntil, j.version = j.version + 1 WHERE j.id = :id AND (j.status = :pending "
+            + "OR (j.status = :running AND (j.leaseUntil IS NULL OR j.leaseUntil < :now)))")
+    int claim(@Param("id") String id, @Param("ownerInstance") String ownerInstance,
+            @Param("leaseUntil") Instant leaseUntil, @Param("now") Instant now,
+            @Param("pending") CredentialJob.Status pending, @Param("running") CredentialJob.Status running);
+
+    @Transactional
+    void deleteByOwnerAndAlias(String owner, String alias);
+}
@@ -23,6 +23,7 @@ import javax.transaction.Transactional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
 import eu.europa.ec.eudi.signer.rssp.entities.Credential;
@@ -62,6 +63,30 @@ public interface CredentialRepository extends PagingAndSortingRepository<Credent
 
     Optional<Credential> findByOwnerAndAlias(String owner, String alias);
 
+    /**
+     * Signing view of a credential: loads the credential together with its
+     * certificate chain in a single round trip, so that the lazy certificateChain
+     * association is already initialized when the signing path reads it (even
+     * outside of a transaction).
+     *
+     * @param owner owner id
+     * @param alias alias of the credential
+     * @return the credential with the certificate chain fetched
+     */
+    @Query("SELECT DISTINCT c FROM Credential c LEFT JOIN FETCH c.certificateChain WHERE c.owner = ?1 AND c.alias = ?2")
+    Optional<Credential> findWithCertificateChainByOwnerAndAlias(String owner, String alias);
+
+    /**
+     * Gets only the id of the credential, used to look up the cached signing
+     * material without loading the credential.
+     *
+     * @param owner owner id
+     * @param alias alias of the credential
+     * @return the id of the credential
+     */
+    @Query("SELECT c.id FROM Credential c WHERE c.owner = ?1 AND c.alias = ?2")
+    Optional<String> findIdByOwnerAndAlias(String owner, String alias);
+
     @Transactional
     void deleteByOwnerAndAlias(String owner, String alias);
 
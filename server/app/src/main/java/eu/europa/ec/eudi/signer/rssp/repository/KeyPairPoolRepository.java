@@ -0,0 +1,48 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.repository;
+
+import java.util.List;
+
+import javax.transaction.Transactional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import eu.europa.ec.eudi.signer.rssp.entities.PooledKeyPair;
+
+public interface KeyPairPoolRepository extends JpaRepository<PooledKeyPair, Long> {
+
+    long countByKeySize(int keySize);
+
+    List<PooledKeyPair> findTop5ByKeySizeOrderByIdAsc(int keySize);
+
+    /**
+     * Removes a key pair from the pool. A key pair is used by the caller that
+     * removed it: if several callers (or RSSP instances) read the same key pair,
+     * only one of them gets 1 as the result.
+     *
+     * @param id the id of the key pair
+     * @return the number of key pairs removed (0 or 1)
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM PooledKeyPair p WHERE p.id = ?1")
+    int claimById(Long id);
+}
@@ -0,0 +1,50 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.repository;
+
+import java.time.Instant;
+
+import javax.transaction.Transactional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import eu.europa.ec.eudi.signer.rssp.entities.SadUsage;
+
+public interface SadUsageRepository extends JpaRepository<SadUsage, String> {
+
+    /**
+     * Takes signatures from the count of a SAD. If several requests (or RSSP
+     * instances) use the same SAD, the count never goes below zero: a request
+     * that would exceed it gets 0 as the result.
+     *
+     * @param id            the id (jti) of the SAD
+     * @param numSignatures the number of signatures requested
+     * @return the number of SADs updated (0 or 1)
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE SadUsage s SET s.remainingSignatures = s.remainingSignatures - ?2 "
+            + "WHERE s.id = ?1 AND s.remainingSignatures >= ?2")
+    int consume(String id, int numSignatures);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM SadUsage s WHERE s.expiresAt < ?1")
+    int deleteExpired(Instant now);
+}
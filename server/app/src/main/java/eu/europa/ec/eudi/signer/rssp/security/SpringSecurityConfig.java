@@ -16,6 +16,7 @@
 
 package eu.europa.ec.eudi.signer.rssp.security;
 
+import static eu.europa.ec.eudi.signer.rssp.common.config.SignerConstants.API_URL_ROOT;
 import static eu.europa.ec.eudi.signer.rssp.common.config.SignerConstants.CSC_URL_ROOT;
 import eu.europa.ec.eudi.signer.rssp.security.openid4vp.OpenId4VPAuthenticationProvider;
 
@@ -107,6 +108,10 @@ public class SpringSecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers("/auth/**") // permit local login
                 .permitAll()
                 .antMatchers(CSC_URL_ROOT + "/info").permitAll()
+                .antMatchers(API_URL_ROOT + "/admin/**") // checked against the administration key
+                .permitAll()
+                .antMatchers("/actuator/health", "/actuator/health/**", "/actuator/prometheus") // served on management.server.port
+                .permitAll()
                 .anyRequest()
                 .authenticated();
         // Add our custom Token based authentication filter
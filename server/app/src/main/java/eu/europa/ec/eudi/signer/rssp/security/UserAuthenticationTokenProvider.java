@@ -16,6 +16,7 @@
 
 package eu.europa.ec.eudi.signer.rssp.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
@@ -35,14 +36,17 @@ public class UserAuthenticationTokenProvider {
     private static final Logger log = LoggerFactory.getLogger(UserAuthenticationTokenProvider.class);
 
     private final JwtProvider jwtProvider;
+    private final MeterRegistry meterRegistry;
 
-    public UserAuthenticationTokenProvider(AppProperties appProperties, AuthProperties authProperties) {
+    public UserAuthenticationTokenProvider(AppProperties appProperties, AuthProperties authProperties,
+            MeterRegistry meterRegistry) {
         Auth jwtConfig = appProperties.getAuth();
         JwtProviderConfig jwtProviderConfig = new JwtProviderConfig();
         jwtProviderConfig.setLifetimeMinutes(jwtConfig.getLifetimeMinutes());
         jwtProviderConfig.setType(jwtConfig.getType());
         jwtProviderConfig.setTokenSecret(authProperties.getJwtTokenSecret());
         jwtProvider = new JwtProvider(jwtProviderConfig);
+        this.meterRegistry = meterRegistry;
     }
 
     public String createToken(Authentication authentication) {
@@ -70,6 +74,8 @@ public class UserAuthenticationTokenProvider {
         JwtToken token = jwtProvider.validateToken(authToken);
         if (!token.isValid()) {
             log.error(token.getError());
+            this.meterRegistry.counter("rssp.jwt.validation.failures", "token", "access",
+                    "reason", token.isExpired() ? "expired" : "invalid").increment();
         }
         return token;
     }
@@ -18,6 +18,7 @@ package eu.europa.ec.eudi.signer.rssp.security.jwt;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.SignatureAlgorithm;
@@ -28,7 +29,10 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
 
 public class JwtProvider {
 
@@ -42,6 +46,14 @@ public class JwtProvider {
     }
 
     public JwtToken createToken(String subject) {
+        return createToken(subject, Collections.emptyMap());
+    }
+
+    /**
+     * Creates a token with a unique id (jti) and the given claims, in addition
+     * to the subject, the dates and the type
+     */
+    public JwtToken createToken(String subject, Map<String, Object> claims) {
 
         // Use java8 time library for better expiry handling
         Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.SECONDS);
@@ -51,12 +63,18 @@ public class JwtProvider {
         log.info("Issued JWT token at: {}", issuedAt);
 
         JwtToken token = new JwtToken(jwtConfig.getType(), subject);
+        token.setId(UUID.randomUUID().toString());
+        token.setExpiration(Date.from(expiration));
+        token.setClaims(claims);
 
-        String rawToken = Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
+                .setId(token.getId())
                 .setSubject(subject)
                 .setIssuedAt(Date.from(issuedAt))
                 .setExpiration(Date.from(expiration))
-                .claim(TYPE_CLAIM_NAME, jwtConfig.getType())
+                .claim(TYPE_CLAIM_NAME, jwtConfig.getType());
+        claims.forEach(builder::claim);
+        String rawToken = builder
                 .signWith(SignatureAlgorithm.HS512, jwtConfig.getTokenSecret())
                 .compact();
         token.setRawToken(rawToken);
@@ -71,6 +89,9 @@ public class JwtProvider {
 
         JwtToken token = new JwtToken(claims.getSubject(),
                 claims.get(TYPE_CLAIM_NAME).toString());
+        token.setId(claims.getId());
+        token.setExpiration(claims.getExpiration());
+        token.setClaims(claims);
         token.setRawToken(rawToken);
         return token;
     }
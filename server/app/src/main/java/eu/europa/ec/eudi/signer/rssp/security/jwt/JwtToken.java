@@ -16,10 +16,17 @@
 
 package eu.europa.ec.eudi.signer.rssp.security.jwt;
 
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
 public class JwtToken {
     private String rawToken;
+    private String id;
     private String subject;
     private String type;
+    private Date expiration;
+    private Map<String, Object> claims = Collections.emptyMap();
     private String error;
     private boolean valid;
     private boolean expired;
@@ -68,6 +75,14 @@ public class JwtToken {
         this.rawToken = rawToken;
     }
 
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
     public String getSubject() {
         return subject;
     }
@@ -84,6 +99,22 @@ public class JwtToken {
         this.type = type;
     }
 
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    public void setExpiration(Date expiration) {
+        this.expiration = expiration;
+    }
+
+    public Object getClaim(String name) {
+        return claims.get(name);
+    }
+
+    public void setClaims(Map<String, Object> claims) {
+        this.claims = claims;
+    }
+
     public String getError() {
         return error;
     }
@@ -22,8 +22,12 @@ import java.util.Map;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.trace.Tracer;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -45,6 +49,7 @@ import eu.europa.ec.eudi.signer.rssp.ejbca.EJBCAService;
 import eu.europa.ec.eudi.signer.rssp.entities.User;
 import eu.europa.ec.eudi.signer.rssp.repository.UserRepository;
 import eu.europa.ec.eudi.signer.rssp.security.UserAuthenticationTokenProvider;
+import eu.europa.ec.eudi.signer.rssp.util.TracingUtils;
 
 import id.walt.mdoc.doc.MDoc;
 import id.walt.mdoc.issuersigned.IssuerSignedItem;
@@ -59,15 +64,20 @@ public class OpenId4VPService {
     private final UserAuthenticationTokenProvider tokenProvider;
     private final EJBCAService ejbcaService;
     private final AuthProperties authProperties;
+    private final MeterRegistry meterRegistry;
+    private final Tracer tracer;
 
     @Autowired
     public OpenId4VPService(UserRepository repository, AuthenticationManager authenticationManager,
-            UserAuthenticationTokenProvider tokenProvider, EJBCAService ejbcaService, AuthProperties authProperties) {
+            UserAuthenticationTokenProvider tokenProvider, EJBCAService ejbcaService, AuthProperties authProperties,
+            MeterRegistry meterRegistry, Tracer tracer) {
         this.repository = repository;
         this.authenticationManager = authenticationManager;
         this.tokenProvider = tokenProvider;
         this.ejbcaService = ejbcaService;
         this.authProperties = authProperties;
+        this.meterRegistry = meterRegistry;
+        this.tracer = tracer;
     }
 
     public static class UserOIDTemporaryInfo {
@@ -130,10 +140,8 @@ public class OpenId4VPService {
         catch (JSONException e){
             throw new Exception("The response from the Verifier doesn't contain a correctly formatted JSON string.");
         }
-        VPValidator validator = new VPValidator(vp, VerifierClient.PresentationDefinitionId, VerifierClient.PresentationDefinitionInputDescriptorsId,
-                this.ejbcaService);
         Map<Integer, String> logsMap = new HashMap<>();
-        MDoc document = validator.loadAndVerifyDocumentForVP(logsMap);
+        MDoc document = validate(vp, this.ejbcaService, logsMap);
         UserOIDTemporaryInfo user = loadUserFromDocument(document);
         String token = addToDBandCreateJWTToken(user.getUser(), user.getGivenName(), user.getFamilyName(), logsMap);
         return new AuthResponse(token);
@@ -164,12 +172,34 @@ public class OpenId4VPService {
             throw new Exception("The response from the Verifier doesn't contain a correctly formatted JSON string.");
         }
 
-        VPValidator validator = new VPValidator(responseVerifier, VerifierClient.PresentationDefinitionId,
-                VerifierClient.PresentationDefinitionInputDescriptorsId, ejbcaService);
-        MDoc document = validator.loadAndVerifyDocumentForVP(logsMap);
+        MDoc document = validate(responseVerifier, ejbcaService, logsMap);
         return loadUserFromDocument(document).getUser();
     }
 
+    /**
+     * Validates the VP Token received from the verifier in a span (vp validation),
+     * recording the latency of the validation (rssp.vp.validation)
+     */
+    private MDoc validate(JSONObject vp, EJBCAService ejbcaService, Map<Integer, String> logsMap)
+            throws VerifiablePresentationVerificationException {
+        long start = System.nanoTime();
+        String outcome = "invalid";
+        try {
+            VPValidator validator = new VPValidator(vp, VerifierClient.PresentationDefinitionId,
+                    VerifierClient.PresentationDefinitionInputDescriptorsId, ejbcaService, this.tracer);
+            MDoc document = TracingUtils.inSpan(this.tracer.spanBuilder("vp validation"),
+                    span -> validator.loadAndVerifyDocumentForVP(logsMap));
+            outcome = "valid";
+            return document;
+        } finally {
+            Timer.builder("rssp.vp.validation")
+                    .description("Latency of the validation of the VP Tokens received from the verifier")
+                    .tag("outcome", outcome)
+                    .register(this.meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
     public UserOIDTemporaryInfo loadUserFromDocument(MDoc document) throws VPTokenInvalid, NoSuchAlgorithmException {
         List<IssuerSignedItem> l = document.getIssuerSignedItems(document.getDocType().getValue());
 
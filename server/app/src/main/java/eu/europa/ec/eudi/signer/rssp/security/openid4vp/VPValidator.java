@@ -28,7 +28,10 @@ import java.util.stream.IntStream;
 import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
 import eu.europa.ec.eudi.signer.rssp.common.error.VerifiablePresentationVerificationException;
 import eu.europa.ec.eudi.signer.rssp.ejbca.EJBCAService;
+import eu.europa.ec.eudi.signer.rssp.util.TracingUtils.SpanStages;
 
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Tracer;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -52,14 +55,25 @@ public class VPValidator {
     private final String presentationDefinitionId;
     private final String keyID;
     private final EJBCAService ejbcaService;
+    private final Tracer tracer;
 
     public VPValidator(JSONObject vp, String presentation_definition_id,
             String presentation_definition_input_descriptors_id, EJBCAService ejbcaService) {
+        this(vp, presentation_definition_id, presentation_definition_input_descriptors_id, ejbcaService,
+                OpenTelemetry.noop().getTracer(VPValidator.class.getName()));
+    }
+
+    /**
+     * @param tracer the tracer of the spans of the stages of the validation
+     */
+    public VPValidator(JSONObject vp, String presentation_definition_id,
+            String presentation_definition_input_descriptors_id, EJBCAService ejbcaService, Tracer tracer) {
         this.verifiablePresentation = vp;
         this.presentationDefinitionId = presentation_definition_id;
         this.presentationDefinitionInputDescriptorsId = presentation_definition_input_descriptors_id;
         this.keyID = "keyID";
         this.ejbcaService = ejbcaService;
+        this.tracer = tracer;
     }
 
     /**
@@ -159,7 +173,7 @@ public class VPValidator {
         InputStream in = new ByteArrayInputStream(Objects.requireNonNull(issuerAuth.getX5Chain()));
         X509Certificate cert = (X509Certificate) factory.generateCertificate(in);
 
-        X509Certificate issuerCertificate = this.ejbcaService.searchForIssuerCertificate(cert.getIssuerX500Principal());
+        X509Certificate issuerCertificate = this.ejbcaService.searchForIssuerCertificate(cert);
         if (issuerCertificate == null) {
             throw new Exception("Issuer ("+cert.getIssuerX500Principal().getName()+") of the VPToken is not trustworthy.");
         }
@@ -250,13 +264,33 @@ public class VPValidator {
         return logs;
     }
 
+    /**
+     * Validates the VP Token, with a span for each stage of the validation
+     * (vp.presentation_submission, vp.parse, vp.issuer_certificate,
+     * vp.issuer_signature, vp.integrity and vp.validity)
+     */
     public MDoc loadAndVerifyDocumentForVP(Map<Integer, String> logs)
             throws VerifiablePresentationVerificationException {
+        SpanStages stages = new SpanStages(this.tracer);
+        try {
+            return loadAndVerifyDocumentForVP(logs, stages);
+        } catch (VerifiablePresentationVerificationException | RuntimeException e) {
+            stages.fail(e);
+            throw e;
+        } finally {
+            stages.end();
+        }
+    }
+
+    private MDoc loadAndVerifyDocumentForVP(Map<Integer, String> logs, SpanStages stages)
+            throws VerifiablePresentationVerificationException {
         try {
             // Validate the Presentation Submission and get the Path from the
             // descriptor_map.
+            stages.next("vp.presentation_submission");
             int pos = validatePresentationSubmission();
 
+            stages.next("vp.parse");
             DeviceResponse vpToken = loadVpTokenToDeviceResponse();
 
             // Verify that the status in the vpToken is equal "success"
@@ -271,6 +305,7 @@ public class VPValidator {
             X509Certificate certificateFromIssuerAuth = null;
 
             // Validate Certificate from the MSO header:
+            stages.next("vp.issuer_certificate");
             try {
                 List<X509Certificate> certificateList = getAndValidateCertificateFromIssuerAuth(document);
                 certificateFromIssuerAuth = certificateList.get(0);
@@ -299,6 +334,7 @@ public class VPValidator {
                         "Certificate in issuerAuth is not valid.", VerifiablePresentationVerificationException.Default);
 
             // Verify the Digital Signature in the Issuer Auth
+            stages.next("vp.issuer_signature");
             if (!document.verifySignature(provider, this.keyID))
                 throw new VerifiablePresentationVerificationException(SignerError.SignatureIssuerAuthInvalid,
                         "The IssuerAuth Signature is not valid.", VerifiablePresentationVerificationException.Signature);
@@ -319,6 +355,7 @@ public class VPValidator {
 
             // Calcular o valor do digest de cada IssuerSignedItem do DeviceResponse e
             // verificar que os digests calculados são iguais ao dos MSO
+            stages.next("vp.integrity");
             if (!document.verifyIssuerSignedItems())
                 throw new VerifiablePresentationVerificationException(SignerError.IntegrityVPTokenNotVerified,
                         "The digest of the IssuerSignedItems are not equal to the digests in MSO.",
@@ -335,6 +372,7 @@ public class VPValidator {
             logs = addIntegrityLog(mso, document, nameSpaces, logs);
 
             // Verify the ValidityInfo:
+            stages.next("vp.validity");
             validateValidityInfoElements(document, mso.getValidityInfo(), certificateFromIssuerAuth.getNotBefore().toInstant(), certificateFromIssuerAuth.getNotAfter().toInstant());
 
             System.out.println("Verification Success.");
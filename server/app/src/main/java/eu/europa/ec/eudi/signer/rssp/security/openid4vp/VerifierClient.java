@@ -24,6 +24,15 @@ import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.json.JSONException;
@@ -38,6 +47,7 @@ import eu.europa.ec.eudi.signer.csc.payload.RedirectLinkResponse;
 import eu.europa.ec.eudi.signer.rssp.common.config.VerifierProperties;
 import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
 import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
+import eu.europa.ec.eudi.signer.rssp.util.TracingUtils;
 import eu.europa.ec.eudi.signer.rssp.util.WebUtils;
 
 /**
@@ -56,10 +66,14 @@ public class VerifierClient {
 
     private final VerifierProperties verifierProperties;
     private final VerifierCreatedVariables verifierVariables;
+    private final MeterRegistry meterRegistry;
+    private final Tracer tracer;
 
-    public VerifierClient(VerifierProperties verifierProperties) {
+    public VerifierClient(VerifierProperties verifierProperties, MeterRegistry meterRegistry, Tracer tracer) {
         this.verifierProperties = verifierProperties;
         this.verifierVariables = new VerifierCreatedVariables();
+        this.meterRegistry = meterRegistry;
+        this.tracer = tracer;
     }
 
     /**
@@ -120,8 +134,11 @@ public class VerifierClient {
         // Send HTTP Post Request & Receives the Response
         JSONObject responseFromVerifierAfterInitPresentation;
         try {
-            responseFromVerifierAfterInitPresentation = httpRequestToInitPresentation(
-                    jsonBodyToInitPresentation.toString(), headers);
+            responseFromVerifierAfterInitPresentation = TracingUtils.inSpan(
+                    this.tracer.spanBuilder("verifier presentation_request")
+                            .setSpanKind(SpanKind.CLIENT)
+                            .setAttribute("verifier.operation", type),
+                    span -> httpRequestToInitPresentation(jsonBodyToInitPresentation.toString(), headers));
         } catch (Exception e) {
             String logMessage = SignerError.FailedConnectionToVerifier.getCode()
                     + " (initPresentationTransaction in VerifierClient.class) "
@@ -189,33 +206,77 @@ public class VerifierClient {
 
         String message = null;
         int responseCode = 400;
+        int polls = 0;
+        String outcome = "timeout";
         long startTime = System.currentTimeMillis();
-        while (responseCode != 200 && (System.currentTimeMillis() - startTime) < 60000) {
-            WebUtils.StatusAndMessage response;
-            try {
-                response = WebUtils.httpGetRequests(url, headers);
-            } catch (Exception e) {
-                String logMessage = SignerError.FailedConnectionToVerifier.getCode()
-                        + " (getVPTokenFromVerifier in VerifierClient.class) "
-                        + SignerError.FailedConnectionToVerifier.getDescription() + ": " + e.getMessage();
-                log.error(logMessage);
-                throw new ApiException(SignerError.FailedConnectionToVerifier,
-                        SignerError.FailedConnectionToVerifier.getFormattedMessage());
+        // one span for the whole wait, with an event per poll of the verifier
+        Span span = this.tracer.spanBuilder("verifier await_presentation")
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute("verifier.operation", type)
+                .startSpan();
+        try {
+            while (responseCode != 200 && (System.currentTimeMillis() - startTime) < 60000) {
+                WebUtils.StatusAndMessage response;
+                polls++;
+                try {
+                    response = WebUtils.httpGetRequests(url, headers);
+                } catch (Exception e) {
+                    outcome = "error";
+                    span.recordException(e);
+                    String logMessage = SignerError.FailedConnectionToVerifier.getCode()
+                            + " (getVPTokenFromVerifier in VerifierClient.class) "
+                            + SignerError.FailedConnectionToVerifier.getDescription() + ": " + e.getMessage();
+                    log.error(logMessage);
+                    throw new ApiException(SignerError.FailedConnectionToVerifier,
+                            SignerError.FailedConnectionToVerifier.getFormattedMessage());
+                }
+                span.addEvent("poll", Attributes.of(AttributeKey.longKey("http.status_code"),
+                        (long) response.getStatusCode()));
+
+                if (response.getStatusCode() == 404) {
+                    outcome = "not_found";
+                    throw new FailedConnectionVerifier();
+                } else if (response.getStatusCode() == 200) {
+                    responseCode = 200;
+                    message = response.getMessage();
+                    outcome = "received";
+                } else
+                    TimeUnit.SECONDS.sleep(1);
             }
-
-            if (response.getStatusCode() == 404)
-                throw new FailedConnectionVerifier();
-            else if (response.getStatusCode() == 200) {
-                responseCode = 200;
-                message = response.getMessage();
-            } else
-                TimeUnit.SECONDS.sleep(1);
+        } finally {
+            span.setAttribute("verifier.polls", polls);
+            span.setAttribute("verifier.outcome", outcome);
+            if (!outcome.equals("received")) {
+                span.setStatus(StatusCode.ERROR, outcome);
+            }
+            span.end();
+            recordPresentation(type, outcome, polls, variables.getCreatedAt());
         }
         if (responseCode == 400 && (System.currentTimeMillis() - startTime) >= 60000)
             throw new TimeoutException();
         return message;
     }
 
+    /**
+     * Records the polls of the verifier made for a presentation, and the time
+     * from the presentation request to the end of the polling (for a received
+     * presentation, the time the user took to answer in the wallet)
+     */
+    private void recordPresentation(String type, String outcome, int polls, long createdAt) {
+        DistributionSummary.builder("rssp.verifier.polls")
+                .description("Requests to the verifier made to get a presentation")
+                .tag("type", type)
+                .tag("outcome", outcome)
+                .register(this.meterRegistry)
+                .record(polls);
+        Timer.builder("rssp.verifier.presentation")
+                .description("Time from the presentation request to the end of the polling of the verifier")
+                .tag("type", type)
+                .tag("outcome", outcome)
+                .register(this.meterRegistry)
+                .record(System.nanoTime() - createdAt, TimeUnit.NANOSECONDS);
+    }
+
     private boolean operationTypeIsInvalid(String type) {
         return !Objects.equals(type, Authorization) && !Objects.equals(type, Authentication);
     }
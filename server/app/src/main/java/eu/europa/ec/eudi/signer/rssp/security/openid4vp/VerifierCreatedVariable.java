@@ -22,11 +22,14 @@ public class VerifierCreatedVariable {
     private String type;
     private String nonce;
     private String presentation_id;
+    // System.nanoTime() when the presentation was requested
+    private final long createdAt;
 
     public VerifierCreatedVariable(String type, String nonce, String presentation_id) {
         this.type = type;
         this.nonce = nonce;
         this.presentation_id = presentation_id;
+        this.createdAt = System.nanoTime();
     }
 
     public String getType() {
@@ -53,6 +56,10 @@ public class VerifierCreatedVariable {
         this.presentation_id = presentation_id;
     }
 
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -1,23 +0,0 @@
-/*
- Copyright 2024 European Commission
-
- Licensed under the Apache License, Version 2.0 (the "License");
- you may not use this file except in compliance with the License.
- You may obtain a copy of the License at
-
-      https://www.apache.org/licenses/LICENSE-2.0
-
- Unless required by applicable law or agreed to in writing, software
- distributed under the License is distributed on an "AS IS" BASIS,
- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- See the License for the specific language governing permissions and
- limitations under the License.
- */
-
-package eu.europa.ec.eudi.signer.rssp;
-
-public class threadConfig {
-    public static final int timeSleepThread = 300;
-    public static final int fileAgeDelete = 300;
-    public static final String diretorio = "pdf";
-}
@@ -0,0 +1,96 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.util;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+
+public class TracingUtils {
+
+    @FunctionalInterface
+    public interface SpanBody<T, E extends Exception> {
+        T run(Span span) throws E;
+    }
+
+    /**
+     * Runs the body in a new span, which is the current span while the body
+     * runs and records the exception thrown by the body
+     *
+     * @param spanBuilder the builder of the span
+     * @param body        the code to trace
+     * @return the value returned by the body
+     */
+    public static <T, E extends Exception> T inSpan(SpanBuilder spanBuilder, SpanBody<T, E> body) throws E {
+        Span span = spanBuilder.startSpan();
+        Scope scope = span.makeCurrent();
+        try {
+            return body.run(span);
+        } catch (Exception e) {
+            setError(span, e);
+            throw e;
+        } finally {
+            scope.close();
+            span.end();
+        }
+    }
+
+    public static void setError(Span span, Throwable e) {
+        span.recordException(e);
+        span.setStatus(StatusCode.ERROR, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+    }
+
+    /**
+     * Consecutive spans, one per stage of a process: starting a stage ends the
+     * previous one. Each stage is the current span until the next one starts.
+     * Used from a single thread.
+     */
+    public static class SpanStages {
+
+        private final Tracer tracer;
+        private Span span;
+        private Scope scope;
+
+        public SpanStages(Tracer tracer) {
+            this.tracer = tracer;
+        }
+
+        public void next(String name) {
+            end();
+            this.span = this.tracer.spanBuilder(name).startSpan();
+            this.scope = this.span.makeCurrent();
+        }
+
+        // marks the stage in progress as failed
+        public void fail(Throwable e) {
+            if (this.span != null) {
+                setError(this.span, e);
+            }
+        }
+
+        public void end() {
+            if (this.span != null) {
+                this.scope.close();
+                this.span.end();
+                this.span = null;
+                this.scope = null;
+            }
+        }
+    }
+}
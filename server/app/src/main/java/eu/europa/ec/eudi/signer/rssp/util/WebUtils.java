@@ -105,6 +105,11 @@ public class WebUtils {
         return httpClient.execute(request);
     }
 
+    public static HttpResponse httpGetRequest(HttpClient httpClient, String url, Map<String, String> headers)
+            throws Exception {
+        return httpGetRequestCommon(httpClient, url, headers);
+    }
+
     public static HttpResponse httpGetRequestsWithCustomSSLContext(TrustManager[] tm, KeyManager[] keystore,
             String url, Map<String, String> headers) throws Exception {
         // Create SSLContext
@@ -137,6 +142,11 @@ public class WebUtils {
         return httpPostRequestCommon(httpClient, url, headers, body);
     }
 
+    public static HttpResponse httpPostRequest(HttpClient httpClient, String url, Map<String, String> headers,
+            String body) throws Exception {
+        return httpPostRequestCommon(httpClient, url, headers, body);
+    }
+
     public static HttpResponse httpPostRequestsWithCustomSSLContext(TrustManager[] tm, KeyManager[] keystore,
             String url, String jsonBody,
             Map<String, String> headers) throws Exception {
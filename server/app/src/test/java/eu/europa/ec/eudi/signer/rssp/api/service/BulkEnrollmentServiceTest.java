@@ -0,0 +1,245 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.api.service;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.europa.ec.eudi.signer.rssp.api.payload.BulkEnrollmentRequest;
+import eu.europa.ec.eudi.signer.rssp.api.payload.BulkEnrollmentStatus;
+import eu.europa.ec.eudi.signer.rssp.api.services.BulkEnrollmentService;
+import eu.europa.ec.eudi.signer.rssp.api.services.CredentialService;
+import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CryptoConfig;
+import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
+import eu.europa.ec.eudi.signer.rssp.common.error.SignerError;
+import eu.europa.ec.eudi.signer.rssp.crypto.CryptoService;
+import eu.europa.ec.eudi.signer.rssp.crypto.PendingCredential;
+import eu.europa.ec.eudi.signer.rssp.crypto.TrustAnchorStore;
+import eu.europa.ec.eudi.signer.rssp.ejbca.EJBCAProperties;
+import eu.europa.ec.eudi.signer.rssp.ejbca.EJBCAService;
+import eu.europa.ec.eudi.signer.rssp.ejbca.StubEjbca;
+import eu.europa.ec.eudi.signer.rssp.entities.Credential;
+import eu.europa.ec.eudi.signer.rssp.repository.CredentialRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
+
+public class BulkEnrollmentServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final CredentialRepository credentialRepository = mock(CredentialRepository.class);
+	private final CredentialService credentialService = mock(CredentialService.class);
+	private final CryptoService cryptoService = mock(CryptoService.class);
+	private BulkEnrollmentService bulkEnrollmentService;
+	private StubEjbca.Tls tls;
+
+	@Before
+	public void setUp() throws Exception {
+		tls = new StubEjbca.Tls(folder.getRoot().toPath());
+		String certificateRequest = StubEjbca.certificateRequest("CN=John Doe");
+		CryptoConfig config = new CryptoConfig();
+		config.setBulkSaveBatchSize(2);
+		CSCProperties cscProperties = mock(CSCProperties.class);
+		when(cscProperties.getCrypto()).thenReturn(config);
+		bulkEnrollmentService = new BulkEnrollmentService(credentialRepository, credentialService, cryptoService,
+				mock(AuthProperties.class), cscProperties);
+
+		when(cryptoService.prepareCredential(anyString(), any(), any(), any(), anyString(), any()))
+				.thenAnswer(i -> new PendingCredential(i.getArgument(0), i.getArgument(1), i.getArgument(2),
+						i.getArgument(3), i.getArgument(4), i.getArgument(5), new byte[0][], certificateRequest));
+		when(cryptoService.enrollCredential(any(PendingCredential.class))).thenAnswer(i -> {
+			PendingCredential pending = i.getArgument(0);
+			if (pending.getAlias().equals("rejected")) {
+				throw new ApiException(SignerError.FailedCreatingCertificate, "rejected by the CA");
+			}
+			Credential credential = new Credential();
+			credential.setOwner(pending.getOwner());
+			credential.setAlias(pending.getAlias());
+			return credential;
+		});
+	}
+
+	@After
+	public void tearDown() {
+		bulkEnrollmentService.close();
+	}
+
+	private static BulkEnrollmentRequest.Item item(String owner, String alias) {
+		BulkEnrollmentRequest.Item item = new BulkEnrollmentRequest.Item();
+		item.setOwner(owner);
+		item.setAlias(alias);
+		item.setGivenName("John");
+		item.setSurname("Doe");
+		item.setSubjectDN("John Doe");
+		item.setCountryCode("PT");
+		return item;
+	}
+
+	private static BulkEnrollmentStatus await(BulkEnrollmentStatus status) throws InterruptedException {
+		for (int i = 0; i < 1000 && !status.isCompleted(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(status.isCompleted());
+		return status;
+	}
+
+	// The credentials are saved in batches, and a failure doesn't stop the others
+	@Test
+	public void test_submit_saves_credentials_in_batches() throws Exception {
+		BulkEnrollmentRequest request = new BulkEnrollmentRequest();
+		request.setCredentials(Arrays.asList(item("owner1", "a"), item("owner2", "rejected"), item("owner3", "b"),
+				item("owner4", "c")));
+
+		BulkEnrollmentStatus status = await(bulkEnrollmentService.submit(request));
+
+		assertEquals(4, status.getTotal());
+		assertEquals(3, status.getSucceeded());
+		assertEquals(1, status.getFailed());
+		assertEquals(1, status.getFailures().get(0).getIndex());
+		assertEquals("rejected by the CA", status.getFailures().get(0).getError());
+		verify(credentialRepository, times(2)).saveAll(anyList());
+		assertSame(status, bulkEnrollmentService.getStatus(status.getBatchId()).get());
+	}
+
+	// An alias repeated in the request is only created once
+	@Test
+	public void test_submit_rejects_repeated_alias() throws Exception {
+		BulkEnrollmentRequest request = new BulkEnrollmentRequest();
+		request.setCredentials(Arrays.asList(item("owner", "a"), item("owner", "a")));
+
+		BulkEnrollmentStatus status = await(bulkEnrollmentService.submit(request));
+
+		assertEquals(1, status.getSucceeded());
+		assertEquals(1, status.getFailed());
+		verify(cryptoService, times(1)).prepareCredential(anyString(), any(), any(), any(), anyString(), any());
+	}
+
+	// If a batch can't be saved, the credentials are saved one by one
+	@Test
+	public void test_submit_falls_back_to_single_saves() throws Exception {
+		when(credentialRepository.saveAll(anyList())).thenThrow(new RuntimeException("duplicate"));
+		when(credentialRepository.save(any(Credential.class))).thenAnswer(i -> {
+			Credential credential = i.getArgument(0);
+			if (credential.getAlias().equals("b")) {
+				throw new RuntimeException("duplicate");
+			}
+			return credential;
+		});
+		BulkEnrollmentRequest request = new BulkEnrollmentRequest();
+		request.setCredentials(Arrays.asList(item("owner", "a"), item("owner", "b")));
+
+		BulkEnrollmentStatus status = await(bulkEnrollmentService.submit(request));
+
+		assertEquals(1, status.getSucceeded());
+		assertEquals(1, status.getFailed());
+		assertEquals("b", status.getFailures().get(0).getAlias());
+	}
+
+	// An empty request is rejected
+	@Test(expected = ApiException.class)
+	public void test_submit_empty_request() {
+		BulkEnrollmentRequest request = new BulkEnrollmentRequest();
+		request.setCredentials(List.of());
+		bulkEnrollmentService.submit(request);
+	}
+
+	// The certificates are requested from the EJBCA through the pooled client, with
+	// at most maxConcurrentRequestsPerCA requests to the CA in progress
+	@Test
+	public void test_submit_enrolls_with_ejbca() throws Exception {
+		try (StubEjbca ejbca = new StubEjbca(0, 16, tls.getSslContext(), 50)) {
+			ejbca.start();
+			EJBCAService ejbcaService = enrollWith(ejbca, 2, 5000);
+			BulkEnrollmentRequest request = new BulkEnrollmentRequest();
+			request.setCredentials(Arrays.asList(item("owner", "a"), item("owner", "b"), item("owner", "c"),
+					item("owner", "d"), item("owner", "e"), item("owner", "f"), item("owner", "g"),
+					item("owner", "h")));
+
+			BulkEnrollmentStatus status = await(bulkEnrollmentService.submit(request));
+			ejbcaService.close();
+
+			assertEquals(8, status.getSucceeded());
+			assertEquals(8, ejbca.getRequests());
+			assertEquals(2, ejbca.getMaxInProgress());
+			// the connection is released to the pool before the permit of the CA
+			assertTrue(ejbca.getConnections() <= 2);
+		}
+	}
+
+	// An EJBCA that doesn't answer fails the enrollment after the socket timeout
+	@Test
+	public void test_submit_times_out_with_ejbca() throws Exception {
+		try (StubEjbca ejbca = new StubEjbca(0, 16, tls.getSslContext(), 3000)) {
+			ejbca.start();
+			EJBCAService ejbcaService = enrollWith(ejbca, 2, 200);
+			BulkEnrollmentRequest request = new BulkEnrollmentRequest();
+			request.setCredentials(List.of(item("owner", "a")));
+
+			long start = System.currentTimeMillis();
+			BulkEnrollmentStatus status = await(bulkEnrollmentService.submit(request));
+			ejbcaService.close();
+
+			assertEquals(1, status.getFailed());
+			assertTrue(System.currentTimeMillis() - start < 3000);
+		}
+	}
+
+	private EJBCAService enrollWith(StubEjbca ejbca, int maxConcurrentRequestsPerCA, int socketTimeoutMillis)
+			throws Exception {
+		EJBCAProperties.CountryConfig country = new EJBCAProperties.CountryConfig();
+		country.setCountry("PT");
+		country.setCertificateAuthorityName("PID Issuer CA - PT 01");
+
+		EJBCAProperties properties = new EJBCAProperties();
+		properties.setCahost("localhost:" + ejbca.getPort());
+		properties.setClientP12ArchiveFilepath(tls.getClientP12().toString());
+		properties.setClientP12ArchivePassword(StubEjbca.Tls.PASSWORD);
+		properties.setManagementCA(tls.getManagementCA().toString());
+		properties.setEndpoint("/certificate/pkcs10enroll");
+		properties.setCertificateProfileName("ENDUSER");
+		properties.setEndEntityProfileName("EMPTY");
+		properties.setUsername("username");
+		properties.setPassword("password");
+		properties.setCountries(List.of(country));
+		properties.setMaxConcurrentRequestsPerCA(maxConcurrentRequestsPerCA);
+		properties.setSocketTimeoutMillis(socketTimeoutMillis);
+
+		EJBCAService ejbcaService = new EJBCAService(properties, mock(TrustAnchorStore.class),
+				new SimpleMeterRegistry(), OpenTelemetry.noop().getTracer("test"));
+		when(cryptoService.enrollCredential(any(PendingCredential.class))).thenAnswer(i -> {
+			PendingCredential pending = i.getArgument(0);
+			ejbcaService.certificateRequest(pending.getCertificateRequest(), pending.getCountryCode());
+			Credential credential = new Credential();
+			credential.setOwner(pending.getOwner());
+			credential.setAlias(pending.getAlias());
+			return credential;
+		});
+		return ejbcaService;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.api.service;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.europa.ec.eudi.signer.rssp.api.services.CredentialJobService;
+import eu.europa.ec.eudi.signer.rssp.api.services.CredentialService;
+import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CryptoConfig;
+import eu.europa.ec.eudi.signer.rssp.entities.CredentialJob;
+import eu.europa.ec.eudi.signer.rssp.repository.CredentialJobRepository;
+
+public class CredentialJobServiceTest {
+
+	private final CredentialJobRepository jobRepository = mock(CredentialJobRepository.class);
+	private final CredentialService credentialService = mock(CredentialService.class);
+	private CredentialJobService credentialJobService;
+
+	@Before
+	public void setUp() {
+		CSCProperties cscProperties = mock(CSCProperties.class);
+		when(cscProperties.getCrypto()).thenReturn(new CryptoConfig());
+		credentialJobService = new CredentialJobService(jobRepository, credentialService,
+				mock(AuthProperties.class), cscProperties);
+		credentialJobService.start();
+	}
+
+	@After
+	public void tearDown() {
+		credentialJobService.stop();
+	}
+
+	// A repeated request for the same alias returns the job already created
+	@Test
+	public void test_submit_returns_existing_job() {
+		CredentialJob existing = new CredentialJob("owner", "alias", "John", "Doe", "John Doe", "PT");
+		when(jobRepository.findByOwnerAndAlias("owner", "alias")).thenReturn(Optional.of(existing));
+
+		CredentialJob job = credentialJobService.submit("owner", "John", "Doe", "John Doe", "alias", "PT");
+
+		assertSame(existing, job);
+		verify(jobRepository, never()).saveAndFlush(any());
+	}
+
+	// A new request records a pending job
+	@Test
+	public void test_submit_new_job() {
+		when(jobRepository.findByOwnerAndAlias("owner", "alias")).thenReturn(Optional.empty());
+		when(jobRepository.saveAndFlush(any(CredentialJob.class))).thenAnswer(i -> i.getArgument(0));
+
+		CredentialJob job = credentialJobService.submit("owner", "John", "Doe", "John Doe", "alias", "PT");
+
+		assertEquals("alias", job.getAlias());
+		assertEquals("owner", job.getOwner());
+		verify(credentialService).checkAliasAvailable("owner", "alias");
+	}
+
+	// A failed job is run again
+	@Test
+	public void test_submit_retries_failed_job() {
+		CredentialJob failed = new CredentialJob("owner", "alias", "John", "Doe", "John Doe", "PT");
+		failed.setStatus(CredentialJob.Status.FAILED);
+		failed.setError("error");
+		when(jobRepository.findByOwnerAndAlias("owner", "alias")).thenReturn(Optional.of(failed));
+		when(jobRepository.saveAndFlush(failed)).thenReturn(failed);
+
+		CredentialJob job = credentialJobService.submit("owner", "John", "Doe", "John Doe", "alias", "PT");
+
+		assertSame(failed, job);
+		assertNull(job.getError());
+	}
+
+	// A failed job is run again with the data of the new request
+	@Test
+	public void test_retry_uses_new_request() {
+		CredentialJob failed = new CredentialJob("owner", "alias", "John", "Doe", "John Doe", "PT");
+		failed.setStatus(CredentialJob.Status.FAILED);
+		when(jobRepository.findByOwnerAndAlias("owner", "alias")).thenReturn(Optional.of(failed));
+		when(jobRepository.saveAndFlush(failed)).thenReturn(failed);
+
+		CredentialJob job = credentialJobService.submit("owner", "Jane", "Roe", "Jane Roe", "alias", "ES");
+
+		assertEquals("Jane", job.getGivenName());
+		assertEquals("Roe", job.getSurname());
+		assertEquals("Jane Roe", job.getSubjectDN());
+		assertEquals("ES", job.getCountryCode());
+	}
+
+	// A job is run by the instance that claimed it
+	@Test
+	public void test_claimed_job_is_run() throws Exception {
+		CredentialJob job = new CredentialJob("owner", "alias", "John", "Doe", "John Doe", "PT");
+		when(jobRepository.findByOwnerAndAlias("owner", "alias")).thenReturn(Optional.empty());
+		when(jobRepository.saveAndFlush(any(CredentialJob.class))).thenReturn(job);
+		when(jobRepository.claim(eq(job.getId()), anyString(), any(), any(), any(), any())).thenReturn(1);
+		when(jobRepository.findById(job.getId())).thenReturn(Optional.of(job));
+
+		credentialJobService.submit("owner", "John", "Doe", "John Doe", "alias", "PT");
+
+		verify(credentialService, timeout(1000)).createCredential("owner", "John", "Doe", "John Doe", "alias",
+				"PT");
+	}
+
+	// A job claimed by another instance is not run again
+	@Test
+	public void test_job_claimed_by_another_instance_is_not_run() throws Exception {
+		CredentialJob job = new CredentialJob("owner", "alias", "John", "Doe", "John Doe", "PT");
+		when(jobRepository.findByOwnerAndAlias("owner", "alias")).thenReturn(Optional.empty());
+		when(jobRepository.saveAndFlush(any(CredentialJob.class))).thenReturn(job);
+		when(jobRepository.claim(eq(job.getId()), anyString(), any(), any(), any(), any())).thenReturn(0);
+
+		credentialJobService.submit("owner", "John", "Doe", "John Doe", "alias", "PT");
+
+		verify(jobRepository, timeout(1000)).claim(eq(job.getId()), anyString(), any(), any(), any(), any());
+		credentialJobService.stop();
+		verify(jobRepository, never()).findById(job.getId());
+		verify(credentialService, never()).createCredential(any(), any(), any(), any(), any(), any());
+	}
+}
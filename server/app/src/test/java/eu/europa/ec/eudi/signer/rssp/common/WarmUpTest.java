@@ -0,0 +1,112 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.common;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.security.GeneralSecurityException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Status;
+
+import eu.europa.ec.eudi.signer.rssp.api.services.EventService;
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.crypto.TrustAnchorStore;
+import eu.europa.ec.eudi.signer.rssp.hsm.KeyOperationsBackend;
+import eu.europa.ec.eudi.signer.rssp.hsm.WrapKeyLoader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class WarmUpTest {
+
+    private final WrapKeyLoader wrapKeyLoader = mock(WrapKeyLoader.class);
+    private final TrustAnchorStore trustAnchorStore = mock(TrustAnchorStore.class);
+    private final EventService eventService = mock(EventService.class);
+    private final KeyOperationsBackend keyBackend = mock(KeyOperationsBackend.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private WarmUp warmUp;
+
+    @Before
+    public void setUp() {
+        CSCProperties cscProperties = new CSCProperties();
+        cscProperties.getCrypto().setWarmUpHsmSessions(2);
+        warmUp = new WarmUp(wrapKeyLoader, trustAnchorStore, eventService, keyBackend, cscProperties,
+                meterRegistry, 10);
+    }
+
+    // The RSSP is out of service until the warm-up has run
+    @Test
+    public void test_not_ready_before_warm_up() {
+        WarmUpHealthIndicator indicator = new WarmUpHealthIndicator(warmUp);
+
+        assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+        assertEquals("pending", indicator.health().getDetails().get("wrap_key"));
+    }
+
+    // All the steps run, and the RSSP is then ready
+    @Test
+    public void test_ready_after_warm_up() throws Exception {
+        warmUp.onApplicationEvent(null);
+
+        awaitDone();
+        verify(wrapKeyLoader).ensureLoaded();
+        verify(trustAnchorStore).load();
+        verify(eventService).load();
+        verify(keyBackend).warmUp(2);
+        assertEquals(Status.UP, new WarmUpHealthIndicator(warmUp).health().getStatus());
+        assertNotNull(meterRegistry.find("rssp.warmup").tag("step", "wrap_key").timer());
+    }
+
+    // A step that fails is retried until it succeeds
+    @Test
+    public void test_failed_step_is_retried() throws Exception {
+        doThrow(new IllegalStateException("database unavailable")).doNothing().when(eventService).load();
+
+        warmUp.onApplicationEvent(null);
+
+        awaitDone();
+        verify(eventService, times(2)).load();
+    }
+
+    // A step that fails because of the configuration is not retried, and the
+    // RSSP is then down
+    @Test
+    public void test_fatal_step_is_not_retried() throws Exception {
+        doThrow(new GeneralSecurityException("wrong passphrase")).when(wrapKeyLoader).ensureLoaded();
+
+        warmUp.onApplicationEvent(null);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!warmUp.isBroken() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(warmUp.getStatus().toString(), warmUp.isBroken());
+        // a few retry delays
+        Thread.sleep(100);
+        verify(wrapKeyLoader, times(1)).ensureLoaded();
+        assertEquals(Status.DOWN, new WarmUpHealthIndicator(warmUp).health().getStatus());
+    }
+
+    private void awaitDone() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!warmUp.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(warmUp.getStatus().toString(), warmUp.isDone());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.crypto;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.europa.ec.eudi.signer.rssp.api.services.CredentialService;
+import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.entities.Credential;
+import eu.europa.ec.eudi.signer.rssp.hsm.KeyOperationsBackend;
+import eu.europa.ec.eudi.signer.rssp.hsm.KeyPairPool;
+import eu.europa.ec.eudi.signer.rssp.hsm.WrapKeyLoader;
+import eu.europa.ec.eudi.signer.rssp.repository.CredentialJobRepository;
+import eu.europa.ec.eudi.signer.rssp.repository.CredentialRepository;
+import io.opentelemetry.api.OpenTelemetry;
+
+public class SigningMaterialCacheTest {
+
+    private final CredentialRepository credentialRepository = mock(CredentialRepository.class);
+    private CryptoService cryptoService;
+    private CredentialService credentialService;
+    private PemConverter pemConverter;
+
+    @Before
+    public void setUp() {
+        CSCProperties cscProperties = new CSCProperties();
+        cscProperties.getCrypto().setKeyAlgorithm("EC");
+        cscProperties.getCrypto().setKeySize(256);
+        cscProperties.getCrypto().setSignatureAlgorithm("SHA256WithECDSA");
+        cscProperties.getCrypto().setSigningMaterialCacheSize(2);
+        pemConverter = new PemConverter(cscProperties.getCrypto());
+        cryptoService = new CryptoService(cscProperties, mock(KeyOperationsBackend.class), null,
+                mock(AuthProperties.class), mock(KeyPairPool.class), mock(WrapKeyLoader.class));
+        credentialService = new CredentialService(credentialRepository, mock(CredentialJobRepository.class),
+                cryptoService, mock(AuthProperties.class), OpenTelemetry.noop().getTracer("test"));
+    }
+
+    private static X509Certificate certificate(String subject) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+        long now = System.currentTimeMillis();
+        return new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(
+                new X500Name(subject), BigInteger.valueOf(now), new Date(now - 60000), new Date(now + 3600000),
+                new X500Name(subject), keyPair.getPublic())
+                .build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+    }
+
+    private static SigningMaterial material(String credentialId) throws Exception {
+        return new SigningMaterial(credentialId, certificate("CN=" + credentialId), Collections.emptyList(),
+                new byte[] { 1 });
+    }
+
+    // a credential, as created by CryptoService.createCredential, stored for the owner and alias
+    private Credential store(String owner, String alias) throws Exception {
+        Credential credential = new Credential();
+        credential.setId(UUID.randomUUID().toString());
+        credential.setOwner(owner);
+        credential.setAlias(alias);
+        credential.setCertificate(pemConverter.certificateToString(certificate("CN=" + alias)));
+        credential.setCertificateChains(Collections.emptyList());
+        credential.setPrivateKeyHSM(new byte[] { 1 });
+        when(credentialRepository.findIdByOwnerAndAlias(owner, alias)).thenReturn(Optional.of(credential.getId()));
+        when(credentialRepository.findWithCertificateChainByOwnerAndAlias(owner, alias))
+                .thenReturn(Optional.of(credential));
+        when(credentialRepository.findByOwnerAndAlias(owner, alias)).thenReturn(Optional.of(credential));
+        return credential;
+    }
+
+    // The cached material is returned until it is invalidated
+    @Test
+    public void test_get_and_invalidate() throws Exception {
+        SigningMaterialCache cache = new SigningMaterialCache(2);
+        SigningMaterial a = material("a");
+        cache.put(a);
+
+        assertSame(a, cache.get("a"));
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+    }
+
+    // At capacity, the least recently used entry is evicted
+    @Test
+    public void test_evicts_least_recently_used() throws Exception {
+        SigningMaterialCache cache = new SigningMaterialCache(2);
+        SigningMaterial a = material("a");
+        SigningMaterial b = material("b");
+        SigningMaterial c = material("c");
+        cache.put(a);
+        cache.put(b);
+        cache.get("a");
+
+        cache.put(c);
+
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertSame(c, cache.get("c"));
+    }
+
+    // The second signing with a credential reads only its id, and reuses the parsed material
+    @Test
+    public void test_signing_material_is_cached() throws Exception {
+        Credential credential = store("owner", "alias");
+
+        SigningMaterial first = credentialService.getSigningMaterial("owner", "alias").get();
+        SigningMaterial second = credentialService.getSigningMaterial("owner", "alias").get();
+
+        assertSame(first, second);
+        assertEquals(credential.getId(), first.getCredentialId());
+        verify(credentialRepository, times(1)).findWithCertificateChainByOwnerAndAlias("owner", "alias");
+    }
+
+    // Deleting a credential removes its material from the cache
+    @Test
+    public void test_delete_invalidates() throws Exception {
+        Credential credential = store("owner", "alias");
+        credentialService.getSigningMaterial("owner", "alias");
+        assertNotNull(cryptoService.getCachedSigningMaterial(credential.getId()));
+
+        credentialService.deleteCredentials("owner", "alias");
+
+        assertNull(cryptoService.getCachedSigningMaterial(credential.getId()));
+    }
+
+    // A credential renewed under the same alias is signed with its new certificate,
+    // never with the material of the one it replaced
+    @Test
+    public void test_renewal_uses_new_material() throws Exception {
+        Credential previous = store("owner", "alias");
+        SigningMaterial before = credentialService.getSigningMaterial("owner", "alias").get();
+        credentialService.deleteCredentials("owner", "alias");
+
+        Credential renewed = store("owner", "alias");
+        SigningMaterial after = credentialService.getSigningMaterial("owner", "alias").get();
+
+        assertNotEquals(previous.getId(), renewed.getId());
+        assertEquals(renewed.getId(), after.getCredentialId());
+        assertNotEquals(before.getCertificate(), after.getCertificate());
+        assertNull(cryptoService.getCachedSigningMaterial(previous.getId()));
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.crypto;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.europa.ec.eudi.signer.rssp.common.config.TrustedIssuersCertificatesProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TrustAnchorStoreTest {
+
+    private static final Path ISSUERS = Paths.get("../issuersCertificates");
+    private static final AtomicInteger SERIALS = new AtomicInteger();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TrustAnchorStore store;
+    private X509Certificate ut;
+    private X509Certificate pt;
+
+    @Before
+    public void setUp() throws Exception {
+        Files.copy(ISSUERS.resolve("PIDIssuerCAUT01.pem"), folder.getRoot().toPath().resolve("PIDIssuerCAUT01.pem"));
+        ut = read("PIDIssuerCAUT01.pem");
+        pt = read("PIDIssuerCAPT01.pem");
+        store = new TrustAnchorStore(new TrustedIssuersCertificatesProperties(folder.getRoot().getPath()),
+                meterRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        store.stop();
+    }
+
+    private static X509Certificate read(String file) throws Exception {
+        try (InputStream is = Files.newInputStream(ISSUERS.resolve(file))) {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(is);
+        }
+    }
+
+    // The issuer is found by its key identifier and by its subject, in any DN format
+    @Test
+    public void test_find_issuer() throws Exception {
+        store.load();
+
+        assertEquals(ut, store.findIssuer(ut));
+        X500Principal subject = new X500Principal(ut.getSubjectX500Principal().getName(X500Principal.RFC1779));
+        assertEquals(ut, store.findBySubject(subject));
+        assertNull(store.findIssuer(pt));
+        assertEquals(1, store.getVersion());
+        assertEquals(1.0, meterRegistry.get("rssp.trust_anchors").gauge().value(), 0);
+    }
+
+    // The issuer of a leaf is found by the key identifier of the trusted issuer,
+    // even if the issuer DN of the leaf doesn't match its subject
+    @Test
+    public void test_find_issuer_of_leaf() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair caKeyPair = generator.generateKeyPair();
+        X509Certificate ca = issue(new X500Name("CN=Test PID Issuer CA,O=Test,C=PT"), caKeyPair,
+                new X500Name("CN=Test PID Issuer CA,O=Test,C=PT"), caKeyPair.getPublic());
+        try (Writer writer = Files.newBufferedWriter(folder.getRoot().toPath().resolve("test-ca.pem"));
+                JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+            pemWriter.writeObject(ca);
+        }
+        // the RDNs of the issuer in the reverse order of the subject of the CA
+        X509Certificate leaf = issue(new X500Name("C=PT,O=Test,CN=Test PID Issuer CA"), caKeyPair,
+                new X500Name("CN=Document Signer,C=PT"), generator.generateKeyPair().getPublic());
+        store.load();
+
+        assertNull(store.findBySubject(leaf.getIssuerX500Principal()));
+        assertEquals(ca, store.findIssuer(leaf));
+    }
+
+    // The issuer of a certificate without authority key identifier is the trusted
+    // issuer of that subject whose key verifies its signature
+    @Test
+    public void test_find_issuer_among_same_subjects() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        X500Name name = new X500Name("CN=Test PID Issuer CA,O=Test,C=PT");
+        KeyPair oldKeyPair = generator.generateKeyPair();
+        KeyPair newKeyPair = generator.generateKeyPair();
+        X509Certificate oldCa = issue(name, oldKeyPair, name, oldKeyPair.getPublic());
+        X509Certificate newCa = issue(name, newKeyPair, name, newKeyPair.getPublic());
+        for (X509Certificate ca : new X509Certificate[] { oldCa, newCa }) {
+            try (Writer writer = Files.newBufferedWriter(
+                    folder.getRoot().toPath().resolve("test-ca-" + ca.getSerialNumber() + ".pem"));
+                    JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+                pemWriter.writeObject(ca);
+            }
+        }
+        X509Certificate oldLeaf = issue(name, oldKeyPair, new X500Name("CN=Document Signer,C=PT"),
+                generator.generateKeyPair().getPublic(), false);
+        X509Certificate newLeaf = issue(name, newKeyPair, new X500Name("CN=Document Signer,C=PT"),
+                generator.generateKeyPair().getPublic(), false);
+        store.load();
+
+        assertEquals(oldCa, store.findIssuer(oldLeaf));
+        assertEquals(newCa, store.findIssuer(newLeaf));
+    }
+
+    private static X509Certificate issue(X500Name issuer, KeyPair issuerKeyPair, X500Name subject,
+            PublicKey publicKey) throws Exception {
+        return issue(issuer, issuerKeyPair, subject, publicKey, true);
+    }
+
+    private static X509Certificate issue(X500Name issuer, KeyPair issuerKeyPair, X500Name subject,
+            PublicKey publicKey, boolean authorityKeyIdentifier) throws Exception {
+        // the serial numbers of the certificates issued in the same millisecond differ
+        long now = System.currentTimeMillis();
+        JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils();
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(issuer,
+                BigInteger.valueOf(now).shiftLeft(16).add(BigInteger.valueOf(SERIALS.incrementAndGet())),
+                new Date(now - 60000), new Date(now + 3600000), subject, publicKey)
+                .addExtension(Extension.subjectKeyIdentifier, false,
+                        extensionUtils.createSubjectKeyIdentifier(publicKey));
+        if (authorityKeyIdentifier) {
+            builder.addExtension(Extension.authorityKeyIdentifier, false,
+                    extensionUtils.createAuthorityKeyIdentifier(issuerKeyPair.getPublic()));
+        }
+        return new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(issuerKeyPair.getPrivate())));
+    }
+
+    // A reload replaces the index and increments the version
+    @Test
+    public void test_reload() throws Exception {
+        store.load();
+        Files.copy(ISSUERS.resolve("PIDIssuerCAPT01.pem"), folder.getRoot().toPath().resolve("PIDIssuerCAPT01.pem"));
+
+        store.reload();
+
+        assertEquals(pt, store.findIssuer(pt));
+        assertEquals(2, store.getVersion());
+        assertEquals(2.0, meterRegistry.get("rssp.trust_anchors.version").gauge().value(), 0);
+    }
+
+    // A file that can't be read fails the reload, and the previous index is kept
+    @Test
+    public void test_reload_keeps_index_on_error() throws Exception {
+        store.load();
+        Files.write(folder.getRoot().toPath().resolve("broken.pem"), "not a certificate".getBytes());
+
+        try {
+            store.reload();
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(ut, store.findIssuer(ut));
+        assertEquals(1, store.getVersion());
+    }
+
+    // A certificate added to the watched folder is loaded without restart
+    @Test
+    public void test_watch_reloads() throws Exception {
+        store.load();
+        store.start();
+        Files.copy(ISSUERS.resolve("PIDIssuerCAPT01.pem"), folder.getRoot().toPath().resolve("PIDIssuerCAPT01.pem"));
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (store.getVersion() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(pt, store.findIssuer(pt));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.csc.services;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.europa.ec.eudi.signer.csc.error.CSCInvalidRequest;
+import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.common.error.ApiException;
+import eu.europa.ec.eudi.signer.rssp.repository.SadUsageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CSCSADProviderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SadUsageRepository sadUsageRepository = mock(SadUsageRepository.class);
+    private CSCSADProvider sadProvider;
+
+    @Before
+    public void setUp() {
+        CSCProperties cscProperties = new CSCProperties();
+        cscProperties.getSad().setType("SAD");
+        cscProperties.getSad().setLifetimeMinutes(5);
+        AuthProperties authProperties = mock(AuthProperties.class);
+        when(authProperties.getSadTokenSecret()).thenReturn("testSecret");
+        sadProvider = new CSCSADProvider(cscProperties, authProperties, meterRegistry, sadUsageRepository);
+    }
+
+    // A valid SAD is not counted as a failure
+    @Test
+    public void test_valid_sad_is_not_counted() {
+        sadProvider.validateSAD(sadProvider.createSAD("credential", 2));
+
+        assertNull(meterRegistry.find("rssp.jwt.validation.failures").counter());
+    }
+
+    // An invalid SAD is rejected and counted as a failure of the validation
+    @Test
+    public void test_invalid_sad_is_counted() {
+        String sad = sadProvider.createSAD("credential", 2);
+
+        ApiException exception = assertThrows(ApiException.class,
+                () -> sadProvider.validateSAD(sad.substring(0, sad.length() - 2)));
+
+        assertEquals(CSCInvalidRequest.InvalidSAD, exception.getApiError());
+        Counter failures = meterRegistry.find("rssp.jwt.validation.failures")
+                .tags("token", "sad", "reason", "invalid").counter();
+        assertNotNull(failures);
+        assertEquals(1.0, failures.count(), 0.0);
+    }
+
+    // A SAD signs the hashes still allowed by its count
+    @Test
+    public void test_use_sad_takes_from_count() {
+        when(sadUsageRepository.consume(anyString(), eq(2))).thenReturn(1);
+
+        sadProvider.useSAD(sadProvider.createSAD("credential", 2), 2);
+
+        verify(sadUsageRepository).consume(anyString(), eq(2));
+    }
+
+    // A SAD cannot sign more hashes than the numSignatures it was issued for
+    @Test
+    public void test_use_sad_with_too_many_hashes() {
+        String sad = sadProvider.createSAD("credential", 2);
+
+        ApiException exception = assertThrows(ApiException.class, () -> sadProvider.useSAD(sad, 3));
+
+        assertEquals(CSCInvalidRequest.TooHighNumSignatures, exception.getApiError());
+        verify(sadUsageRepository, never()).consume(anyString(), anyInt());
+    }
+
+    // A SAD whose signatures were already used is rejected
+    @Test
+    public void test_use_sad_already_used() {
+        String sad = sadProvider.createSAD("credential", 2);
+        when(sadUsageRepository.consume(anyString(), eq(1))).thenReturn(0);
+
+        ApiException exception = assertThrows(ApiException.class, () -> sadProvider.useSAD(sad, 1));
+
+        assertEquals(CSCInvalidRequest.InvalidSAD, exception.getApiError());
+        Counter failures = meterRegistry.find("rssp.jwt.validation.failures")
+                .tags("token", "sad", "reason", "used").counter();
+        assertNotNull(failures);
+        assertEquals(1.0, failures.count(), 0.0);
+    }
+}
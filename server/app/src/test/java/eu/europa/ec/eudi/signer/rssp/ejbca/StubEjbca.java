@@ -0,0 +1,376 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.ejbca;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequest;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * Stand-in for the EJBCA REST API used by the RSSP (ejbca.cahost), over TLS.
+ * It is used by the tests of the RSSP and, through the test-jar of the app, by
+ * the load test:
+ * - POST /ejbca/ejbca-rest-api/v1/certificate/pkcs10enroll issues a
+ * certificate for the subject and the public key of the CSR, by a test CA whose
+ * CN is the certificate_authority_name of the request (as checked by the
+ * RSSP), created at its first request;
+ * - GET /ejbca/ejbca-rest-api/v1/certificate/{issuer_dn}/{serial_number}/revocationstatus
+ * answers that the certificate is not revoked.
+ * An optional latency is added to the enrollments, to stand for the latency of
+ * the real EJBCA. The enrollments in progress and the connections used are
+ * counted.
+ */
+public class StubEjbca implements AutoCloseable {
+
+	private static final String API = "/ejbca/ejbca-rest-api/v1/certificate/";
+	private static final String ENROLL = API + "pkcs10enroll";
+	private static final String REVOCATION_STATUS = "/revocationstatus";
+
+	private final HttpsServer server;
+	private final ExecutorService executor;
+	private final long enrollLatencyMillis;
+	private final Map<String, CertificateAuthority> certificateAuthorities = new ConcurrentHashMap<>();
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger inProgress = new AtomicInteger();
+	private final AtomicInteger maxInProgress = new AtomicInteger();
+	private final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param port                the port to listen to, 0 for any free port
+	 * @param threads             the threads answering the requests
+	 * @param sslContext          the server side SSLContext
+	 * @param enrollLatencyMillis the latency added to each enrollment
+	 */
+	public StubEjbca(int port, int threads, SSLContext sslContext, long enrollLatencyMillis) throws IOException {
+		this.server = HttpsServer.create(new InetSocketAddress(port), 0);
+		this.server.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
+			@Override
+			public void configure(HttpsParameters params) {
+				SSLParameters sslParameters = getSSLContext().getDefaultSSLParameters();
+				// the RSSP authenticates with its client certificate, which is not checked
+				sslParameters.setWantClientAuth(true);
+				params.setSSLParameters(sslParameters);
+			}
+		});
+		this.executor = Executors.newFixedThreadPool(threads);
+		this.server.setExecutor(this.executor);
+		this.server.createContext(API, this::handle);
+		this.enrollLatencyMillis = enrollLatencyMillis;
+	}
+
+	public void start() {
+		this.server.start();
+	}
+
+	public void stop() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	@Override
+	public void close() {
+		stop();
+	}
+
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	/** @return the number of enrollments requested */
+	public int getRequests() {
+		return this.requests.get();
+	}
+
+	/** @return the highest number of enrollments in progress at the same time */
+	public int getMaxInProgress() {
+		return this.maxInProgress.get();
+	}
+
+	/** @return the number of connections used by the enrollments */
+	public int getConnections() {
+		return this.connections.size();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getRawPath();
+			if ("POST".equals(exchange.getRequestMethod()) && path.equals(ENROLL)) {
+				enroll(exchange);
+			} else if ("GET".equals(exchange.getRequestMethod()) && path.endsWith(REVOCATION_STATUS)) {
+				revocationStatus(exchange, path);
+			} else {
+				sendStatus(exchange, 404);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			sendJson(exchange, 400, new JSONObject()
+					.put("error_code", 400)
+					.put("error_message", String.valueOf(e.getMessage()))
+					.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void enroll(HttpExchange exchange) throws Exception {
+		int current = this.inProgress.incrementAndGet();
+		this.maxInProgress.accumulateAndGet(current, Math::max);
+		this.requests.incrementAndGet();
+		this.connections.add(exchange.getRemoteAddress().getPort());
+		try {
+			JSONObject request = new JSONObject(readBody(exchange));
+			String pem = request.getString("certificate_request")
+					.replace("-----BEGIN CERTIFICATE REQUEST-----", "")
+					.replace("-----END CERTIFICATE REQUEST-----", "")
+					.replaceAll("\\s", "");
+			JcaPKCS10CertificationRequest csr = new JcaPKCS10CertificationRequest(Base64.getDecoder().decode(pem));
+			if (!csr.isSignatureValid(new JcaContentVerifierProviderBuilder().build(csr.getSubjectPublicKeyInfo()))) {
+				throw new IllegalArgumentException("The signature of the certificate request is not valid");
+			}
+
+			CertificateAuthority ca = this.certificateAuthorities.computeIfAbsent(
+					request.getString("certificate_authority_name"), CertificateAuthority::new);
+			X509Certificate certificate = ca.issue(csr);
+
+			if (this.enrollLatencyMillis > 0) {
+				TimeUnit.MILLISECONDS.sleep(this.enrollLatencyMillis);
+			}
+
+			JSONObject response = new JSONObject()
+					.put("certificate", Base64.getEncoder().encodeToString(certificate.getEncoded()))
+					.put("serial_number", certificate.getSerialNumber().toString(16).toUpperCase())
+					.put("response_format", "DER");
+			if (request.optBoolean("include_chain")) {
+				response.put("certificate_chain",
+						new JSONArray().put(Base64.getEncoder().encodeToString(ca.certificate.getEncoded())));
+			}
+			sendJson(exchange, 201, response.toString());
+		} finally {
+			this.inProgress.decrementAndGet();
+		}
+	}
+
+	private void revocationStatus(HttpExchange exchange, String path) throws IOException {
+		String[] segments = path.substring(API.length(), path.length() - REVOCATION_STATUS.length()).split("/");
+		if (segments.length != 2) {
+			sendStatus(exchange, 404);
+			return;
+		}
+		sendJson(exchange, 200, new JSONObject()
+				.put("issuer_dn", URLDecoder.decode(segments[0], StandardCharsets.UTF_8))
+				.put("serial_number", URLDecoder.decode(segments[1], StandardCharsets.UTF_8))
+				.put("revoked", false)
+				.toString());
+	}
+
+	private static String readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static void sendStatus(HttpExchange exchange, int status) throws IOException {
+		exchange.sendResponseHeaders(status, -1);
+	}
+
+	/**
+	 * @return a P-256 key pair
+	 */
+	public static KeyPair generateKeyPair() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(new ECGenParameterSpec("secp256r1"), new SecureRandom());
+		return generator.generateKeyPair();
+	}
+
+	/**
+	 * @return a PEM certificate request for the subject, as created by the RSSP
+	 */
+	public static String certificateRequest(String subject) throws Exception {
+		KeyPair keyPair = generateKeyPair();
+		try (Writer writer = new StringWriter(); JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+			pemWriter.writeObject(new JcaPKCS10CertificationRequestBuilder(new X500Name(subject), keyPair.getPublic())
+					.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+			pemWriter.flush();
+			return writer.toString();
+		}
+	}
+
+	private static X509Certificate issue(X500Name issuer, PrivateKey issuerKey, X500Name subject,
+			PublicKey subjectKey, boolean ca, String dnsName) throws Exception {
+		long now = System.currentTimeMillis();
+		JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(issuer,
+				new BigInteger(64, new SecureRandom()), new Date(now - TimeUnit.MINUTES.toMillis(5)),
+				new Date(now + TimeUnit.DAYS.toMillis(365)), subject, subjectKey);
+		builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(ca));
+		builder.addExtension(Extension.keyUsage, true, ca
+				? new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign)
+				: new KeyUsage(KeyUsage.digitalSignature | KeyUsage.nonRepudiation));
+		if (dnsName != null) {
+			builder.addExtension(Extension.subjectAlternativeName, false,
+					new GeneralNames(new GeneralName(GeneralName.dNSName, dnsName)));
+		}
+		return new JcaX509CertificateConverter().getCertificate(
+				builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(issuerKey)));
+	}
+
+	/**
+	 * A test CA of the credentials, with a P-256 key
+	 */
+	private static final class CertificateAuthority {
+		private final KeyPair keyPair;
+		private final X500Name name;
+		private final X509Certificate certificate;
+
+		private CertificateAuthority(String certificateAuthorityName) {
+			try {
+				this.keyPair = generateKeyPair();
+				this.name = new X500Name("CN=" + certificateAuthorityName + ",O=EUDI Signer Test,C=EU");
+				this.certificate = StubEjbca.issue(this.name, this.keyPair.getPrivate(), this.name,
+						this.keyPair.getPublic(), true, null);
+			} catch (Exception e) {
+				throw new IllegalStateException("Failed to create the CA " + certificateAuthorityName, e);
+			}
+		}
+
+		private X509Certificate issue(JcaPKCS10CertificationRequest csr) throws Exception {
+			return StubEjbca.issue(this.name, this.keyPair.getPrivate(), csr.getSubject(), csr.getPublicKey(), false,
+					null);
+		}
+	}
+
+	/**
+	 * The TLS material of a test EJBCA: a management CA, the certificate of the
+	 * server for localhost, and the client certificate of the RSSP, written as
+	 * the files set in ejbca.managementCA and ejbca.clientP12ArchiveFilepath
+	 */
+	public static final class Tls {
+		public static final String PASSWORD = "test";
+
+		private final Path managementCA;
+		private final Path clientP12;
+		private final SSLContext sslContext;
+
+		public Tls(Path folder) throws Exception {
+			KeyPair caKeyPair = generateKeyPair();
+			X500Name caName = new X500Name("CN=Management CA");
+			X509Certificate caCertificate = issue(caName, caKeyPair.getPrivate(), caName, caKeyPair.getPublic(),
+					true, null);
+			KeyPair tlsKeyPair = generateKeyPair();
+			X509Certificate tlsCertificate = issue(caName, caKeyPair.getPrivate(), new X500Name("CN=localhost"),
+					tlsKeyPair.getPublic(), false, "localhost");
+			KeyPair clientKeyPair = generateKeyPair();
+			X509Certificate clientCertificate = issue(caName, caKeyPair.getPrivate(), new X500Name("CN=RSSP"),
+					clientKeyPair.getPublic(), false, null);
+
+			this.managementCA = folder.resolve("management-ca.pem");
+			try (Writer writer = Files.newBufferedWriter(this.managementCA);
+					JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+				pemWriter.writeObject(caCertificate);
+			}
+			this.clientP12 = folder.resolve("client.p12");
+			try (OutputStream os = Files.newOutputStream(this.clientP12)) {
+				keyStore(clientKeyPair.getPrivate(), clientCertificate).store(os, PASSWORD.toCharArray());
+			}
+
+			KeyManagerFactory keyManagerFactory = KeyManagerFactory
+					.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagerFactory.init(keyStore(tlsKeyPair.getPrivate(), tlsCertificate), PASSWORD.toCharArray());
+			this.sslContext = SSLContext.getInstance("TLS");
+			this.sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+		}
+
+		public Path getManagementCA() {
+			return this.managementCA;
+		}
+
+		public Path getClientP12() {
+			return this.clientP12;
+		}
+
+		public SSLContext getSslContext() {
+			return this.sslContext;
+		}
+
+		private static KeyStore keyStore(PrivateKey privateKey, X509Certificate certificate) throws Exception {
+			KeyStore keyStore = KeyStore.getInstance("PKCS12");
+			keyStore.load(null, null);
+			keyStore.setKeyEntry("key", privateKey, PASSWORD.toCharArray(), new Certificate[] { certificate });
+			return keyStore;
+		}
+	}
+}
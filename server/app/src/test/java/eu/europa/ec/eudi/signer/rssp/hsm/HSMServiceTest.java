@@ -18,6 +18,9 @@ package eu.europa.ec.eudi.signer.rssp.hsm;
 
 import java.math.BigInteger;
 import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
 import java.security.spec.RSAPublicKeySpec;
 import java.security.interfaces.RSAPublicKey;
 import java.util.concurrent.CountDownLatch;
@@ -105,4 +108,20 @@ public class HSMServiceTest {
             }
         }
     }
+
+    @Test
+    public void testSignWithECKeys() throws Exception {
+        hsmService.initSecretKey();
+        byte[][] ecKeyPair = hsmService.generateECKeyPair("1.2.840.10045.3.1.7");
+        Assert.assertNotNull(ecKeyPair[0]);
+
+        PublicKey pk = KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(ecKeyPair[1]));
+        byte[] data = "data to be signed".getBytes();
+        byte[] signature = hsmService.signDTBSwithECDSA(ecKeyPair[0], data);
+
+        Signature verifier = Signature.getInstance("SHA256withECDSA");
+        verifier.initVerify(pk);
+        verifier.update(data);
+        Assert.assertTrue(verifier.verify(signature));
+    }
 }
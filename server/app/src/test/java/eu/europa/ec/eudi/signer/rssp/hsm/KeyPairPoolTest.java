@@ -0,0 +1,80 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.rssp.hsm;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CryptoConfig;
+import eu.europa.ec.eudi.signer.rssp.entities.PooledKeyPair;
+import eu.europa.ec.eudi.signer.rssp.repository.KeyPairPoolRepository;
+
+public class KeyPairPoolTest {
+
+    private final HSMService hsmService = mock(HSMService.class);
+    private final WrapKeyLoader wrapKeyLoader = mock(WrapKeyLoader.class);
+    private final KeyPairPoolRepository repository = mock(KeyPairPoolRepository.class);
+    private KeyPairPool keyPairPool;
+
+    @Before
+    public void setUp() {
+        CryptoConfig cryptoConfig = new CryptoConfig();
+        cryptoConfig.setKeySize(2048);
+        cryptoConfig.setKeyPairPoolSize(2);
+        CSCProperties cscProperties = mock(CSCProperties.class);
+        when(cscProperties.getCrypto()).thenReturn(cryptoConfig);
+        keyPairPool = new KeyPairPool(hsmService, wrapKeyLoader, repository, cscProperties);
+    }
+
+    // Returns the first key pair that could be claimed
+    @Test
+    public void test_take_claims_key_pair() {
+        PooledKeyPair taken = mock(PooledKeyPair.class);
+        PooledKeyPair free = mock(PooledKeyPair.class);
+        byte[][] keyPair = new byte[][] { { 1 }, { 2 }, { 3 } };
+        when(taken.getId()).thenReturn(1L);
+        when(free.getId()).thenReturn(2L);
+        when(free.toKeyPair()).thenReturn(keyPair);
+        when(repository.findTop5ByKeySizeOrderByIdAsc(2048)).thenReturn(List.of(taken, free));
+        when(repository.claimById(1L)).thenReturn(0);
+        when(repository.claimById(2L)).thenReturn(1);
+
+        assertSame(keyPair, keyPairPool.take(2048));
+    }
+
+    // Returns null when the pool is empty, so that the caller generates the key pair
+    @Test
+    public void test_take_empty_pool() {
+        when(repository.findTop5ByKeySizeOrderByIdAsc(2048)).thenReturn(List.of());
+
+        assertNull(keyPairPool.take(2048));
+    }
+
+    // Key pairs of another size are not taken from the pool
+    @Test
+    public void test_take_other_key_size() {
+        assertNull(keyPairPool.take(4096));
+        verifyNoInteractions(repository);
+    }
+}
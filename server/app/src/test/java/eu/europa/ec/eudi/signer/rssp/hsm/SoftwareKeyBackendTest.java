@@ -0,0 +1,77 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.hsm;
+
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SoftwareKeyBackendTest {
+
+    private final SoftwareKeyBackend keyBackend = new SoftwareKeyBackend();
+    private final byte[] data = "data to be signed".getBytes();
+
+    @Before
+    public void setUp() {
+        keyBackend.initSecretKey();
+    }
+
+    @Test
+    public void testSignWithRSAKeys() throws Exception {
+        byte[][] keyPair = keyBackend.generateRSAKeyPair(2048);
+        RSAPublicKey pk = (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(
+                new RSAPublicKeySpec(new BigInteger(1, keyPair[1]), new BigInteger(1, keyPair[2])));
+        Assert.assertEquals(65537, pk.getPublicExponent().intValue());
+
+        byte[] signature = keyBackend.signDTBSwithRSA(keyPair[0], data);
+        Assert.assertTrue(keyBackend.verifySignature(data, signature, pk.getEncoded()));
+        Assert.assertFalse(keyBackend.verifySignature("other data".getBytes(), signature, pk.getEncoded()));
+    }
+
+    @Test
+    public void testSignWithECKeys() throws Exception {
+        byte[][] keyPair = keyBackend.generateECKeyPair("1.2.840.10045.3.1.7");
+
+        byte[] signature = keyBackend.signDTBSwithECDSA(keyPair[0], data);
+        Assert.assertTrue(keyBackend.verifySignature(data, signature, keyPair[1]));
+    }
+
+    // the keys wrapped with a secret key can't be used with another
+    @Test(expected = Exception.class)
+    public void testUnwrapWithAnotherSecretKey() throws Exception {
+        byte[][] keyPair = keyBackend.generateECKeyPair("1.2.840.10045.3.1.7");
+        keyBackend.initSecretKey();
+        keyBackend.signDTBSwithECDSA(keyPair[0], data);
+    }
+
+    // the DER encoding of the ECDSA signatures is converted to the PKCS#11 format
+    // and back
+    @Test
+    public void testECDSASignatureEncoding() throws Exception {
+        byte[][] keyPair = keyBackend.generateECKeyPair("1.2.840.10045.3.1.7");
+        byte[] signature = keyBackend.signDTBSwithECDSA(keyPair[0], data);
+
+        byte[] raw = HSMService.fromDERSignature(signature, 32);
+        Assert.assertEquals(64, raw.length);
+        Assert.assertArrayEquals(signature, HSMService.toDERSignature(raw));
+    }
+}
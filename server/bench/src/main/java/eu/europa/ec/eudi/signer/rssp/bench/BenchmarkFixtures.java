@@ -0,0 +1,162 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DefaultSignatureAlgorithmIdentifierFinder;
+
+import eu.europa.ec.eudi.signer.rssp.common.config.CryptoConfig;
+import eu.europa.ec.eudi.signer.rssp.hsm.KeyOperationsBackend;
+
+/**
+ * Key pairs and certificates created with a key backend (usually the
+ * SoftwareKeyBackend), shared by the benchmarks
+ */
+final class BenchmarkFixtures {
+
+    static final String P256 = "1.2.840.10045.3.1.7";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Configures the keys of the credentials, generated in software and not
+     * pooled
+     *
+     * @param keyAlgorithm "RSA" (2048 bits) or "EC" (P-256)
+     */
+    static void configure(CryptoConfig config, String keyAlgorithm) {
+        boolean ellipticCurve = "EC".equals(keyAlgorithm);
+        config.setKeyAlgorithm(keyAlgorithm);
+        config.setKeySize(ellipticCurve ? 256 : 2048);
+        config.setSignatureAlgorithm(ellipticCurve ? "SHA256WithECDSA" : "SHA256WithRSA");
+        config.setKeyBackend("software");
+        config.setKeyPairPoolSize(0);
+    }
+
+    /**
+     * Creates a credential: a key pair whose certificate is issued by a CA, also
+     * created with the key backend
+     *
+     * @param keyBackend   the backend that generates and wraps the keys
+     * @param keyAlgorithm "RSA" or "EC"
+     */
+    static BenchmarkCredential credential(KeyOperationsBackend keyBackend, String keyAlgorithm) throws Exception {
+        boolean ellipticCurve = "EC".equals(keyAlgorithm);
+        byte[][] caKeyPair = generateKeyPair(keyBackend, ellipticCurve);
+        byte[][] keyPair = generateKeyPair(keyBackend, ellipticCurve);
+
+        X500Name caName = new X500Name("CN=Benchmark CA,O=Trust Provider Signer EUDIW,C=EU");
+        X500Name subjectName = new X500Name("CN=Benchmark User,GIVENNAME=Benchmark,SURNAME=User,C=EU");
+        X509Certificate caCertificate = certificate(keyBackend, ellipticCurve, caName, caName,
+                publicKey(caKeyPair, ellipticCurve), caKeyPair[0]);
+        X509Certificate certificate = certificate(keyBackend, ellipticCurve, caName, subjectName,
+                publicKey(keyPair, ellipticCurve), caKeyPair[0]);
+        return new BenchmarkCredential(keyPair[0], certificate, caCertificate);
+    }
+
+    private static byte[][] generateKeyPair(KeyOperationsBackend keyBackend, boolean ellipticCurve)
+            throws Exception {
+        return ellipticCurve ? keyBackend.generateECKeyPair(P256) : keyBackend.generateRSAKeyPair(2048);
+    }
+
+    private static PublicKey publicKey(byte[][] keyPair, boolean ellipticCurve) throws Exception {
+        if (ellipticCurve) {
+            return KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(keyPair[1]));
+        }
+        return KeyFactory.getInstance("RSA").generatePublic(
+                new RSAPublicKeySpec(new BigInteger(1, keyPair[1]), new BigInteger(1, keyPair[2])));
+    }
+
+    private static X509Certificate certificate(KeyOperationsBackend keyBackend, boolean ellipticCurve,
+            X500Name issuer, X500Name subject, PublicKey publicKey, byte[] issuerWrappedKey) throws Exception {
+        long now = System.currentTimeMillis();
+        X509CertificateHolder holder = new JcaX509v3CertificateBuilder(issuer, BigInteger.valueOf(now),
+                new Date(now - TimeUnit.DAYS.toMillis(1)), new Date(now + TimeUnit.DAYS.toMillis(365)), subject,
+                publicKey).build(new BackendContentSigner(keyBackend, ellipticCurve, issuerWrappedKey));
+        return new JcaX509CertificateConverter().getCertificate(holder);
+    }
+
+    /**
+     * Signs the certificates with a private key wrapped by the key backend
+     */
+    private static final class BackendContentSigner implements ContentSigner {
+        private final KeyOperationsBackend keyBackend;
+        private final boolean ellipticCurve;
+        private final byte[] wrappedKey;
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        private BackendContentSigner(KeyOperationsBackend keyBackend, boolean ellipticCurve, byte[] wrappedKey) {
+            this.keyBackend = keyBackend;
+            this.ellipticCurve = ellipticCurve;
+            this.wrappedKey = wrappedKey;
+        }
+
+        @Override
+        public AlgorithmIdentifier getAlgorithmIdentifier() {
+            return new DefaultSignatureAlgorithmIdentifierFinder()
+                    .find(ellipticCurve ? "SHA256withECDSA" : "SHA256withRSA");
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return content;
+        }
+
+        @Override
+        public byte[] getSignature() {
+            try {
+                return ellipticCurve ? keyBackend.signDTBSwithECDSA(wrappedKey, content.toByteArray())
+                        : keyBackend.signDTBSwithRSA(wrappedKey, content.toByteArray());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * The wrapped private key, the certificate and the certificate of the CA of a
+     * credential
+     */
+    static final class BenchmarkCredential {
+        final byte[] wrappedPrivateKey;
+        final X509Certificate certificate;
+        final X509Certificate caCertificate;
+
+        BenchmarkCredential(byte[] wrappedPrivateKey, X509Certificate certificate, X509Certificate caCertificate) {
+            this.wrappedPrivateKey = wrappedPrivateKey;
+            this.certificate = certificate;
+            this.caCertificate = caCertificate;
+        }
+    }
+}
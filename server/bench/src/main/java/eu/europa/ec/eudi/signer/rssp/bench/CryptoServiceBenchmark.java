@@ -0,0 +1,132 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.bench;
+
+import java.lang.reflect.Proxy;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.ec.eudi.signer.rssp.bench.BenchmarkFixtures.BenchmarkCredential;
+import eu.europa.ec.eudi.signer.rssp.common.config.AuthProperties;
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+import eu.europa.ec.eudi.signer.rssp.crypto.CryptoService;
+import eu.europa.ec.eudi.signer.rssp.crypto.PemConverter;
+import eu.europa.ec.eudi.signer.rssp.crypto.SigningMaterial;
+import eu.europa.ec.eudi.signer.rssp.hsm.KeyPairPool;
+import eu.europa.ec.eudi.signer.rssp.hsm.SoftwareKeyBackend;
+import eu.europa.ec.eudi.signer.rssp.hsm.WrapKeyLoader;
+import eu.europa.ec.eudi.signer.rssp.repository.ConfigRepository;
+
+/**
+ * The signature of a document hash as done by the signHash request: from the
+ * PEM certificates saved with the credential (signWithPemCertificate) and from
+ * the cached signing material of the credential (signWithSigningMaterial)
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CryptoServiceBenchmark {
+
+    private static final String SHA256_WITH_RSA = "1.2.840.113549.1.1.11";
+    private static final String SHA256_WITH_ECDSA = "1.2.840.10045.4.3.2";
+
+    @Param({ "RSA", "EC" })
+    public String keyAlgorithm;
+
+    private CryptoService cryptoService;
+    private String dataToSignB64;
+    private String pemCertificate;
+    private List<String> pemCertificateChain;
+    private byte[] wrappedPrivateKey;
+    private SigningMaterial signingMaterial;
+    private String signingAlgo;
+
+    @Setup
+    public void setUp() throws Exception {
+        CSCProperties cscProperties = new CSCProperties();
+        BenchmarkFixtures.configure(cscProperties.getCrypto(), this.keyAlgorithm);
+
+        AuthProperties authProperties = new AuthProperties();
+        authProperties.setDbEncryptionPassphrase("benchmark");
+        byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        authProperties.setDbEncryptionSalt(Base64.getEncoder().encodeToString(salt));
+
+        // the WrapKeyLoader creates the secret key of the backend, so the credential
+        // is only created afterwards
+        SoftwareKeyBackend keyBackend = new SoftwareKeyBackend();
+        WrapKeyLoader wrapKeyLoader = new WrapKeyLoader(emptyConfigRepository(), keyBackend, authProperties);
+        wrapKeyLoader.ensureLoaded();
+        this.cryptoService = new CryptoService(cscProperties, keyBackend, null, authProperties,
+                new KeyPairPool(keyBackend, wrapKeyLoader, null, cscProperties), wrapKeyLoader);
+
+        BenchmarkCredential credential = BenchmarkFixtures.credential(keyBackend, this.keyAlgorithm);
+        PemConverter pemConverter = new PemConverter(cscProperties.getCrypto());
+        this.pemCertificate = pemConverter.certificateToString(credential.certificate);
+        this.pemCertificateChain = Collections.singletonList(pemConverter.certificateToString(credential.caCertificate));
+        this.wrappedPrivateKey = credential.wrappedPrivateKey;
+        this.signingMaterial = new SigningMaterial("benchmark", credential.certificate,
+                Collections.singletonList(credential.caCertificate), credential.wrappedPrivateKey);
+        this.signingAlgo = "EC".equals(this.keyAlgorithm) ? SHA256_WITH_ECDSA : SHA256_WITH_RSA;
+
+        byte[] data = new byte[16 * 1024];
+        new SecureRandom().nextBytes(data);
+        this.dataToSignB64 = Base64.getEncoder().encodeToString(data);
+    }
+
+    @Benchmark
+    public String signWithPemCertificate() {
+        return this.cryptoService.signWithPemCertificate(this.dataToSignB64, this.pemCertificate,
+                this.pemCertificateChain, this.wrappedPrivateKey, this.signingAlgo, "");
+    }
+
+    @Benchmark
+    public String signWithSigningMaterial() {
+        return this.cryptoService.signWithSigningMaterial(this.dataToSignB64, this.signingMaterial,
+                this.signingAlgo, "");
+    }
+
+    /**
+     * A ConfigRepository without secret keys, that accepts the one created by the
+     * WrapKeyLoader without saving it
+     */
+    private static ConfigRepository emptyConfigRepository() {
+        return (ConfigRepository) Proxy.newProxyInstance(ConfigRepository.class.getClassLoader(),
+                new Class<?>[] { ConfigRepository.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findAll":
+                            return Collections.emptyList();
+                        case "save":
+                            return args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.bench;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.ec.eudi.signer.rssp.bench.BenchmarkFixtures.BenchmarkCredential;
+import eu.europa.ec.eudi.signer.rssp.crypto.CryptoSigner;
+import eu.europa.ec.eudi.signer.rssp.crypto.SigningMaterial;
+import eu.europa.ec.eudi.signer.rssp.hsm.SoftwareKeyBackend;
+import eu.europa.esig.dss.model.DSSMessageDigest;
+
+/**
+ * The CMS (PAdES) signature of a document hash by the CryptoSigner, with the
+ * software key backend, compared with the raw signature of the key backend
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CryptoSignerBenchmark {
+
+    @Param({ "RSA", "EC" })
+    public String keyAlgorithm;
+
+    private SoftwareKeyBackend keyBackend;
+    private CryptoSigner cryptoSigner;
+    private SigningMaterial signingMaterial;
+    private byte[] data;
+    private DSSMessageDigest messageDigest;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.keyBackend = new SoftwareKeyBackend();
+        this.keyBackend.initSecretKey();
+        BenchmarkCredential credential = BenchmarkFixtures.credential(this.keyBackend, this.keyAlgorithm);
+        this.signingMaterial = new SigningMaterial("benchmark", credential.certificate,
+                Collections.singletonList(credential.caCertificate), credential.wrappedPrivateKey);
+
+        this.cryptoSigner = new CryptoSigner();
+        // the size of the byte range of a small PDF
+        this.data = new byte[16 * 1024];
+        new SecureRandom().nextBytes(this.data);
+        this.messageDigest = this.cryptoSigner.digest(ByteBuffer.wrap(this.data));
+    }
+
+    @Benchmark
+    public byte[] signData() throws Exception {
+        return this.cryptoSigner.signData(this.data, this.signingMaterial, this.keyBackend);
+    }
+
+    @Benchmark
+    public byte[] signMessageDigest() throws Exception {
+        return this.cryptoSigner.signMessageDigest(this.messageDigest, this.signingMaterial, this.keyBackend);
+    }
+
+    /**
+     * The signature of the key backend alone, without the CMS: the difference
+     * with signMessageDigest is the cost of DSS
+     */
+    @Benchmark
+    public byte[] signWithKeyBackend() throws Exception {
+        byte[] digest = this.messageDigest.getValue();
+        return "EC".equals(this.keyAlgorithm)
+                ? this.keyBackend.signDTBSwithECDSA(this.signingMaterial.getWrappedPrivateKey(), digest)
+                : this.keyBackend.signDTBSwithRSA(this.signingMaterial.getWrappedPrivateKey(), digest);
+    }
+}
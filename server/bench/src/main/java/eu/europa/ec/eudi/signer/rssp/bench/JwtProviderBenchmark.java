@@ -0,0 +1,63 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.ec.eudi.signer.rssp.security.jwt.JwtProvider;
+import eu.europa.ec.eudi.signer.rssp.security.jwt.JwtProviderConfig;
+import eu.europa.ec.eudi.signer.rssp.security.jwt.JwtToken;
+
+/**
+ * The creation and the validation of the JWT tokens used as access tokens (and
+ * SAD) by the RSSP
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class JwtProviderBenchmark {
+
+    private JwtProvider jwtProvider;
+    private String rawToken;
+
+    @Setup
+    public void setUp() {
+        JwtProviderConfig config = new JwtProviderConfig();
+        config.setTokenSecret("benchmark-token-secret-benchmark-token-secret-benchmark-token-secret");
+        config.setLifetimeMinutes(60);
+        config.setType("Bearer");
+        this.jwtProvider = new JwtProvider(config);
+        this.rawToken = this.jwtProvider.createToken("benchmark-user").getRawToken();
+    }
+
+    @Benchmark
+    public JwtToken createToken() {
+        return this.jwtProvider.createToken("benchmark-user");
+    }
+
+    @Benchmark
+    public JwtToken validateToken() {
+        return this.jwtProvider.validateToken(this.rawToken);
+    }
+}
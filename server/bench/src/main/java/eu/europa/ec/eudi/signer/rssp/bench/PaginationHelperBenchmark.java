@@ -0,0 +1,58 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Pageable;
+
+import eu.europa.ec.eudi.signer.rssp.common.PaginationHelper;
+import eu.europa.ec.eudi.signer.rssp.common.config.CSCProperties;
+
+/**
+ * The round trip of the page tokens of the credentials/list request
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PaginationHelperBenchmark {
+
+    private PaginationHelper paginationHelper;
+    private String pageToken;
+
+    @Setup
+    public void setUp() {
+        CSCProperties cscProperties = new CSCProperties();
+        cscProperties.getApi().setPageSize(10);
+        cscProperties.getApi().setMaxPageSize(100);
+        this.paginationHelper = new PaginationHelper(cscProperties);
+        this.pageToken = this.paginationHelper.pageableToNextPageToken(
+                this.paginationHelper.pageTokenToPageable(null, 20));
+    }
+
+    @Benchmark
+    public String nextPageToken() {
+        Pageable pageable = this.paginationHelper.pageTokenToPageable(this.pageToken, 20);
+        return this.paginationHelper.pageableToNextPageToken(pageable);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.bench;
+
+import java.security.cert.X509Certificate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.ec.eudi.signer.rssp.common.config.CryptoConfig;
+import eu.europa.ec.eudi.signer.rssp.crypto.PemConverter;
+import eu.europa.ec.eudi.signer.rssp.hsm.SoftwareKeyBackend;
+
+/**
+ * The conversion of the certificates of the credentials between PEM (as saved
+ * in the database) and X509Certificate
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PemConverterBenchmark {
+
+    @Param({ "RSA", "EC" })
+    public String keyAlgorithm;
+
+    private PemConverter pemConverter;
+    private X509Certificate certificate;
+    private String pemCertificate;
+
+    @Setup
+    public void setUp() throws Exception {
+        CryptoConfig config = new CryptoConfig();
+        BenchmarkFixtures.configure(config, this.keyAlgorithm);
+        SoftwareKeyBackend keyBackend = new SoftwareKeyBackend();
+        keyBackend.initSecretKey();
+
+        this.pemConverter = new PemConverter(config);
+        this.certificate = BenchmarkFixtures.credential(keyBackend, this.keyAlgorithm).certificate;
+        this.pemCertificate = this.pemConverter.certificateToString(this.certificate);
+    }
+
+    @Benchmark
+    public X509Certificate stringToCertificate() throws Exception {
+        return this.pemConverter.stringToCertificate(this.pemCertificate);
+    }
+
+    @Benchmark
+    public String certificateToString() throws Exception {
+        return this.pemConverter.certificateToString(this.certificate);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.rssp.bench;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import COSE.AlgorithmID;
+import eu.europa.ec.eudi.signer.loadtest.TestPidIssuer;
+import eu.europa.ec.eudi.signer.loadtest.TestPki;
+import eu.europa.ec.eudi.signer.rssp.common.config.TrustedIssuersCertificatesProperties;
+import eu.europa.ec.eudi.signer.rssp.crypto.TrustAnchorStore;
+import eu.europa.ec.eudi.signer.rssp.ejbca.EJBCAService;
+import eu.europa.ec.eudi.signer.rssp.security.openid4vp.VPValidator;
+import id.walt.mdoc.COSECryptoProviderKeyInfo;
+import id.walt.mdoc.SimpleCOSECryptoProvider;
+import id.walt.mdoc.dataretrieval.DeviceResponse;
+import id.walt.mdoc.doc.MDoc;
+
+/**
+ * The validation of a vp_token (mso_mdoc): the whole VPValidator, and
+ * separately the CBOR parsing and the verification of the signature of the
+ * issuer.
+ * The PID is issued at the setup by the TestPidIssuer of the loadtest module,
+ * and its PID Issuer CA is the only trusted issuer, so the whole validation
+ * succeeds on every run. The revocation status is not requested to the EJBCA.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class VPValidatorBenchmark {
+
+    private static final String PRESENTATION_DEFINITION_ID = "32f54163-7166-48f1-93d8-ff217bdb0653";
+    private static final String INPUT_DESCRIPTOR_ID = "eudi_pid";
+
+    private Path folder;
+    private String vpToken;
+    private JSONObject verifiablePresentation;
+    private EJBCAService ejbcaService;
+    private MDoc document;
+    private SimpleCOSECryptoProvider provider;
+
+    @Setup
+    public void setUp() throws Exception {
+        TestPki pki = new TestPki("localhost");
+        this.folder = Files.createTempDirectory("bench");
+        pki.writeFiles(this.folder);
+        this.vpToken = new TestPidIssuer(pki, "PT").vpToken(0);
+        this.verifiablePresentation = new JSONObject()
+                .put("vp_token", this.vpToken)
+                .put("presentation_submission", new JSONObject()
+                        .put("id", "pid-res")
+                        .put("definition_id", PRESENTATION_DEFINITION_ID)
+                        .put("descriptor_map", Collections.singletonList(new JSONObject()
+                                .put("id", INPUT_DESCRIPTOR_ID)
+                                .put("format", "mso_mdoc")
+                                .put("path", "$"))));
+
+        TrustAnchorStore trustAnchorStore = new TrustAnchorStore(new TrustedIssuersCertificatesProperties(
+                this.folder.resolve("issuersCertificates").toString()), new SimpleMeterRegistry());
+        trustAnchorStore.load();
+        this.ejbcaService = new EJBCAService(null, trustAnchorStore,
+                new SimpleMeterRegistry(), OpenTelemetry.noop().getTracer("bench")) {
+            @Override
+            public Boolean revocationStatus(String issuerDN, String serialNumberHex) {
+                return false;
+            }
+        };
+
+        this.document = parseDeviceResponse().getDocuments().get(0);
+        X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(
+                new ByteArrayInputStream(this.document.getIssuerSigned().getIssuerAuth().getX5Chain()));
+        COSECryptoProviderKeyInfo keyInfo = new COSECryptoProviderKeyInfo("keyID", AlgorithmID.ECDSA_256,
+                certificate.getPublicKey(), null, Collections.singletonList(certificate),
+                Collections.emptyList());
+        this.provider = new SimpleCOSECryptoProvider(Collections.singletonList(keyInfo));
+
+        // the benchmark would otherwise measure the path up to a failure
+        Object validated = loadAndVerifyDocumentForVP();
+        if (!(validated instanceof MDoc)) {
+            throw new IllegalStateException("The vp_token of the benchmark is not valid", (Exception) validated);
+        }
+        if (!verifyIssuerSignature()) {
+            throw new IllegalStateException("The signature of the issuer of the vp_token is not valid");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(this.folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * @return the document, or the exception if the validation fails
+     */
+    @Benchmark
+    public Object loadAndVerifyDocumentForVP() {
+        VPValidator validator = new VPValidator(this.verifiablePresentation, PRESENTATION_DEFINITION_ID,
+                INPUT_DESCRIPTOR_ID, this.ejbcaService);
+        try {
+            return validator.loadAndVerifyDocumentForVP(new HashMap<>());
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public DeviceResponse parseDeviceResponse() {
+        byte[] decodedBytes = Base64.getUrlDecoder().decode(this.vpToken);
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : decodedBytes) {
+            hexString.append(String.format("%02x", b));
+        }
+        return DeviceResponse.Companion.fromCBORHex(hexString.toString());
+    }
+
+    @Benchmark
+    public boolean verifyIssuerSignature() {
+        return this.document.verifySignature(this.provider, "keyID");
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.common.tracing;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SdkTracerProviderBuilder;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+
+/**
+ * Creates the OpenTelemetry SDK of the RSSP and the SA. The trace context is
+ * propagated in the W3C traceparent header, so the spans of the RSSP join the
+ * traces started by the SA. With the exporter none the spans are created (and
+ * the context propagated) but not exported.
+ */
+public final class TracingFactory {
+
+    private TracingFactory() {
+    }
+
+    public static SdkTracerProvider tracerProvider(TracingProperties properties) {
+        SdkTracerProviderBuilder builder = SdkTracerProvider.builder()
+                .setResource(Resource.getDefault().merge(Resource.create(
+                        Attributes.of(AttributeKey.stringKey("service.name"), properties.getServiceName()))))
+                .setSampler(Sampler.parentBased(Sampler.traceIdRatioBased(properties.getSamplingRatio())));
+        switch (properties.getExporter()) {
+            case "none":
+                break;
+            case "logging":
+                builder.addSpanProcessor(SimpleSpanProcessor.create(LoggingSpanExporter.create()));
+                break;
+            case "otlp":
+                builder.addSpanProcessor(BatchSpanProcessor.builder(OtlpGrpcSpanExporter.builder()
+                        .setEndpoint(properties.getOtlpEndpoint())
+                        .build()).build());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown tracing exporter " + properties.getExporter()
+                        + " (expected none, logging or otlp)");
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param tracerProvider the provider of the spans, which the caller closes
+     */
+    public static OpenTelemetry openTelemetry(SdkTracerProvider tracerProvider) {
+        return OpenTelemetrySdk.builder()
+                .setTracerProvider(tracerProvider)
+                .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.common.tracing;
+
+/**
+ * Configuration of the OpenTelemetry tracing of the RSSP and the SA: where
+ * the spans are exported and which share of the traces is sampled. Each
+ * application binds it to its tracing properties.
+ */
+public class TracingProperties {
+
+    // none, logging (to the log of the application) or otlp (to a collector)
+    private String exporter = "none";
+    private String otlpEndpoint = "http://localhost:4317";
+    private String serviceName;
+    private double samplingRatio = 1.0;
+
+    public TracingProperties(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public String getExporter() {
+        return exporter;
+    }
+
+    public void setExporter(String exporter) {
+        this.exporter = exporter;
+    }
+
+    public String getOtlpEndpoint() {
+        return otlpEndpoint;
+    }
+
+    public void setOtlpEndpoint(String otlpEndpoint) {
+        this.otlpEndpoint = otlpEndpoint;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public void setServiceName(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    /**
+     * Share of the traces started by the application that are sampled; a
+     * request with a traceparent header follows the decision of its caller
+     */
+    public double getSamplingRatio() {
+        return samplingRatio;
+    }
+
+    public void setSamplingRatio(double samplingRatio) {
+        this.samplingRatio = samplingRatio;
+    }
+}
@@ -28,11 +28,19 @@ public interface CSCConstants {
 
     // Max signatures that Assina can sign with in a single request.
     // This is returned in credential/info and validated in credential/authorize
-    int CSC_MAX_REQUEST_SIGNATURES = 1;
+    // and in signatures/signHash (number of hashes)
+    int CSC_MAX_REQUEST_SIGNATURES = 50;
     // One of implicit | explicit | oauth2code
     // Signer uses 'explicit' to indicate PIN authorization of credential
     String CSC_AUTH_MODE = "explicit";
 
+    // OID of SHA-256, the only hashAlgo accepted in signatures/signHash.
+    // When hashAlgo is given, each hash is the raw SHA-256 digest of the signed
+    // content (the PDF signed byte range); when it is omitted the hash is the
+    // signed content itself and the RSSP digests it.
+    String CSC_HASH_ALGO_SHA256 = "2.16.840.1.101.3.4.2.1";
+    int CSC_HASH_LENGTH_SHA256 = 32;
+
     // SCAL : per the CSC spec:
     // One of 1 | 2
     // Specifies if the RSSP will generate for this credential a signature
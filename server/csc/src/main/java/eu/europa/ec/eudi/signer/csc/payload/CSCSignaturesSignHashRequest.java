@@ -53,7 +53,8 @@ public class CSCSignaturesSignHashRequest {
     // by the signAlgo algorithm.
     // Only hashing algorithms as strong or stronger than SHA256 SHALL be used.
     // The hash algorithm SHOULD follow the recommendations of ETSI TS 119 312 [21].
-    // ASSINA: NOT REQUIRED: implied by the signAlgo algorithm
+    // ASSINA: NOT REQUIRED: when present it must be SHA-256 and the hashes are
+    // the raw message digests, otherwise the hashes are the content to sign
     private String hashAlgo;
 
     // REQUIRED
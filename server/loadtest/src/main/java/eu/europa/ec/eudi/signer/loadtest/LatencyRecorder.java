@@ -0,0 +1,161 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Latencies of the requests of the load test, by endpoint (and by step of the
+ * flow, e.g. the time until a credential is created). The samples taken before
+ * the end of the warm-up are discarded.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, Samples> samples = new LinkedHashMap<>();
+    private final long recordingFrom;
+    private volatile long recordingTo;
+
+    public LatencyRecorder(long recordingFrom) {
+        this.recordingFrom = recordingFrom;
+    }
+
+    /**
+     * @param name       the endpoint or the step of the flow
+     * @param startNanos System.nanoTime() when the request was sent
+     * @param success    if the request had the expected response
+     */
+    public void record(String name, long startNanos, boolean success) {
+        long endNanos = System.nanoTime();
+        if (startNanos < this.recordingFrom) {
+            return;
+        }
+        Samples endpointSamples;
+        synchronized (this.samples) {
+            endpointSamples = this.samples.computeIfAbsent(name, key -> new Samples());
+        }
+        endpointSamples.add(endNanos - startNanos, success);
+    }
+
+    /**
+     * Ends the measurement: the throughput is computed between the end of the
+     * warm-up and this call
+     */
+    public void stop() {
+        this.recordingTo = System.nanoTime();
+    }
+
+    public List<EndpointStatistics> statistics() {
+        double seconds = Math.max(1, this.recordingTo - this.recordingFrom) / 1e9;
+        List<EndpointStatistics> statistics = new ArrayList<>();
+        synchronized (this.samples) {
+            for (Map.Entry<String, Samples> entry : this.samples.entrySet()) {
+                statistics.add(entry.getValue().statistics(entry.getKey(), seconds));
+            }
+        }
+        return statistics;
+    }
+
+    public void print(PrintStream out) {
+        out.printf("%-40s %9s %7s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s", "p50 ms",
+                "p90 ms", "p99 ms", "max ms");
+        for (EndpointStatistics s : statistics()) {
+            out.printf(Locale.ROOT, "%-40s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", s.name, s.requests, s.errors,
+                    s.throughput, s.p50, s.p90, s.p99, s.max);
+        }
+    }
+
+    public void writeCsv(Path file) throws IOException {
+        StringBuilder csv = new StringBuilder("endpoint,requests,errors,throughput_per_second,p50_ms,p90_ms,p99_ms,max_ms\n");
+        for (EndpointStatistics s : statistics()) {
+            csv.append(String.format(Locale.ROOT, "\"%s\",%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f%n", s.name, s.requests,
+                    s.errors, s.throughput, s.p50, s.p90, s.p99, s.max));
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.writeString(file, csv);
+    }
+
+    public static final class EndpointStatistics {
+        public final String name;
+        public final int requests;
+        public final int errors;
+        public final double throughput;
+        public final double p50;
+        public final double p90;
+        public final double p99;
+        public final double max;
+
+        private EndpointStatistics(String name, int requests, int errors, double throughput, double p50,
+                double p90, double p99, double max) {
+            this.name = name;
+            this.requests = requests;
+            this.errors = errors;
+            this.throughput = throughput;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+    }
+
+    /**
+     * The latencies (in nanoseconds) of an endpoint, including those of the
+     * failed requests
+     */
+    private static final class Samples {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        private synchronized void add(long latency, boolean success) {
+            if (this.count == this.latencies.length) {
+                this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+            }
+            this.latencies[this.count++] = latency;
+            if (!success) {
+                this.errors++;
+            }
+        }
+
+        private synchronized EndpointStatistics statistics(String name, double seconds) {
+            long[] sorted = Arrays.copyOf(this.latencies, this.count);
+            Arrays.sort(sorted);
+            return new EndpointStatistics(name, this.count, this.errors, this.count / seconds,
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+        }
+
+        // nearest-rank percentile, in milliseconds
+        private static double percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+}
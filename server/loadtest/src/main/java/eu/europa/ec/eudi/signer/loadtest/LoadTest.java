@@ -0,0 +1,144 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.loadtest;
+
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import eu.europa.ec.eudi.signer.rssp.ejbca.StubEjbca;
+
+/**
+ * End-to-end load test of the RSSP, without the EUDI verifier, the EJBCA nor
+ * an HSM:
+ * - "stubs" starts the StubVerifier and the StubEjbca, and writes the
+ * configuration that points the RSSP at them (and at the software key
+ * backend);
+ * - "drive" runs the virtual users against the RSSP, and reports the
+ * throughput and the latencies of each endpoint.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String command = args.length == 0 ? "help" : args[0];
+        switch (command) {
+            case "stubs":
+                stubs(new LoadTestOptions(args, 1));
+                break;
+            case "drive":
+                drive(new LoadTestOptions(args, 1));
+                break;
+            default:
+                System.out.println(LoadTestOptions.USAGE);
+        }
+    }
+
+    private static void stubs(LoadTestOptions options) throws Exception {
+        TestPki pki = new TestPki("localhost");
+        pki.writeFiles(options.directory);
+
+        String clientId = "localhost:" + options.verifierPort;
+        StubVerifier verifier = new StubVerifier(options.verifierPort, options.threads, clientId,
+                new TestPidIssuer(pki, options.issuingCountry));
+        StubEjbca ejbca = new StubEjbca(options.ejbcaPort, options.threads, pki.tlsServerContext(),
+                options.ejbcaLatencyMillis);
+        Path configuration = writeRsspConfiguration(options, verifier.getPresentationsUrl(), clientId);
+
+        verifier.start();
+        ejbca.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            verifier.stop();
+            ejbca.stop();
+        }));
+
+        System.out.println("Verifier stand-in: " + verifier.getPresentationsUrl());
+        System.out.println("EJBCA stand-in:    https://localhost:" + options.ejbcaPort);
+        System.out.println("Start the RSSP with --spring.config.additional-location=file:" + configuration);
+        System.out.println("Press Ctrl+C to stop.");
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Writes application-loadtest.yml, with the settings of the RSSP that point it
+     * at the stand-ins
+     */
+    private static Path writeRsspConfiguration(LoadTestOptions options, String verifierUrl, String clientId)
+            throws Exception {
+        Path directory = options.directory;
+        String configuration = String.join(System.lineSeparator(),
+                "# Generated by the load test: the RSSP uses the stand-ins of the verifier and the EJBCA,",
+                "# and the software key backend instead of the HSM",
+                "verifier:",
+                "    url: " + verifierUrl,
+                "    address: " + clientId,
+                "",
+                "trusted-issuers:",
+                "    folder: " + directory.resolve("issuersCertificates"),
+                "",
+                "ejbca:",
+                "    cahost: localhost:" + options.ejbcaPort,
+                "    clientP12ArchiveFilepath: " + directory.resolve("ejbca").resolve("client.p12"),
+                "    clientP12ArchivePassword: " + TestPki.CLIENT_P12_PASSWORD,
+                "    managementCA: " + directory.resolve("ejbca").resolve("management-ca.pem"),
+                "    username: loadtest",
+                "    password: loadtest",
+                "",
+                "csc:",
+                "    crypto:",
+                "        keyBackend: software",
+                "");
+        Path file = directory.resolve("application-loadtest.yml");
+        Files.writeString(file, configuration);
+        return file;
+    }
+
+    private static void drive(LoadTestOptions options) throws Exception {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        long start = System.nanoTime();
+        long deadline = start + options.duration.toNanos();
+        LatencyRecorder recorder = new LatencyRecorder(start + options.warmup.toNanos());
+
+        System.out.printf("%d users against %s for %d s%n", options.users, options.rsspUrl,
+                options.duration.getSeconds());
+        ScheduledExecutorService users = Executors.newScheduledThreadPool(options.users);
+        for (int i = 0; i < options.users; i++) {
+            long delay = options.rampUp.toNanos() * i / options.users;
+            users.schedule(new VirtualUser(i, options, httpClient, recorder, deadline), delay, TimeUnit.NANOSECONDS);
+        }
+        users.shutdown();
+        // the flows in progress at the end of the duration are completed
+        if (!users.awaitTermination(options.duration.plus(options.requestTimeout.multipliedBy(4)).toSeconds(),
+                TimeUnit.SECONDS)) {
+            users.shutdownNow();
+        }
+        recorder.stop();
+
+        System.out.println();
+        recorder.print(System.out);
+        recorder.writeCsv(options.report);
+        System.out.println();
+        System.out.println("Report written to " + options.report.toAbsolutePath());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The options of the load test, given as --name=value arguments
+ */
+public class LoadTestOptions {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: LoadTest stubs|drive [--name=value ...]",
+            "",
+            "stubs: starts the stand-ins of the verifier and the EJBCA, and writes the configuration of the RSSP",
+            "  --dir=target/loadtest         where the certificates and application-loadtest.yml are written",
+            "  --verifier-port=8090          port of the verifier stand-in (HTTP)",
+            "  --ejbca-port=8443             port of the EJBCA stand-in (HTTPS)",
+            "  --threads=64                  request threads of each stand-in",
+            "  --ejbca-latency-ms=0          latency added to each certificate enrollment",
+            "  --issuing-country=PT          issuing_country of the test PIDs (selects the CA in ejbca.countries)",
+            "",
+            "drive: replays the flow login -> create credential -> authorize -> signHash -> delete credential",
+            "  --rssp=http://localhost:8082  URL of the RSSP",
+            "  --users=10                    virtual users (concurrent flows)",
+            "  --duration=60                 seconds of the test",
+            "  --iterations=0                flows of each user, 0 for as many as fit in the duration",
+            "  --ramp-up=0                   seconds over which the users start",
+            "  --warmup=0                    seconds, from the start, whose samples are discarded",
+            "  --authorizations=1            authorizations of each credential",
+            "  --signatures=1                signHash requests of each authorization",
+            "  --hashes=1                    hashes of each signHash request",
+            "  --sign-algo=1.2.840.113549.1.1.11",
+            "  --think-time-ms=0             pause between the steps of a flow",
+            "  --job-poll-ms=100             interval of the polling of the credential creation",
+            "  --job-timeout=120             seconds before a credential creation counts as failed",
+            "  --timeout=60                  seconds before a request times out",
+            "  --delete-credentials=true     deletes the credential at the end of each flow",
+            "  --report=target/loadtest/report.csv",
+            "  --verbose=false               prints the errors");
+
+    // stubs
+    final Path directory;
+    final int verifierPort;
+    final int ejbcaPort;
+    final int threads;
+    final long ejbcaLatencyMillis;
+    final String issuingCountry;
+
+    // drive
+    final String rsspUrl;
+    final int users;
+    final Duration duration;
+    final int iterations;
+    final Duration rampUp;
+    final Duration warmup;
+    final int authorizations;
+    final int signatures;
+    final int hashes;
+    final String signAlgo;
+    final long thinkTimeMillis;
+    final long jobPollMillis;
+    final Duration jobTimeout;
+    final Duration requestTimeout;
+    final boolean deleteCredentials;
+    final Path report;
+    final boolean verbose;
+    // distinguishes the aliases of the credentials of different runs
+    final String runId = UUID.randomUUID().toString().substring(0, 8);
+
+    LoadTestOptions(String[] args, int from) {
+        Map<String, String> values = new HashMap<>();
+        for (int i = from; i < args.length; i++) {
+            String arg = args[i];
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Invalid argument " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        this.directory = Paths.get(take(values, "dir", "target/loadtest")).toAbsolutePath();
+        this.verifierPort = Integer.parseInt(take(values, "verifier-port", "8090"));
+        this.ejbcaPort = Integer.parseInt(take(values, "ejbca-port", "8443"));
+        this.threads = Integer.parseInt(take(values, "threads", "64"));
+        this.ejbcaLatencyMillis = Long.parseLong(take(values, "ejbca-latency-ms", "0"));
+        this.issuingCountry = take(values, "issuing-country", "PT");
+
+        this.rsspUrl = take(values, "rssp", "http://localhost:8082").replaceAll("/+$", "");
+        this.users = Integer.parseInt(take(values, "users", "10"));
+        this.duration = Duration.ofSeconds(Long.parseLong(take(values, "duration", "60")));
+        this.iterations = Integer.parseInt(take(values, "iterations", "0"));
+        this.rampUp = Duration.ofSeconds(Long.parseLong(take(values, "ramp-up", "0")));
+        this.warmup = Duration.ofSeconds(Long.parseLong(take(values, "warmup", "0")));
+        this.authorizations = Integer.parseInt(take(values, "authorizations", "1"));
+        this.signatures = Integer.parseInt(take(values, "signatures", "1"));
+        this.hashes = Integer.parseInt(take(values, "hashes", "1"));
+        this.signAlgo = take(values, "sign-algo", "1.2.840.113549.1.1.11");
+        this.thinkTimeMillis = Long.parseLong(take(values, "think-time-ms", "0"));
+        this.jobPollMillis = Long.parseLong(take(values, "job-poll-ms", "100"));
+        this.jobTimeout = Duration.ofSeconds(Long.parseLong(take(values, "job-timeout", "120")));
+        this.requestTimeout = Duration.ofSeconds(Long.parseLong(take(values, "timeout", "60")));
+        this.deleteCredentials = Boolean.parseBoolean(take(values, "delete-credentials", "true"));
+        this.report = Paths.get(take(values, "report", "target/loadtest/report.csv"));
+        this.verbose = Boolean.parseBoolean(take(values, "verbose", "false"));
+
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + values.keySet());
+        }
+        if (this.users < 1 || this.hashes < 1 || this.warmup.compareTo(this.duration) >= 0) {
+            throw new IllegalArgumentException("users and hashes must be positive, and the warm-up shorter than the duration");
+        }
+    }
+
+    private static String take(Map<String, String> values, String name, String defaultValue) {
+        String value = values.remove(name);
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the OpenID4VP verifier backend used by the RSSP (verifier.url):
+ * - POST /ui/presentations starts a presentation, and returns its
+ * presentation_id and request_uri (/wallet/{presentation_id});
+ * - POST /wallet/{presentation_id}?user={n} plays the wallet: the presentation
+ * is answered with the PID of the virtual user n;
+ * - GET /ui/presentations/{presentation_id} returns the vp_token once the
+ * presentation was answered (400 before, as the verifier does while it waits
+ * for the wallet, and 404 for an unknown presentation).
+ * The driver answers each presentation before the RSSP polls it, so the RSSP
+ * gets the vp_token at its first request.
+ */
+public class StubVerifier {
+
+    private static final String PRESENTATIONS = "/ui/presentations";
+    private static final String WALLET = "/wallet/";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String baseUrl;
+    private final String clientId;
+    private final TestPidIssuer pidIssuer;
+    // presentation_id -> the index of the user that answered it, or -1 while
+    // waiting for the wallet
+    private final Map<String, Integer> presentations = new ConcurrentHashMap<>();
+
+    public StubVerifier(int port, int threads, String clientId, TestPidIssuer pidIssuer) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server.setExecutor(this.executor);
+        this.server.createContext(PRESENTATIONS, this::handlePresentations);
+        this.server.createContext(WALLET, this::handleWallet);
+        this.baseUrl = "http://localhost:" + port;
+        this.clientId = clientId;
+        this.pidIssuer = pidIssuer;
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    public String getPresentationsUrl() {
+        return this.baseUrl + PRESENTATIONS;
+    }
+
+    private void handlePresentations(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if ("POST".equals(exchange.getRequestMethod()) && path.equals(PRESENTATIONS)) {
+                StubHttp.readBody(exchange);
+                String presentationId = UUID.randomUUID().toString();
+                this.presentations.put(presentationId, -1);
+                StubHttp.sendJson(exchange, 200, new JSONObject()
+                        .put("presentation_id", presentationId)
+                        .put("client_id", this.clientId)
+                        .put("request_uri", this.baseUrl + WALLET + presentationId)
+                        .toString());
+            } else if ("GET".equals(exchange.getRequestMethod()) && path.startsWith(PRESENTATIONS + "/")) {
+                String presentationId = path.substring(PRESENTATIONS.length() + 1);
+                Integer user = this.presentations.get(presentationId);
+                if (user == null) {
+                    StubHttp.sendStatus(exchange, 404);
+                } else if (user < 0) {
+                    StubHttp.sendStatus(exchange, 400);
+                } else {
+                    this.presentations.remove(presentationId);
+                    StubHttp.sendJson(exchange, 200, presentationResponse(user));
+                }
+            } else {
+                StubHttp.sendStatus(exchange, 405);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleWallet(HttpExchange exchange) throws IOException {
+        try {
+            String presentationId = exchange.getRequestURI().getPath().substring(WALLET.length());
+            String user = StubHttp.queryParameters(exchange).get("user");
+            if (!"POST".equals(exchange.getRequestMethod()) || user == null) {
+                StubHttp.sendStatus(exchange, 400);
+            } else if (this.presentations.replace(presentationId, Integer.parseInt(user)) == null) {
+                StubHttp.sendStatus(exchange, 404);
+            } else {
+                StubHttp.sendStatus(exchange, 200);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the response of the verifier to the RSSP: the vp_token and the
+     *         presentation_submission for the presentation definition of the RSSP
+     */
+    private String presentationResponse(int user) {
+        return new JSONObject()
+                .put("vp_token", this.pidIssuer.vpToken(user))
+                .put("presentation_submission", new JSONObject()
+                        .put("id", UUID.randomUUID().toString())
+                        .put("definition_id", "32f54163-7166-48f1-93d8-ff217bdb0653")
+                        .put("descriptor_map", new JSONArray().put(new JSONObject()
+                                .put("id", TestPidIssuer.DOC_TYPE)
+                                .put("format", "mso_mdoc")
+                                .put("path", "$"))))
+                .toString();
+    }
+}
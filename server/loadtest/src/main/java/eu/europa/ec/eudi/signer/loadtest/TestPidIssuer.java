@@ -0,0 +1,147 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.loadtest;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.upokecenter.cbor.CBORObject;
+
+import COSE.AlgorithmID;
+import id.walt.mdoc.COSECryptoProviderKeyInfo;
+import id.walt.mdoc.SimpleCOSECryptoProvider;
+import id.walt.mdoc.dataelement.BooleanElement;
+import id.walt.mdoc.dataelement.ByteStringElement;
+import id.walt.mdoc.dataelement.DataElement;
+import id.walt.mdoc.dataelement.MapElement;
+import id.walt.mdoc.dataelement.MapKey;
+import id.walt.mdoc.dataelement.NumberElement;
+import id.walt.mdoc.dataelement.StringElement;
+import id.walt.mdoc.doc.MDoc;
+import id.walt.mdoc.doc.MDocBuilder;
+import id.walt.mdoc.mdocauth.DeviceKeyInfo;
+import id.walt.mdoc.mso.ValidityInfo;
+import kotlinx.datetime.Instant;
+
+/**
+ * Issues the test PIDs (mso_mdoc, signed by the document signer of the TestPki)
+ * of the virtual users, and encodes them as the vp_token of a DeviceResponse.
+ * The PID of a virtual user is always the same, so that the user found by the
+ * RSSP at the authorization is the one that logged in. It is signed once and
+ * reused until half of its validity has passed.
+ */
+public class TestPidIssuer {
+
+    public static final String DOC_TYPE = "eu.europa.ec.eudi.pid.1";
+
+    private static final String KEY_ID = "loadtest-ds";
+    private static final Duration VALIDITY = Duration.ofDays(1);
+
+    private final SimpleCOSECryptoProvider cryptoProvider;
+    private final String issuingCountry;
+    private final Map<Integer, IssuedPid> issued = new ConcurrentHashMap<>();
+
+    /**
+     * @param issuingCountry the issuing_country of the PIDs, which selects the CA
+     *                       of the credentials in the ejbca.countries of the RSSP
+     */
+    public TestPidIssuer(TestPki pki, String issuingCountry) {
+        KeyPair documentSigner = pki.getDocumentSignerKeyPair();
+        COSECryptoProviderKeyInfo keyInfo = new COSECryptoProviderKeyInfo(KEY_ID, AlgorithmID.ECDSA_256,
+                documentSigner.getPublic(), documentSigner.getPrivate(),
+                Collections.singletonList(pki.getDocumentSignerCertificate()),
+                Collections.singletonList(pki.getPidIssuerCACertificate()));
+        this.cryptoProvider = new SimpleCOSECryptoProvider(Collections.singletonList(keyInfo));
+        this.issuingCountry = issuingCountry;
+    }
+
+    /**
+     * @param user the index of the virtual user
+     * @return the vp_token (base64url encoded DeviceResponse) with the PID of the
+     *         user
+     */
+    public String vpToken(int user) {
+        java.time.Instant now = java.time.Instant.now();
+        return this.issued.compute(user, (key, pid) -> pid != null && pid.renewAt.isAfter(now)
+                ? pid
+                : new IssuedPid(issue(key, now), now.plus(VALIDITY.dividedBy(2)))).vpToken;
+    }
+
+    private String issue(int user, java.time.Instant now) {
+        try {
+            MDoc mdoc = new MDocBuilder(DOC_TYPE)
+                    .addItemToSign(DOC_TYPE, "family_name", new StringElement("LoadTest"))
+                    .addItemToSign(DOC_TYPE, "given_name", new StringElement("User" + user))
+                    .addItemToSign(DOC_TYPE, "birth_date", new StringElement("1990-01-01"))
+                    .addItemToSign(DOC_TYPE, "age_over_18", new BooleanElement(true))
+                    .addItemToSign(DOC_TYPE, "issuing_authority", new StringElement("Load Test PID Issuer"))
+                    .addItemToSign(DOC_TYPE, "issuing_country", new StringElement(this.issuingCountry))
+                    .sign(new ValidityInfo(new Instant(now), new Instant(now), new Instant(now.plus(VALIDITY)), null),
+                            new DeviceKeyInfo(deviceKey(TestPki.generateKeyPair()), null, null),
+                            this.cryptoProvider, KEY_ID);
+
+            CBORObject deviceResponse = CBORObject.NewMap()
+                    .Add("version", "1.0")
+                    .Add("documents", CBORObject.NewArray().Add(CBORObject.DecodeFromBytes(mdoc.toCBOR())))
+                    .Add("status", 0);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(deviceResponse.EncodeToBytes());
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to issue the PID of the user " + user, e);
+        }
+    }
+
+    /**
+     * @return the COSE_Key (EC2, P-256) of the public key of the wallet
+     */
+    private static MapElement deviceKey(KeyPair keyPair) {
+        ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+        Map<MapKey, DataElement<?>> coseKey = new LinkedHashMap<>();
+        coseKey.put(new MapKey(1), new NumberElement(2));
+        coseKey.put(new MapKey(-1), new NumberElement(1));
+        coseKey.put(new MapKey(-2), new ByteStringElement(unsigned(publicKey.getW().getAffineX())));
+        coseKey.put(new MapKey(-3), new ByteStringElement(unsigned(publicKey.getW().getAffineY())));
+        return new MapElement(coseKey);
+    }
+
+    private static byte[] unsigned(BigInteger coordinate) {
+        byte[] bytes = coordinate.toByteArray();
+        if (bytes.length == 32) {
+            return bytes;
+        }
+        byte[] fixed = new byte[32];
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, fixed, 32 - length, length);
+        return fixed;
+    }
+
+    private static final class IssuedPid {
+        private final String vpToken;
+        private final java.time.Instant renewAt;
+
+        private IssuedPid(String vpToken, java.time.Instant renewAt) {
+            this.vpToken = vpToken;
+            this.renewAt = renewAt;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * The test certification authorities of the load test, all with P-256 keys,
+ * created when the stand-ins start:
+ * - the PID issuer CA and its document signer, that signs the test PIDs
+ * (trusted by the RSSP through trusted-issuers.folder);
+ * - the management CA of the EJBCA stand-in, that issues its TLS certificate
+ * and the client certificate used by the RSSP.
+ * The CAs that issue the certificates of the credentials are created by the
+ * EJBCA stand-in, one for each certificate_authority_name requested.
+ */
+public class TestPki {
+
+    public static final String CLIENT_P12_PASSWORD = "loadtest";
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final KeyPair pidIssuerCAKeyPair;
+    private final X509Certificate pidIssuerCACertificate;
+    private final KeyPair documentSignerKeyPair;
+    private final X509Certificate documentSignerCertificate;
+
+    private final KeyPair managementCAKeyPair;
+    private final X509Certificate managementCACertificate;
+    private final KeyPair tlsKeyPair;
+    private final X509Certificate tlsCertificate;
+    private final KeyPair clientKeyPair;
+    private final X509Certificate clientCertificate;
+
+    public TestPki(String tlsHostname) throws Exception {
+        X500Name pidIssuerCA = new X500Name("CN=PID Issuer CA - Load Test,O=EUDI Signer Load Test,C=EU");
+        this.pidIssuerCAKeyPair = generateKeyPair();
+        this.pidIssuerCACertificate = issue(pidIssuerCA, this.pidIssuerCAKeyPair.getPrivate(), pidIssuerCA,
+                this.pidIssuerCAKeyPair.getPublic(), true, null);
+        this.documentSignerKeyPair = generateKeyPair();
+        this.documentSignerCertificate = issue(pidIssuerCA, this.pidIssuerCAKeyPair.getPrivate(),
+                new X500Name("CN=PID DS - Load Test,O=EUDI Signer Load Test,C=EU"),
+                this.documentSignerKeyPair.getPublic(), false, null);
+
+        X500Name managementCA = new X500Name("CN=ManagementCA - Load Test,O=EUDI Signer Load Test,C=EU");
+        this.managementCAKeyPair = generateKeyPair();
+        this.managementCACertificate = issue(managementCA, this.managementCAKeyPair.getPrivate(), managementCA,
+                this.managementCAKeyPair.getPublic(), true, null);
+        this.tlsKeyPair = generateKeyPair();
+        this.tlsCertificate = issue(managementCA, this.managementCAKeyPair.getPrivate(),
+                new X500Name("CN=" + tlsHostname), this.tlsKeyPair.getPublic(), false, tlsHostname);
+        this.clientKeyPair = generateKeyPair();
+        this.clientCertificate = issue(managementCA, this.managementCAKeyPair.getPrivate(),
+                new X500Name("CN=RSSP - Load Test"), this.clientKeyPair.getPublic(), false, null);
+    }
+
+    public static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"), new SecureRandom());
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Issues a certificate valid from yesterday for a year
+     *
+     * @param dnsName the DNS name of a TLS server certificate, or null
+     */
+    public static X509Certificate issue(X500Name issuer, PrivateKey issuerKey, X500Name subject,
+            PublicKey subjectKey, boolean ca, String dnsName) throws Exception {
+        long now = System.currentTimeMillis();
+        JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils();
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(issuer,
+                new BigInteger(64, new SecureRandom()), new Date(now - DAY), new Date(now + 365 * DAY), subject,
+                subjectKey)
+                .addExtension(Extension.subjectKeyIdentifier, false,
+                        extensionUtils.createSubjectKeyIdentifier(subjectKey))
+                .addExtension(Extension.basicConstraints, true, new BasicConstraints(ca))
+                .addExtension(Extension.keyUsage, true, ca
+                        ? new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign)
+                        : new KeyUsage(KeyUsage.digitalSignature | KeyUsage.nonRepudiation));
+        if (dnsName != null) {
+            builder.addExtension(Extension.subjectAlternativeName, false,
+                    new GeneralNames(new GeneralName(GeneralName.dNSName, dnsName)));
+        }
+        return new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(issuerKey)));
+    }
+
+    /**
+     * Writes the files the RSSP needs to trust the stand-ins:
+     * - issuersCertificates/pid-issuer-ca.pem, the folder of trusted-issuers;
+     * - ejbca/management-ca.pem and ejbca/client.p12, for the TLS connection to
+     * the EJBCA stand-in.
+     */
+    public void writeFiles(Path directory) throws Exception {
+        Path issuersCertificates = Files.createDirectories(directory.resolve("issuersCertificates"));
+        Files.writeString(issuersCertificates.resolve("pid-issuer-ca.pem"), toPem(this.pidIssuerCACertificate));
+
+        Path ejbca = Files.createDirectories(directory.resolve("ejbca"));
+        Files.writeString(ejbca.resolve("management-ca.pem"), toPem(this.managementCACertificate));
+        KeyStore clientStore = KeyStore.getInstance("PKCS12");
+        clientStore.load(null, null);
+        clientStore.setKeyEntry("client", this.clientKeyPair.getPrivate(), CLIENT_P12_PASSWORD.toCharArray(),
+                new Certificate[] { this.clientCertificate, this.managementCACertificate });
+        try (OutputStream out = Files.newOutputStream(ejbca.resolve("client.p12"))) {
+            clientStore.store(out, CLIENT_P12_PASSWORD.toCharArray());
+        }
+    }
+
+    /**
+     * @return the server side SSLContext of the EJBCA stand-in
+     */
+    public SSLContext tlsServerContext() throws Exception {
+        char[] password = CLIENT_P12_PASSWORD.toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("tls", this.tlsKeyPair.getPrivate(), password,
+                new Certificate[] { this.tlsCertificate, this.managementCACertificate });
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        return sslContext;
+    }
+
+    public static String toPem(Object object) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JcaPEMWriter pemWriter = new JcaPEMWriter(writer)) {
+            pemWriter.writeObject(object);
+        }
+        return writer.toString();
+    }
+
+    public X509Certificate getPidIssuerCACertificate() {
+        return this.pidIssuerCACertificate;
+    }
+
+    public KeyPair getDocumentSignerKeyPair() {
+        return this.documentSignerKeyPair;
+    }
+
+    public X509Certificate getDocumentSignerCertificate() {
+        return this.documentSignerCertificate;
+    }
+}
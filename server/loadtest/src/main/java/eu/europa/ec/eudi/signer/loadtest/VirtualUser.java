@@ -0,0 +1,275 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.loadtest;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A virtual user of the load test, that repeats the flow of the signature of a
+ * document through the RSSP:
+ * login (OpenID4VP) -> create credential -> (authorize (OpenID4VP) -> signHash
+ * ...) -> delete credential.
+ * The wallet is played by the StubVerifier: the user answers each presentation
+ * request with its PID before the RSSP polls the verifier for it.
+ */
+public class VirtualUser implements Runnable {
+
+    static final String AUTH_LINK = "GET /auth/link";
+    static final String AUTH_TOKEN = "GET /auth/token";
+    static final String CREATE_CREDENTIAL = "POST /api/v1/credentials";
+    static final String CREDENTIAL_JOB = "GET /api/v1/credentials/jobs/{id}";
+    static final String CREDENTIAL_CREATED = "credential created (job)";
+    static final String AUTHORIZATION_LINK = "GET /csc/v1/credentials/authorizationLink";
+    static final String AUTHORIZE = "POST /csc/v1/credentials/authorize";
+    static final String SIGN_HASH = "POST /csc/v1/signatures/signHash";
+    static final String DELETE_CREDENTIAL = "DELETE /api/v1/credentials/{alias}";
+    static final String WALLET = "POST wallet (verifier stand-in)";
+    static final String FLOW = "whole flow";
+
+    private static final String SHA256 = "2.16.840.1.101.3.4.2.1";
+    private static final String API_CREDENTIALS = "/api/v1/credentials";
+    private static final String CSC_CREDENTIALS = "/csc/v1/credentials";
+
+    private final int index;
+    private final LoadTestOptions options;
+    private final HttpClient httpClient;
+    private final LatencyRecorder recorder;
+    private final long deadline;
+    private final SecureRandom random = new SecureRandom();
+
+    public VirtualUser(int index, LoadTestOptions options, HttpClient httpClient, LatencyRecorder recorder,
+            long deadline) {
+        this.index = index;
+        this.options = options;
+        this.httpClient = httpClient;
+        this.recorder = recorder;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public void run() {
+        for (int iteration = 0; System.nanoTime() < this.deadline && !Thread.currentThread().isInterrupted()
+                && (this.options.iterations <= 0 || iteration < this.options.iterations); iteration++) {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                flow("loadtest-" + this.options.runId + "-" + this.index + "-" + iteration);
+                success = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (this.options.verbose) {
+                    System.err.println("User " + this.index + ": " + e.getMessage());
+                }
+            } finally {
+                this.recorder.record(FLOW, start, success);
+            }
+            if (!success) {
+                // do not retry in a tight loop when the RSSP fails
+                pause(Math.max(this.options.thinkTimeMillis, 500));
+            }
+        }
+    }
+
+    private void flow(String alias) throws Exception {
+        String accessToken = login();
+        pause(this.options.thinkTimeMillis);
+
+        createCredential(accessToken, alias);
+        pause(this.options.thinkTimeMillis);
+
+        try {
+            for (int a = 0; a < this.options.authorizations; a++) {
+                String sad = authorize(accessToken, alias);
+                for (int s = 0; s < this.options.signatures; s++) {
+                    pause(this.options.thinkTimeMillis);
+                    signHash(accessToken, alias, sad);
+                }
+            }
+        } finally {
+            if (this.options.deleteCredentials) {
+                send(DELETE_CREDENTIAL, request(API_CREDENTIALS + "/" + alias, accessToken).DELETE(), 200);
+            }
+        }
+    }
+
+    private String login() throws Exception {
+        HttpResponse<String> link = send(AUTH_LINK, request("/auth/link", null).GET(), 200);
+        String sessionCookie = link.headers().allValues("Set-Cookie").stream()
+                .filter(cookie -> cookie.startsWith("JSESSIONID="))
+                .map(cookie -> cookie.split(";", 2)[0])
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No session cookie in " + AUTH_LINK));
+        present(new JSONObject(link.body()).getString("link"));
+
+        HttpResponse<String> token = send(AUTH_TOKEN,
+                request("/auth/token", null).header("Cookie", sessionCookie).GET(), 200);
+        return new JSONObject(token.body()).getString("accessToken");
+    }
+
+    private void createCredential(String accessToken, String alias) throws Exception {
+        long start = System.nanoTime();
+        boolean created = false;
+        try {
+            HttpResponse<String> response = send(CREATE_CREDENTIAL,
+                    request(API_CREDENTIALS + "?alias=" + URLEncoder.encode(alias, StandardCharsets.UTF_8),
+                            accessToken).POST(HttpRequest.BodyPublishers.noBody()),
+                    202);
+            String jobId = new JSONObject(response.body()).getString("jobId");
+            // a job that never completes fails the flow, and is counted as a failed creation
+            long deadline = start + this.options.jobTimeout.toNanos();
+            while (true) {
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new TimeoutException("The credential was not created in " + this.options.jobTimeout);
+                }
+                TimeUnit.MILLISECONDS.sleep(this.options.jobPollMillis);
+                JSONObject job = new JSONObject(send(CREDENTIAL_JOB,
+                        request(API_CREDENTIALS + "/jobs/" + jobId, accessToken).GET(), 200).body());
+                String status = job.getString("status");
+                if ("SUCCEEDED".equals(status)) {
+                    created = true;
+                    return;
+                }
+                if ("FAILED".equals(status)) {
+                    throw new IllegalStateException("The creation of the credential failed: " + job.optString("error"));
+                }
+            }
+        } finally {
+            this.recorder.record(CREDENTIAL_CREATED, start, created);
+        }
+    }
+
+    private String authorize(String accessToken, String alias) throws Exception {
+        HttpResponse<String> link = send(AUTHORIZATION_LINK,
+                request(CSC_CREDENTIALS + "/authorizationLink", accessToken).GET(), 200);
+        present(new JSONObject(link.body()).getString("link"));
+
+        JSONObject authorizeRequest = new JSONObject()
+                .put("credentialID", alias)
+                .put("numSignatures", this.options.signatures * this.options.hashes);
+        HttpResponse<String> response = send(AUTHORIZE, request(CSC_CREDENTIALS + "/authorize", accessToken)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(authorizeRequest.toString())), 200);
+        return new JSONObject(response.body()).getString("SAD");
+    }
+
+    private void signHash(String accessToken, String alias, String sad) throws Exception {
+        JSONArray hashes = new JSONArray();
+        for (int h = 0; h < this.options.hashes; h++) {
+            byte[] digest = new byte[32];
+            this.random.nextBytes(digest);
+            hashes.put(Base64.getEncoder().encodeToString(digest));
+        }
+        JSONObject signHashRequest = new JSONObject()
+                .put("credentialID", alias)
+                .put("SAD", sad)
+                .put("hash", hashes)
+                .put("hashAlgo", SHA256)
+                .put("signAlgo", this.options.signAlgo)
+                .put("clientData", "loadtest.pdf");
+        HttpResponse<String> response = send(SIGN_HASH, request("/csc/v1/signatures/signHash", accessToken)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(signHashRequest.toString())), 200);
+        int signatures = new JSONObject(response.body()).getJSONArray("signatures").length();
+        if (signatures != this.options.hashes) {
+            throw new IllegalStateException("signHash returned " + signatures + " signatures");
+        }
+    }
+
+    /**
+     * Plays the wallet: answers the presentation of the deep link with the PID of
+     * this user
+     *
+     * @param deepLink the eudi-openid4vp:// link returned by the RSSP
+     */
+    private void present(String deepLink) throws Exception {
+        String requestUri = queryParameter(deepLink, "request_uri")
+                .orElseThrow(() -> new IllegalStateException("No request_uri in the link " + deepLink));
+        send(WALLET, HttpRequest.newBuilder(URI.create(requestUri + "?user=" + this.index))
+                .timeout(this.options.requestTimeout)
+                .POST(HttpRequest.BodyPublishers.noBody()), 200);
+    }
+
+    private static Optional<String> queryParameter(String link, String name) {
+        int query = link.indexOf('?');
+        if (query < 0) {
+            return Optional.empty();
+        }
+        for (String parameter : link.substring(query + 1).split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return Optional.of(URLDecoder.decode(parameter.substring(name.length() + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private HttpRequest.Builder request(String path, String accessToken) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(this.options.rsspUrl + path))
+                .timeout(this.options.requestTimeout);
+        if (accessToken != null) {
+            builder.header("Authorization", "Bearer " + accessToken);
+        }
+        return builder;
+    }
+
+    /**
+     * Sends the request and records its latency; a response with another status
+     * is an error
+     */
+    private HttpResponse<String> send(String name, HttpRequest.Builder request, int expectedStatus)
+            throws Exception {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            HttpResponse<String> response = this.httpClient.send(request.build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != expectedStatus) {
+                throw new IllegalStateException(name + " returned " + response.statusCode() + ": " + response.body());
+            }
+            success = true;
+            return response;
+        } finally {
+            this.recorder.record(name, start, success);
+        }
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
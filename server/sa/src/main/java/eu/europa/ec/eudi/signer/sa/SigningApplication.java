@@ -23,10 +23,11 @@ import org.springframework.boot.context.ApplicationPidFileWriter;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 import eu.europa.ec.eudi.signer.sa.config.FileStorageConfig;
+import eu.europa.ec.eudi.signer.sa.config.PdfSigningConfig;
 import eu.europa.ec.eudi.signer.sa.config.RSSPClientConfig;
 
 /** Main Spring Boot application class for Trust Provider Signer application */
-@EnableConfigurationProperties({ FileStorageConfig.class, RSSPClientConfig.class })
+@EnableConfigurationProperties({ FileStorageConfig.class, RSSPClientConfig.class, PdfSigningConfig.class })
 // disable security on the Signing App - all security is on the RSSP
 @SpringBootApplication(scanBasePackages = "eu.europa.ec.eudi.signer.sa", exclude = SecurityAutoConfiguration.class)
 public class SigningApplication {
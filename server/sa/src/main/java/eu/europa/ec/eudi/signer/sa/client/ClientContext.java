@@ -16,6 +16,8 @@
 
 package eu.europa.ec.eudi.signer.sa.client;
 
+import io.opentelemetry.context.Context;
+
 /**
  * Context for a call to the RSSP
  */
@@ -26,6 +28,7 @@ public class ClientContext {
     private String signAlgo;
     private String pdfHash;
     private String subject;
+    private Context traceContext = Context.root();
 
     public String getAuthorizationHeader() {
         return authorizationHeader;
@@ -74,4 +77,16 @@ public class ClientContext {
     public String getSubject() {
         return subject;
     }
+
+    /**
+     * @return the trace context of the request to the SA, the parent of the
+     *         spans of the calls to the RSSP
+     */
+    public Context getTraceContext() {
+        return traceContext;
+    }
+
+    public void setTraceContext(Context traceContext) {
+        this.traceContext = traceContext;
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.sa.client;
+
+import eu.europa.ec.eudi.signer.csc.payload.CSCCredentialsInfoResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the credentials/info responses of the RSSP, per user (authorization
+ * header) and credential alias.
+ * An entry is fresh during the time to live: the signing flow then uses it
+ * without calling the RSSP. After that it is revalidated with the ETag of the
+ * response (If-None-Match), so an unchanged credential costs a 304 without
+ * body.
+ * The cache keeps at most maxEntries (the least recently used are evicted),
+ * and the expired entries are removed once per time to live by a background
+ * thread, not by the signings.
+ */
+public class CredentialInfoCache implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CredentialInfoCache.class);
+
+    private final Duration timeToLive;
+    private final Map<Key, Entry> entries;
+    private final ScheduledExecutorService executor;
+
+    public CredentialInfoCache(Duration timeToLive, final int maxEntries) {
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "credential-info-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, timeToLive.getSeconds());
+        this.executor.scheduleWithFixedDelay(() -> {
+            try {
+                removeExpired();
+            } catch (RuntimeException e) {
+                log.error("Error removing the expired credential infos", e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public synchronized Entry get(String authorizationHeader, String credentialAlias) {
+        return entries.get(new Key(authorizationHeader, credentialAlias));
+    }
+
+    public synchronized void put(String authorizationHeader, String credentialAlias,
+            CSCCredentialsInfoResponse credentialInfo, String eTag) {
+        entries.put(new Key(authorizationHeader, credentialAlias),
+                new Entry(credentialInfo, eTag, Instant.now().plus(timeToLive)));
+    }
+
+    public synchronized void invalidate(String authorizationHeader, String credentialAlias) {
+        entries.remove(new Key(authorizationHeader, credentialAlias));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes the entries that are no longer fresh and have no ETag to be
+     * revalidated with, and the ones of expired sessions
+     */
+    synchronized void removeExpired() {
+        Instant limit = Instant.now().minus(timeToLive);
+        entries.values().removeIf(entry -> entry.freshUntil.isBefore(limit)
+                || (entry.eTag == null && !entry.isFresh()));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public static class Entry {
+        private final CSCCredentialsInfoResponse credentialInfo;
+        private final String eTag;
+        private final Instant freshUntil;
+
+        private Entry(CSCCredentialsInfoResponse credentialInfo, String eTag, Instant freshUntil) {
+            this.credentialInfo = credentialInfo;
+            this.eTag = eTag;
+            this.freshUntil = freshUntil;
+        }
+
+        public CSCCredentialsInfoResponse getCredentialInfo() {
+            return credentialInfo;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public boolean isFresh() {
+            return Instant.now().isBefore(freshUntil);
+        }
+    }
+
+    private static class Key {
+        private final String authorizationHeader;
+        private final String credentialAlias;
+
+        private Key(String authorizationHeader, String credentialAlias) {
+            this.authorizationHeader = authorizationHeader;
+            this.credentialAlias = credentialAlias;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return Objects.equals(authorizationHeader, key.authorizationHeader)
+                    && Objects.equals(credentialAlias, key.credentialAlias);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(authorizationHeader, credentialAlias);
+        }
+    }
+}
@@ -18,77 +18,188 @@ package eu.europa.ec.eudi.signer.sa.client;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import eu.europa.ec.eudi.signer.common.AccessCredentialDeniedException;
+import eu.europa.ec.eudi.signer.common.ApiErrorResponse;
 import eu.europa.ec.eudi.signer.common.FailedConnectionVerifier;
 import eu.europa.ec.eudi.signer.common.TimeoutException;
+import eu.europa.ec.eudi.signer.csc.error.CSCInvalidRequest;
+import eu.europa.ec.eudi.signer.csc.model.CSCConstants;
 import eu.europa.ec.eudi.signer.csc.payload.*;
 import eu.europa.ec.eudi.signer.sa.config.RSSPClientConfig;
 import eu.europa.ec.eudi.signer.sa.error.CredentialNotFoundException;
 import eu.europa.ec.eudi.signer.sa.error.InvalidRequestException;
 import eu.europa.ec.eudi.signer.sa.error.RSSPClientException;
 
+import io.opentelemetry.api.OpenTelemetry;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
  * REST client for the RSSP web service, used by signing applications to get
- * credentials and sign hashes
+ * credentials and sign hashes.
+ * The client holds no per-request state: the ClientContext is passed to every
+ * call, so a single instance (and its WebClients) can be shared by concurrent
+ * signings. All the calls are non-blocking.
  */
 public class RSSPClient implements SignerClient {
 
     private final WebClient webClient;
+    private final WebClient apiWebClient;
+    private final CredentialInfoCache credentialInfoCache;
 
-    private ClientContext context;
     private static final Logger log = LoggerFactory.getLogger(RSSPClient.class);
 
     public RSSPClient(RSSPClientConfig config) {
+        this(config, OpenTelemetry.noop());
+    }
+
+    /**
+     * @param openTelemetry used to trace the calls to the RSSP, which continue
+     *                      the trace of the ClientContext
+     */
+    public RSSPClient(RSSPClientConfig config, OpenTelemetry openTelemetry) {
+        TracingExchangeFilter tracing = new TracingExchangeFilter(openTelemetry,
+                openTelemetry.getTracer(RSSPClient.class.getName()));
         webClient = WebClient.builder().baseUrl(config.setCscBaseUrl())
                 .defaultCookie("cookieKey", "cookieValue")
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).build();
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .filter(tracing).build();
+        apiWebClient = WebClient.builder().baseUrl(config.getApiBaseUrl())
+                .defaultCookie("cookieKey", "cookieValue")
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .filter(tracing).build();
+        credentialInfoCache = new CredentialInfoCache(Duration.ofSeconds(config.getCredentialInfoTtlSeconds()),
+                config.getCredentialInfoCacheSize());
     }
 
-    @Override
-    public RedirectLinkResponse getOIDRedirectLink() {
-        final RedirectLinkResponse response = requestOIDRedirectLink().block();
-        assert response != null;
-        return response;
+    /**
+     * Stops the removal of the expired credential infos of the cache
+     */
+    public void close() {
+        credentialInfoCache.close();
     }
 
     @Override
-    public ClientContext prepCredential() {
-        final List<CredentialInfo> credentials = listCredentialsForCurrentUser();
-        if (credentials == null || credentials.isEmpty()) {
-            throw new CredentialNotFoundException("The current user has no credentials with which to sign");
-        }
+    public Mono<RedirectLinkResponse> getOIDRedirectLink(ClientContext context) {
+        return requestOIDRedirectLink(context);
+    }
 
-        List<String> credentialIDs = credentials.stream().map(CredentialInfo::getAlias).collect(Collectors.toList());
+    @Override
+    public Mono<ClientContext> prepCredential(ClientContext context) {
+        final String requestedCredentialID = context.getCredentialID();
+        if (StringUtils.hasText(requestedCredentialID)) {
+            final String authorizationHeader = buildAuthHeader(context);
+            CredentialInfoCache.Entry cached = credentialInfoCache.get(authorizationHeader, requestedCredentialID);
+            if (cached != null && cached.isFresh()) {
+                return Mono.just(updateContext(context, requestedCredentialID, cached.getCredentialInfo()));
+            }
 
-        // alias
-        String credentialID = getContext().getCredentialID();
-        if (StringUtils.hasText(credentialID)) {
-            if (!credentialIDs.contains(credentialID)) {
-                throw new InvalidRequestException("The current user does not own the specified credential");
+            Mono<ClientContext> preparedContext;
+            if (cached != null) {
+                // revalidate the cached info: credentials/info only answers for the
+                // credentials of the user, so the list is not needed
+                preparedContext = fetchCredentialInfo(requestedCredentialID, cached, context)
+                        .map(credentialInfo -> updateContext(context, requestedCredentialID, credentialInfo));
+            } else {
+                // the credential is known: list and info are independent
+                preparedContext = Mono.zip(listCredentialsForCurrentUser(context),
+                        getCredentialInfo(requestedCredentialID, context))
+                        .map(results -> {
+                            List<String> credentialIDs = getCredentialIDs(results.getT1());
+                            if (!credentialIDs.contains(requestedCredentialID)) {
+                                throw new InvalidRequestException(
+                                        "The current user does not own the specified credential");
+                            }
+                            return updateContext(context, requestedCredentialID, results.getT2());
+                        });
             }
-        } else {
-            credentialID = credentialIDs.get(0);
+            return preparedContext
+                    .doOnError(this::isInvalidCredential,
+                            e -> credentialInfoCache.invalidate(authorizationHeader, requestedCredentialID));
         }
-        context.setCredentialID(credentialID);
 
-        final CSCCredentialsInfoResponse credentialInfo = getCredentialInfo(credentialID);
-        if (credentialInfo == null) {
-            throw new InvalidRequestException("Could not get info on the specified credential");
+        // no credential requested: use the first one of the user
+        return listCredentialsForCurrentUser(context)
+                .flatMap(credentials -> {
+                    String credentialID = getCredentialIDs(credentials).get(0);
+                    return getCredentialInfo(credentialID, context)
+                            .map(credentialInfo -> updateContext(context, credentialID, credentialInfo));
+                });
+    }
+
+    @Override
+    public Mono<byte[]> signHash(String pdfName, byte[] pdfHash, ClientContext context) {
+        return signHashes(pdfName, Collections.singletonList(pdfHash), context)
+                .map(signatures -> signatures.get(0));
+    }
+
+    @Override
+    public Mono<List<byte[]>> signHashes(String pdfNames, List<byte[]> pdfHashes, ClientContext context) {
+        // authorize the credential for all the signatures and use the SAD to sign
+        return authorize(pdfHashes.size(), context)
+                .flatMap(SAD -> signHashes(pdfNames, pdfHashes, SAD, context));
+    }
+
+    @Override
+    public Mono<String> authorize(int numSignatures, ClientContext context) {
+        String credentialAlias = context.getCredentialID();
+        return authorizeCredential(credentialAlias, numSignatures, context)
+                .switchIfEmpty(Mono.error(
+                        () -> new InvalidRequestException("Could not authorize the credential with the PIN")))
+                .doOnError(this::isInvalidCredential,
+                        e -> credentialInfoCache.invalidate(buildAuthHeader(context), credentialAlias));
+    }
+
+    @Override
+    public Mono<List<byte[]>> signHashes(String pdfNames, List<byte[]> pdfHashes, String SAD, ClientContext context) {
+        String credentialAlias = context.getCredentialID();
+        log.info("Signing {} hash(es) with credential: {}", pdfHashes.size(), credentialAlias);
+        List<String> pdfHashesB64 = pdfHashes.stream()
+                .map(pdfHash -> Base64.getEncoder().encodeToString(pdfHash))
+                .collect(Collectors.toList());
+        return signHashes(pdfNames, pdfHashesB64, credentialAlias, SAD, context.getSignAlgo(),
+                CSCConstants.CSC_HASH_ALGO_SHA256, context)
+                .map(signedHashesB64 -> signedHashesB64.stream()
+                        .map(signedHashB64 -> Base64.getDecoder().decode(signedHashB64))
+                        .collect(Collectors.toList()))
+                .doOnError(this::isInvalidCredential,
+                        e -> credentialInfoCache.invalidate(buildAuthHeader(context), credentialAlias));
+    }
+
+    /**
+     * @return true if the RSSP rejected the credential (deleted or not owned by
+     *         the user), in which case its cached info must be dropped
+     */
+    private boolean isInvalidCredential(Throwable e) {
+        return e instanceof RSSPClientException && CSCInvalidRequest.InvalidCredentialId.getDescription()
+                .equals(((RSSPClientException) e).getDescription());
+    }
+
+    private List<String> getCredentialIDs(List<CredentialInfo> credentials) {
+        if (credentials == null || credentials.isEmpty()) {
+            throw new CredentialNotFoundException("The current user has no credentials with which to sign");
         }
+        return credentials.stream().map(CredentialInfo::getAlias).collect(Collectors.toList());
+    }
+
+    private ClientContext updateContext(ClientContext context, String credentialID,
+            CSCCredentialsInfoResponse credentialInfo) {
+        context.setCredentialID(credentialID);
 
         // get the algo from the credential info
         final CSCCredentialsInfoResponse.Key key = credentialInfo.getKey();
@@ -108,175 +219,169 @@ public class RSSPClient implements SignerClient {
         return context;
     }
 
-    @Override
-    public byte[] signHash(String pdfName, byte[] pdfHash, ClientContext context)
-            throws FailedConnectionVerifier, TimeoutException, AccessCredentialDeniedException, Exception {
-
-        String credentialAlias = context.getCredentialID();
-
-        // now authorize it
-        String SAD = authorizeCredential(credentialAlias);
-        if (SAD == null) {
-            throw new InvalidRequestException("Could not authorize the credential with the PIN");
-        }
-
-        // and use it to sign
-        log.info("Signing hash with credential: {}", credentialAlias);
-        final String pdfHashB64 = Base64.getEncoder().encodeToString(pdfHash);
-        final String signedHashB64 = signHash(pdfName, pdfHashB64, credentialAlias, SAD, context.getSignAlgo());
-        return Base64.getDecoder().decode(signedHashB64);
-    }
-
     // -------
 
-    public Mono<RedirectLinkResponse> requestOIDRedirectLink() {
+    public Mono<RedirectLinkResponse> requestOIDRedirectLink(ClientContext context) {
         return webClient.get()
                 .uri("/credentials/authorizationLink")
-                .header("Authorization", buildAuthHeader())
+                .header("Authorization", buildAuthHeader(context))
+                .attribute(TracingExchangeFilter.PARENT_CONTEXT, context.getTraceContext())
                 .retrieve()
                 .bodyToMono(
                         RedirectLinkResponse.class);
     }
 
-    public Mono<CredentialInfo[]> requestCredentialList(CSCCredentialsListRequest request) {
-
-        WebClient aux = WebClient.builder().baseUrl("http://localhost:8082/api/v1")
-                .defaultCookie("cookieKey", "cookieValue")
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).build();
-
-        return aux.post()
+    public Mono<CredentialInfo[]> requestCredentialList(CSCCredentialsListRequest request, ClientContext context) {
+        return apiWebClient.post()
                 .uri("/credentials/list")
-                .header("Authorization", buildAuthHeader())
+                .header("Authorization", buildAuthHeader(context))
+                .attribute(TracingExchangeFilter.PARENT_CONTEXT, context.getTraceContext())
                 .exchangeToMono(response -> {
                     if (response.statusCode().equals(HttpStatus.OK)) {
-                        return response.bodyToMono(CredentialInfo[].class).log();
-                        // return response.bodyToMono(CSCCredentialsListResponse.class);
+                        return response.bodyToMono(CredentialInfo[].class);
                     } else {
-                        return Mono.error(new RSSPClientException(response));
+                        return clientError(response);
                     }
                 });
     }
 
-    public Mono<CSCCredentialsInfoResponse> requestCredentialInfo(CSCCredentialsInfoRequest request) {
-        return webClient.post()
-                .uri("/credentials/info")
-                .bodyValue(request)
-                .header("Authorization", buildAuthHeader())
-                .exchangeToMono(response -> {
-                    if (response.statusCode().equals(HttpStatus.OK)) {
-                        return response.bodyToMono(CSCCredentialsInfoResponse.class);
-                    } else {
-                        return Mono.error(new RSSPClientException(response));
-                    }
-                });
-    }
-
-    public Mono<CSCSignaturesSignHashResponse> requestSignHash(CSCSignaturesSignHashRequest request) {
+    public Mono<CSCSignaturesSignHashResponse> requestSignHash(CSCSignaturesSignHashRequest request,
+            ClientContext context) {
         return webClient.post()
                 .uri("/signatures/signHash")
                 .bodyValue(request)
-                .header("Authorization", buildAuthHeader())
+                .header("Authorization", buildAuthHeader(context))
+                .attribute(TracingExchangeFilter.PARENT_CONTEXT, context.getTraceContext())
                 .exchangeToMono(response -> {
                     if (response.statusCode().equals(HttpStatus.OK)) {
                         return response.bodyToMono(CSCSignaturesSignHashResponse.class);
                     } else {
-                        return Mono.error(new RSSPClientException(response));
+                        return clientError(response);
                     }
                 });
     }
 
     // lista de aliases
-    public List<CredentialInfo> listCredentialsForCurrentUser() {
+    public Mono<List<CredentialInfo>> listCredentialsForCurrentUser(ClientContext context) {
         CSCCredentialsListRequest request = new CSCCredentialsListRequest();
-        final CredentialInfo[] response = requestCredentialList(request).block();
-        return Arrays.stream(response).collect(Collectors.toList());
+        return requestCredentialList(request, context)
+                .map(response -> Arrays.stream(response).collect(Collectors.toList()));
     }
 
-    public CSCCredentialsInfoResponse getCredentialInfo(String credentialAlias) {
+    public Mono<CSCCredentialsInfoResponse> getCredentialInfo(String credentialAlias, ClientContext context) {
+        return fetchCredentialInfo(credentialAlias, null, context);
+    }
+
+    /**
+     * Requests the info of a credential and keeps it in the credential info
+     * cache. If a cached entry is given, its ETag is sent in If-None-Match and
+     * the cached info is reused when the RSSP answers 304 Not Modified.
+     */
+    private Mono<CSCCredentialsInfoResponse> fetchCredentialInfo(String credentialAlias,
+            CredentialInfoCache.Entry cached, ClientContext context) {
+        final String authorizationHeader = buildAuthHeader(context);
         CSCCredentialsInfoRequest request = new CSCCredentialsInfoRequest();
         request.setCredentialID(credentialAlias);
         request.setCertInfo(true);
-        return requestCredentialInfo(request).block();
+
+        return webClient.post()
+                .uri("/credentials/info")
+                .bodyValue(request)
+                .header("Authorization", authorizationHeader)
+                .attribute(TracingExchangeFilter.PARENT_CONTEXT, context.getTraceContext())
+                .headers(headers -> {
+                    if (cached != null && cached.getETag() != null) {
+                        headers.setIfNoneMatch(cached.getETag());
+                    }
+                })
+                .exchangeToMono(response -> {
+                    final String eTag = response.headers().asHttpHeaders().getETag();
+                    if (response.statusCode().equals(HttpStatus.OK)) {
+                        return response.bodyToMono(CSCCredentialsInfoResponse.class)
+                                .doOnNext(credentialInfo -> credentialInfoCache.put(authorizationHeader,
+                                        credentialAlias, credentialInfo, eTag));
+                    } else if (response.statusCode().equals(HttpStatus.NOT_MODIFIED) && cached != null) {
+                        credentialInfoCache.put(authorizationHeader, credentialAlias, cached.getCredentialInfo(),
+                                eTag != null ? eTag : cached.getETag());
+                        return response.releaseBody().thenReturn(cached.getCredentialInfo());
+                    } else {
+                        return clientError(response);
+                    }
+                })
+                .switchIfEmpty(Mono.error(
+                        () -> new InvalidRequestException("Could not get info on the specified credential")));
     }
 
-    public String authorizeCredential(String credentialAlias)
-            throws FailedConnectionVerifier, TimeoutException, AccessCredentialDeniedException, Exception {
+    public Mono<String> authorizeCredential(String credentialAlias, int numSignatures, ClientContext context) {
         CSCCredentialsAuthorizeRequest request = new CSCCredentialsAuthorizeRequest();
         request.setCredentialID(credentialAlias);
-        request.setNumSignatures(1);
-
-        try {
-            Mono<CSCCredentialsAuthorizeResponse> authorizationResponse = webClient.post()
-                    .uri("/credentials/authorize")
-                    .bodyValue(request)
-                    .header("Authorization", buildAuthHeader())
-                    .exchangeToMono(response -> {
-                        if (response.statusCode().equals(HttpStatus.OK)) {
-                            return response.bodyToMono(CSCCredentialsAuthorizeResponse.class);
-                        } else if (response.statusCode().equals(HttpStatus.NOT_FOUND)) {
-                            return Mono.error(new FailedConnectionVerifier());
-                        } else if (response.statusCode().equals(HttpStatus.GATEWAY_TIMEOUT)) {
-                            return Mono.error(new TimeoutException());
-                        } else if (response.statusCode().equals(HttpStatus.UNAUTHORIZED)) {
-                            return Mono.error(new AccessCredentialDeniedException());
-                        } else {
-                            return Mono.error(new Exception("The access to the Credentials was not authorized."));
-                        }
-                    });
-
-            return authorizationResponse
-                    .map(CSCCredentialsAuthorizeResponse::getSAD)
-                    .onErrorMap(error -> error)
-                    .block();
-        } catch (Throwable e) {
-            if (e.getCause().getClass().equals(FailedConnectionVerifier.class)) {
-                log.error("FailedConnectionVerifier");
-                throw new FailedConnectionVerifier();
-
-            } else if (e.getCause().getClass().equals(TimeoutException.class)) {
-                log.error("TimeoutException");
-                throw new TimeoutException();
-
-            } else if (e.getCause().getClass().equals(AccessCredentialDeniedException.class)) {
-                log.error("AccessCredentialDeniedException");
-                throw new AccessCredentialDeniedException();
+        request.setNumSignatures(numSignatures);
 
-            } else {
-                log.error("Other");
-                throw new Exception("The access to the Credentials was not authorized.");
-            }
-        }
+        return webClient.post()
+                .uri("/credentials/authorize")
+                .bodyValue(request)
+                .header("Authorization", buildAuthHeader(context))
+                .attribute(TracingExchangeFilter.PARENT_CONTEXT, context.getTraceContext())
+                .exchangeToMono(response -> {
+                    if (response.statusCode().equals(HttpStatus.OK)) {
+                        return response.bodyToMono(CSCCredentialsAuthorizeResponse.class);
+                    } else if (response.statusCode().equals(HttpStatus.NOT_FOUND)) {
+                        log.error("FailedConnectionVerifier");
+                        return Mono.error(new FailedConnectionVerifier());
+                    } else if (response.statusCode().equals(HttpStatus.GATEWAY_TIMEOUT)) {
+                        log.error("TimeoutException");
+                        return Mono.error(new TimeoutException());
+                    } else if (response.statusCode().equals(HttpStatus.UNAUTHORIZED)) {
+                        log.error("AccessCredentialDeniedException");
+                        return Mono.error(new AccessCredentialDeniedException());
+                    } else {
+                        log.error("Other");
+                        return Mono.error(new Exception("The access to the Credentials was not authorized."));
+                    }
+                })
+                .map(CSCCredentialsAuthorizeResponse::getSAD);
     }
 
-    public String signHash(String pdfName, String pdfHash, String credentialAlias, String SAD, String signAlgo) {
+    public Mono<List<String>> signHashes(String pdfNames, List<String> pdfHashes, String credentialAlias,
+            String SAD, String signAlgo, String hashAlgo, ClientContext context) {
         CSCSignaturesSignHashRequest request = new CSCSignaturesSignHashRequest();
-        request.setHash(Collections.singletonList(pdfHash));
+        request.setHash(pdfHashes);
+        request.setHashAlgo(hashAlgo);
         request.setCredentialID(credentialAlias);
         request.setSAD(SAD);
         request.setSignAlgo(signAlgo);
-        request.setClientData(pdfName);
-        final CSCSignaturesSignHashResponse response = requestSignHash(request).block();
-        assert response != null;
-        final List<String> signatures = response.getSignatures();
-        return signatures.get(0);
+        request.setClientData(pdfNames);
+        return requestSignHash(request, context)
+                .map(response -> {
+                    List<String> signatures = response.getSignatures();
+                    if (signatures == null || signatures.size() != pdfHashes.size()) {
+                        throw new InvalidRequestException("The RSSP did not return one signature per hash");
+                    }
+                    return signatures;
+                });
     }
 
     /**
-     * Set the context to be used in the next request
+     * Builds the error of a failed RSSP call, keeping the CSC error of the body
+     * when there is one
      */
-    public void setContext(ClientContext context) {
-        this.context = context;
+    private <T> Mono<T> clientError(ClientResponse response) {
+        final int httpCode = response.rawStatusCode();
+        return response.bodyToMono(new ParameterizedTypeReference<Map<String, String>>() {
+        })
+                .onErrorResume(e -> Mono.empty())
+                .filter(body -> body.containsKey("error"))
+                .flatMap(body -> Mono.<T>error(new RSSPClientException(
+                        new ApiErrorResponse(body.get("error"), body.get("error_description")), httpCode)))
+                .switchIfEmpty(Mono.error(() -> new RSSPClientException("Unexpected Client Error", httpCode,
+                        response.statusCode().getReasonPhrase())));
     }
 
-    private ClientContext getContext() {
+    private String buildAuthHeader(ClientContext context) {
         if (context == null) {
             throw new InvalidRequestException("ClientContext not set before using client");
         }
-        return context;
-    }
-
-    private String buildAuthHeader() {
-        String authorizationHeader = getContext().getAuthorizationHeader();
+        String authorizationHeader = context.getAuthorizationHeader();
         if (authorizationHeader == null) {
             throw new InvalidRequestException("Authorization not set in context");
         }
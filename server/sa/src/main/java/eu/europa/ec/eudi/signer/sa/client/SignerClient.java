@@ -16,40 +16,76 @@
 
 package eu.europa.ec.eudi.signer.sa.client;
 
-import eu.europa.ec.eudi.signer.common.AccessCredentialDeniedException;
-import eu.europa.ec.eudi.signer.common.FailedConnectionVerifier;
-import eu.europa.ec.eudi.signer.common.TimeoutException;
 import eu.europa.ec.eudi.signer.csc.payload.RedirectLinkResponse;
 
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
 public interface SignerClient {
 
      /**
       * Function that allows to get the link to redirect a user to a EUDI Wallet
       * 
+      * @param context the context of the request (authorization header)
       * @return the deep link
       */
-     RedirectLinkResponse getOIDRedirectLink();
+     Mono<RedirectLinkResponse> getOIDRedirectLink(ClientContext context);
 
      /**
       * Function that prepares the signer
       * 
+      * @param context the context of the request, owned by the caller
       * @return the client context updated
       */
-     ClientContext prepCredential();
+     Mono<ClientContext> prepCredential(ClientContext context);
 
      /**
       * Function that allows to sign a pdf.
+      * The Mono fails with FailedConnectionVerifier, TimeoutException or
+      * AccessCredentialDeniedException if the credential could not be
+      * authorized.
       * 
       * @param pdfName the pdf name
-      * @param pdfHash the pdf bytes
+      * @param pdfHash the SHA-256 digest of the signed byte range of the pdf
       * @param context the context
       * @return the array byte with the signature value
-      * @throws FailedConnectionVerifier
-      * @throws TimeoutException
-      * @throws AccessCredentialDeniedException
-      * @throws Exception
       */
-     public byte[] signHash(String pdfName, byte[] pdfHash, ClientContext context)
-               throws FailedConnectionVerifier, TimeoutException, AccessCredentialDeniedException, Exception;
+     Mono<byte[]> signHash(String pdfName, byte[] pdfHash, ClientContext context);
+
+     /**
+      * Function that allows to sign several pdfs with a single authorization of
+      * the credential (one SAD for all the signatures).
+      * 
+      * @param pdfNames  the names of the pdfs
+      * @param pdfHashes the SHA-256 digests of the signed byte ranges of the pdfs
+      * @param context   the context
+      * @return the signature values, in the same order as the digests
+      */
+     Mono<List<byte[]>> signHashes(String pdfNames, List<byte[]> pdfHashes, ClientContext context);
+
+     /**
+      * Function that authorizes the credential for a number of signatures.
+      * The Mono fails with FailedConnectionVerifier, TimeoutException or
+      * AccessCredentialDeniedException if the credential could not be
+      * authorized.
+      * 
+      * @param numSignatures the number of signatures allowed by the SAD
+      * @param context       the context
+      * @return the SAD
+      */
+     Mono<String> authorize(int numSignatures, ClientContext context);
+
+     /**
+      * Function that allows to sign several pdfs with a SAD obtained before
+      * with {@link #authorize(int, ClientContext)}.
+      * 
+      * @param pdfNames  the names of the pdfs
+      * @param pdfHashes the SHA-256 digests of the signed byte ranges of the pdfs
+      * @param sad       the SAD, for at least as many signatures as digests
+      * @param context   the context
+      * @return the signature values, in the same order as the digests
+      */
+     Mono<List<byte[]>> signHashes(String pdfNames, List<byte[]> pdfHashes, String sad, ClientContext context);
 
 }
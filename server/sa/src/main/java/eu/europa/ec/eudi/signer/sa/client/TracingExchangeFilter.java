@@ -0,0 +1,89 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.sa.client;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapSetter;
+import reactor.core.publisher.Mono;
+
+/**
+ * Creates a client span for each call to the RSSP and sends its context in
+ * the traceparent header, so the RSSP continues the trace of the signing.
+ * The calls run on the threads of the WebClient, where the span of the
+ * request to the SA is not current: its context is given to the call in
+ * the request attribute PARENT_CONTEXT.
+ */
+public class TracingExchangeFilter implements ExchangeFilterFunction {
+
+    public static final String PARENT_CONTEXT = TracingExchangeFilter.class.getName() + ".PARENT_CONTEXT";
+
+    private static final TextMapSetter<HttpHeaders> HEADERS = (headers, name, value) -> {
+        if (headers != null) {
+            headers.set(name, value);
+        }
+    };
+
+    private final OpenTelemetry openTelemetry;
+    private final Tracer tracer;
+
+    public TracingExchangeFilter(OpenTelemetry openTelemetry, Tracer tracer) {
+        this.openTelemetry = openTelemetry;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            Context parent = request.attribute(PARENT_CONTEXT)
+                    .map(Context.class::cast)
+                    .orElseGet(Context::current);
+            Span span = this.tracer.spanBuilder(request.method().name() + " " + request.url().getPath())
+                    .setParent(parent)
+                    .setSpanKind(SpanKind.CLIENT)
+                    .setAttribute("http.method", request.method().name())
+                    .setAttribute("http.url", request.url().toString())
+                    .startSpan();
+            ClientRequest tracedRequest = ClientRequest.from(request)
+                    .headers(headers -> this.openTelemetry.getPropagators().getTextMapPropagator()
+                            .inject(parent.with(span), headers, HEADERS))
+                    .build();
+            return next.exchange(tracedRequest)
+                    .doOnNext(response -> {
+                        span.setAttribute("http.status_code", response.rawStatusCode());
+                        if (response.rawStatusCode() >= 500) {
+                            span.setStatus(StatusCode.ERROR);
+                        }
+                    })
+                    .doOnError(e -> {
+                        span.recordException(e);
+                        span.setStatus(StatusCode.ERROR);
+                    })
+                    .doFinally(signal -> span.end());
+        });
+    }
+}
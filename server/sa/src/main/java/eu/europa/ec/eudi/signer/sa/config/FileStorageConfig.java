@@ -24,6 +24,9 @@ import java.util.ArrayList;
 public class FileStorageConfig {
     private String uploadDir;
     private ArrayList<String> extensions;
+    private long maxFileSize = 100L * 1024 * 1024;
+    private long fileTtlSeconds = 300;
+    private long cleanupIntervalSeconds = 30;
 
     public String getUploadDir() {
         return uploadDir;
@@ -40,4 +43,37 @@ public class FileStorageConfig {
     public void setExtensions(ArrayList<String> extensions) {
         this.extensions = extensions;
     }
+
+    /**
+     * Maximum size in bytes of an uploaded file (0 or less for no limit)
+     */
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Time in seconds a stored file is kept after it was last written
+     */
+    public long getFileTtlSeconds() {
+        return fileTtlSeconds;
+    }
+
+    public void setFileTtlSeconds(long fileTtlSeconds) {
+        this.fileTtlSeconds = fileTtlSeconds;
+    }
+
+    /**
+     * Interval in seconds between two removals of the expired files
+     */
+    public long getCleanupIntervalSeconds() {
+        return cleanupIntervalSeconds;
+    }
+
+    public void setCleanupIntervalSeconds(long cleanupIntervalSeconds) {
+        this.cleanupIntervalSeconds = cleanupIntervalSeconds;
+    }
 }
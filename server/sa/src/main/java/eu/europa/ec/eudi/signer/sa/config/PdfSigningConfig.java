@@ -0,0 +1,56 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.sa.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Memory settings used by PDFBox when a PDF is signed: up to maxMainMemoryBytes
+ * of each document are kept in the heap, the rest goes to a scratch file in
+ * tempDir (the system temp directory if not set). When several PDFs are
+ * signed together, at most batchParallelism of them are opened at a time
+ */
+@ConfigurationProperties(prefix = "pdf")
+public class PdfSigningConfig {
+    private long maxMainMemoryBytes = 8 * 1024 * 1024;
+    private String tempDir;
+    private int batchParallelism = 4;
+
+    public long getMaxMainMemoryBytes() {
+        return maxMainMemoryBytes;
+    }
+
+    public void setMaxMainMemoryBytes(long maxMainMemoryBytes) {
+        this.maxMainMemoryBytes = maxMainMemoryBytes;
+    }
+
+    public String getTempDir() {
+        return tempDir;
+    }
+
+    public void setTempDir(String tempDir) {
+        this.tempDir = tempDir;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+}
@@ -22,6 +22,9 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class RSSPClientConfig {
 
     private String cscBaseUrl;
+    private String apiBaseUrl;
+    private long credentialInfoTtlSeconds = 60;
+    private int credentialInfoCacheSize = 10000;
 
     public String setCscBaseUrl() {
         return cscBaseUrl;
@@ -30,4 +33,35 @@ public class RSSPClientConfig {
     public void setCscBaseUrl(String cscBaseUrl) {
         this.cscBaseUrl = cscBaseUrl;
     }
+
+    public String getApiBaseUrl() {
+        return apiBaseUrl;
+    }
+
+    public void setApiBaseUrl(String apiBaseUrl) {
+        this.apiBaseUrl = apiBaseUrl;
+    }
+
+    /**
+     * Time during which the info of a credential is reused without asking the
+     * RSSP; after that it is revalidated with its ETag
+     */
+    public long getCredentialInfoTtlSeconds() {
+        return credentialInfoTtlSeconds;
+    }
+
+    public void setCredentialInfoTtlSeconds(long credentialInfoTtlSeconds) {
+        this.credentialInfoTtlSeconds = credentialInfoTtlSeconds;
+    }
+
+    /**
+     * Maximum number of credential infos (per user and alias) kept in the cache
+     */
+    public int getCredentialInfoCacheSize() {
+        return credentialInfoCacheSize;
+    }
+
+    public void setCredentialInfoCacheSize(int credentialInfoCacheSize) {
+        this.credentialInfoCacheSize = credentialInfoCacheSize;
+    }
 }
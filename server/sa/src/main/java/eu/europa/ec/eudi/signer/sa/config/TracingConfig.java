@@ -0,0 +1,66 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.sa.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import eu.europa.ec.eudi.signer.common.tracing.TracingFactory;
+import eu.europa.ec.eudi.signer.common.tracing.TracingFilter;
+import eu.europa.ec.eudi.signer.common.tracing.TracingProperties;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+
+/**
+ * OpenTelemetry tracing of the signings: each request to the SA starts a
+ * trace, and the calls to the RSSP carry its context in the W3C traceparent
+ * header, so the spans of the RSSP are part of the same trace.
+ */
+@Configuration
+public class TracingConfig {
+
+    public static final String INSTRUMENTATION_NAME = "eu.europa.ec.eudi.signer.sa";
+
+    @Bean
+    @ConfigurationProperties(prefix = "tracing")
+    public TracingProperties tracingProperties() {
+        return new TracingProperties("sa");
+    }
+
+    @Bean
+    public SdkTracerProvider sdkTracerProvider(TracingProperties properties) {
+        return TracingFactory.tracerProvider(properties);
+    }
+
+    // the tracer provider is closed by its own bean
+    @Bean(destroyMethod = "")
+    public OpenTelemetry openTelemetry(SdkTracerProvider sdkTracerProvider) {
+        return TracingFactory.openTelemetry(sdkTracerProvider);
+    }
+
+    @Bean
+    public FilterRegistrationBean<TracingFilter> tracingFilter(OpenTelemetry openTelemetry) {
+        FilterRegistrationBean<TracingFilter> registration = new FilterRegistrationBean<>(
+                new TracingFilter(openTelemetry, openTelemetry.getTracer(INSTRUMENTATION_NAME)));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -16,14 +16,16 @@
 
 package eu.europa.ec.eudi.signer.sa.controller;
 
+import org.apache.tika.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
-import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -33,25 +35,48 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.util.UriUtils;
 
 import eu.europa.ec.eudi.signer.common.AccessCredentialDeniedException;
 import eu.europa.ec.eudi.signer.common.FailedConnectionVerifier;
 import eu.europa.ec.eudi.signer.common.TimeoutException;
+import eu.europa.ec.eudi.signer.csc.model.CSCConstants;
 import eu.europa.ec.eudi.signer.csc.payload.RedirectLinkResponse;
 import eu.europa.ec.eudi.signer.sa.error.InvalidRequestException;
 import eu.europa.ec.eudi.signer.sa.payload.SignedFileResponse;
 import eu.europa.ec.eudi.signer.sa.services.SigningService;
 import eu.europa.ec.eudi.signer.sa.services.FileStorageService;
+import eu.europa.ec.eudi.signer.sa.services.StoredFile;
+
+import reactor.core.publisher.Mono;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 @RestController
 @RequestMapping(value = "/sa")
 public class SigningController {
 	private static final Logger log = LoggerFactory.getLogger(SigningController.class);
 
+	// request attributes of the sendfile support of Tomcat
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
 	private final SigningService signingService;
 	private final FileStorageService fileStorageService;
 	public Environment env;
@@ -71,15 +96,14 @@ public class SigningController {
 	 * @return the link to redirect the user to the EUDI Wallet
 	 */
 	@GetMapping("/getOIDRedirectLink")
-	public ResponseEntity<RedirectLinkResponse> getOIDRedirectLink(
+	public Mono<ResponseEntity<RedirectLinkResponse>> getOIDRedirectLink(
 			@RequestHeader("Authorization") String authorizationHeader) {
 
 		if (!StringUtils.hasText(authorizationHeader)) {
 			throw new InvalidRequestException("Expected an authorization header");
 		}
 
-		RedirectLinkResponse res = this.signingService.getOIDRedirectLink(authorizationHeader);
-		return ResponseEntity.ok(res);
+		return this.signingService.getOIDRedirectLink(authorizationHeader).map(ResponseEntity::ok);
 	}
 
 	/**
@@ -95,7 +119,7 @@ public class SigningController {
 	 * @return the signed file
 	 */
 	@PostMapping("/signFile")
-	public Object uploadFile(@RequestHeader("Authorization") String authorizationHeader,
+	public Mono<Object> uploadFile(@RequestHeader("Authorization") String authorizationHeader,
 			@RequestParam("file") MultipartFile file,
 			@RequestParam("credential") String credentialAlias) {
 
@@ -103,59 +127,183 @@ public class SigningController {
 			throw new InvalidRequestException("Expected an authorization header");
 		}
 
-		try {
-			String originalFileName = fileStorageService.storeFile(file);
-			String signedFileName = signingService.signFile(originalFileName, credentialAlias, authorizationHeader);
-			String saUrl = env.getProperty("ASSINA_SA_BASE_URL");
-			if (saUrl == null)
-				saUrl = "http://localhost:8083";
-			String fileDownloadUri = saUrl + "/sa/downloadFile/" + signedFileName;
-			return new SignedFileResponse(signedFileName, fileDownloadUri, file.getContentType(), file.getSize());
-		} catch (FailedConnectionVerifier e) {
-			log.error("Exception: Failed connection to Verifier.");
-			return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
-		} catch (TimeoutException e) {
-			log.error("Exception: Waiting response from Verifier timed out.");
-			return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(e.getMessage());
-		} catch (AccessCredentialDeniedException e) {
-			log.error("Exception: Authorization Failed. Access denied.");
-			return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
-		} catch (Exception e) {
-			log.error("Error when trying to obtain the vp_token.");
-			return ResponseEntity.badRequest().body(e.getMessage());
+		StoredFile originalFile = fileStorageService.storeFile(file, authorizationHeader);
+		String sessionKey = fileStorageService.sessionKey(authorizationHeader);
+		return onSigningError(signingService.signFile(originalFile, credentialAlias, authorizationHeader)
+				.<Object>map(signedFile -> signedFileResponse(sessionKey, signedFile, file)));
+	}
+
+	/**
+	 * Function that allows the user to upload several files and sign them with a
+	 * single authorization of the credential.
+	 * 
+	 * @param authorizationHeader the authorization header
+	 * @param files               the files to sign
+	 * @param credentialAlias     the alias of the credential to use to sign the
+	 *                            documents
+	 * @return the signed files, in the same order as the uploaded files
+	 */
+	@PostMapping("/signFiles")
+	public Mono<Object> uploadFiles(@RequestHeader("Authorization") String authorizationHeader,
+			@RequestParam("files") MultipartFile[] files,
+			@RequestParam("credential") String credentialAlias) {
+
+		if (!StringUtils.hasText(authorizationHeader)) {
+			throw new InvalidRequestException("Expected an authorization header");
+		}
+		if (files.length == 0 || files.length > CSCConstants.CSC_MAX_REQUEST_SIGNATURES) {
+			throw new InvalidRequestException("Expected between 1 and "
+					+ CSCConstants.CSC_MAX_REQUEST_SIGNATURES + " files to sign");
+		}
+
+		List<StoredFile> originalFiles = new ArrayList<>();
+		for (MultipartFile file : files) {
+			originalFiles.add(fileStorageService.storeFile(file, authorizationHeader));
 		}
+		String sessionKey = fileStorageService.sessionKey(authorizationHeader);
+		return onSigningError(signingService.signFiles(originalFiles, credentialAlias, authorizationHeader)
+				.<Object>map(signedFiles -> {
+					List<SignedFileResponse> responses = new ArrayList<>();
+					for (int i = 0; i < signedFiles.size(); i++) {
+						responses.add(signedFileResponse(sessionKey, signedFiles.get(i), files[i]));
+					}
+					return responses;
+				}));
+	}
+
+	/**
+	 * The download link of a signed file: the file is found by its name in the
+	 * user session, whose key (an HMAC of the authorization header) is in the
+	 * link, as the browser does not send the authorization header
+	 */
+	private SignedFileResponse signedFileResponse(String sessionKey, StoredFile signedFile, MultipartFile file) {
+		String saUrl = env.getProperty("ASSINA_SA_BASE_URL");
+		if (saUrl == null)
+			saUrl = "http://localhost:8083";
+		String fileDownloadUri = saUrl + "/sa/downloadFile/" + sessionKey + "/"
+				+ UriUtils.encodePathSegment(signedFile.getFileName(), StandardCharsets.UTF_8);
+		return new SignedFileResponse(signedFile.getFileName(), fileDownloadUri, file.getContentType(),
+				signedFile.getSize());
+	}
+
+	/**
+	 * Maps the errors of a signing to the response sent to the client
+	 */
+	private Mono<Object> onSigningError(Mono<Object> signing) {
+		return signing
+				.onErrorResume(FailedConnectionVerifier.class, e -> {
+					log.error("Exception: Failed connection to Verifier.");
+					return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage()));
+				})
+				.onErrorResume(TimeoutException.class, e -> {
+					log.error("Exception: Waiting response from Verifier timed out.");
+					return Mono.just(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(e.getMessage()));
+				})
+				.onErrorResume(AccessCredentialDeniedException.class, e -> {
+					log.error("Exception: Authorization Failed. Access denied.");
+					return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage()));
+				})
+				.onErrorResume(Exception.class, e -> {
+					log.error("Error when trying to obtain the vp_token.");
+					return Mono.just(ResponseEntity.badRequest().body(e.getMessage()));
+				});
 	}
 
 	/**
 	 * Function that allows the user to download the file signed
+	 * The file is resolved by its name in the user session, so it can only be
+	 * downloaded with the link returned to that session.
+	 * The stored files are content-addressed, so the digest is a strong ETag:
+	 * a conditional request gets a 304 Not Modified, and a single byte range
+	 * (Range, If-Range) gets a 206 Partial Content. The content is sent with the
+	 * sendfile support of the servlet container when available, or else with
+	 * FileChannel.transferTo.
 	 * 
-	 * @param fileName the name of the file to download
-	 * @param request  the request
-	 * @return the signed file
+	 * @param sessionKey the key of the user session
+	 * @param fileName   the name of the file, as known by the user
+	 * @param request    the request
+	 * @param response   the response
 	 */
-	@GetMapping("/downloadFile/{fileName:.+}")
-	public ResponseEntity<Resource> downloadFile(@PathVariable String fileName, HttpServletRequest request) {
-		// Load file as Resource
-		Resource resource = fileStorageService.loadFileAsResource(fileName);
+	@GetMapping("/downloadFile/{sessionKey:[0-9a-f]{64}}/{fileName:.+}")
+	public void downloadFile(@PathVariable String sessionKey, @PathVariable String fileName,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String digest = fileStorageService.resolve(sessionKey, fileName);
+		Path path = fileStorageService.getFilePath(digest);
+		String eTag = "\"" + digest + "\"";
 
-		// Try to determine file's content type
-		String contentType = null;
-		try {
-			contentType = request.getServletContext().getMimeType(resource.getFile().getAbsolutePath());
-		} catch (IOException ex) {
-			log.info("Could not determine file type.");
+		response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+		if (new ServletWebRequest(request, response).checkNotModified(eTag)) {
+			return;
 		}
 
+		// Try to determine file's content type
+		String contentType = request.getServletContext().getMimeType(path.toString());
 		// Fallback to the default content type if type could not be determined
 		if (contentType == null) {
 			contentType = "application/octet-stream";
 		}
 
-		return ResponseEntity.ok()
-				.contentType(MediaType.parseMediaType(contentType))
-				.header(HttpHeaders.CONTENT_DISPOSITION,
-						"attachment; filename=\"" + resource.getFilename() + "\"")
-				.body(resource);
+		long length = Files.size(path);
+		long start = 0;
+		long end = length - 1;
+		List<HttpRange> ranges = requestedRanges(request, eTag);
+		// several ranges are not worth a multipart response: the whole file is sent
+		if (ranges.size() == 1) {
+			start = ranges.get(0).getRangeStart(length);
+			end = ranges.get(0).getRangeEnd(length);
+			if (start >= length || start > end) {
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+				response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+				return;
+			}
+			response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+			response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+		}
+
+		response.setContentType(contentType);
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+				"attachment; filename=\"" + FilenameUtils.getName(fileName).replace("\"", "") + "\"");
+		response.setContentLengthLong(end - start + 1);
+		if (HttpMethod.HEAD.matches(request.getMethod()) || length == 0) {
+			return;
+		}
+
+		if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			// the container sends the file once the request has been handled
+			request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, end + 1);
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+			long position = start;
+			while (position <= end) {
+				long transferred = channel.transferTo(position, end + 1 - position, out);
+				if (transferred <= 0) {
+					throw new IOException("Unexpected end of file " + digest);
+				}
+				position += transferred;
+			}
+		}
+	}
+
+	/**
+	 * @return the byte ranges requested, or an empty list if the whole file must be
+	 *         sent (no Range, If-Range not matching, or an invalid Range)
+	 */
+	private static List<HttpRange> requestedRanges(HttpServletRequest request, String eTag) {
+		String range = request.getHeader(HttpHeaders.RANGE);
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (range == null || (ifRange != null && !ifRange.equals(eTag))) {
+			return Collections.emptyList();
+		}
+		try {
+			return HttpRange.parseRanges(range);
+		} catch (IllegalArgumentException e) {
+			return Collections.emptyList();
+		}
 	}
 
 }
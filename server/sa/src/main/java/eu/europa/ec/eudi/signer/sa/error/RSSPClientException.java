@@ -16,8 +16,6 @@
 
 package eu.europa.ec.eudi.signer.sa.error;
 
-import org.springframework.web.reactive.function.client.ClientResponse;
-
 import eu.europa.ec.eudi.signer.common.ApiError;
 import eu.europa.ec.eudi.signer.common.ApiErrorResponse;
 
@@ -41,13 +39,6 @@ public class RSSPClientException extends RuntimeException implements ApiError {
         this.description = description;
     }
 
-    public RSSPClientException(ClientResponse response) {
-        super(response.statusCode().getReasonPhrase(), response.createException().block());
-        this.code = "Unexpected Client Error";
-        this.httpCode = response.statusCode().value();
-        this.description = response.statusCode().getReasonPhrase();
-    }
-
     @Override
     public String getCode() {
         return code;
@@ -21,6 +21,7 @@ import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
@@ -30,7 +31,6 @@ import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
-import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
@@ -47,12 +47,11 @@ import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x500.style.IETFUtils;
 
-import eu.europa.ec.eudi.signer.common.AccessCredentialDeniedException;
-import eu.europa.ec.eudi.signer.common.FailedConnectionVerifier;
-import eu.europa.ec.eudi.signer.common.TimeoutException;
 import eu.europa.ec.eudi.signer.csc.payload.RedirectLinkResponse;
 import eu.europa.ec.eudi.signer.sa.client.SignerClient;
 import eu.europa.ec.eudi.signer.sa.client.ClientContext;
+import eu.europa.ec.eudi.signer.sa.config.PdfSigningConfig;
+import eu.europa.ec.eudi.signer.sa.pdf.VisualSignatureAssets.TemplateGeometry;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -61,18 +60,21 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
-
-import javax.imageio.ImageIO;
+import java.util.stream.Collectors;
 
 import java.awt.Color;
-import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
-import java.awt.image.BufferedImage;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * Extracts content and adds signature to PDF
@@ -80,61 +82,138 @@ import java.awt.image.BufferedImage;
  */
 public class PdfSupport {
 
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
     private final SignerClient signer;
+    private final PdfSigningConfig config;
+    private final VisualSignatureAssets assets;
 
-    public PdfSupport(SignerClient contentSigner) {
+    public PdfSupport(SignerClient contentSigner, PdfSigningConfig config) {
         this.signer = contentSigner;
+        this.config = config;
+        this.assets = new VisualSignatureAssets();
+    }
+
+    /**
+     * Memory settings of a document: the heap used by PDFBox is bounded by the
+     * configured budget, the rest of the document is kept in a scratch file
+     */
+    private MemoryUsageSetting memoryUsageSetting() {
+        MemoryUsageSetting memoryUsageSetting = MemoryUsageSetting.setupMixed(config.getMaxMainMemoryBytes());
+        if (config.getTempDir() != null && !config.getTempDir().isBlank()) {
+            memoryUsageSetting.setTempDir(new File(config.getTempDir()));
+        }
+        return memoryUsageSetting;
     }
 
     /**
      * Function that allows to get a link to redirect the user to the EUDI Wallet,
      * after the authorization request to the verifier is executed
      * 
+     * @param context the context of the request
      * @return the link to redirect to the EUDI Wallet
      */
-    public RedirectLinkResponse getOIDRedirectLink() {
-        return this.signer.getOIDRedirectLink();
+    public Mono<RedirectLinkResponse> getOIDRedirectLink(ClientContext context) {
+        return this.signer.getOIDRedirectLink(context);
     }
 
-    public byte[] signPdfContent(String pdfName, InputStream content, ClientContext context)
-            throws IOException, NoSuchAlgorithmException, FailedConnectionVerifier, TimeoutException,
-            AccessCredentialDeniedException, Exception {
-        byte[] pdfContentBytes = IOUtils.toByteArray(content);
-        try {
-            return signer.signHash(pdfName, pdfContentBytes, context);
-        } catch (Exception e) {
-            System.out.println(e.getClass().toString());
-            throw e;
+    /**
+     * Digests the content of the PDF signed byte range (SHA-256, streamed), so
+     * only the digest is sent to the RSSP.
+     */
+    public static byte[] digestPdfContent(InputStream content) throws IOException, NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+        int count;
+        while ((count = content.read(buffer)) != -1) {
+            messageDigest.update(buffer, 0, count);
         }
+        return messageDigest.digest();
     }
 
     /**
      * Signs the given PDF file.
+     * The calls to the RSSP are non-blocking; the PDF preparation (before the
+     * signature) and completion (after the signature) read and write files, so
+     * they run on the bounded elastic scheduler.
+     * The Mono fails with FailedConnectionVerifier, TimeoutException or
+     * AccessCredentialDeniedException if the credential could not be authorized.
      *
      * @param inFile  input PDF file
      * @param outFile output PDF file
-     * @throws IOException if the input file could not be read
+     * @param context the context of the request (authorization and credential)
+     * @return a Mono that completes when the signed file has been written
      */
-    public void signDetached(File inFile, File outFile) throws IOException, NoSuchAlgorithmException,
-            FailedConnectionVerifier, TimeoutException, AccessCredentialDeniedException, Exception {
-        if (inFile == null || !inFile.exists()) {
-            throw new FileNotFoundException("Document for signing does not exist");
-        }
-        FileOutputStream fos = new FileOutputStream(outFile);
-
-        PDDocument doc = null;
-        try {
-            doc = PDDocument.load(inFile);
-            signDetached(inFile.getName(), doc, fos);
-        } finally {
-            IOUtils.closeQuietly(fos);
-            IOUtils.closeQuietly(doc);
+    public Mono<Void> signDetached(File inFile, File outFile, ClientContext context) {
+        return signDetached(Collections.singletonList(inFile.getName()), Collections.singletonList(inFile),
+                Collections.singletonList(outFile), context).then();
+    }
+
+    /**
+     * Signs the given PDF files with a single authorization of the credential,
+     * obtained first: the documents are then prepared in parallel (at most
+     * batchParallelism at a time), all the digests are signed in one request to
+     * the RSSP, and the signatures are written back in parallel.
+     * The SHA-256 digest of every signed file is computed while it is written.
+     *
+     * @param pdfNames names of the documents, as known by the user
+     * @param inFiles  input PDF files
+     * @param outFiles output PDF files, in the same order as the input files
+     * @param context  the context of the request (authorization and credential)
+     * @return the SHA-256 digests of the signed files, in the same order
+     */
+    public Mono<List<byte[]>> signDetached(List<String> pdfNames, List<File> inFiles, List<File> outFiles,
+            ClientContext context) {
+        for (File inFile : inFiles) {
+            if (inFile == null || !inFile.exists()) {
+                return Mono.error(new FileNotFoundException("Document for signing does not exist"));
+            }
         }
+        final String clientData = String.join(", ", pdfNames);
+
+        // the SAD only depends on the number of documents: get it before opening
+        // them, so that no document is kept open while the user is authorized
+        return signer.prepCredential(context)
+                .flatMap(preparedContext -> signer.authorize(inFiles.size(), preparedContext)
+                        .flatMap(sad -> Mono.defer(() -> {
+                            // every opened document, to close them whatever the outcome
+                            List<PendingSignature> opened = Collections.synchronizedList(new ArrayList<>());
+                            return Flux.range(0, inFiles.size())
+                                    .flatMapSequential(i -> Mono.fromCallable(() -> {
+                                        PendingSignature pending = new PendingSignature(inFiles.get(i),
+                                                outFiles.get(i), memoryUsageSetting());
+                                        opened.add(pending);
+                                        pending.digest = prepareSignature(pending, preparedContext);
+                                        return pending;
+                                    }).subscribeOn(Schedulers.boundedElastic()), config.getBatchParallelism())
+                                    .collectList()
+                                    .flatMap(pendings -> signer
+                                            .signHashes(clientData,
+                                                    pendings.stream().map(p -> p.digest)
+                                                            .collect(Collectors.toList()),
+                                                    sad, preparedContext)
+                                            .flatMap(cmsSignatures -> Flux.range(0, pendings.size())
+                                                    .flatMapSequential(i -> Mono.fromCallable(
+                                                            () -> pendings.get(i).complete(cmsSignatures.get(i)))
+                                                            .subscribeOn(Schedulers.boundedElastic()),
+                                                            config.getBatchParallelism())
+                                                    .collectList()))
+                                    .doFinally(signal -> {
+                                        synchronized (opened) {
+                                            opened.forEach(PendingSignature::close);
+                                        }
+                                    });
+                        })));
     }
 
-    public void signDetached(String pdfName, PDDocument document, OutputStream output)
-            throws IOException, NoSuchAlgorithmException,
-            FailedConnectionVerifier, TimeoutException, AccessCredentialDeniedException, Exception {
+    /**
+     * Adds the signature dictionary and the visual signature to the document,
+     * writes the incremental update and returns the digest of the signed byte
+     * range
+     */
+    private byte[] prepareSignature(PendingSignature pending, ClientContext context)
+            throws IOException, NoSuchAlgorithmException {
+        PDDocument document = pending.document;
         int accessPermissions = getMDPPermission(document);
         if (accessPermissions == 1) {
             throw new IllegalStateException(
@@ -152,8 +231,6 @@ public class PdfSupport {
             setMDPPermission(document, signature, 2);
         }
 
-        ClientContext context = signer.prepCredential();
-
         signature.setName(context.getSubject());
         signature.setReason("Signing documents with EUDI Wallet");
 
@@ -161,14 +238,52 @@ public class PdfSupport {
         PDRectangle rect = createSignatureRectangle(document, humanRect);
         InputStream template = createVisualSignatureTemplate(document, document.getNumberOfPages() - 1, rect,
                 signature);
-        try(SignatureOptions options = new SignatureOptions()){
-            options.setVisualSignature(template);
-            options.setPage(document.getNumberOfPages() - 1);
-            document.addSignature(signature, options);
-            ExternalSigningSupport externalSigning = document.saveIncrementalForExternalSigning(output);
-            final InputStream content = externalSigning.getContent();
-            byte[] cmsSignature = signPdfContent(pdfName, content, context);
+        pending.options.setVisualSignature(template);
+        pending.options.setPage(document.getNumberOfPages() - 1);
+        document.addSignature(signature, pending.options);
+        pending.externalSigning = document.saveIncrementalForExternalSigning(pending.output);
+        return digestPdfContent(pending.externalSigning.getContent());
+    }
+
+    /**
+     * Resources of a signature in progress: they are kept open while the RSSP
+     * signs the digest, and closed when the signature completes or fails
+     */
+    private static class PendingSignature {
+        private final DigestOutputStream output;
+        private final PDDocument document;
+        private final SignatureOptions options;
+        private ExternalSigningSupport externalSigning;
+        private byte[] digest;
+
+        PendingSignature(File inFile, File outFile, MemoryUsageSetting memoryUsageSetting) throws IOException {
+            PDDocument doc = PDDocument.load(inFile, memoryUsageSetting);
+            try {
+                this.output = new DigestOutputStream(new FileOutputStream(outFile),
+                        MessageDigest.getInstance("SHA-256"));
+            } catch (IOException | NoSuchAlgorithmException e) {
+                IOUtils.closeQuietly(doc);
+                throw new IOException("Could not create the signed file", e);
+            }
+            this.document = doc;
+            this.options = new SignatureOptions();
+        }
+
+        /**
+         * Writes the signature in the document and closes the signed file
+         *
+         * @return the SHA-256 digest of the signed file
+         */
+        byte[] complete(byte[] cmsSignature) throws IOException {
             externalSigning.setSignature(cmsSignature);
+            output.close();
+            return output.getMessageDigest().digest();
+        }
+
+        void close() {
+            IOUtils.closeQuietly(options);
+            IOUtils.closeQuietly(output);
+            IOUtils.closeQuietly(document);
         }
     }
 
@@ -319,7 +434,7 @@ public class PdfSupport {
 
     private InputStream createVisualSignatureTemplate(PDDocument srcDoc, int pageNum, PDRectangle rect,
             PDSignature signature) throws IOException {
-        try (PDDocument doc = new PDDocument()) {
+        try (PDDocument doc = new PDDocument(memoryUsageSetting())) {
 
             PDPage page = new PDPage(srcDoc.getPage(pageNum).getMediaBox());
             doc.addPage(page);
@@ -343,28 +458,12 @@ public class PdfSupport {
             form.setResources(res);
             form.setFormType(1);
 
-            PDRectangle bbox = new PDRectangle(rect.getWidth(), rect.getHeight());
-            float heightBox = bbox.getHeight();
-
-            Matrix initialScale = null;
-            switch (srcDoc.getPage(0).getRotation()) {
-                case 90:
-                    form.setMatrix(AffineTransform.getQuadrantRotateInstance(1));
-                    initialScale = Matrix.getScaleInstance(bbox.getWidth() / bbox.getHeight(),
-                            bbox.getHeight() / bbox.getWidth());
-                    heightBox = bbox.getWidth();
-                    break;
-                case 180:
-                    form.setMatrix(AffineTransform.getQuadrantRotateInstance(2));
-                    break;
-                case 270:
-                    form.setMatrix(AffineTransform.getQuadrantRotateInstance(3));
-                    initialScale = Matrix.getScaleInstance(bbox.getWidth() / bbox.getHeight(),
-                            bbox.getHeight() / bbox.getWidth());
-                    heightBox = bbox.getWidth();
-                    break;
-                default:
-                    break;
+            TemplateGeometry geometry = new TemplateGeometry(srcDoc.getPage(0).getRotation(), rect);
+            PDRectangle bbox = geometry.newBBox();
+            float heightBox = geometry.getHeightBox();
+            Matrix initialScale = geometry.getInitialScale();
+            if (geometry.getFormMatrix() != null) {
+                form.setMatrix(geometry.getFormMatrix());
             }
             form.setBBox(bbox);
 
@@ -384,35 +483,29 @@ public class PdfSupport {
 
     public void loadDataToAppearanceStream(PDDocument doc, PDAppearanceStream appearanceStream, Matrix initialScale,
             float heightBox, PDSignature signature) throws IOException {
-        File imageFile = new File("img/Symbol.png");
+        VisualSignatureAssets.Logo logo = assets.getLogo();
         try (PDPageContentStream cs = new PDPageContentStream(doc, appearanceStream)) {
             if (initialScale != null) {
                 cs.transform(initialScale);
             }
             cs.saveGraphicsState();
 
-            BufferedImage image = ImageIO.read(imageFile);
-            float heightImage = image.getHeight();
-            float widthImage = image.getWidth();
-
-            float scale = heightBox / heightImage;
-            float widthImageScaled = widthImage * scale;
+            float scale = heightBox / logo.getHeight();
+            float widthImageScaled = logo.getWidth() * scale;
             cs.transform(Matrix.getScaleInstance(scale, scale));
-            PDImageXObject img = PDImageXObject.createFromFile(imageFile.getPath(), doc);
-            cs.drawImage(img, 0, 0);
+            cs.drawImage(logo.toImage(doc), 0, 0);
             cs.restoreGraphicsState();
 
             // show text
             PDFont font = PDType1Font.HELVETICA;
-            float fontSize = 10;
-            float leading = fontSize * 1f;
+            float fontSize = VisualSignatureAssets.FONT_SIZE;
+            float leading = VisualSignatureAssets.LEADING;
 
             X500Name x500Name = new X500Name(signature.getName());
             RDN cn = x500Name.getRDNs(BCStyle.CN)[0];
             String name = IETFUtils.valueToString(cn.getFirst().getValue());
 
-            SimpleDateFormat sdf = new SimpleDateFormat("EEEE dd MMM yyyy, HH:mm:ss z");
-            String date = sdf.format(signature.getSignDate().getTime());
+            String date = assets.formatDate(signature.getSignDate());
 
             cs.beginText();
             cs.setNonStrokingColor(Color.black);
@@ -428,12 +521,12 @@ public class PdfSupport {
             cs.setLeading(leading);
             cs.setFont(font, fontSize);
             cs.newLine();
-            cs.showText("Signer: ");
+            cs.showText(VisualSignatureAssets.SIGNER_LABEL);
             cs.newLine();
             cs.showText(date);
             cs.endText();
 
-            float textWidth = PDType1Font.HELVETICA.getStringWidth("Signer: ") / 1000 * fontSize;
+            float textWidth = assets.getSignerLabelWidth();
 
             cs.beginText();
             cs.setNonStrokingColor(Color.black);
@@ -0,0 +1,226 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.sa.pdf;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.format.DateTimeFormatter;
+import java.util.Calendar;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Assets of the visual signature that do not depend on the document: the logo
+ * (read, decoded and Flate-encoded once) and the font metrics and date format
+ * of the text. Instances are thread-safe.
+ */
+class VisualSignatureAssets {
+
+    static final float FONT_SIZE = 10;
+    static final float LEADING = FONT_SIZE * 1f;
+    static final String SIGNER_LABEL = "Signer: ";
+
+    private static final Path LOGO_PATH = Paths.get("img/Symbol.png");
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter
+            .ofPattern("EEEE dd MMM yyyy, HH:mm:ss z");
+
+    private final float signerLabelWidth;
+    private volatile Logo logo;
+
+    VisualSignatureAssets() {
+        try {
+            this.signerLabelWidth = PDType1Font.HELVETICA.getStringWidth(SIGNER_LABEL) / 1000 * FONT_SIZE;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Width of the "Signer: " label, in the font used in the appearance */
+    float getSignerLabelWidth() {
+        return signerLabelWidth;
+    }
+
+    String formatDate(Calendar signDate) {
+        return DATE_FORMATTER.format(signDate.toInstant().atZone(signDate.getTimeZone().toZoneId()));
+    }
+
+    /** The logo, read from disk the first time it is needed */
+    Logo getLogo() throws IOException {
+        Logo current = logo;
+        if (current == null) {
+            synchronized (this) {
+                current = logo;
+                if (current == null) {
+                    BufferedImage image = ImageIO.read(new ByteArrayInputStream(Files.readAllBytes(LOGO_PATH)));
+                    current = Logo.encode(image);
+                    logo = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * The logo as Flate-encoded samples: the PNG is decoded and compressed
+     * once, and every document only gets a copy of the encoded streams
+     */
+    static class Logo {
+        private final byte[] rgb;
+        private final byte[] alpha;
+        private final int width;
+        private final int height;
+
+        private Logo(byte[] rgb, byte[] alpha, int width, int height) {
+            this.rgb = rgb;
+            this.alpha = alpha;
+            this.width = width;
+            this.height = height;
+        }
+
+        private static Logo encode(BufferedImage image) throws IOException {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            boolean hasAlpha = image.getColorModel().hasAlpha();
+            byte[] rgb = new byte[width * height * 3];
+            byte[] alpha = hasAlpha ? new byte[width * height] : null;
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int pixel = y * width + x;
+                    rgb[pixel * 3] = (byte) (row[x] >> 16);
+                    rgb[pixel * 3 + 1] = (byte) (row[x] >> 8);
+                    rgb[pixel * 3 + 2] = (byte) row[x];
+                    if (hasAlpha) {
+                        alpha[pixel] = (byte) (row[x] >>> 24);
+                    }
+                }
+            }
+            return new Logo(deflate(rgb), hasAlpha ? deflate(alpha) : null, width, height);
+        }
+
+        private static byte[] deflate(byte[] samples) throws IOException {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(samples.length / 2);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(encoded)) {
+                out.write(samples);
+            }
+            return encoded.toByteArray();
+        }
+
+        /** Image of the logo in the given document, created from the encoded samples */
+        PDImageXObject toImage(PDDocument doc) throws IOException {
+            PDImageXObject image = new PDImageXObject(doc, new ByteArrayInputStream(rgb), COSName.FLATE_DECODE,
+                    width, height, 8, PDDeviceRGB.INSTANCE);
+            if (alpha != null) {
+                PDImageXObject mask = new PDImageXObject(doc, new ByteArrayInputStream(alpha),
+                        COSName.FLATE_DECODE, width, height, 8, PDDeviceGray.INSTANCE);
+                image.getCOSObject().setItem(COSName.SMASK, mask);
+            }
+            return image;
+        }
+
+        float getWidth() {
+            return width;
+        }
+
+        float getHeight() {
+            return height;
+        }
+    }
+
+    static class TemplateGeometry {
+        private final float width;
+        private final float height;
+        private final float heightBox;
+        private final AffineTransform formMatrix;
+        private final float scaleX;
+        private final float scaleY;
+        private final boolean scaled;
+
+        /**
+         * Geometry of the appearance of a signature rectangle on a page with the
+         * given rotation
+         */
+        TemplateGeometry(int rotation, PDRectangle rect) {
+            this(rect.getWidth(), rect.getHeight(), rotation);
+        }
+
+        private TemplateGeometry(float width, float height, int rotation) {
+            this.width = width;
+            this.height = height;
+            switch (rotation) {
+                case 90:
+                case 270:
+                    this.formMatrix = AffineTransform.getQuadrantRotateInstance(rotation / 90);
+                    this.scaleX = width / height;
+                    this.scaleY = height / width;
+                    this.scaled = true;
+                    this.heightBox = width;
+                    break;
+                case 180:
+                    this.formMatrix = AffineTransform.getQuadrantRotateInstance(2);
+                    this.scaleX = 1;
+                    this.scaleY = 1;
+                    this.scaled = false;
+                    this.heightBox = height;
+                    break;
+                default:
+                    this.formMatrix = null;
+                    this.scaleX = 1;
+                    this.scaleY = 1;
+                    this.scaled = false;
+                    this.heightBox = height;
+                    break;
+            }
+        }
+
+        PDRectangle newBBox() {
+            return new PDRectangle(width, height);
+        }
+
+        float getHeightBox() {
+            return heightBox;
+        }
+
+        /** Matrix of the form, or null if the page is not rotated */
+        AffineTransform getFormMatrix() {
+            return formMatrix == null ? null : new AffineTransform(formMatrix);
+        }
+
+        /** Scale applied before drawing, or null if none is needed */
+        Matrix getInitialScale() {
+            return scaled ? Matrix.getScaleInstance(scaleX, scaleY) : null;
+        }
+    }
+}
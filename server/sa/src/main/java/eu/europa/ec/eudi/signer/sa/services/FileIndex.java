@@ -0,0 +1,159 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.sa.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Index of the stored files of every user session.
+ * The files are stored under their SHA-256 digest (content-addressed), and
+ * this index maps the names known by the user to those digests: a file is
+ * downloaded by its name in the session, never by its digest alone. A digest
+ * is reference-counted: the same content uploaded by several users, or
+ * several times, is stored once, and it stays referenced while a session maps
+ * a name to it.
+ * The SA is not told when a user logs out, so a session ends when it has not
+ * been used for a while (see releaseIdleSessions).
+ */
+@Component
+public class FileIndex {
+
+    // session key -> session
+    private final Map<String, Session> sessions = new HashMap<>();
+    // digest -> number of names referencing it
+    private final Map<String, Integer> references = new HashMap<>();
+    // digest -> sessions referencing it
+    private final Map<String, Set<String>> sessionsByDigest = new HashMap<>();
+
+    private static class Session {
+        // user visible name -> digest
+        private final Map<String, String> files = new HashMap<>();
+        private long lastUsed;
+    }
+
+    /**
+     * Maps the name to the digest in the session, replacing the previous
+     * mapping of the name if any
+     */
+    public synchronized void put(String sessionKey, String fileName, String digest) {
+        Session session = sessions.computeIfAbsent(sessionKey, k -> new Session());
+        session.lastUsed = System.currentTimeMillis();
+        String previous = session.files.put(fileName, digest);
+        if (digest.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            if (release(previous)) {
+                sessionsByDigest.remove(previous);
+            } else if (!session.files.containsValue(previous)) {
+                sessionsByDigest.get(previous).remove(sessionKey);
+            }
+        }
+        references.merge(digest, 1, Integer::sum);
+        sessionsByDigest.computeIfAbsent(digest, k -> new HashSet<>()).add(sessionKey);
+    }
+
+    /**
+     * @return the digest of the file with the given name in the session, or null
+     */
+    public synchronized String resolve(String sessionKey, String fileName) {
+        Session session = sessions.get(sessionKey);
+        if (session == null) {
+            return null;
+        }
+        session.lastUsed = System.currentTimeMillis();
+        return session.files.get(fileName);
+    }
+
+    public synchronized boolean isReferenced(String digest) {
+        return references.containsKey(digest);
+    }
+
+    /**
+     * Removes every name of the session
+     *
+     * @return the digests that are no longer referenced by any session
+     */
+    public synchronized List<String> releaseSession(String sessionKey) {
+        List<String> released = new ArrayList<>();
+        Session session = sessions.remove(sessionKey);
+        if (session != null) {
+            for (String digest : session.files.values()) {
+                if (release(digest)) {
+                    sessionsByDigest.remove(digest);
+                    released.add(digest);
+                } else {
+                    sessionsByDigest.get(digest).remove(sessionKey);
+                }
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Removes every name of the sessions not used since the given time
+     *
+     * @param idleSince the time (in milliseconds) before which a session has
+     *                  ended if it has not been used since
+     * @return the digests that are no longer referenced by any session
+     */
+    public synchronized List<String> releaseIdleSessions(long idleSince) {
+        List<String> idle = new ArrayList<>();
+        sessions.forEach((sessionKey, session) -> {
+            if (session.lastUsed < idleSince) {
+                idle.add(sessionKey);
+            }
+        });
+        List<String> released = new ArrayList<>();
+        for (String sessionKey : idle) {
+            released.addAll(releaseSession(sessionKey));
+        }
+        return released;
+    }
+
+    /**
+     * Removes every name mapped to the digest, when the file is removed from
+     * the storage
+     */
+    public synchronized void forget(String digest) {
+        references.remove(digest);
+        Set<String> sessionKeys = sessionsByDigest.remove(digest);
+        if (sessionKeys == null) {
+            return;
+        }
+        for (String sessionKey : sessionKeys) {
+            Session session = sessions.get(sessionKey);
+            if (session != null) {
+                session.files.values().removeIf(digest::equals);
+                if (session.files.isEmpty()) {
+                    sessions.remove(sessionKey);
+                }
+            }
+        }
+    }
+
+    private boolean release(String digest) {
+        return references.computeIfPresent(digest, (k, count) -> count > 1 ? count - 1 : null) == null;
+    }
+}
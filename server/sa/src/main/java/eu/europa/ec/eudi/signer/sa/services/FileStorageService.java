@@ -17,12 +17,21 @@
 package eu.europa.ec.eudi.signer.sa.services;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.regex.Pattern;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.tika.detect.DefaultDetector;
 import org.apache.tika.detect.Detector;
@@ -30,8 +39,6 @@ import org.apache.tika.io.FilenameUtils;
 import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -42,11 +49,33 @@ import eu.europa.ec.eudi.signer.sa.error.FileStorageException;
 @Service
 public class FileStorageService {
 
+    private static final String PDF_MEDIA_TYPE = "application/pdf";
+    private static final String PDF_EXTENSION = ".pdf";
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String SESSION_KEY_ALGORITHM = "HmacSHA256";
+
+    // loading the detector registry is expensive, and detectors are thread-safe
+    private static final Detector DETECTOR = new DefaultDetector();
+
     private final Path fileStorageLocation;
+    private final long maxFileSize;
+    private final FileIndex fileIndex;
+    private final StoredFileCleaner storedFileCleaner;
+    // the sessions only live in this instance (see FileIndex), so a key drawn at
+    // startup is enough: the download links end with the process anyway
+    private final SecretKeySpec sessionKeySecret;
 
     @Autowired
-    public FileStorageService(FileStorageConfig fileStorageProperties) {
+    public FileStorageService(FileStorageConfig fileStorageProperties, FileIndex fileIndex,
+            StoredFileCleaner storedFileCleaner) {
+        this.fileIndex = fileIndex;
+        this.storedFileCleaner = storedFileCleaner;
         this.fileStorageLocation = Paths.get(fileStorageProperties.getUploadDir()).toAbsolutePath().normalize();
+        this.maxFileSize = fileStorageProperties.getMaxFileSize();
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.sessionKeySecret = new SecretKeySpec(secret, SESSION_KEY_ALGORITHM);
 
         try {
             Files.createDirectories(this.fileStorageLocation);
@@ -57,12 +86,17 @@ public class FileStorageService {
     }
 
     /**
-     * Stores the file in the local file system and returns an absolute path to it
+     * Stores the file in the local file system, under its SHA-256 digest.
+     * The upload is read once: the media type is detected from the first bytes
+     * (PDF magic), and the content is written to a temporary file while its size
+     * is checked and its digest is computed. The temporary file is then moved to
+     * its content address, or discarded if the same content is already stored.
      *
-     * @param file
-     * @return
+     * @param file                the uploaded file
+     * @param authorizationHeader the authorization header of the user session
+     * @return the stored file (name, size and digest)
      */
-    public String storeFile(MultipartFile file) {
+    public StoredFile storeFile(MultipartFile file, String authorizationHeader) {
         // gets the file name from the original file name (which may contain path info)
         String filename1 = FilenameUtils.getName(file.getOriginalFilename());
 
@@ -75,55 +109,159 @@ public class FileStorageService {
         // replaced by their hexadecimal value.
         String fileName = FilenameUtils.normalize(filename1);
 
-        try {
-            if (fileName.contains("..")) {
-                throw new FileStorageException("Invalid file path sequence in file name: " + fileName);
-            }
+        if (fileName.contains("..")) {
+            throw new FileStorageException("Invalid file path sequence in file name: " + fileName);
+        }
+        if (maxFileSize > 0 && file.getSize() > maxFileSize) {
+            throw new FileStorageException("Sorry! The file " + fileName + " is too large.");
+        }
 
-            // validate that the pdf received is a pdf file
-            InputStream inputStream = file.getInputStream();
-            Detector detector = new DefaultDetector();
-            Metadata metadata = new Metadata();
-            String archiveType = detector.detect(TikaInputStream.get(inputStream), metadata).toString();
-            if (!archiveType.equals("application/pdf")) {
+        Path tempFile = null;
+        try (TikaInputStream inputStream = TikaInputStream.get(file.getInputStream())) {
+            // validate that the pdf received is a pdf file (the detector only reads the
+            // first bytes and resets the stream)
+            String archiveType = DETECTOR.detect(inputStream, new Metadata()).toString();
+            if (!archiveType.equals(PDF_MEDIA_TYPE)) {
                 throw new FileStorageException("Sorry! This file is not a PDF -> " + fileName);
             }
 
-            // creates a new path for the file, which the directory to use is defined in the
-            // conf file
-            Path targetLocation = newFilePath(fileName);
-            // makes sure that the location obtained is in the directory defined in the conf
-            // file
-            if (targetLocation.normalize().startsWith(this.fileStorageLocation)) {
-                // copies the received file to the location obtained
-                Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-                return fileName;
-            } else {
-                throw new IOException("Path not valid.");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            tempFile = newTempFile();
+            long size = 0;
+            try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    size += count;
+                    if (maxFileSize > 0 && size > maxFileSize) {
+                        throw new FileStorageException("Sorry! The file " + fileName + " is too large.");
+                    }
+                    digest.update(buffer, 0, count);
+                    outputStream.write(buffer, 0, count);
+                }
             }
-        } catch (IOException ex) {
+
+            return storeTempFile(tempFile, fileName, size, digest.digest(), authorizationHeader);
+        } catch (IOException | NoSuchAlgorithmException ex) {
             throw new FileStorageException("Could not store file " + fileName + ". Please try again!", ex);
+        } finally {
+            deleteQuietly(tempFile);
         }
     }
 
-    public Resource loadFileAsResource(String fileName) {
+    /**
+     * Creates an empty temporary file in the storage directory, to be stored
+     * with {@link #storeTempFile} once its digest is known
+     */
+    public Path newTempFile() throws IOException {
+        return Files.createTempFile(this.fileStorageLocation, "upload-", ".tmp");
+    }
+
+    /**
+     * Moves a temporary file to its content address, and maps the given name to
+     * it in the user session. If the same content is already stored, the
+     * temporary file is deleted instead. In both cases the removal of the
+     * file is scheduled after the configured time to live.
+     *
+     * @param tempFile            the temporary file, created with newTempFile
+     * @param fileName            the name of the file, as known by the user
+     * @param size                the size of the file
+     * @param digest              the SHA-256 digest of the content of the file
+     * @param authorizationHeader the authorization header of the user session
+     * @return the stored file (name, size and digest)
+     */
+    public StoredFile storeTempFile(Path tempFile, String fileName, long size, byte[] digest,
+            String authorizationHeader) throws IOException {
+        String sha256 = toHex(digest);
+        Path targetLocation = contentPath(sha256);
+        String sessionKey = sessionKey(authorizationHeader);
         try {
-            Path filePath = getFilePath(fileName);
-            return new UrlResource(filePath.toUri());
-        } catch (MalformedURLException ex) {
-            throw new FileNotFoundException("File not found " + fileName, ex);
+            while (true) {
+                if (!Files.exists(targetLocation)) {
+                    try {
+                        Files.move(tempFile, targetLocation, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (FileAlreadyExistsException e) {
+                        // stored concurrently by another request, with the same content
+                    }
+                }
+                // deduplication: the content already stored is kept as long as if it had
+                // just been written, unless the cleanup has removed it in the meantime
+                if (storedFileCleaner.retain(targetLocation, sessionKey, fileName, sha256)) {
+                    return new StoredFile(fileName, size, sha256);
+                }
+                if (!Files.exists(tempFile)) {
+                    throw new IOException("The file " + fileName + " was removed while it was stored");
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
         }
     }
 
-    public Path getFilePath(String fileName) {
-        final Path path = newFilePath(fileName);
-        if (!Files.exists(path)) {
+    /**
+     * @return the key of the user session: an HMAC of the authorization header
+     *         with a secret of this instance, so that the header itself is not
+     *         kept in memory, and the key in a download link can neither be
+     *         computed from the header nor checked against a guessed header
+     */
+    public String sessionKey(String authorizationHeader) {
+        try {
+            Mac mac = Mac.getInstance(SESSION_KEY_ALGORITHM);
+            mac.init(sessionKeySecret);
+            return toHex(mac.doFinal(authorizationHeader.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // the file will be removed by the cleanup of the upload directory
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param sessionKey the key of the user session
+     * @param fileName   the name of the file, as known by the user
+     * @return the digest of the file with that name in the session
+     */
+    public String resolve(String sessionKey, String fileName) {
+        String sha256 = fileIndex.resolve(sessionKey, fileName);
+        if (sha256 == null) {
             throw new FileNotFoundException("File not found " + fileName);
         }
+        return sha256;
+    }
+
+    /**
+     * @param sha256 the digest of the file (hexadecimal)
+     * @return the path of the stored file
+     */
+    public Path getFilePath(String sha256) {
+        if (sha256 == null || !SHA256_HEX.matcher(sha256).matches()) {
+            throw new FileNotFoundException("File not found " + sha256);
+        }
+        final Path path = contentPath(sha256);
+        if (!Files.exists(path)) {
+            throw new FileNotFoundException("File not found " + sha256);
+        }
         return path;
     }
 
-    public Path newFilePath(String fileName) {
-        return fileStorageLocation.resolve(FilenameUtils.getName(fileName)).normalize();
+    private Path contentPath(String sha256) {
+        return fileStorageLocation.resolve(sha256 + PDF_EXTENSION);
     }
 }
@@ -16,24 +16,35 @@
 
 package eu.europa.ec.eudi.signer.sa.services;
 
+import javax.annotation.PreDestroy;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.context.Context;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import eu.europa.ec.eudi.signer.common.AccessCredentialDeniedException;
-import eu.europa.ec.eudi.signer.common.FailedConnectionVerifier;
-import eu.europa.ec.eudi.signer.common.TimeoutException;
 import eu.europa.ec.eudi.signer.csc.payload.RedirectLinkResponse;
 import eu.europa.ec.eudi.signer.sa.client.RSSPClient;
 import eu.europa.ec.eudi.signer.sa.client.ClientContext;
+import eu.europa.ec.eudi.signer.sa.config.PdfSigningConfig;
 import eu.europa.ec.eudi.signer.sa.config.RSSPClientConfig;
 import eu.europa.ec.eudi.signer.sa.error.InternalErrorException;
 import eu.europa.ec.eudi.signer.sa.pdf.PdfSupport;
 
+import reactor.core.publisher.Mono;
+
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 @Service
 public class SigningService {
@@ -43,13 +54,18 @@ public class SigningService {
 	PdfSupport pdfSupport;
 	private final FileStorageService fileStorageService;
 
-	public SigningService(RSSPClientConfig rsspClientConfig,
-			FileStorageService fileStorageService) {
-		rsspClient = new RSSPClient(rsspClientConfig);
-		pdfSupport = new PdfSupport(rsspClient);
+	public SigningService(RSSPClientConfig rsspClientConfig, PdfSigningConfig pdfSigningConfig,
+			FileStorageService fileStorageService, OpenTelemetry openTelemetry) {
+		rsspClient = new RSSPClient(rsspClientConfig, openTelemetry);
+		pdfSupport = new PdfSupport(rsspClient, pdfSigningConfig);
 		this.fileStorageService = fileStorageService;
 	}
 
+	@PreDestroy
+	public void close() {
+		rsspClient.close();
+	}
+
 	/**
 	 * Function that allows to get a link to redirect the user to the EUDI Wallet,
 	 * after the authorization request to the verifier is executed
@@ -57,51 +73,107 @@ public class SigningService {
 	 * @param authorizationHeader the authorization header
 	 * @return the link to redirect to the EUDI Wallet
 	 */
-	public RedirectLinkResponse getOIDRedirectLink(String authorizationHeader) {
+	public Mono<RedirectLinkResponse> getOIDRedirectLink(String authorizationHeader) {
 		ClientContext context = new ClientContext();
 		context.setAuthorizationHeader(authorizationHeader);
-		rsspClient.setContext(context);
-		return pdfSupport.getOIDRedirectLink();
+		context.setTraceContext(Context.current());
+		return pdfSupport.getOIDRedirectLink(context);
 	}
 
 	/**
 	 * Function that allows to sign a file
+	 * The Mono fails with InternalErrorException if the file could not be read
+	 * or written, and with FailedConnectionVerifier, TimeoutException or
+	 * AccessCredentialDeniedException if the credential could not be authorized.
 	 * 
-	 * @param originalFileName    the name of the original file
+	 * @param originalFile        the stored original file
 	 * @param credentialAlias     the alias of the credential used to sign the pdf
 	 * @param authorizationHeader the authorization header
-	 * @return
-	 * @throws InternalErrorException
-	 * @throws FailedConnectionVerifier
-	 * @throws TimeoutException
-	 * @throws AccessCredentialDeniedException
-	 * @throws Exception
+	 * @return the stored signed file
+	 */
+	public Mono<StoredFile> signFile(StoredFile originalFile, String credentialAlias, String authorizationHeader) {
+		return signFiles(Collections.singletonList(originalFile), credentialAlias, authorizationHeader)
+				.map(signedFiles -> signedFiles.get(0));
+	}
+
+	/**
+	 * Function that allows to sign several files with a single authorization of
+	 * the credential (one wallet interaction for all the files)
+	 * The signed files are written to temporary files, and stored under the
+	 * digest computed while they are written.
+	 * 
+	 * @param originalFiles       the stored original files
+	 * @param credentialAlias     the alias of the credential used to sign the pdfs
+	 * @param authorizationHeader the authorization header
+	 * @return the stored signed files, in the same order
 	 */
-	public String signFile(String originalFileName, String credentialAlias, String authorizationHeader)
-			throws InternalErrorException, FailedConnectionVerifier, TimeoutException, AccessCredentialDeniedException,
-			Exception {
-		String signedFileName;
+	public Mono<List<StoredFile>> signFiles(List<StoredFile> originalFiles, String credentialAlias,
+			String authorizationHeader) {
+		ClientContext context = new ClientContext();
+		context.setAuthorizationHeader(authorizationHeader);
+		context.setCredentialID(credentialAlias);
+		// the signing continues on other threads: the calls to the RSSP get
+		// the span of the request from the context
+		context.setTraceContext(Context.current());
+
+		return Mono.fromCallable(() -> {
+			List<Path> tempFiles = new ArrayList<>();
+			try {
+				for (int i = 0; i < originalFiles.size(); i++) {
+					tempFiles.add(fileStorageService.newTempFile());
+				}
+			} catch (IOException e) {
+				tempFiles.forEach(SigningService::deleteQuietly);
+				throw e;
+			}
+			return tempFiles;
+		}).flatMap(tempFiles -> {
+			List<String> pdfNames = new ArrayList<>();
+			List<File> inFiles = new ArrayList<>();
+			List<File> outFiles = new ArrayList<>();
+			for (int i = 0; i < originalFiles.size(); i++) {
+				pdfNames.add(originalFiles.get(i).getFileName());
+				inFiles.add(fileStorageService.getFilePath(originalFiles.get(i).getSha256()).toFile());
+				outFiles.add(tempFiles.get(i).toFile());
+			}
+			return pdfSupport.signDetached(pdfNames, inFiles, outFiles, context)
+					.map(digests -> {
+						List<StoredFile> signedFiles = new ArrayList<>();
+						for (int i = 0; i < digests.size(); i++) {
+							signedFiles.add(storeSignedFile(tempFiles.get(i), originalFiles.get(i), digests.get(i),
+									authorizationHeader));
+						}
+						return signedFiles;
+					})
+					.doFinally(signal -> tempFiles.forEach(SigningService::deleteQuietly));
+		})
+				.onErrorMap(e -> e instanceof IOException || e instanceof UncheckedIOException
+						|| e instanceof NoSuchAlgorithmException,
+						e -> {
+							log.error("Internal error in Signing Application", e);
+							return new InternalErrorException("Internal error in Signing Application", e);
+						})
+				.doOnError(e -> !(e instanceof InternalErrorException)
+						&& !(e instanceof AccessCredentialDeniedException),
+						e -> log.error("Error: ", e));
+	}
+
+	private StoredFile storeSignedFile(Path tempFile, StoredFile originalFile, byte[] digest,
+			String authorizationHeader) {
+		String signedFileName = StringUtils.stripFilenameExtension(originalFile.getFileName()) + "_signed.pdf";
+		try {
+			return fileStorageService.storeTempFile(tempFile, signedFileName, Files.size(tempFile), digest,
+					authorizationHeader);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void deleteQuietly(Path path) {
 		try {
-			Path originalFilePath = fileStorageService.getFilePath(originalFileName);
-			String baseName = originalFilePath.getFileName().toString();
-			signedFileName = StringUtils.stripFilenameExtension(baseName) + "_signed.pdf";
-			Path signedFilePath = fileStorageService.newFilePath(signedFileName);
-			ClientContext context = new ClientContext();
-			context.setAuthorizationHeader(authorizationHeader);
-			context.setCredentialID(credentialAlias);
-			rsspClient.setContext(context);
-			pdfSupport.signDetached(originalFilePath.toFile(), signedFilePath.toFile());
-		} catch (IOException | NoSuchAlgorithmException e) {
-			log.error("Internal error in Signing Application", e);
-			throw new InternalErrorException("Internal error in Signing Application", e);
-		} catch (AccessCredentialDeniedException e) {
-			throw e;
-		} catch (Exception e) {
-			log.error("Error: ", e);
-			throw e;
-		} finally {
-			rsspClient.setContext(null); // clear it just in case it gets resused
+			Files.deleteIfExists(path);
+		} catch (IOException ignored) {
+			// the file will be removed by the cleanup of the upload directory
 		}
-		return signedFileName;
 	}
 }
@@ -0,0 +1,267 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package eu.europa.ec.eudi.signer.sa.services;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import eu.europa.ec.eudi.signer.sa.config.FileStorageConfig;
+
+/**
+ * Removes the stored files once their time to live has elapsed.
+ * The expiry of a file is recorded when it is written, in a queue ordered by
+ * expiry time, so a cleanup only visits the expired files instead of listing
+ * the whole storage directory. The directory is listed once, at startup, to
+ * schedule the removal of the files left by a previous run.
+ * An expired file still referenced by a session (see FileIndex) is kept for
+ * another time to live. A file is retained and removed under the same lock,
+ * so a request that retains a stored file never gets a file removed after.
+ * The files removed, the bytes reclaimed and the files waiting for their
+ * removal are published as sa.files.removed, sa.files.reclaimed and
+ * sa.files.pending.
+ */
+@Component
+public class StoredFileCleaner implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(StoredFileCleaner.class);
+
+    private final Path fileStorageLocation;
+    private final long ttlMillis;
+    private final long intervalSeconds;
+    private final FileIndex fileIndex;
+
+    // expiries ordered by time; a file written again has several entries, and
+    // only the one matching its latest expiry removes it
+    private final PriorityQueue<Expiry> queue = new PriorityQueue<>();
+    private final Map<Path, Long> latestExpiry = new HashMap<>();
+
+    private final Counter filesRemoved;
+    private final Counter bytesReclaimed;
+
+    private ScheduledExecutorService executor;
+
+    public StoredFileCleaner(FileStorageConfig fileStorageProperties, FileIndex fileIndex,
+            MeterRegistry meterRegistry) {
+        this.fileStorageLocation = Paths.get(fileStorageProperties.getUploadDir()).toAbsolutePath().normalize();
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(fileStorageProperties.getFileTtlSeconds());
+        this.intervalSeconds = Math.max(1, fileStorageProperties.getCleanupIntervalSeconds());
+        this.fileIndex = fileIndex;
+        this.filesRemoved = Counter.builder("sa.files.removed")
+                .description("Stored files removed after their time to live")
+                .register(meterRegistry);
+        this.bytesReclaimed = Counter.builder("sa.files.reclaimed")
+                .description("Bytes of the stored files removed")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("sa.files.pending", this, StoredFileCleaner::getPendingFiles)
+                .description("Stored files waiting for their removal")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Keeps a stored file: its removal is scheduled after the time to live,
+     * and the name is mapped to it in the session
+     *
+     * @return false if the file was removed (it must then be stored again)
+     */
+    public synchronized boolean retain(Path path, String sessionKey, String fileName, String digest)
+            throws IOException {
+        long now = System.currentTimeMillis();
+        try {
+            // the time to live of the files left by a previous run starts from it
+            Files.setLastModifiedTime(path, FileTime.fromMillis(now));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        register(path, now);
+        fileIndex.put(sessionKey, fileName, digest);
+        return true;
+    }
+
+    private synchronized void register(Path path, long lastWritten) {
+        long expiresAt = lastWritten + ttlMillis;
+        Long previous = latestExpiry.get(path);
+        if (previous != null && previous >= expiresAt) {
+            return;
+        }
+        latestExpiry.put(path, expiresAt);
+        queue.add(new Expiry(path, expiresAt));
+    }
+
+    /**
+     * Ends the sessions not used for the time to live of the files, and
+     * removes the files whose time to live has elapsed
+     */
+    void removeExpired() {
+        long now = System.currentTimeMillis();
+        fileIndex.releaseIdleSessions(now - ttlMillis);
+        long removed = 0;
+        long reclaimed = 0;
+        Expiry expiry;
+        while ((expiry = pollExpired(now)) != null) {
+            try {
+                long size = remove(expiry.path, now);
+                if (size >= 0) {
+                    removed++;
+                    reclaimed += size;
+                }
+            } catch (IOException e) {
+                log.warn("Could not remove the expired file {}", expiry.path, e);
+            }
+        }
+        if (removed > 0) {
+            filesRemoved.increment(removed);
+            bytesReclaimed.increment(reclaimed);
+            log.info("Removed {} expired files, {} bytes reclaimed", removed, reclaimed);
+        }
+    }
+
+    /**
+     * Removes an expired file, unless it was retained again since its expiry
+     * was polled, or it is still referenced by a session (its removal is then
+     * scheduled after another time to live)
+     *
+     * @return the size of the file removed, or -1 if it was not removed
+     */
+    private synchronized long remove(Path path, long now) throws IOException {
+        if (latestExpiry.containsKey(path)) {
+            return -1;
+        }
+        String fileName = path.getFileName().toString();
+        String digest = fileName.endsWith(".pdf") ? fileName.substring(0, fileName.length() - ".pdf".length())
+                : null;
+        if (digest != null && fileIndex.isReferenced(digest)) {
+            register(path, now);
+            return -1;
+        }
+        long size;
+        try {
+            size = Files.size(path);
+        } catch (NoSuchFileException e) {
+            // already removed
+            size = -1;
+        }
+        if (size >= 0 && !Files.deleteIfExists(path)) {
+            size = -1;
+        }
+        if (digest != null) {
+            fileIndex.forget(digest);
+        }
+        return size;
+    }
+
+    private synchronized Expiry pollExpired(long now) {
+        while (!queue.isEmpty() && queue.peek().expiresAt <= now) {
+            Expiry expiry = queue.poll();
+            // skips the entries superseded by a later write of the same file
+            if (latestExpiry.remove(expiry.path, expiry.expiresAt)) {
+                return expiry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Schedules the removal of the files found in the storage directory, by
+     * their last modification time
+     */
+    private void registerExistingFiles() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(fileStorageLocation)) {
+            for (Path file : files) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    register(file, attributes.lastModifiedTime().toMillis());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not list the files in {}", fileStorageLocation, e);
+        }
+    }
+
+    /**
+     * @return the number of files waiting for their removal
+     */
+    public synchronized int getPendingFiles() {
+        return latestExpiry.size();
+    }
+
+    @Override
+    public synchronized void start() {
+        registerExistingFiles();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stored-file-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                removeExpired();
+            } catch (RuntimeException e) {
+                log.error("Error removing the expired files", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    private static class Expiry implements Comparable<Expiry> {
+        private final Path path;
+        private final long expiresAt;
+
+        Expiry(Path path, long expiresAt) {
+            this.path = path;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public int compareTo(Expiry other) {
+            return Long.compare(expiresAt, other.expiresAt);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ Copyright 2024 European Commission
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+      https://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package eu.europa.ec.eudi.signer.sa.client;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import eu.europa.ec.eudi.signer.common.tracing.TracingFilter;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import reactor.core.publisher.Mono;
+
+/**
+ * The trace of a signing crosses the SA and the RSSP: the TracingExchangeFilter
+ * of the SA sends the context of its client span in the traceparent header,
+ * and the TracingFilter of the RSSP continues it.
+ */
+public class TracingPropagationTest {
+
+    private static final String SIGN_HASH = "/csc/v1/signatures/signHash";
+
+    private final InMemorySpanExporter exporter = InMemorySpanExporter.create();
+    private OpenTelemetrySdk openTelemetry;
+    private Tracer tracer;
+
+    @Before
+    public void setUp() {
+        this.openTelemetry = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .addSpanProcessor(SimpleSpanProcessor.create(this.exporter))
+                        .build())
+                .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+                .build();
+        this.tracer = this.openTelemetry.getTracer("test");
+    }
+
+    @After
+    public void tearDown() {
+        this.openTelemetry.getSdkTracerProvider().close();
+    }
+
+    // The client span is a child of the span kept in the ClientContext, even
+    // though that span is not current on the thread of the call
+    @Test
+    public void test_exchange_filter_injects_the_client_context_parent() {
+        Span parent = this.tracer.spanBuilder("POST /signFile").startSpan();
+        ClientContext context = new ClientContext();
+        context.setTraceContext(Context.root().with(parent));
+
+        String traceparent = callRssp(context);
+        parent.end();
+
+        SpanData client = span(SpanKind.CLIENT);
+        assertEquals(parent.getSpanContext().getSpanId(), client.getParentSpanId());
+        assertEquals(parent.getSpanContext().getTraceId(), client.getTraceId());
+        assertEquals("POST " + SIGN_HASH, client.getName());
+        assertEquals("00-" + client.getTraceId() + "-" + client.getSpanId() + "-01", traceparent);
+    }
+
+    // The RSSP continues the trace of the client span, and ends its span only
+    // once the asynchronous processing of the request completes
+    @Test
+    public void test_tracing_filter_continues_the_trace_and_ends_async_spans() throws Exception {
+        Span parent = this.tracer.spanBuilder("POST /signFile").startSpan();
+        ClientContext context = new ClientContext();
+        context.setTraceContext(Context.root().with(parent));
+        String traceparent = callRssp(context);
+        parent.end();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", SIGN_HASH);
+        request.addHeader("traceparent", traceparent);
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new TracingFilter(this.openTelemetry, this.tracer).doFilter(request, response, (req, res) -> {
+            req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, SIGN_HASH);
+            req.startAsync();
+        });
+
+        assertTrue(spans(SpanKind.SERVER).isEmpty());
+
+        request.getAsyncContext().complete();
+
+        SpanData client = span(SpanKind.CLIENT);
+        SpanData server = span(SpanKind.SERVER);
+        assertEquals(client.getTraceId(), server.getTraceId());
+        assertEquals(client.getSpanId(), server.getParentSpanId());
+        assertEquals("POST " + SIGN_HASH, server.getName());
+        assertTrue(server.hasEnded());
+    }
+
+    // Sends a request through the TracingExchangeFilter, as the RSSPClient
+    // does, and returns the traceparent header the RSSP receives
+    private String callRssp(ClientContext context) {
+        ClientRequest request = ClientRequest.create(HttpMethod.POST, URI.create("http://rssp" + SIGN_HASH))
+                .attribute(TracingExchangeFilter.PARENT_CONTEXT, context.getTraceContext())
+                .build();
+        AtomicReference<ClientRequest> sent = new AtomicReference<>();
+        new TracingExchangeFilter(this.openTelemetry, this.tracer)
+                .filter(request, req -> {
+                    sent.set(req);
+                    return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+                })
+                .block();
+        return sent.get().headers().getFirst("traceparent");
+    }
+
+    private List<SpanData> spans(SpanKind kind) {
+        return this.exporter.getFinishedSpanItems().stream()
+                .filter(span -> span.getKind() == kind)
+                .collect(Collectors.toList());
+    }
+
+    private SpanData span(SpanKind kind) {
+        List<SpanData> spans = spans(kind);
+        assertEquals(1, spans.size());
+        return spans.get(0);
+    }
+}
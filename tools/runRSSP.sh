@@ -11,4 +11,4 @@
 # WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
 # See the License for the specific language governing permissions and
 # limitations under the License.
-cd ../server; mvn clean install -Dmaven.test.skip=true; java -jar app/target/app-2024.04.2-Demo.jar
\ No newline at end of file
+cd ../server; mvn clean install -Dmaven.test.skip=true; java -jar app/target/app-2024.04.2-Demo-exec.jar
\ No newline at end of file